@@ -0,0 +1,88 @@
+package com.cg.traficlight.benchmark;
+
+import com.cg.traficlight.command.CommandQueue;
+import com.cg.traficlight.model.Response;
+import com.cg.traficlight.model.SignalSequence;
+import com.cg.traficlight.service.TrafficLightService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Four threads sending sequence changes as fast as they can, straight to the service (each one
+ * takes the lock and restarts the cycle) or through a {@link CommandQueue} with a 10 ms window,
+ * while two threads keep reading the status. Compare the command and status rates of the two
+ * groups.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommandStormBenchmark {
+
+    private TrafficLightService service;
+    private CommandQueue queue;
+    private SignalSequence fast;
+    private SignalSequence slow;
+
+    @Setup
+    public void start() {
+        service = new TrafficLightService();
+        service.init();
+        queue = new CommandQueue(service, 10);
+        fast = sequence(1, 1, 1, 1);
+        slow = sequence(20, 3, 20, 3);
+    }
+
+    @TearDown
+    public void stop() {
+        queue.shutdown();
+        service.shutdown();
+    }
+
+    @State(Scope.Thread)
+    public static class Toggle {
+        boolean value;
+    }
+
+    @Benchmark
+    @Group("direct")
+    @GroupThreads(4)
+    public void directSetSequence(Toggle toggle) {
+        toggle.value = !toggle.value;
+        service.setSequence(toggle.value ? fast : slow);
+    }
+
+    @Benchmark
+    @Group("direct")
+    @GroupThreads(2)
+    public Response directGetStatus() {
+        return service.getStatus();
+    }
+
+    @Benchmark
+    @Group("queued")
+    @GroupThreads(4)
+    public long queuedSetSequence(Toggle toggle) {
+        toggle.value = !toggle.value;
+        return queue.submitSequence(toggle.value ? fast : slow);
+    }
+
+    @Benchmark
+    @Group("queued")
+    @GroupThreads(2)
+    public Response queuedGetStatus() {
+        return service.getStatus();
+    }
+
+    private static SignalSequence sequence(long greenNS, long yellowNS, long greenEW, long yellowEW) {
+        SignalSequence sequence = new SignalSequence();
+        sequence.setTimeGreenNS(greenNS);
+        sequence.setTimeYellowNS(yellowNS);
+        sequence.setTimeGreenEW(greenEW);
+        sequence.setTimeYellowEW(yellowEW);
+        return sequence;
+    }
+}
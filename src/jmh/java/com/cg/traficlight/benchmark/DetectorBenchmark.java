@@ -0,0 +1,56 @@
+package com.cg.traficlight.benchmark;
+
+import com.cg.traficlight.detector.DetectorCounts;
+import com.cg.traficlight.model.DetectorBatch;
+import com.cg.traficlight.model.DetectorEvent;
+import com.cg.traficlight.model.Directions;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Detector ingestion: eight threads posting 100-event batches into the shared counters, with
+ * one thread draining an approach now and then as the signal side does at each green.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DetectorBenchmark {
+
+    private static final int BATCH = 100;
+
+    private DetectorCounts counts;
+    private DetectorBatch batch;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        counts = new DetectorCounts();
+        List<DetectorEvent> events = new ArrayList<>(BATCH);
+        Directions[] directions = Directions.values();
+        for (int i = 0; i < BATCH; i++) {
+            events.add(new DetectorEvent("loop-" + i, directions[i % directions.length], 1));
+        }
+        batch = new DetectorBatch(events);
+    }
+
+    @Benchmark
+    @Group("ingest")
+    @GroupThreads(8)
+    @OperationsPerInvocation(BATCH)
+    public int record() {
+        return counts.record(batch);
+    }
+
+    @Benchmark
+    @Group("ingest")
+    @GroupThreads(1)
+    public long drain() {
+        return counts.drain(Directions.values()[next++ & 3]);
+    }
+}
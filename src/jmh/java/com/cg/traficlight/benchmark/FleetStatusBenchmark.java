@@ -0,0 +1,68 @@
+package com.cg.traficlight.benchmark;
+
+import com.cg.traficlight.engine.IntersectionEngine;
+import com.cg.traficlight.model.SignalSequence;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Status of a whole fleet of intersections cycling through one-second phases: one lookup per
+ * id, as a dashboard calling {@code /intersections/{id}/status} for each would cost the server,
+ * against the bulk JSON and one-byte-per-intersection bodies.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FleetStatusBenchmark {
+
+    @Param({"1000", "10000"})
+    public int intersections;
+
+    private IntersectionEngine engine;
+    private List<String> ids;
+    private final OutputStream sink = OutputStream.nullOutputStream();
+
+    @Setup
+    public void start() {
+        engine = new IntersectionEngine();
+        engine.start();
+        SignalSequence fast = new SignalSequence();
+        fast.setTimeGreenNS(1);
+        fast.setTimeYellowNS(1);
+        fast.setTimeGreenEW(1);
+        fast.setTimeYellowEW(1);
+        for (int i = 0; i < intersections; i++) {
+            engine.register("x-" + i, fast);
+        }
+        ids = engine.getFleetStatus().ids();
+    }
+
+    @TearDown
+    public void stop() {
+        engine.shutdown();
+    }
+
+    @Benchmark
+    public void perIntersection() throws IOException {
+        for (String id : ids) {
+            sink.write(engine.getStatusJson(id));
+        }
+    }
+
+    @Benchmark
+    public void bulkJson() throws IOException {
+        engine.getFleetStatus().writeJson(sink);
+    }
+
+    @Benchmark
+    public void bulkCodes() throws IOException {
+        engine.getFleetStatus().writeCodes(sink);
+    }
+}
@@ -0,0 +1,87 @@
+package com.cg.traficlight.benchmark;
+
+import com.cg.traficlight.history.HistoryRingBuffer;
+import com.cg.traficlight.model.Colors;
+import com.cg.traficlight.model.Directions;
+import com.cg.traficlight.model.HistoryPage;
+import com.cg.traficlight.model.HistoryQuery;
+import com.cg.traficlight.model.TraficLightHistory;
+import com.cg.traficlight.service.TrafficLightService;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Field;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code getTimingHistory()} with {@code max.record.size} equal to the number of retained
+ * entries, from 10 up to 10M, next to a fixed-size page from {@code queryHistory()} on the same
+ * store. Entries are drawn from a small pool so the 10M case fits in a 2 GB heap; only the
+ * references are copied either way.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class HistoryBenchmark {
+
+    private static final int POOL_SIZE = 1024;
+
+    @Param({"10", "1000", "100000", "10000000"})
+    private int size;
+
+    private TrafficLightService service;
+    private HistoryQuery page;
+
+    @Setup
+    public void fill() throws ReflectiveOperationException {
+        TraficLightHistory[] pool = new TraficLightHistory[POOL_SIZE];
+        Instant start = Instant.now();
+        for (int i = 0; i < POOL_SIZE; i++) {
+            TraficLightHistory record = new TraficLightHistory();
+            record.setId(i + 1L);
+            record.setDirection(Directions.values()[i % 4]);
+            record.setColors(i % 2 == 0 ? Colors.GREEN : Colors.YELLOW);
+            record.setTimestamp(start.plusSeconds(i));
+            record.setDurationSeconds(20_000L);
+            pool[i] = record;
+        }
+        HistoryRingBuffer buffer = new HistoryRingBuffer(size);
+        for (int i = 0; i < size; i++) {
+            buffer.append(pool[i % POOL_SIZE]);
+        }
+
+        // no init(): the scheduler would keep appending and the store would not stay at size
+        service = new TrafficLightService();
+        set("records", buffer);
+        set("maxRecordSize", (long) size);
+
+        page = new HistoryQuery();
+        page.setDirection(Directions.NORTH);
+        page.setLimit(10);
+    }
+
+    @TearDown
+    public void stop() {
+        service.shutdown();
+    }
+
+    @Benchmark
+    public List<TraficLightHistory> getTimingHistory() {
+        return service.getTimingHistory();
+    }
+
+    @Benchmark
+    public HistoryPage queryHistoryPage() {
+        return service.queryHistory(page);
+    }
+
+    private void set(String field, Object value) throws ReflectiveOperationException {
+        Field f = TrafficLightService.class.getDeclaredField(field);
+        f.setAccessible(true);
+        f.set(service, value);
+    }
+}
@@ -0,0 +1,81 @@
+package com.cg.traficlight.benchmark;
+
+import com.cg.traficlight.history.CompactHistoryStore;
+import com.cg.traficlight.history.HistoryRingBuffer;
+import com.cg.traficlight.history.HistoryStore;
+import com.cg.traficlight.history.HistoryStoreType;
+import com.cg.traficlight.model.Colors;
+import com.cg.traficlight.model.Directions;
+import com.cg.traficlight.model.TraficLightHistory;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Heap kept by {@code history.store=MEMORY} (one object per transition) next to
+ * {@code history.store=COMPACT} (primitive arrays), filled to capacity the way the service does
+ * it: a fresh record with its own timestamp per transition.
+ * <p>
+ * Each single-shot iteration fills a new store, and the {@code retainedBytesPerRecord} and
+ * {@code retainedMegabytes} counters report the heap still in use after a full GC while the store
+ * is reachable. The time is the fill plus that GC. Run with {@code -prof gc} to also see the
+ * bytes allocated per transition.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class HistoryMemoryBenchmark {
+
+    @Param({"MEMORY", "COMPACT"})
+    private HistoryStoreType store;
+
+    @Param({"1000000", "10000000"})
+    private int size;
+
+    private HistoryStore filled;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Retained {
+        public long retainedBytesPerRecord;
+        public long retainedMegabytes;
+    }
+
+    @Setup(Level.Iteration)
+    public void release() {
+        filled = null;
+    }
+
+    @Benchmark
+    public HistoryStore fill(Retained retained) {
+        long before = usedHeapAfterGc();
+        HistoryStore history = store == HistoryStoreType.COMPACT ? new CompactHistoryStore(size) : new HistoryRingBuffer(size);
+        Instant start = Instant.parse("2024-03-05T02:00:00Z");
+        for (int i = 0; i < size; i++) {
+            TraficLightHistory record = new TraficLightHistory();
+            record.setId(i % 8 + 1L);
+            record.setDirection(Directions.values()[i % 4]);
+            record.setColors(i % 2 == 0 ? Colors.GREEN : Colors.YELLOW);
+            record.setTimestamp(start.plusNanos(i * 7_500_000_001L));
+            record.setDurationSeconds(20_000L);
+            history.append(record);
+        }
+        filled = history;
+        long retainedBytes = usedHeapAfterGc() - before;
+        retained.retainedBytesPerRecord = retainedBytes / size;
+        retained.retainedMegabytes = retainedBytes >> 20;
+        return history;
+    }
+
+    private static long usedHeapAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,72 @@
+package com.cg.traficlight.benchmark;
+
+import com.cg.traficlight.model.Colors;
+import com.cg.traficlight.model.Directions;
+import com.cg.traficlight.model.Response;
+import com.cg.traficlight.model.StatusSnapshot;
+import com.cg.traficlight.model.TraficLightHistory;
+import org.openjdk.jmh.annotations.*;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson serialization of the response bodies, as Spring MVC does it for {@code /history},
+ * next to the precomputed {@code /status} bytes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonBenchmark {
+
+    private final JsonMapper mapper = JsonMapper.builder().build();
+
+    private StatusSnapshot snapshot;
+    private Response response;
+    private TraficLightHistory record;
+    private List<TraficLightHistory> history;
+
+    @Setup
+    public void create() {
+        snapshot = StatusSnapshot.of(Directions.NORTH, Colors.GREEN, false);
+        response = snapshot.getResponse();
+        history = new ArrayList<>();
+        Instant now = Instant.now();
+        for (int i = 0; i < 10; i++) {
+            TraficLightHistory h = new TraficLightHistory();
+            h.setId(i + 1L);
+            h.setDirection(Directions.values()[i % 4]);
+            h.setColors(i % 2 == 0 ? Colors.GREEN : Colors.YELLOW);
+            h.setTimestamp(now.minusSeconds(i));
+            h.setDurationSeconds(20_000L);
+            history.add(h);
+        }
+        record = history.get(0);
+    }
+
+    @Benchmark
+    public byte[] responseJackson() {
+        return mapper.writeValueAsBytes(response);
+    }
+
+    @Benchmark
+    public byte[] responsePrecomputed() {
+        return snapshot.getJson(mapper);
+    }
+
+    @Benchmark
+    public byte[] historyRecordJackson() {
+        return mapper.writeValueAsBytes(record);
+    }
+
+    @Benchmark
+    public byte[] historyListJackson() {
+        return mapper.writeValueAsBytes(history);
+    }
+}
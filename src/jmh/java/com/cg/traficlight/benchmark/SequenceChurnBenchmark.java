@@ -0,0 +1,63 @@
+package com.cg.traficlight.benchmark;
+
+import com.cg.traficlight.model.Response;
+import com.cg.traficlight.model.SignalSequence;
+import com.cg.traficlight.service.TrafficLightService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One thread switching between two sequences as fast as it can while the scheduler is running
+ * and three threads keep reading the status.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SequenceChurnBenchmark {
+
+    private TrafficLightService service;
+    private SignalSequence fast;
+    private SignalSequence slow;
+    private boolean toggle;
+
+    @Setup
+    public void start() {
+        service = new TrafficLightService();
+        service.init();
+        fast = sequence(1, 1, 1, 1);
+        slow = sequence(20, 3, 20, 3);
+    }
+
+    @TearDown
+    public void stop() {
+        service.shutdown();
+    }
+
+    @Benchmark
+    @Group("churn")
+    @GroupThreads(1)
+    public void setSequence() {
+        toggle = !toggle;
+        service.setSequence(toggle ? fast : slow);
+    }
+
+    @Benchmark
+    @Group("churn")
+    @GroupThreads(3)
+    public Response getStatus() {
+        return service.getStatus();
+    }
+
+    private static SignalSequence sequence(long greenNS, long yellowNS, long greenEW, long yellowEW) {
+        SignalSequence sequence = new SignalSequence();
+        sequence.setTimeGreenNS(greenNS);
+        sequence.setTimeYellowNS(yellowNS);
+        sequence.setTimeGreenEW(greenEW);
+        sequence.setTimeYellowEW(yellowEW);
+        return sequence;
+    }
+}
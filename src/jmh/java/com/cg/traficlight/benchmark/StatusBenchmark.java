@@ -0,0 +1,51 @@
+package com.cg.traficlight.benchmark;
+
+import com.cg.traficlight.model.Response;
+import com.cg.traficlight.model.SignalSequence;
+import com.cg.traficlight.service.TrafficLightService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code getStatus()} read by eight threads at once while the scheduler keeps moving through
+ * one-second phases underneath them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class StatusBenchmark {
+
+    private TrafficLightService service;
+
+    @Setup
+    public void start() {
+        service = new TrafficLightService();
+        service.init();
+        SignalSequence fast = new SignalSequence();
+        fast.setTimeGreenNS(1);
+        fast.setTimeYellowNS(1);
+        fast.setTimeGreenEW(1);
+        fast.setTimeYellowEW(1);
+        service.setSequence(fast);
+    }
+
+    @TearDown
+    public void stop() {
+        service.shutdown();
+    }
+
+    @Benchmark
+    public Response getStatus() {
+        return service.getStatus();
+    }
+
+    @Benchmark
+    public byte[] getStatusJson() {
+        return service.getStatusJson();
+    }
+}
@@ -0,0 +1,50 @@
+package com.cg.traficlight.benchmark;
+
+import com.cg.traficlight.clock.VirtualTimeScheduler;
+import com.cg.traficlight.model.SignalSequence;
+import com.cg.traficlight.service.TrafficLightService;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-threaded transitions per second of {@code TrafficLightService} on the virtual clock,
+ * with one-second phases: every invocation runs {@value #TRANSITIONS} of them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VirtualClockBenchmark {
+
+    private static final int TRANSITIONS = 1000;
+
+    private TrafficLightService service;
+
+    @Setup
+    public void start() {
+        service = new TrafficLightService(new VirtualTimeScheduler(LocalDateTime.of(2024, 1, 1, 0, 0)));
+        service.init();
+        SignalSequence sequence = new SignalSequence();
+        sequence.setTimeGreenNS(1);
+        sequence.setTimeYellowNS(1);
+        sequence.setTimeGreenEW(1);
+        sequence.setTimeYellowEW(1);
+        service.setSequence(sequence);
+    }
+
+    @TearDown
+    public void stop() {
+        service.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TRANSITIONS)
+    public long transitions() {
+        return service.advanceVirtualTime(Duration.ofSeconds(TRANSITIONS));
+    }
+}
@@ -0,0 +1,105 @@
+package com.cg.traficlight.analytics;
+
+import com.cg.traficlight.model.AnalyticsReport;
+import com.cg.traficlight.model.WindowStats;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rolling phase statistics over the last minute, 15 minutes, hour and day: green time per
+ * approach, cycles, phase overrun and pause time.
+ * <p>
+ * The service reports every phase start, deadline overrun, pause and resume as they happen,
+ * and each is added to one bucket of each {@link SlidingWindow}, so recording is O(1) and a
+ * report never rescans history. Times are on the service clock ({@code nanoTime}), so virtual
+ * time works the same. Written under the service lock; the monitor only orders the writer
+ * against readers.
+ */
+public final class PhaseAnalytics {
+
+    private static final String[] NAMES = {"1m", "15m", "1h", "24h"};
+    private static final long[] SPANS = {
+            TimeUnit.MINUTES.toNanos(1), TimeUnit.MINUTES.toNanos(15), TimeUnit.HOURS.toNanos(1), TimeUnit.DAYS.toNanos(1)};
+    private static final int BUCKETS = 60;
+
+    private final long startedNanos;
+    private final SlidingWindow[] windows = new SlidingWindow[NAMES.length];
+
+    // the phase showing now: its slot in the cycle, approaches it shows green and its start
+    private int openSlot = -1;
+    private boolean phaseOpen;
+    private int openGreenMask;
+    private long openSince;
+
+    private boolean pausing;
+    private long pausedSince;
+
+    public PhaseAnalytics(long startedNanos) {
+        this.startedNanos = startedNanos;
+        for (int i = 0; i < windows.length; i++) {
+            windows[i] = new SlidingWindow(SPANS[i], BUCKETS, startedNanos);
+        }
+    }
+
+    /**
+     * A phase started at {@code nanos}; closes the previous one. Entering slot 0 from another
+     * slot counts a cycle.
+     *
+     * @param approachGreenMask bit {@code d.ordinal()} set for every approach shown green
+     */
+    public synchronized void phaseStarted(long nanos, int slot, int approachGreenMask) {
+        closePhase(nanos);
+        boolean cycleStart = slot == 0 && openSlot != 0;
+        for (SlidingWindow window : windows) {
+            window.addPhase(nanos, cycleStart);
+        }
+        openSlot = slot;
+        openGreenMask = approachGreenMask;
+        openSince = nanos;
+        phaseOpen = true;
+    }
+
+    /** A phase deadline fired {@code overrunNanos} after it was due. */
+    public synchronized void phaseOverrun(long nanos, long overrunNanos) {
+        for (SlidingWindow window : windows) {
+            window.addOverrun(nanos, overrunNanos);
+        }
+    }
+
+    public synchronized void paused(long nanos) {
+        closePhase(nanos);
+        if (pausing) return;
+        pausing = true;
+        pausedSince = nanos;
+    }
+
+    public synchronized void resumed(long nanos) {
+        if (!pausing) return;
+        pausing = false;
+        for (SlidingWindow window : windows) {
+            window.addPaused(pausedSince, nanos);
+        }
+    }
+
+    public synchronized AnalyticsReport report(long now) {
+        Map<String, WindowStats> stats = new LinkedHashMap<>();
+        for (int i = 0; i < windows.length; i++) {
+            stats.put(NAMES[i], windows[i].snapshot(now, startedNanos, phaseOpen ? openGreenMask : 0, openSince,
+                    pausing, pausedSince));
+        }
+        AnalyticsReport report = new AnalyticsReport();
+        report.setWindows(stats);
+        return report;
+    }
+
+    private void closePhase(long nanos) {
+        if (!phaseOpen) return;
+        phaseOpen = false;
+        if (openGreenMask == 0) return;
+        for (SlidingWindow window : windows) {
+            window.addGreen(openGreenMask, openSince, nanos);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.cg.traficlight.analytics;
+
+import com.cg.traficlight.model.Directions;
+import com.cg.traficlight.model.WindowStats;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Phase counters over a sliding window, kept in a ring of fixed-width time buckets.
+ * <p>
+ * A bucket is reset the first time it is written in a new round, so an update touches one
+ * bucket (or, for a time span, only the buckets it covers, never more than the ring) and a
+ * query sums the ring: both cost the same however long the service has run. The window edge
+ * moves a bucket at a time: a query covers from the start of the bucket holding
+ * {@code now - window}, so between the window and one bucket more.
+ */
+final class SlidingWindow {
+
+    private static final Directions[] DIRECTIONS = Directions.values();
+    private static final int APPROACHES = DIRECTIONS.length;
+
+    private final long windowNanos;
+    private final long bucketNanos;
+    // ring slots: one more bucket than the window is divided into
+    private final int buckets;
+    private final long originNanos;
+
+    private final long[] ids;
+    private final long[] green;
+    private final long[] paused;
+    private final long[] phases;
+    private final long[] cycles;
+    private final long[] overrunSum;
+    private final long[] overrunCount;
+    private final long[] overrunMax;
+
+    SlidingWindow(long windowNanos, int buckets, long originNanos) {
+        this.windowNanos = windowNanos;
+        this.bucketNanos = windowNanos / buckets;
+        this.buckets = buckets + 1;
+        this.originNanos = originNanos;
+        this.ids = new long[this.buckets];
+        this.green = new long[this.buckets * APPROACHES];
+        this.paused = new long[this.buckets];
+        this.phases = new long[this.buckets];
+        this.cycles = new long[this.buckets];
+        this.overrunSum = new long[this.buckets];
+        this.overrunCount = new long[this.buckets];
+        this.overrunMax = new long[this.buckets];
+    }
+
+    void addPhase(long nanos, boolean cycleStart) {
+        int s = slot(idOf(nanos));
+        if (s < 0) return;
+        phases[s]++;
+        if (cycleStart) cycles[s]++;
+    }
+
+    void addOverrun(long nanos, long overrunNanos) {
+        int s = slot(idOf(nanos));
+        if (s < 0) return;
+        overrunSum[s] += overrunNanos;
+        overrunCount[s]++;
+        overrunMax[s] = Math.max(overrunMax[s], overrunNanos);
+    }
+
+    void addGreen(int approachMask, long from, long to) {
+        for (int rest = approachMask; rest != 0; rest &= rest - 1) {
+            spread(green, APPROACHES, Integer.numberOfTrailingZeros(rest), from, to);
+        }
+    }
+
+    void addPaused(long from, long to) {
+        spread(paused, 1, 0, from, to);
+    }
+
+    /**
+     * Sums the ring at {@code now}; the open phase and pause, still unrecorded, are added up to
+     * {@code now} when given.
+     */
+    WindowStats snapshot(long now, long startedNanos, int openGreenMask, long openGreenFrom,
+                         boolean pausing, long pausedFrom) {
+        long lastId = idOf(now);
+        long firstId = lastId - buckets + 1;
+        long windowStart = originNanos + firstId * bucketNanos;
+        long[] greenNanos = new long[APPROACHES];
+        long pausedNanos = 0;
+        long phaseCount = 0;
+        long cycleCount = 0;
+        long overrunTotal = 0;
+        long overruns = 0;
+        long overrunPeak = 0;
+        for (int s = 0; s < buckets; s++) {
+            if (ids[s] < firstId || ids[s] > lastId) continue;
+            for (int a = 0; a < APPROACHES; a++) {
+                greenNanos[a] += green[s * APPROACHES + a];
+            }
+            pausedNanos += paused[s];
+            phaseCount += phases[s];
+            cycleCount += cycles[s];
+            overrunTotal += overrunSum[s];
+            overruns += overrunCount[s];
+            overrunPeak = Math.max(overrunPeak, overrunMax[s]);
+        }
+        for (int rest = openGreenMask; rest != 0; rest &= rest - 1) {
+            greenNanos[Integer.numberOfTrailingZeros(rest)] += now - Math.max(openGreenFrom, windowStart);
+        }
+        if (pausing) pausedNanos += now - Math.max(pausedFrom, windowStart);
+
+        long observed = Math.max(now - Math.max(windowStart, startedNanos), 0);
+        WindowStats stats = new WindowStats();
+        stats.setWindowSeconds(windowNanos / 1_000_000_000L);
+        stats.setObservedSeconds(observed / 1e9);
+        stats.setPhases(phaseCount);
+        stats.setCycles(cycleCount);
+        stats.setCyclesPerHour(observed == 0 ? 0 : cycleCount * 3600e9 / observed);
+        Map<Directions, Double> share = new EnumMap<>(Directions.class);
+        for (Directions direction : DIRECTIONS) {
+            share.put(direction, observed == 0 ? 0 : (double) greenNanos[direction.ordinal()] / observed);
+        }
+        stats.setGreenShare(share);
+        stats.setMeanOverrunMillis(overruns == 0 ? 0 : overrunTotal / 1e6 / overruns);
+        stats.setMaxOverrunMillis(overrunPeak / 1e6);
+        stats.setPausedSeconds(pausedNanos / 1e9);
+        return stats;
+    }
+
+    /** Adds the part of {@code [from, to)} falling in each bucket still inside the ring. */
+    private void spread(long[] counters, int stride, int offset, long from, long to) {
+        if (to <= from) return;
+        long lastId = idOf(to - 1);
+        for (long id = Math.max(idOf(from), lastId - buckets + 1); id <= lastId; id++) {
+            int s = slot(id);
+            if (s < 0) continue;
+            long bucketStart = originNanos + id * bucketNanos;
+            counters[s * stride + offset] += Math.min(to, bucketStart + bucketNanos) - Math.max(from, bucketStart);
+        }
+    }
+
+    private long idOf(long nanos) {
+        return Math.floorDiv(nanos - originNanos, bucketNanos);
+    }
+
+    /** Ring slot of bucket {@code id}, cleared if it still holds an older round; -1 if too old. */
+    private int slot(long id) {
+        int s = (int) Math.floorMod(id, (long) buckets);
+        if (ids[s] == id) return s;
+        if (ids[s] > id) return -1;
+        ids[s] = id;
+        for (int a = 0; a < APPROACHES; a++) {
+            green[s * APPROACHES + a] = 0;
+        }
+        paused[s] = 0;
+        phases[s] = 0;
+        cycles[s] = 0;
+        overrunSum[s] = 0;
+        overrunCount[s] = 0;
+        overrunMax[s] = 0;
+        return s;
+    }
+}
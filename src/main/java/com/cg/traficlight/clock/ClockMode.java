@@ -0,0 +1,9 @@
+package com.cg.traficlight.clock;
+
+/** Which clock drives the phase cycle of {@code TrafficLightService}. */
+public enum ClockMode {
+    /** Wall-clock time and a real scheduler thread. */
+    SYSTEM,
+    /** A {@link VirtualTimeScheduler}: time only moves when it is advanced. */
+    VIRTUAL
+}
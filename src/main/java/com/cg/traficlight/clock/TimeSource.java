@@ -0,0 +1,45 @@
+package com.cg.traficlight.clock;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * Where the service reads the time: the monotonic clock phase deadlines are planned on, the
+ * local wall-clock time time-of-day plans go by, and the instant history records and events
+ * are stamped with.
+ */
+public interface TimeSource {
+
+    TimeSource SYSTEM = new TimeSource() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+
+        @Override
+        public LocalDateTime now() {
+            return LocalDateTime.now();
+        }
+
+        @Override
+        public ZoneId zone() {
+            return ZoneId.systemDefault();
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.now();
+        }
+    };
+
+    long nanoTime();
+
+    /** Wall-clock time in {@link #zone()}. */
+    LocalDateTime now();
+
+    ZoneId zone();
+
+    /** The current instant, which a change to or from daylight saving time does not move; serialized in UTC. */
+    Instant instant();
+}
@@ -0,0 +1,284 @@
+package com.cg.traficlight.clock;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Discrete-event scheduler on a virtual clock. Nothing runs by itself: {@link #advance} pops the
+ * due tasks in deadline order, moving the clock straight to each deadline before running the task
+ * on the calling thread, so hours of phase cycles take as long as the tasks themselves.
+ * <p>
+ * The clock starts at {@code start} and {@link #nanoTime()} at zero. Tasks with equal deadlines
+ * run in the order they were scheduled; a periodic task is scheduled again after each run, so it
+ * goes behind the tasks already waiting for its next deadline. No virtual time passes while a
+ * task runs, so fixed rate and fixed delay come to the same schedule. The queue is guarded by
+ * this object, but tasks run outside the monitor, so a task may take other locks and schedule
+ * more work.
+ */
+public final class VirtualTimeScheduler extends AbstractExecutorService implements ScheduledExecutorService, TimeSource {
+
+    private final PriorityQueue<VirtualTask<?>> queue = new PriorityQueue<>();
+    private final LocalDateTime start;
+
+    private volatile long nanos;
+    private long sequence;
+    private boolean shutdown;
+
+    public VirtualTimeScheduler(LocalDateTime start) {
+        this.start = start;
+    }
+
+    @Override
+    public long nanoTime() {
+        return nanos;
+    }
+
+    @Override
+    public LocalDateTime now() {
+        return start.plusNanos(nanos);
+    }
+
+    /** Virtual time runs in UTC, without daylight saving time. */
+    @Override
+    public ZoneId zone() {
+        return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Instant instant() {
+        return start.plusNanos(nanos).toInstant(ZoneOffset.UTC);
+    }
+
+    /**
+     * Runs every task due within {@code duration} from now, including tasks those tasks
+     * schedule, and leaves the clock at the end of the window.
+     *
+     * @return the number of tasks run
+     */
+    public long advance(Duration duration) {
+        return runUntil(nanos + duration.toNanos());
+    }
+
+    /** Runs every task due at or before {@code deadline} on the {@link #nanoTime()} clock. */
+    public long runUntil(long deadline) {
+        long ran = 0;
+        VirtualTask<?> task;
+        while ((task = pollDue(deadline)) != null) {
+            task.run();
+            ran++;
+        }
+        synchronized (this) {
+            if (deadline > nanos) nanos = deadline;
+        }
+        return ran;
+    }
+
+    /** Number of tasks waiting to run. */
+    public synchronized int pending() {
+        return queue.size();
+    }
+
+    private synchronized VirtualTask<?> pollDue(long deadline) {
+        VirtualTask<?> next = queue.peek();
+        if (next == null || next.deadline > deadline) return null;
+        queue.poll();
+        nanos = Math.max(nanos, next.deadline);
+        return next;
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        return enqueue(callable(command), delay, unit, 0);
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+        return enqueue(callable, delay, unit, 0);
+    }
+
+    /** Runs {@code command} every {@code period} from its first deadline until cancelled or it throws. */
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+        if (period <= 0) throw new IllegalArgumentException("period must be positive: " + period);
+        return enqueue(callable(command), initialDelay, unit, unit.toNanos(period));
+    }
+
+    /** Runs {@code command} {@code delay} after each run ends until cancelled or it throws. */
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+        if (delay <= 0) throw new IllegalArgumentException("delay must be positive: " + delay);
+        return enqueue(callable(command), initialDelay, unit, -unit.toNanos(delay));
+    }
+
+    /** Runs {@code command} the next time the clock is advanced, at the current virtual time. */
+    @Override
+    public void execute(Runnable command) {
+        schedule(command, 0, TimeUnit.NANOSECONDS);
+    }
+
+    private static Callable<Object> callable(Runnable command) {
+        return () -> {
+            command.run();
+            return null;
+        };
+    }
+
+    // period: 0 for a one-shot task, positive for a fixed rate, negative for a fixed delay
+    private synchronized <V> VirtualTask<V> enqueue(Callable<V> callable, long delay, TimeUnit unit, long period) {
+        if (shutdown) {
+            throw new RejectedExecutionException("scheduler is shut down");
+        }
+        VirtualTask<V> task = new VirtualTask<>(callable, nanos + Math.max(unit.toNanos(delay), 0), sequence++, period);
+        queue.add(task);
+        return task;
+    }
+
+    private synchronized void requeue(VirtualTask<?> task) {
+        if (shutdown || task.state != VirtualTask.PENDING) return;
+        task.deadline = task.period > 0 ? task.deadline + task.period : nanos - task.period;
+        task.order = sequence++;
+        queue.add(task);
+    }
+
+    private synchronized boolean cancel(VirtualTask<?> task) {
+        // a one-shot task once polled is as good as run; a periodic one is stopped from coming back
+        if (task.state != VirtualTask.PENDING || !queue.remove(task) && task.period == 0) return false;
+        task.state = VirtualTask.CANCELLED;
+        return true;
+    }
+
+    @Override
+    public synchronized void shutdown() {
+        shutdown = true;
+        queue.clear();
+    }
+
+    @Override
+    public synchronized List<Runnable> shutdownNow() {
+        List<Runnable> dropped = new ArrayList<>(queue);
+        shutdown();
+        return dropped;
+    }
+
+    @Override
+    public synchronized boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public synchronized boolean isTerminated() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) {
+        return isTerminated();
+    }
+
+    private final class VirtualTask<V> implements ScheduledFuture<V>, Runnable {
+
+        private static final int PENDING = 0;
+        private static final int DONE = 1;
+        private static final int FAILED = 2;
+        private static final int CANCELLED = 3;
+
+        private final Callable<V> callable;
+        private final long period;
+        // moved on by requeue, under the scheduler's monitor, while the task is out of the queue
+        private long deadline;
+        private long order;
+        private volatile int state = PENDING;
+        private V result;
+        private Throwable failure;
+
+        VirtualTask(Callable<V> callable, long deadline, long order, long period) {
+            this.callable = callable;
+            this.deadline = deadline;
+            this.order = order;
+            this.period = period;
+        }
+
+        @Override
+        public void run() {
+            if (state != PENDING) return;
+            try {
+                V value = callable.call();
+                if (period != 0) {
+                    requeue(this);
+                    return;
+                }
+                result = value;
+                state = DONE;
+            } catch (Throwable t) {
+                // like a real executor: the failure is kept in the future, not thrown at the caller
+                failure = t;
+                state = FAILED;
+            }
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(deadline - nanos, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            if (other instanceof VirtualTask<?> task) {
+                int byDeadline = Long.compare(deadline, task.deadline);
+                return byDeadline != 0 ? byDeadline : Long.compare(order, task.order);
+            }
+            return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return VirtualTimeScheduler.this.cancel(this);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return state == CANCELLED;
+        }
+
+        @Override
+        public boolean isDone() {
+            return state != PENDING;
+        }
+
+        /** Never blocks: virtual time only moves when someone advances it. */
+        @Override
+        public V get() throws ExecutionException {
+            return switch (state) {
+                case DONE -> result;
+                case FAILED -> throw new ExecutionException(failure);
+                case CANCELLED -> throw new CancellationException();
+                default -> throw new IllegalStateException("task is due at virtual time " + deadline
+                        + "; advance the clock first");
+            };
+        }
+
+        @Override
+        public V get(long timeout, TimeUnit unit) throws ExecutionException, TimeoutException {
+            if (state == PENDING) {
+                throw new TimeoutException("task is due at virtual time " + deadline);
+            }
+            return get();
+        }
+    }
+}
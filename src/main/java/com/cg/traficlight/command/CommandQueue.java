@@ -0,0 +1,233 @@
+package com.cg.traficlight.command;
+
+import com.cg.traficlight.model.CommandStatus;
+import com.cg.traficlight.model.SignalSequence;
+import com.cg.traficlight.plan.InvalidPlanException;
+import com.cg.traficlight.service.Movements;
+import com.cg.traficlight.service.TrafficLightService;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Coalesces sequence, pause and resume commands in front of {@link TrafficLightService}.
+ * <p>
+ * A command only updates the pending state: the last sequence wins, and pause and resume
+ * collapse into the last one asked for, so a pause followed by a resume leaves the controller
+ * running. Each command gets a version. A batch takes everything pending and applies it with at
+ * most one sequence change and one pause or resume, so a burst of commands costs the service
+ * lock and a reschedule once instead of once per command.
+ * <p>
+ * With {@code command.coalesce.window.millis=0} callers apply the batch themselves before
+ * returning, so a command is in effect when the request completes, as without the queue;
+ * callers that arrive while a batch is being applied are folded into the next one. With a
+ * window, the first command of a batch schedules it {@code window} later on a single flusher
+ * thread, and callers return at once with the version to wait for. A window of 0 still folds
+ * together the commands that arrive while a batch is being applied, but nothing else.
+ * <p>
+ * A sequence is checked when it is submitted, so a bad one never replaces a good one waiting in
+ * the batch. A batch the service still fails on is remembered by the versions it covered, and
+ * none of its commands counts as applied.
+ */
+@Component
+public class CommandQueue {
+
+    private static final Logger log = LoggerFactory.getLogger(CommandQueue.class);
+
+    // failed batches remembered for failure(version); older ones are forgotten
+    private static final int MAX_FAILURES = 64;
+
+    @Autowired
+    private TrafficLightService service;
+
+    @Value("${command.coalesce.window.millis:0}")
+    private long windowMillis;
+
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "command-flusher");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // held while a batch is applied, so batches reach the service one at a time and in order.
+    // Not a monitor: the holder may park on the service lock, which would pin a virtual thread
+    // to its carrier, and with every carrier pinned the service lock's next owner never runs
+    private final ReentrantLock applyLock = new ReentrantLock();
+
+    // pending batch, guarded by this
+    private SignalSequence pendingSequence;
+    private Boolean pendingPaused;
+    private long submitted;
+    private boolean flushScheduled;
+
+    private volatile long applied;
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    // failed batches by their last version; put before applied moves past it
+    private final ConcurrentSkipListMap<Long, Failure> failures = new ConcurrentSkipListMap<>();
+
+    private record Failure(long firstVersion, String message) {
+    }
+
+    public CommandQueue() {
+    }
+
+    public CommandQueue(TrafficLightService service, long windowMillis) {
+        this.service = service;
+        this.windowMillis = windowMillis;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flusher.shutdownNow();
+    }
+
+    /**
+     * Queues a new sequence, replacing any still pending; returns the command's version.
+     *
+     * @throws InvalidPlanException if the sequence is malformed; nothing is queued
+     */
+    public long submitSequence(SignalSequence sequence) {
+        Movements.check(sequence);
+        return submit(sequence, null);
+    }
+
+    public long submitPause() {
+        return submit(null, Boolean.TRUE);
+    }
+
+    public long submitResume() {
+        return submit(null, Boolean.FALSE);
+    }
+
+    /**
+     * True once the batch holding the command with this version has gone through. Every command
+     * before it has been taken by then too, though an earlier batch may have failed.
+     */
+    public boolean isApplied(long version) {
+        return applied >= version && failure(version) == null;
+    }
+
+    /**
+     * Waits up to {@code timeout} for the batch holding this command to be taken; returns
+     * whether it went through.
+     */
+    public boolean awaitApplied(long version, Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (applied < version) {
+            if (System.nanoTime() - deadline >= 0) return false;
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(200));
+        }
+        return isApplied(version);
+    }
+
+    /**
+     * Why the batch holding the command with this version failed; null if it went through, has
+     * not been applied yet, or failed more than {@value #MAX_FAILURES} failed batches ago.
+     */
+    public String failure(long version) {
+        Map.Entry<Long, Failure> batch = failures.ceilingEntry(version);
+        return batch != null && batch.getValue().firstVersion() <= version ? batch.getValue().message() : null;
+    }
+
+    public CommandStatus status() {
+        CommandStatus status = new CommandStatus();
+        synchronized (this) {
+            status.setSubmitted(submitted);
+        }
+        status.setApplied(applied);
+        status.setCoalesced(coalesced.sum());
+        status.setBatches(batches.sum());
+        status.setFailed(failed.sum());
+        Map.Entry<Long, Failure> last = failures.lastEntry();
+        status.setLastFailure(last == null ? null : last.getValue().message());
+        status.setWindowMillis(windowMillis);
+        return status;
+    }
+
+    private long submit(SignalSequence sequence, Boolean paused) {
+        long version;
+        boolean schedule = false;
+        synchronized (this) {
+            if (sequence != null) {
+                if (pendingSequence != null) coalesced.increment();
+                pendingSequence = sequence;
+            }
+            if (paused != null) {
+                if (pendingPaused != null) coalesced.increment();
+                pendingPaused = paused;
+            }
+            version = ++submitted;
+            if (windowMillis > 0 && !flushScheduled) {
+                flushScheduled = true;
+                schedule = true;
+            }
+        }
+        if (windowMillis <= 0) {
+            applyLock.lock();
+            try {
+                // another caller may have applied this command with its own batch meanwhile
+                if (applied < version) applyPending();
+            } finally {
+                applyLock.unlock();
+            }
+        } else if (schedule) {
+            flusher.schedule(this::flush, windowMillis, TimeUnit.MILLISECONDS);
+        }
+        return version;
+    }
+
+    private void flush() {
+        applyLock.lock();
+        try {
+            applyPending();
+        } finally {
+            applyLock.unlock();
+        }
+    }
+
+    /** Takes the pending batch and applies it; callers hold applyLock. */
+    private void applyPending() {
+        SignalSequence sequence;
+        Boolean paused;
+        long version;
+        synchronized (this) {
+            sequence = pendingSequence;
+            paused = pendingPaused;
+            version = submitted;
+            pendingSequence = null;
+            pendingPaused = null;
+            flushScheduled = false;
+        }
+        if (version == applied) return;
+        long first = applied + 1;
+        try {
+            // pausing first keeps a new sequence from being started only to be stopped again
+            if (Boolean.TRUE.equals(paused)) service.pause();
+            if (sequence != null) service.setSequence(sequence);
+            if (Boolean.FALSE.equals(paused)) service.resume();
+        } catch (RuntimeException e) {
+            log.error("could not apply commands {} to {}", first, version, e);
+            failed.increment();
+            failures.put(version, new Failure(first, e.getMessage() == null ? e.toString() : e.getMessage()));
+            if (failures.size() > MAX_FAILURES) failures.pollFirstEntry();
+        } finally {
+            batches.increment();
+            applied = version;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.cg.traficlight.controller;
+
+import com.cg.traficlight.corridor.GreenWave;
+import com.cg.traficlight.model.Corridor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("api/v1")
+public class CorridorController {
+
+    /**
+     * Computes green-wave offsets for the corridor and the band they achieve. Each controller
+     * is then given its offset through {@code POST /api/v1/coordination}.
+     */
+    @PostMapping("/corridor")
+    public ResponseEntity<?> plan(@RequestBody Corridor corridor) {
+        try {
+            return ResponseEntity.ok(GreenWave.plan(corridor));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.cg.traficlight.controller;
+
+import com.cg.traficlight.detector.AdaptiveTiming;
+import com.cg.traficlight.detector.DetectorCounts;
+import com.cg.traficlight.model.DetectorBatch;
+import com.cg.traficlight.model.DetectorStatus;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("api/v1/detectors")
+public class DetectorController {
+
+    @Autowired
+    private DetectorCounts detectors;
+
+    @Autowired
+    private AdaptiveTiming adaptive;
+
+    /**
+     * Adds a batch of detector events to the per-approach counts. Never touches the service
+     * lock; answers 202 with the number of events accepted.
+     */
+    @PostMapping("/events")
+    public ResponseEntity<Integer> ingest(@RequestBody DetectorBatch batch) {
+        return ResponseEntity.accepted().body(detectors.record(batch));
+    }
+
+    @GetMapping
+    public DetectorStatus status() {
+        DetectorStatus status = new DetectorStatus();
+        status.setAdaptive(adaptive.isEnabled());
+        status.setAccepted(detectors.accepted());
+        status.setRejected(detectors.rejected());
+        status.setWaiting(detectors.waiting());
+        status.setLastGreenMillis(adaptive.lastGreenMillis());
+        return status;
+    }
+}
@@ -0,0 +1,124 @@
+package com.cg.traficlight.controller;
+
+import com.cg.traficlight.engine.FleetStatus;
+import com.cg.traficlight.engine.IntersectionEngine;
+import com.cg.traficlight.model.SignalSequence;
+import com.cg.traficlight.model.TraficLightHistory;
+import com.cg.traficlight.plan.InvalidPlanException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.List;
+
+/**
+ * The {@code /api/v1} endpoints for one intersection of the multi-intersection engine, and
+ * the status of all of them in one response.
+ */
+@RestController
+@RequestMapping("api/v1/intersections")
+public class IntersectionController {
+
+    // roster version of the ids, status and codes in a response
+    static final String ROSTER_VERSION_HEADER = "X-Roster-Version";
+
+    @Autowired
+    private IntersectionEngine engine;
+
+    /** Ids of every intersection, in the order the bulk status lists them. */
+    @GetMapping
+    public ResponseEntity<List<String>> list() {
+        FleetStatus fleet = engine.getFleetStatus();
+        return ResponseEntity.ok()
+                .header(ROSTER_VERSION_HEADER, Long.toString(fleet.version()))
+                .body(fleet.ids());
+    }
+
+    /** Status of every intersection as one JSON object keyed by id, written straight to the response. */
+    @GetMapping("/status")
+    public ResponseEntity<StreamingResponseBody> fleetStatus() {
+        FleetStatus fleet = engine.getFleetStatus();
+        return ResponseEntity.ok()
+                .header(ROSTER_VERSION_HEADER, Long.toString(fleet.version()))
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(fleet::writeJson);
+    }
+
+    /**
+     * Status of every intersection as one {@link FleetStatus#code} byte each, in the order of
+     * {@link #list()} at the same {@value #ROSTER_VERSION_HEADER}.
+     */
+    @GetMapping(path = "/status", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<StreamingResponseBody> fleetStatusCodes() {
+        FleetStatus fleet = engine.getFleetStatus();
+        return ResponseEntity.ok()
+                .header(ROSTER_VERSION_HEADER, Long.toString(fleet.version()))
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .contentLength(fleet.size())
+                .body(fleet::writeCodes);
+    }
+
+    @PostMapping("/{id}")
+    public ResponseEntity<String> register(@PathVariable String id,
+                                           @RequestBody(required = false) SignalSequence req) {
+        boolean registered;
+        try {
+            registered = engine.register(id, req == null ? new SignalSequence() : req);
+        } catch (InvalidPlanException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+        if (!registered) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("Intersection already exists");
+        }
+        return ResponseEntity.ok("Intersection registered");
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<String> remove(@PathVariable String id) {
+        if (!engine.remove(id)) return ResponseEntity.notFound().build();
+        return ResponseEntity.ok("Intersection removed");
+    }
+
+    @GetMapping("/{id}/status")
+    public ResponseEntity<byte[]> status(@PathVariable String id) {
+        byte[] json = engine.getStatusJson(id);
+        if (json == null) return ResponseEntity.notFound().build();
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(json);
+    }
+
+    @PostMapping("/{id}/sequence")
+    public ResponseEntity<String> setSequence(@PathVariable String id, @RequestBody SignalSequence req) {
+        boolean updated;
+        try {
+            updated = engine.setSequence(id, req);
+        } catch (InvalidPlanException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+        if (!updated) return ResponseEntity.notFound().build();
+        return ResponseEntity.ok("Sequence updated");
+    }
+
+    @GetMapping("/{id}/pause")
+    public ResponseEntity<String> pause(@PathVariable String id) {
+        if (!engine.pause(id)) return ResponseEntity.notFound().build();
+        return ResponseEntity.ok("Paused");
+    }
+
+    @GetMapping("/{id}/resume")
+    public ResponseEntity<String> resume(@PathVariable String id) {
+        if (!engine.resume(id)) return ResponseEntity.notFound().build();
+        return ResponseEntity.ok("Resumed");
+    }
+
+    @GetMapping("/{id}/history")
+    public ResponseEntity<List<TraficLightHistory>> getHistory(@PathVariable String id) {
+        List<TraficLightHistory> history = engine.getTimingHistory(id);
+        if (history == null) return ResponseEntity.notFound().build();
+        return ResponseEntity.ok(history);
+    }
+}
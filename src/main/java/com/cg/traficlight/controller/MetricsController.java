@@ -0,0 +1,31 @@
+package com.cg.traficlight.controller;
+
+import com.cg.traficlight.history.HistoryStore;
+import com.cg.traficlight.metrics.TrafficMetrics;
+import com.cg.traficlight.model.MetricsReport;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("api/v1")
+public class MetricsController {
+
+    @Autowired
+    private TrafficMetrics metrics;
+
+    @Autowired(required = false)
+    private HistoryStore history;
+
+    /**
+     * Latency histograms, the conflict count and lost history records; histograms stay empty
+     * unless metrics.enabled=true.
+     */
+    @GetMapping("/metrics")
+    public MetricsReport metrics() {
+        MetricsReport report = metrics.report();
+        if (history != null) report.setHistoryDropped(history.droppedRecords());
+        return report;
+    }
+}
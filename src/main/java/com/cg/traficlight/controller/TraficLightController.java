@@ -1,47 +1,467 @@
 package com.cg.traficlight.controller;
 
+import com.cg.traficlight.clock.ClockMode;
+import com.cg.traficlight.command.CommandQueue;
+import com.cg.traficlight.metrics.TrafficMetrics;
+import com.cg.traficlight.model.AnalyticsReport;
+import com.cg.traficlight.model.Colors;
+import com.cg.traficlight.model.CommandStatus;
+import com.cg.traficlight.model.Coordination;
+import com.cg.traficlight.model.CoordinationStatus;
+import com.cg.traficlight.model.Directions;
+import com.cg.traficlight.model.HistoryPage;
+import com.cg.traficlight.model.HistoryQuery;
+import com.cg.traficlight.model.PhaseEvent;
+import com.cg.traficlight.model.PhasePlan;
+import com.cg.traficlight.model.PlanStatus;
+import com.cg.traficlight.model.PreemptionStatus;
+import com.cg.traficlight.model.SchedulerTiming;
+import com.cg.traficlight.model.ReplicationStatus;
+import com.cg.traficlight.model.WatchdogStatus;
 import com.cg.traficlight.model.SignalSequence;
-import com.cg.traficlight.model.Response;
+import com.cg.traficlight.model.SimulationResult;
+import com.cg.traficlight.model.TimePlanStatus;
 import com.cg.traficlight.model.TraficLightHistory;
+import com.cg.traficlight.plan.InvalidPlanException;
+import com.cg.traficlight.service.PhaseEventListener;
+import com.cg.traficlight.service.Subscription;
 import com.cg.traficlight.service.TrafficLightService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.json.JsonMapper;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.TemporalAccessor;
 import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 @RequestMapping("api/v1")
 public class TraficLightController {
 
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    static final String COMMAND_VERSION_HEADER = "X-Command-Version";
+    private static final long MAX_WAIT_SECONDS = 60;
+
     @Autowired
     private TrafficLightService service;
 
+    // state versions count from zero in every process: this tells a tag from an earlier run or the other node apart
+    private final String instance = Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36);
+
+    @Autowired(required = false)
+    private TrafficMetrics metrics = new TrafficMetrics();
+
+    // the NDJSON history lines, as /history writes its records
+    @Autowired(required = false)
+    private ObjectMapper jsonMapper = JsonMapper.shared();
+
+    // sequence, pause and resume go through here; without a queue bean each applies on the calling thread
+    @Autowired(required = false)
+    private volatile CommandQueue commands;
+
+    /**
+     * The current status with an ETag of the state version; an If-None-Match that is still
+     * current gets 304 without the status being looked at.
+     */
     @GetMapping("/status")
-    public ResponseEntity<Response> status() {
-        return ResponseEntity.ok(service.getStatus());
+    public ResponseEntity<byte[]> status(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        long start = metrics.startTimer();
+        try {
+            long version = service.getStateVersion();
+            if (matches(ifNoneMatch, version)) {
+                return notModified(version);
+            }
+            return statusResponse(version);
+        } finally {
+            metrics.recordStatusRequest(start);
+        }
+    }
+
+    /**
+     * Long poll: while the If-None-Match is still current the answer is held until the state
+     * changes, or for {@code wait} seconds (at most 60) after which it is 304. The request
+     * thread is released in the meantime.
+     */
+    @GetMapping(path = "/status", params = "wait")
+    public DeferredResult<ResponseEntity<byte[]>> awaitStatus(
+            @RequestParam long wait,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        long version = service.getStateVersion();
+        long seconds = Math.max(1, Math.min(wait, MAX_WAIT_SECONDS));
+        DeferredResult<ResponseEntity<byte[]>> result =
+                new DeferredResult<>(TimeUnit.SECONDS.toMillis(seconds), notModified(version));
+        if (!matches(ifNoneMatch, version)) {
+            result.setResult(statusResponse(version));
+            return result;
+        }
+        service.awaitStateChange(version).thenAccept(changed -> result.setResult(statusResponse(changed)));
+        return result;
     }
 
+    /**
+     * Queues the sequence; a later one sent before it is applied replaces it. 200 once it is in
+     * effect, 202 while it waits for the coalescing window. Either way the
+     * {@value #COMMAND_VERSION_HEADER} header carries the version to look for in
+     * {@code GET /api/v1/commands}.
+     */
     @PostMapping("/sequence")
     public ResponseEntity<String> setSequence(@RequestBody SignalSequence req) {
-        service.setSequence(req);
-        return ResponseEntity.ok("Sequence updated");
+        if (service.isStandby()) return standbyConflict();
+        long version;
+        try {
+            version = commands().submitSequence(req);
+        } catch (InvalidPlanException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+        return commandResponse(version, "Sequence updated", "Sequence queued");
+    }
+
+    /** Replaces the running cycle with a data-driven plan; a plan with conflicts is rejected with 400. */
+    @PostMapping("/plan")
+    public ResponseEntity<String> setPlan(@RequestBody PhasePlan plan) {
+        if (service.isStandby()) return standbyConflict();
+        try {
+            service.setPlan(plan);
+        } catch (InvalidPlanException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+        return ResponseEntity.ok("Plan updated");
+    }
+
+    @GetMapping("/plan")
+    public PlanStatus getPlan() {
+        return service.getPlanStatus();
+    }
+
+    /**
+     * Puts this controller on a corridor's shared cycle with the given offset (see
+     * {@code POST /api/v1/corridor}); it eases onto it over a few cycles unless immediate.
+     */
+    @PostMapping("/coordination")
+    public ResponseEntity<String> coordinate(@RequestBody Coordination req) {
+        if (req.getEpoch() == null) {
+            return ResponseEntity.badRequest().body("epoch is required");
+        }
+        if (service.isStandby()) return standbyConflict();
+        service.coordinate(req.getEpoch(), req.getOffsetMillis(), req.isImmediate());
+        return ResponseEntity.ok("Coordination updated");
+    }
+
+    @DeleteMapping("/coordination")
+    public ResponseEntity<String> stopCoordination() {
+        if (service.isStandby()) return standbyConflict();
+        service.stopCoordination();
+        return ResponseEntity.ok("Coordination stopped");
+    }
+
+    @GetMapping("/coordination")
+    public CoordinationStatus getCoordination() {
+        return service.getCoordinationStatus();
     }
 
     @GetMapping("/pause")
     public ResponseEntity<String> pause() {
-        service.pause();
-        return ResponseEntity.ok("Paused");
+        if (service.isStandby()) return standbyConflict();
+        return commandResponse(commands().submitPause(), "Paused", "Pause queued");
     }
 
     @GetMapping("/resume")
     public ResponseEntity<String> resume() {
-        service.resume();
-        return ResponseEntity.ok("Resumed");
+        if (service.isStandby()) return standbyConflict();
+        return commandResponse(commands().submitResume(), "Resumed", "Resume queued");
+    }
+
+    @GetMapping("/commands")
+    public CommandStatus getCommands() {
+        return commands().status();
     }
 
+    /**
+     * Without parameters: the newest {@code max.record.size} entries, as before. With any of
+     * them: one page of matching entries, newest first, plus the cursor for the next page.
+     */
     @GetMapping("/history")
-    public List<TraficLightHistory> getHistory() {
-        return service.getTimingHistory();
+    public ResponseEntity<?> getHistory(
+            @RequestParam(required = false) String from,
+            @RequestParam(required = false) String to,
+            @RequestParam(required = false) Directions direction,
+            @RequestParam(required = false) Colors color,
+            @RequestParam(required = false) Long cursor,
+            @RequestParam(required = false) Integer limit,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        long start = metrics.startTimer();
+        try {
+            if (limit != null && limit <= 0) {
+                return ResponseEntity.badRequest().body("limit must be positive");
+            }
+            // history only changes with a transition, so the state version tags it too
+            long version = service.getStateVersion();
+            if (matches(ifNoneMatch, version)) {
+                return notModified(version);
+            }
+            if (from == null && to == null && direction == null && color == null && cursor == null && limit == null) {
+                return ResponseEntity.ok().eTag(etag(version)).body(service.getTimingHistory());
+            }
+            HistoryQuery query = query(from, to, direction, color, cursor,
+                    limit == null ? DEFAULT_PAGE_SIZE : Math.min(limit, MAX_PAGE_SIZE));
+            return ResponseEntity.ok().eTag(etag(version)).body(service.queryHistory(query));
+        } finally {
+            metrics.recordHistoryRequest(start);
+        }
+    }
+
+    /**
+     * Every matching entry, or the newest {@code limit} of them, newest first, one JSON object
+     * per line. Pages are fetched and written one at a time, so large ranges never sit in memory
+     * as a whole.
+     */
+    @GetMapping(path = "/history", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamHistory(
+            @RequestParam(required = false) String from,
+            @RequestParam(required = false) String to,
+            @RequestParam(required = false) Directions direction,
+            @RequestParam(required = false) Colors color,
+            @RequestParam(required = false) Long cursor,
+            @RequestParam(required = false) Integer limit) {
+        if (limit != null && limit <= 0) {
+            // the streaming body is the only return type that starts async, so refuse by status
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be positive");
+        }
+        long total = limit == null ? Long.MAX_VALUE : limit;
+        HistoryQuery query = query(from, to, direction, color, cursor, (int) Math.min(total, MAX_PAGE_SIZE));
+        StreamingResponseBody body = out -> {
+            long remaining = total;
+            HistoryPage page;
+            do {
+                page = service.queryHistory(query);
+                for (TraficLightHistory record : page.getRecords()) {
+                    out.write(jsonMapper.writeValueAsBytes(record));
+                    out.write('\n');
+                }
+                out.flush();
+                remaining -= page.getRecords().size();
+                query.setCursor(page.getNextCursor());
+                query.setLimit((int) Math.min(remaining, MAX_PAGE_SIZE));
+            } while (page.getNextCursor() != null && remaining > 0);
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    @GetMapping(path = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream() {
+        SseEmitter emitter = new SseEmitter(0L);
+        Subscription subscription = service.subscribe(new PhaseEventListener() {
+            @Override
+            public void onEvent(PhaseEvent event) throws Exception {
+                emitter.send(SseEmitter.event()
+                        .id(Long.toString(event.getSequence()))
+                        .name(event.getType().name())
+                        .data(event.toJson()));
+            }
+
+            @Override
+            public void onClose() {
+                emitter.complete();
+            }
+        });
+        emitter.onCompletion(subscription::cancel);
+        emitter.onTimeout(subscription::cancel);
+        emitter.onError(e -> subscription.cancel());
+        return emitter;
+    }
+
+    /** Green share, cycles per hour, overrun and pause time over the last 1 min, 15 min, 1 h and 24 h. */
+    @GetMapping("/analytics")
+    public AnalyticsReport getAnalytics() {
+        return service.getAnalytics();
+    }
+
+    @GetMapping("/timing")
+    public SchedulerTiming getTiming() {
+        return service.getSchedulerTiming();
+    }
+
+    /** Failovers to a fresh scheduler thread, how late each miss was seen, and whether all red is up. */
+    @GetMapping("/watchdog")
+    public WatchdogStatus getWatchdog() {
+        return service.getWatchdogStatus();
+    }
+
+    /** The time-of-day window running, the one due by the clock, and when the next one starts. */
+    @GetMapping("/timeplan")
+    public TimePlanStatus getTimePlan() {
+        return service.getTimePlanStatus();
+    }
+
+    /**
+     * Emergency-vehicle preemption: {@code direction} gets green for {@code hold}, an ISO-8601
+     * duration ({@code preempt.hold.millis} when left out), once the other approaches have
+     * cleared. Taken straight to the service rather than through the command queue. The body is
+     * the clearance time in milliseconds; 409 while paused.
+     */
+    @PostMapping("/preempt")
+    public ResponseEntity<String> preempt(@RequestParam Directions direction,
+                                          @RequestParam(required = false) String hold) {
+        Duration holdFor = null;
+        if (hold != null) {
+            try {
+                holdFor = Duration.parse(hold);
+            } catch (DateTimeParseException e) {
+                return ResponseEntity.badRequest().body("hold must be ISO-8601, e.g. PT30S");
+            }
+        }
+        if (service.isStandby()) return standbyConflict();
+        try {
+            return ResponseEntity.ok(Long.toString(service.preempt(direction, holdFor)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        }
+    }
+
+    /** Ends a preemption early; 404 if there is none. */
+    @DeleteMapping("/preempt")
+    public ResponseEntity<String> cancelPreemption() {
+        if (service.isStandby()) return standbyConflict();
+        return service.cancelPreemption()
+                ? ResponseEntity.ok("Preemption ending")
+                : ResponseEntity.status(HttpStatus.NOT_FOUND).body("No preemption");
+    }
+
+    /** The preemption in progress, if any, and how long each took to reach green beyond its clearance. */
+    @GetMapping("/preempt")
+    public PreemptionStatus getPreemption() {
+        return service.getPreemptionStatus();
+    }
+
+    /** Role in hot-standby replication, the standbys or the primary connection, and the last event replicated. */
+    @GetMapping("/replication")
+    public ReplicationStatus getReplication() {
+        return service.getReplicationStatus();
+    }
+
+    /**
+     * Runs the cycle forward by an ISO-8601 duration such as {@code PT24H}; only available with
+     * {@code scheduler.clock=VIRTUAL}.
+     */
+    @PostMapping("/simulation/advance")
+    public ResponseEntity<?> advance(@RequestParam String duration) {
+        Duration step;
+        try {
+            step = Duration.parse(duration);
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.badRequest().body("duration must be ISO-8601, e.g. PT24H");
+        }
+        if (step.isNegative()) {
+            return ResponseEntity.badRequest().body("duration must not be negative");
+        }
+        if (service.getClockMode() != ClockMode.VIRTUAL) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("Virtual clock is not enabled");
+        }
+        long start = System.nanoTime();
+        long transitions = service.advanceVirtualTime(step);
+        SimulationResult result = new SimulationResult();
+        result.setTransitions(transitions);
+        result.setClockTime(service.getClockTime());
+        result.setElapsedMillis((System.nanoTime() - start) / 1_000_000);
+        return ResponseEntity.ok(result);
+    }
+
+    private ResponseEntity<byte[]> statusResponse(long version) {
+        return ResponseEntity.ok()
+                .eTag(etag(version))
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(service.getStatusJson());
+    }
+
+    private <T> ResponseEntity<T> notModified(long version) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag(version)).build();
+    }
+
+    /** {@code "<instance>-<version>"}, so a tag from before a restart or failover never matches. */
+    String etag(long version) {
+        return "\"" + instance + "-" + version + "\"";
+    }
+
+    /** True if the If-None-Match header lists the tag of {@code version} (weak or strong) or is "*". */
+    private boolean matches(String ifNoneMatch, long version) {
+        if (ifNoneMatch == null) return false;
+        String etag = etag(version);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) tag = tag.substring(2);
+            if (tag.equals(etag) || tag.equals("*")) return true;
+        }
+        return false;
+    }
+
+    private CommandQueue commands() {
+        CommandQueue queue = commands;
+        if (queue == null) {
+            queue = new CommandQueue(service, 0);
+            commands = queue;
+        }
+        return queue;
+    }
+
+    /** A standby mirrors its primary and only takes commands once it has taken over. */
+    private static ResponseEntity<String> standbyConflict() {
+        return ResponseEntity.status(HttpStatus.CONFLICT).body("Standby: send commands to the primary");
+    }
+
+    private ResponseEntity<String> commandResponse(long version, String applied, String queued) {
+        String failure = commands().failure(version);
+        if (failure != null) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .header(COMMAND_VERSION_HEADER, Long.toString(version))
+                    .body("Command failed: " + failure);
+        }
+        boolean done = commands().isApplied(version);
+        return ResponseEntity.status(done ? HttpStatus.OK : HttpStatus.ACCEPTED)
+                .header(COMMAND_VERSION_HEADER, Long.toString(version))
+                .body(done ? applied : queued);
+    }
+
+    private static HistoryQuery query(String from, String to, Directions direction, Colors color,
+                                      Long cursor, int limit) {
+        HistoryQuery query = new HistoryQuery();
+        query.setFrom(instant("from", from));
+        query.setTo(instant("to", to));
+        query.setDirection(direction);
+        query.setColor(color);
+        query.setCursor(cursor);
+        query.setLimit(limit);
+        return query;
+    }
+
+    /** An ISO date-time with an offset, or one without, taken as UTC like the history timestamps. */
+    private static Instant instant(String name, String value) {
+        if (value == null) return null;
+        try {
+            TemporalAccessor parsed = DateTimeFormatter.ISO_DATE_TIME.parseBest(value, Instant::from, LocalDateTime::from);
+            return parsed instanceof LocalDateTime local ? local.toInstant(ZoneOffset.UTC) : (Instant) parsed;
+        } catch (DateTimeParseException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, name + " must be an ISO date-time: " + value);
+        }
     }
 }
@@ -0,0 +1,75 @@
+package com.cg.traficlight.corridor;
+
+import com.cg.traficlight.clock.TimeSource;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Where a coordinated controller's cycle should be: every cycle starts at
+ * {@code epoch + offset + k * cycle}, so controllers sharing an epoch keep a fixed offset from
+ * each other whatever their cycle length.
+ * <p>
+ * The epoch is pinned to the service's monotonic clock once, when the alignment is created, so
+ * later wall-clock adjustments do not move it. A cycle that starts off target is stretched or
+ * squeezed by at most {@code maxAdjustPercent} of its length, which spreads a large shift over a
+ * few cycles instead of cutting a phase short.
+ */
+public final class CycleAlignment {
+
+    private final LocalDateTime epoch;
+    private final long offsetMillis;
+    private final int maxAdjustPercent;
+    private final long anchorNanos;
+
+    private CycleAlignment(LocalDateTime epoch, long offsetMillis, int maxAdjustPercent, long anchorNanos) {
+        this.epoch = epoch;
+        this.offsetMillis = offsetMillis;
+        this.maxAdjustPercent = maxAdjustPercent;
+        this.anchorNanos = anchorNanos;
+    }
+
+    /**
+     * @param maxAdjustPercent largest change to one cycle's length, between 1 and 100
+     */
+    public static CycleAlignment of(TimeSource clock, LocalDateTime epoch, long offsetMillis, int maxAdjustPercent) {
+        if (maxAdjustPercent < 1 || maxAdjustPercent > 100) {
+            throw new IllegalArgumentException("max adjustment must be 1..100 percent: " + maxAdjustPercent);
+        }
+        long sinceEpoch = Duration.between(epoch, clock.now()).toNanos();
+        long anchor = clock.nanoTime() - sinceEpoch + TimeUnit.MILLISECONDS.toNanos(offsetMillis);
+        return new CycleAlignment(epoch, offsetMillis, maxAdjustPercent, anchor);
+    }
+
+    public LocalDateTime epoch() {
+        return epoch;
+    }
+
+    public long offsetMillis() {
+        return offsetMillis;
+    }
+
+    /** How far into its cycle the controller should be at {@code nanos}, in {@code [0, cycle)}. */
+    public long positionNanos(long nanos, long cycleNanos) {
+        return Math.floorMod(nanos - anchorNanos, cycleNanos);
+    }
+
+    /**
+     * Signed distance of a cycle starting at {@code cycleStartNanos} from its target start:
+     * positive when late, negative when early, within half a cycle either way.
+     */
+    public long errorNanos(long cycleStartNanos, long cycleNanos) {
+        long position = positionNanos(cycleStartNanos, cycleNanos);
+        return position >= (cycleNanos + 1) / 2 ? position - cycleNanos : position;
+    }
+
+    /**
+     * Change to the length of the cycle starting at {@code cycleStartNanos} that moves it
+     * towards its target: the error with its sign flipped, limited to the allowed adjustment.
+     */
+    public long correctionNanos(long cycleStartNanos, long cycleNanos) {
+        long limit = cycleNanos / 100 * maxAdjustPercent;
+        return Math.clamp(-errorNanos(cycleStartNanos, cycleNanos), -limit, limit);
+    }
+}
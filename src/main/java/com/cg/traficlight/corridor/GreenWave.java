@@ -0,0 +1,115 @@
+package com.cg.traficlight.corridor;
+
+import com.cg.traficlight.model.Corridor;
+import com.cg.traficlight.model.CorridorIntersection;
+import com.cg.traficlight.plan.CompiledPlan;
+import com.cg.traficlight.service.Movements;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Offsets that give a platoon consecutive greens along an arterial.
+ * <p>
+ * Intersections are listed in the direction of travel with the distance from the previous one.
+ * A vehicle leaving the first intersection at the start of its coordinated green reaches
+ * intersection {@code i} after {@code x_i / v}; starting that intersection's coordinated green
+ * then, modulo the common cycle, keeps it inside the green all the way.
+ */
+public final class GreenWave {
+
+    private GreenWave() {
+    }
+
+    /**
+     * Fills in the offset of every intersection of {@code corridor}, the cycle length and the
+     * resulting green band. The coordinated phase is the first of the cycle, the north-south green.
+     *
+     * @throws IllegalArgumentException if the corridor is empty or has no sequence, the speed is not positive, a
+     *                                  link has a negative length or the cycle has no length
+     */
+    public static Corridor plan(Corridor corridor) {
+        List<CorridorIntersection> intersections = corridor.getIntersections();
+        if (intersections == null || intersections.isEmpty()) {
+            throw new IllegalArgumentException("corridor has no intersections");
+        }
+        if (corridor.getSequence() == null) throw new IllegalArgumentException("corridor has no signal sequence");
+        long cycle = CompiledPlan.of(Movements.of(corridor.getSequence())).cycleMillis();
+        if (cycle <= 0) throw new IllegalArgumentException("signal sequence has no cycle length");
+        double[] distances = new double[intersections.size()];
+        for (int i = 0; i < distances.length; i++) {
+            distances[i] = intersections.get(i).getDistanceMeters();
+        }
+        long[] travel = travelMillis(distances, corridor.getSpeedKmh() / 3.6);
+        long[] offsets = offsetsMillis(travel, cycle);
+        for (int i = 0; i < offsets.length; i++) {
+            intersections.get(i).setOffsetMillis(offsets[i]);
+        }
+        long green = TimeUnit.SECONDS.toMillis(Math.max(corridor.getSequence().getTimeGreenNS(), 0));
+        corridor.setCycleMillis(cycle);
+        corridor.setBandMillis(bandMillis(offsets, travel, green, cycle));
+        return corridor;
+    }
+
+    /** Travel time at {@code speedMetersPerSecond} from the first intersection to each one. */
+    public static long[] travelMillis(double[] distancesMeters, double speedMetersPerSecond) {
+        if (!(speedMetersPerSecond > 0)) {
+            throw new IllegalArgumentException("design speed must be positive: " + speedMetersPerSecond);
+        }
+        long[] travel = new long[distancesMeters.length];
+        double along = 0;
+        for (int i = 1; i < distancesMeters.length; i++) {
+            if (!(distancesMeters[i] >= 0)) {
+                throw new IllegalArgumentException("link " + i + " has a negative length: " + distancesMeters[i]);
+            }
+            along += distancesMeters[i];
+            travel[i] = Math.round(along / speedMetersPerSecond * 1000);
+        }
+        return travel;
+    }
+
+    /** Start of each intersection's cycle relative to the shared epoch, in {@code [0, cycle)}. */
+    public static long[] offsetsMillis(long[] travelMillis, long cycleMillis) {
+        long[] offsets = new long[travelMillis.length];
+        for (int i = 0; i < travelMillis.length; i++) {
+            offsets[i] = Math.floorMod(travelMillis[i], cycleMillis);
+        }
+        return offsets;
+    }
+
+    /**
+     * Green band: the time per cycle a vehicle can leave the first intersection and, at design
+     * speed, meet the coordinated green at every other one. The coordinated green is the first
+     * {@code greenMillis} of each intersection's cycle.
+     * <p>
+     * Each intersection admits departures in one circular window of the cycle; membership can
+     * only change at a window edge, so testing the start of every segment between edges gives
+     * the exact measure.
+     */
+    public static long bandMillis(long[] offsetsMillis, long[] travelMillis, long greenMillis, long cycleMillis) {
+        if (greenMillis >= cycleMillis) return cycleMillis;
+        int n = offsetsMillis.length;
+        long[] opens = new long[n];
+        long[] edges = new long[2 * n + 1];
+        for (int i = 0; i < n; i++) {
+            opens[i] = Math.floorMod(offsetsMillis[i] - travelMillis[i], cycleMillis);
+            edges[2 * i] = opens[i];
+            edges[2 * i + 1] = Math.floorMod(opens[i] + greenMillis, cycleMillis);
+        }
+        edges[2 * n] = 0;
+        Arrays.sort(edges);
+        long band = 0;
+        for (int k = 0; k < edges.length; k++) {
+            long from = edges[k];
+            long to = k + 1 < edges.length ? edges[k + 1] : cycleMillis;
+            if (to == from) continue;
+            boolean through = true;
+            for (int i = 0; i < n && through; i++) {
+                through = Math.floorMod(from - opens[i], cycleMillis) < greenMillis;
+            }
+            if (through) band += to - from;
+        }
+        return band;
+    }
+}
@@ -0,0 +1,88 @@
+package com.cg.traficlight.detector;
+
+import com.cg.traficlight.model.Directions;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Sizes each green from the queue that built up on its approach.
+ * <p>
+ * At the start of a green the approach's detector count is drained (each cell is swapped to
+ * zero, so no concurrent event is lost) and the green becomes {@code vehicles * headway},
+ * clamped to {@code [min, max]}. Off unless {@code adaptive.enabled=true}, in which case the
+ * planned duration is kept; counts are drained either way so enabling it later does not act on
+ * a stale backlog.
+ */
+@Component
+public class AdaptiveTiming {
+
+    private static final Directions[] DIRECTIONS = Directions.values();
+
+    @Value("${adaptive.enabled:false}")
+    private boolean enabled;
+
+    @Value("${adaptive.green.min.seconds:10}")
+    private long minGreenSeconds = 10;
+
+    @Value("${adaptive.green.max.seconds:60}")
+    private long maxGreenSeconds = 60;
+
+    /** Time one queued vehicle needs to clear the stop line. */
+    @Value("${adaptive.headway.millis:2000}")
+    private long headwayMillis = 2000;
+
+    @Autowired(required = false)
+    private DetectorCounts detectors = new DetectorCounts();
+
+    private final AtomicLongArray lastGreenMillis = new AtomicLongArray(DIRECTIONS.length);
+
+    public AdaptiveTiming() {
+    }
+
+    public AdaptiveTiming(DetectorCounts detectors, long minGreenSeconds, long maxGreenSeconds, long headwayMillis) {
+        this.detectors = detectors;
+        this.enabled = true;
+        this.minGreenSeconds = minGreenSeconds;
+        this.maxGreenSeconds = maxGreenSeconds;
+        this.headwayMillis = headwayMillis;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public DetectorCounts detectors() {
+        return detectors;
+    }
+
+    /**
+     * Duration of the green about to start on {@code direction}. Phases the plan skips (zero or
+     * negative duration) are left alone.
+     */
+    public long greenMillis(Directions direction, long plannedMillis) {
+        long vehicles = detectors.drain(direction);
+        if (!enabled || plannedMillis <= 0) return plannedMillis;
+        long min = TimeUnit.SECONDS.toMillis(minGreenSeconds);
+        long max = Math.max(min, TimeUnit.SECONDS.toMillis(maxGreenSeconds));
+        long headway = Math.max(headwayMillis, 1);
+        long wanted = vehicles > max / headway ? max : vehicles * headway;
+        long green = Math.clamp(wanted, min, max);
+        lastGreenMillis.set(direction.ordinal(), green);
+        return green;
+    }
+
+    /** The green each approach was last given by this controller, 0 if none yet. */
+    public Map<Directions, Long> lastGreenMillis() {
+        EnumMap<Directions, Long> out = new EnumMap<>(Directions.class);
+        for (Directions direction : DIRECTIONS) {
+            out.put(direction, lastGreenMillis.get(direction.ordinal()));
+        }
+        return out;
+    }
+}
@@ -0,0 +1,85 @@
+package com.cg.traficlight.detector;
+
+import com.cg.traficlight.model.DetectorBatch;
+import com.cg.traficlight.model.DetectorEvent;
+import com.cg.traficlight.model.Directions;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Vehicles waiting per approach, fed by detector events.
+ * <p>
+ * One {@link LongAdder} per {@link Directions}: ingesting threads add to per-thread cells and
+ * never take a lock, so any number of detector feeds can post at once without touching the
+ * service lock. The signal side reads an approach with {@link #drain} when its green starts.
+ */
+@Component
+public class DetectorCounts {
+
+    private static final Directions[] DIRECTIONS = Directions.values();
+
+    private final LongAdder[] waiting = new LongAdder[DIRECTIONS.length];
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public DetectorCounts() {
+        for (int i = 0; i < waiting.length; i++) {
+            waiting[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Adds every event of the batch; events without an approach or with a negative count are
+     * skipped and counted as rejected.
+     *
+     * @return the number of events accepted
+     */
+    public int record(DetectorBatch batch) {
+        List<DetectorEvent> events = batch == null ? null : batch.getEvents();
+        if (events == null) return 0;
+        int ok = 0;
+        for (int i = 0, n = events.size(); i < n; i++) {
+            DetectorEvent event = events.get(i);
+            if (event == null || event.getDirection() == null || event.getVehicles() < 0) continue;
+            waiting[event.getDirection().ordinal()].add(event.getVehicles());
+            ok++;
+        }
+        accepted.add(ok);
+        if (ok != events.size()) rejected.add(events.size() - ok);
+        return ok;
+    }
+
+    public void record(Directions direction, long vehicles) {
+        waiting[direction.ordinal()].add(vehicles);
+        accepted.increment();
+    }
+
+    /** Vehicles counted on {@code direction} since the last drain, resetting it to zero. */
+    public long drain(Directions direction) {
+        return waiting[direction.ordinal()].sumThenReset();
+    }
+
+    public long waiting(Directions direction) {
+        return waiting[direction.ordinal()].sum();
+    }
+
+    public Map<Directions, Long> waiting() {
+        EnumMap<Directions, Long> out = new EnumMap<>(Directions.class);
+        for (Directions direction : DIRECTIONS) {
+            out.put(direction, waiting(direction));
+        }
+        return out;
+    }
+
+    public long accepted() {
+        return accepted.sum();
+    }
+
+    public long rejected() {
+        return rejected.sum();
+    }
+}
@@ -0,0 +1,51 @@
+package com.cg.traficlight.detector;
+
+import com.cg.traficlight.model.DetectorBatch;
+import com.cg.traficlight.model.DetectorEvent;
+import com.cg.traficlight.model.Directions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * In-process stand-in for a roadside detector feed: buffers events and hands them to
+ * {@link DetectorCounts#record(DetectorBatch)} in batches, the same path the HTTP endpoint
+ * takes. Not thread-safe; use one per feeding thread.
+ */
+public final class LoopbackDetectorSource {
+
+    private final String name;
+    private final DetectorCounts sink;
+    private final int batchSize;
+    private List<DetectorEvent> buffer;
+    private long sent;
+
+    public LoopbackDetectorSource(String name, DetectorCounts sink, int batchSize) {
+        if (batchSize <= 0) throw new IllegalArgumentException("batch size must be positive: " + batchSize);
+        this.name = name;
+        this.sink = sink;
+        this.batchSize = batchSize;
+        this.buffer = new ArrayList<>(batchSize);
+    }
+
+    /** Reports {@code vehicles} on {@code direction}, flushing once a batch is full. */
+    public void detect(Directions direction, int vehicles) {
+        buffer.add(new DetectorEvent(name, direction, vehicles));
+        if (buffer.size() >= batchSize) flush();
+    }
+
+    /** Sends the buffered events, if any; returns how many were accepted. */
+    public int flush() {
+        if (buffer.isEmpty()) return 0;
+        DetectorBatch batch = new DetectorBatch(buffer);
+        buffer = new ArrayList<>(batchSize);
+        int accepted = sink.record(batch);
+        sent += accepted;
+        return accepted;
+    }
+
+    /** Events accepted by the sink so far. */
+    public long sent() {
+        return sent;
+    }
+}
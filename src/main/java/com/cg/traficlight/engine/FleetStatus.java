@@ -0,0 +1,120 @@
+package com.cg.traficlight.engine;
+
+import com.cg.traficlight.model.Colors;
+import com.cg.traficlight.model.Directions;
+import com.cg.traficlight.model.Response;
+
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Every intersection of the engine at one roster version, in registration order.
+ * <p>
+ * The roster is immutable and replaced whenever an intersection is added or removed; the
+ * status of each member is read as it is written out. Each intersection keeps its id as a
+ * ready-made JSON key and its status as the shared {@code StatusSnapshot}, which it replaces on
+ * transitions only, so writing the whole fleet copies bytes each snapshot has already had
+ * written and allocates nothing per intersection.
+ */
+public final class FleetStatus {
+
+    private final Intersection[] members;
+    private final long version;
+    private final ObjectMapper mapper;
+
+    private FleetStatus(Intersection[] members, long version, ObjectMapper mapper) {
+        this.members = members;
+        this.version = version;
+        this.mapper = mapper;
+    }
+
+    static FleetStatus empty(ObjectMapper mapper) {
+        return new FleetStatus(new Intersection[0], 0, mapper);
+    }
+
+    /** Moves on every register and remove; clients keep {@link #ids()} until it does. */
+    public long version() {
+        return version;
+    }
+
+    public int size() {
+        return members.length;
+    }
+
+    /** Ids in the order {@link #writeJson} and {@link #writeCodes} write them. */
+    public List<String> ids() {
+        List<String> ids = new ArrayList<>(members.length);
+        for (Intersection member : members) {
+            ids.add(member.id());
+        }
+        return ids;
+    }
+
+    /** {@code {"<id>":<status>,...}}, each status as {@code /intersections/{id}/status} has it. */
+    public void writeJson(OutputStream out) throws IOException {
+        out.write('{');
+        for (int i = 0; i < members.length; i++) {
+            if (i > 0) out.write(',');
+            out.write(members[i].jsonKey());
+            out.write(members[i].status().getJson(mapper));
+        }
+        out.write('}');
+    }
+
+    /** One {@link #code} byte per intersection, in {@link #ids()} order. */
+    public void writeCodes(OutputStream out) throws IOException {
+        byte[] codes = new byte[members.length];
+        for (int i = 0; i < members.length; i++) {
+            Response status = members[i].status().getResponse();
+            codes[i] = code(status.getActiveDirection(), status.getActiveColor(), status.isPaused());
+        }
+        out.write(codes);
+    }
+
+    /**
+     * Packs a status into a byte: bit 7 is set while paused, bits 4-6 hold the active direction's
+     * ordinal + 1 and bits 0-3 the color's ordinal + 1, zero standing for none.
+     */
+    public static byte code(Directions direction, Colors color, boolean paused) {
+        int packed = (direction == null ? 0 : direction.ordinal() + 1) << 4
+                | (color == null ? 0 : color.ordinal() + 1);
+        return (byte) (paused ? packed | 0x80 : packed);
+    }
+
+    FleetStatus with(Intersection added) {
+        Intersection[] grown = Arrays.copyOf(members, members.length + 1);
+        grown[members.length] = added;
+        return new FleetStatus(grown, version + 1, mapper);
+    }
+
+    FleetStatus without(Intersection removed) {
+        Intersection[] shrunk = new Intersection[members.length - 1];
+        int n = 0;
+        for (Intersection member : members) {
+            if (member != removed) shrunk[n++] = member;
+        }
+        return new FleetStatus(shrunk, version + 1, mapper);
+    }
+
+    /** {@code "<id>":} in UTF-8, with the id escaped as a JSON string. */
+    static byte[] jsonKey(String id) {
+        StringBuilder sb = new StringBuilder(id.length() + 3).append('"');
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append("\":").toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
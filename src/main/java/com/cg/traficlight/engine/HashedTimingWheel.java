@@ -0,0 +1,116 @@
+package com.cg.traficlight.engine;
+
+/**
+ * Hashed timing wheel driven by a single thread.
+ * <p>
+ * Time is cut into ticks of {@code tickNanos}; a timeout due at tick {@code t} lives in bucket
+ * {@code t & mask}. Buckets are intrusive doubly linked lists, so scheduling and cancelling are
+ * O(1) and allocation-free. A bucket can hold timeouts for later rotations; those are skipped
+ * until their tick comes round.
+ */
+final class HashedTimingWheel {
+
+    private final long startNanos;
+    private final long tickNanos;
+    private final int mask;
+    private final WheelTimeout[] buckets;
+
+    /** First tick that has not been processed yet. */
+    private long currentTick;
+
+    private int pending;
+
+    HashedTimingWheel(long startNanos, long tickNanos, int wheelSize) {
+        if (tickNanos <= 0) {
+            throw new IllegalArgumentException("tick must be positive: " + tickNanos);
+        }
+        if (wheelSize <= 0 || Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("wheel size must be a power of two: " + wheelSize);
+        }
+        this.startNanos = startNanos;
+        this.tickNanos = tickNanos;
+        this.mask = wheelSize - 1;
+        this.buckets = new WheelTimeout[wheelSize];
+    }
+
+    /**
+     * Schedules (or reschedules) {@code timeout} to expire at the first tick at or after
+     * {@code deadlineNanos}. A deadline in the past expires on the next {@link #advance}.
+     */
+    void schedule(WheelTimeout timeout, long deadlineNanos) {
+        cancel(timeout);
+        long tick = Math.max(ceilDiv(deadlineNanos - startNanos, tickNanos), currentTick);
+        timeout.deadlineNanos = deadlineNanos;
+        timeout.deadlineTick = tick;
+        int index = (int) (tick & mask);
+        WheelTimeout head = buckets[index];
+        timeout.next = head;
+        timeout.prev = null;
+        if (head != null) head.prev = timeout;
+        buckets[index] = timeout;
+        timeout.bucket = index;
+        pending++;
+    }
+
+    void cancel(WheelTimeout timeout) {
+        int index = timeout.bucket;
+        if (index < 0) return;
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            buckets[index] = timeout.next;
+        }
+        if (timeout.next != null) timeout.next.prev = timeout.prev;
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.bucket = -1;
+        pending--;
+    }
+
+    /**
+     * Processes every tick that has fully elapsed by {@code nowNanos}, expiring due timeouts.
+     * Expired timeouts may reschedule themselves from {@link WheelTimeout#expire()}.
+     *
+     * @return the number of timeouts expired
+     */
+    int advance(long nowNanos) {
+        long lastTick = Math.floorDiv(nowNanos - startNanos, tickNanos);
+        int expired = 0;
+        while (currentTick <= lastTick) {
+            long tick = currentTick++;
+            WheelTimeout timeout = buckets[(int) (tick & mask)];
+            while (timeout != null) {
+                WheelTimeout next = timeout.next;
+                if (timeout.deadlineTick <= tick) {
+                    cancel(timeout);
+                    expired++;
+                    timeout.expire();
+                    // expire() may have put the timeout back at the head of this very bucket;
+                    // it is due on a later tick, so carrying on from the saved next is still correct
+                }
+                timeout = next;
+            }
+            if (pending == 0) {
+                currentTick = lastTick + 1;
+            }
+        }
+        return expired;
+    }
+
+    /** System.nanoTime() from which the next unprocessed tick can be processed. */
+    long nextTickNanos() {
+        return startNanos + currentTick * tickNanos;
+    }
+
+    boolean isEmpty() {
+        return pending == 0;
+    }
+
+    int pending() {
+        return pending;
+    }
+
+    private static long ceilDiv(long x, long y) {
+        return -Math.floorDiv(-x, y);
+    }
+}
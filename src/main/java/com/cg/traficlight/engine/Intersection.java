@@ -0,0 +1,154 @@
+package com.cg.traficlight.engine;
+
+import com.cg.traficlight.history.HistoryRingBuffer;
+import com.cg.traficlight.model.Movement;
+import com.cg.traficlight.model.StatusSnapshot;
+import com.cg.traficlight.model.TraficLightHistory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * State of one intersection run by the {@link IntersectionEngine}.
+ * <p>
+ * Every mutation happens on the owning shard thread, so no lock is needed; the volatile fields
+ * let HTTP threads read a consistent status without coordinating with it. The status is
+ * republished on each transition, pause and resume, so reading it is a single volatile load.
+ */
+final class Intersection extends WheelTimeout {
+
+    private static final Logger log = LoggerFactory.getLogger(Intersection.class);
+
+    private final String id;
+    private final IntersectionEngine.Shard shard;
+    private final HistoryRingBuffer history;
+    private final byte[] jsonKey;
+
+    private volatile List<Movement> movements;
+    private volatile int phaseIndex;
+    private volatile boolean paused;
+    private volatile StatusSnapshot status;
+    // shard thread only: history stamps never go back, even when the clock is stepped
+    private Instant lastStamp = Instant.MIN;
+
+    Intersection(String id, IntersectionEngine.Shard shard, List<Movement> movements, int historyRetention) {
+        this.id = id;
+        this.shard = shard;
+        this.movements = movements;
+        this.history = new HistoryRingBuffer(historyRetention);
+        this.jsonKey = FleetStatus.jsonKey(id);
+        publishStatus();
+    }
+
+    String id() {
+        return id;
+    }
+
+    IntersectionEngine.Shard shard() {
+        return shard;
+    }
+
+    StatusSnapshot status() {
+        return status;
+    }
+
+    /** The id as a JSON object key, {@code "<id>":}; shared and read-only. */
+    byte[] jsonKey() {
+        return jsonKey;
+    }
+
+    List<TraficLightHistory> latestHistory(int limit) {
+        return history.latest(limit);
+    }
+
+    // ---- shard thread only below ----
+
+    void start() {
+        if (!paused) enterPhase(System.nanoTime());
+    }
+
+    void apply(List<Movement> newMovements) {
+        shard.wheel().cancel(this);
+        movements = newMovements;
+        phaseIndex = 0;
+        publishStatus();
+        start();
+    }
+
+    void pause() {
+        if (paused) return;
+        paused = true;
+        shard.wheel().cancel(this);
+        publishStatus();
+    }
+
+    void resume() {
+        if (!paused) return;
+        paused = false;
+        enterPhase(System.nanoTime());
+    }
+
+    void stop() {
+        shard.wheel().cancel(this);
+    }
+
+    @Override
+    void expire() {
+        if (paused) return;
+        try {
+            phaseIndex++;
+            enterPhase(deadlineNanos);
+        } catch (RuntimeException e) {
+            // leave this intersection stopped rather than abandon the rest of the wheel bucket
+            log.error("phase transition failed for intersection {}; it stays paused", id, e);
+            paused = true;
+            publishStatus();
+        }
+    }
+
+    /**
+     * Records the current phase and schedules its end {@code duration} after {@code phaseStart}.
+     * Phases without a positive duration are stepped over, at most once around the cycle.
+     */
+    private void enterPhase(long phaseStart) {
+        List<Movement> movementsList = movements;
+        long now = System.nanoTime();
+        for (int stepped = 0; stepped < movementsList.size(); stepped++) {
+            Movement current = movementsList.get(Math.floorMod(phaseIndex, movementsList.size()));
+            long duration = current.getDurationMillis();
+
+            TraficLightHistory record = new TraficLightHistory();
+            record.setId(phaseIndex + 1L);
+            record.setColors(current.getColors());
+            record.setDirection(current.getDirection());
+            Instant stamp = Instant.now();
+            if (stamp.isBefore(lastStamp)) stamp = lastStamp;
+            lastStamp = stamp;
+            record.setTimestamp(stamp);
+            record.setDurationSeconds(duration);
+            history.append(record);
+
+            if (duration > 0) {
+                long durationNanos = TimeUnit.MILLISECONDS.toNanos(duration);
+                // same rule as the absolute scheduler: never cut a phase by more than half
+                if (now - phaseStart > durationNanos / 2) {
+                    phaseStart = now;
+                }
+                shard.wheel().schedule(this, phaseStart + durationNanos);
+                publishStatus();
+                return;
+            }
+            phaseIndex++;
+        }
+        publishStatus();
+    }
+
+    private void publishStatus() {
+        List<Movement> movementsList = movements;
+        Movement movement = movementsList.get(Math.floorMod(phaseIndex, movementsList.size()));
+        status = StatusSnapshot.of(movement.getDirection(), movement.getColors(), paused);
+    }
+}
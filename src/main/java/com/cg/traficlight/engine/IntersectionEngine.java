@@ -0,0 +1,249 @@
+package com.cg.traficlight.engine;
+
+import com.cg.traficlight.model.Movement;
+import com.cg.traficlight.model.Response;
+import com.cg.traficlight.model.SignalSequence;
+import com.cg.traficlight.model.TraficLightHistory;
+import com.cg.traficlight.plan.InvalidPlanException;
+import com.cg.traficlight.service.Movements;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Runs any number of intersections, keyed by id, on a small fixed set of shard threads.
+ * <p>
+ * Each shard owns a {@link HashedTimingWheel} holding the phase deadline of every intersection
+ * hashed to it, and applies commands from a lock-free queue between ticks. Intersection state is
+ * only ever mutated by its shard thread, so there is no per-intersection lock or executor.
+ * The single intersection served by {@code TrafficLightService} is independent of this engine.
+ */
+@Service
+public class IntersectionEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(IntersectionEngine.class);
+
+    @Value("${engine.shard.count:2}")
+    private int shardCount = 2;
+
+    @Value("${engine.tick.millis:10}")
+    private long tickMillis = 10;
+
+    @Value("${engine.wheel.size:512}")
+    private int wheelSize = 512;
+
+    @Value("${max.record.size:10}")
+    private Long maxRecordSize = 10L;
+
+    @Value("${history.retention.size:${max.record.size:10}}")
+    private int historyRetentionSize = 10;
+
+    // writes each status snapshot once, as Spring MVC would write the Response
+    @Autowired(required = false)
+    private ObjectMapper jsonMapper = JsonMapper.shared();
+
+    private final ConcurrentHashMap<String, Intersection> intersections = new ConcurrentHashMap<>();
+
+    // the map and the roster change together under rosterLock; the roster is read without it
+    private final ReentrantLock rosterLock = new ReentrantLock();
+    private volatile FleetStatus roster;
+
+    private Shard[] shards;
+
+    public IntersectionEngine() {
+    }
+
+    IntersectionEngine(int shardCount, long tickMillis, int wheelSize, int historyRetentionSize) {
+        this.shardCount = shardCount;
+        this.tickMillis = tickMillis;
+        this.wheelSize = wheelSize;
+        this.historyRetentionSize = historyRetentionSize;
+        this.maxRecordSize = (long) historyRetentionSize;
+    }
+
+    @PostConstruct
+    public void start() {
+        roster = FleetStatus.empty(jsonMapper);
+        long now = System.nanoTime();
+        Shard[] created = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            created[i] = new Shard(i, new HashedTimingWheel(now, TimeUnit.MILLISECONDS.toNanos(tickMillis), wheelSize));
+        }
+        shards = created;
+        for (Shard shard : created) {
+            shard.thread.start();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (Shard shard : shards) {
+            shard.running = false;
+            LockSupport.unpark(shard.thread);
+        }
+    }
+
+    /**
+     * Adds an intersection and starts its cycle.
+     *
+     * @return false if an intersection with this id already exists
+     * @throws InvalidPlanException if the sequence is missing or a timing is negative
+     */
+    public boolean register(String id, SignalSequence sequence) {
+        Movements.check(sequence);
+        return register(id, Movements.of(sequence));
+    }
+
+    boolean register(String id, List<Movement> movements) {
+        Intersection created = new Intersection(id, shardFor(id), movements, historyRetentionSize);
+        rosterLock.lock();
+        try {
+            if (intersections.putIfAbsent(id, created) != null) {
+                return false;
+            }
+            roster = roster.with(created);
+        } finally {
+            rosterLock.unlock();
+        }
+        created.shard().submit(id, created::start);
+        return true;
+    }
+
+    public boolean remove(String id) {
+        Intersection removed;
+        rosterLock.lock();
+        try {
+            removed = intersections.remove(id);
+            if (removed == null) return false;
+            roster = roster.without(removed);
+        } finally {
+            rosterLock.unlock();
+        }
+        removed.shard().submit(id, removed::stop);
+        return true;
+    }
+
+    /**
+     * Replaces the cycle of the intersection from its next phase.
+     *
+     * @return false if the intersection is unknown
+     * @throws InvalidPlanException if the sequence is missing or a timing is negative
+     */
+    public boolean setSequence(String id, SignalSequence sequence) {
+        Movements.check(sequence);
+        Intersection intersection = intersections.get(id);
+        if (intersection == null) return false;
+        List<Movement> movements = Movements.of(sequence);
+        intersection.shard().submit(id, () -> intersection.apply(movements));
+        return true;
+    }
+
+    public boolean pause(String id) {
+        Intersection intersection = intersections.get(id);
+        if (intersection == null) return false;
+        intersection.shard().submit(id, intersection::pause);
+        return true;
+    }
+
+    public boolean resume(String id) {
+        Intersection intersection = intersections.get(id);
+        if (intersection == null) return false;
+        intersection.shard().submit(id, intersection::resume);
+        return true;
+    }
+
+    /** Status of the intersection, shared and read-only, or null if it is unknown. */
+    public Response getStatus(String id) {
+        Intersection intersection = intersections.get(id);
+        return intersection == null ? null : intersection.status().getResponse();
+    }
+
+    /** Status already serialized as JSON, shared and read-only, or null if it is unknown. */
+    public byte[] getStatusJson(String id) {
+        Intersection intersection = intersections.get(id);
+        return intersection == null ? null : intersection.status().getJson(jsonMapper);
+    }
+
+    /** Every intersection, in registration order, with the status each one has when it is written out. */
+    public FleetStatus getFleetStatus() {
+        return roster;
+    }
+
+    /** Newest history entries first, or null if the intersection is unknown. */
+    public List<TraficLightHistory> getTimingHistory(String id) {
+        Intersection intersection = intersections.get(id);
+        if (intersection == null) return null;
+        long limit = (maxRecordSize == null) ? historyRetentionSize : maxRecordSize;
+        return intersection.latestHistory((int) Math.min(limit, Integer.MAX_VALUE));
+    }
+
+    public int size() {
+        return intersections.size();
+    }
+
+    private Shard shardFor(String id) {
+        return shards[Math.floorMod(id.hashCode(), shards.length)];
+    }
+
+    static final class Shard implements Runnable {
+
+        private final HashedTimingWheel wheel;
+        private record Command(String intersectionId, Runnable action) {
+        }
+
+        private final ConcurrentLinkedQueue<Command> commands = new ConcurrentLinkedQueue<>();
+        private final Thread thread;
+        private volatile boolean running = true;
+
+        Shard(int index, HashedTimingWheel wheel) {
+            this.wheel = wheel;
+            this.thread = new Thread(this, "intersection-engine-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        HashedTimingWheel wheel() {
+            return wheel;
+        }
+
+        void submit(String intersectionId, Runnable action) {
+            commands.offer(new Command(intersectionId, action));
+            LockSupport.unpark(thread);
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                Command command;
+                while ((command = commands.poll()) != null) {
+                    try {
+                        command.action().run();
+                    } catch (RuntimeException e) {
+                        // a bad command must not take the other intersections of this shard down
+                        log.error("command failed for intersection {}", command.intersectionId(), e);
+                    }
+                }
+                wheel.advance(System.nanoTime());
+                if (!commands.isEmpty()) continue;
+                if (wheel.isEmpty()) {
+                    LockSupport.park(this);
+                } else {
+                    long wait = wheel.nextTickNanos() - System.nanoTime();
+                    if (wait > 0) LockSupport.parkNanos(this, wait);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.cg.traficlight.engine;
+
+/**
+ * Node of a {@link HashedTimingWheel} bucket. Subclasses are scheduled directly, so a
+ * rescheduled timeout costs no allocation.
+ */
+abstract class WheelTimeout {
+
+    WheelTimeout prev;
+    WheelTimeout next;
+    int bucket = -1;
+    long deadlineTick;
+    long deadlineNanos;
+
+    /** Called on the wheel thread once the deadline has passed. */
+    abstract void expire();
+
+    boolean isScheduled() {
+        return bucket >= 0;
+    }
+}
@@ -0,0 +1,194 @@
+package com.cg.traficlight.history;
+
+import com.cg.traficlight.model.Colors;
+import com.cg.traficlight.model.Directions;
+import com.cg.traficlight.model.HistoryPage;
+import com.cg.traficlight.model.HistoryQuery;
+import com.cg.traficlight.model.TraficLightHistory;
+
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed-capacity in-memory history kept as parallel primitive arrays instead of one object per
+ * transition.
+ * <p>
+ * A record is {@value #RECORD_BYTES} bytes: id ({@code int}), timestamp as {@link EpochNanos}
+ * ({@code long}), duration millis ({@code int}) and direction and color ordinals packed into one
+ * byte. Nothing is allocated per append, and {@link TraficLightHistory} objects are only built for
+ * the records a read returns, so tens of millions of transitions fit in a few hundred MB of heap
+ * that the collector never has to trace.
+ * <p>
+ * Same concurrency as {@link HistoryRingBuffer}: one writer fills the slot and then publishes the
+ * new sequence with a release write; readers copy the fields out and then check that the writer
+ * has not lapped them in the meantime. One spare slot keeps a write in flight off any record a
+ * reader is entitled to return.
+ */
+public final class CompactHistoryStore implements HistoryStore {
+
+    static final int RECORD_BYTES = Integer.BYTES + Long.BYTES + Integer.BYTES + Byte.BYTES;
+
+    private static final Directions[] DIRECTIONS = Directions.values();
+    private static final Colors[] COLORS = Colors.values();
+
+    private final int capacity;
+    private final int length;
+    private final int[] ids;
+    private final long[] timestamps;
+    private final int[] durations;
+    /** (direction ordinal + 1) << 4 | (color ordinal + 1); a zero nibble is an unset field. */
+    private final byte[] signals;
+
+    /** Number of records ever appended; the next record goes to {@code published % length}. */
+    private final AtomicLong published = new AtomicLong();
+
+    public CompactHistoryStore(int capacity) {
+        if (capacity <= 0 || capacity == Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("capacity must be between 1 and " + (Integer.MAX_VALUE - 1)
+                    + ": " + capacity);
+        }
+        this.capacity = capacity;
+        this.length = capacity + 1;
+        this.ids = new int[length];
+        this.timestamps = new long[length];
+        this.durations = new int[length];
+        this.signals = new byte[length];
+    }
+
+    /**
+     * Copies the record's fields into the next slot, overwriting the oldest record once full.
+     * Ids beyond {@code int} range wrap and durations saturate at {@code Integer.MAX_VALUE} millis.
+     * Must only be called by one thread at a time.
+     */
+    @Override
+    public void append(TraficLightHistory record) {
+        long seq = published.get();
+        int slot = slot(seq);
+        ids[slot] = record.getId() == null ? 0 : record.getId().intValue();
+        timestamps[slot] = record.getTimestamp() == null ? Long.MIN_VALUE : EpochNanos.of(record.getTimestamp());
+        durations[slot] = (int) Math.min(Math.max(record.getDurationSeconds(), 0), Integer.MAX_VALUE);
+        signals[slot] = pack(record.getDirection(), record.getColors());
+        published.lazySet(seq + 1);
+    }
+
+    @Override
+    public List<TraficLightHistory> latest(int limit) {
+        long head = published.get();
+        int count = (int) Math.min(Math.min(limit, capacity), head);
+        if (count <= 0) {
+            return List.of();
+        }
+        List<TraficLightHistory> out = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            TraficLightHistory record = get(head - 1 - i);
+            if (record == null) {
+                // lapped by the writer: everything older is gone as well
+                break;
+            }
+            out.add(record);
+        }
+        return Collections.unmodifiableList(out);
+    }
+
+    @Override
+    public long firstSequence() {
+        return Math.max(published.get() - capacity, 0);
+    }
+
+    @Override
+    public long endSequence() {
+        return published.get();
+    }
+
+    @Override
+    public TraficLightHistory get(long seq) {
+        if (!readable(seq)) {
+            return null;
+        }
+        int slot = slot(seq);
+        int id = ids[slot];
+        long timestamp = timestamps[slot];
+        int duration = durations[slot];
+        byte packed = signals[slot];
+        if (!stillHeld(seq)) {
+            return null;
+        }
+        TraficLightHistory record = new TraficLightHistory();
+        record.setId((long) id);
+        record.setTimestamp(timestamp == Long.MIN_VALUE ? null : EpochNanos.toInstant(timestamp));
+        record.setDurationSeconds(duration);
+        record.setDirection(direction(packed));
+        record.setColors(color(packed));
+        return record;
+    }
+
+    /** Reads only the timestamp array, so binary searches build no objects. */
+    @Override
+    public long timestampNanos(long seq) {
+        if (!readable(seq)) {
+            return Long.MIN_VALUE;
+        }
+        long timestamp = timestamps[slot(seq)];
+        return stillHeld(seq) ? timestamp : Long.MIN_VALUE;
+    }
+
+    /** Filters on the packed direction/color byte, so only the records returned are materialized. */
+    @Override
+    public HistoryPage query(HistoryQuery query) {
+        if (query.getDirection() == null && query.getColor() == null) {
+            return HistoryQueries.run(this, query);
+        }
+        return HistoryQueries.run(this, query, seq -> {
+            byte packed = signals[slot(seq)];
+            // a lapped slot is let through so that get() reports it and the scan stops there
+            return !stillHeld(seq) || (query.getDirection() == null || query.getDirection() == direction(packed))
+                    && (query.getColor() == null || query.getColor() == color(packed));
+        });
+    }
+
+    public int size() {
+        return (int) Math.min(published.get(), capacity);
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public long totalAppended() {
+        return published.get();
+    }
+
+    private boolean readable(long seq) {
+        long head = published.get();
+        return seq >= 0 && seq < head && seq >= head - capacity;
+    }
+
+    /** Called after copying a slot's fields: false if the writer may have reused the slot meanwhile. */
+    private boolean stillHeld(long seq) {
+        VarHandle.loadLoadFence();
+        return seq >= published.get() - capacity;
+    }
+
+    private int slot(long seq) {
+        return (int) (seq % length);
+    }
+
+    private static byte pack(Directions direction, Colors color) {
+        int d = direction == null ? 0 : direction.ordinal() + 1;
+        int c = color == null ? 0 : color.ordinal() + 1;
+        return (byte) (d << 4 | c);
+    }
+
+    private static Directions direction(byte packed) {
+        int d = (packed >> 4) & 0xF;
+        return d == 0 ? null : DIRECTIONS[d - 1];
+    }
+
+    private static Colors color(byte packed) {
+        int c = packed & 0xF;
+        return c == 0 ? null : COLORS[c - 1];
+    }
+}
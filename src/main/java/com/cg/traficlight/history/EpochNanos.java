@@ -0,0 +1,23 @@
+package com.cg.traficlight.history;
+
+import java.time.Instant;
+
+/**
+ * History timestamps as a single long: the {@link Instant} in epoch nanos. Lossless for any
+ * date between 1678 and 2262.
+ */
+final class EpochNanos {
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private EpochNanos() {
+    }
+
+    static long of(Instant timestamp) {
+        return timestamp.getEpochSecond() * NANOS_PER_SECOND + timestamp.getNano();
+    }
+
+    static Instant toInstant(long nanos) {
+        return Instant.ofEpochSecond(Math.floorDiv(nanos, NANOS_PER_SECOND), Math.floorMod(nanos, NANOS_PER_SECOND));
+    }
+}
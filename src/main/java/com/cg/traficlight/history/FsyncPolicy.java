@@ -0,0 +1,10 @@
+package com.cg.traficlight.history;
+
+public enum FsyncPolicy {
+    /** Leave flushing to the operating system. */
+    NEVER,
+    /** Force the segment after every batch the writer drains (group commit). */
+    BATCH,
+    /** Force the segment at most once per configured interval. */
+    INTERVAL;
+}
@@ -0,0 +1,78 @@
+package com.cg.traficlight.history;
+
+import com.cg.traficlight.model.HistoryPage;
+import com.cg.traficlight.model.HistoryQuery;
+import com.cg.traficlight.model.TraficLightHistory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongPredicate;
+
+/**
+ * Runs a {@link HistoryQuery} against any store whose records are ordered by time.
+ * <p>
+ * The time range is turned into a sequence range with two binary searches, then scanned
+ * newest first applying the direction and color filters, so a query costs O(log n) plus the
+ * records it walks over instead of a full scan. The searches rely on timestamps never going
+ * back as the sequence goes up: writers stamp in UTC and repeat the last stamp rather than go
+ * back when the clock is stepped.
+ */
+final class HistoryQueries {
+
+    private HistoryQueries() {
+    }
+
+    static HistoryPage run(HistoryStore store, HistoryQuery query) {
+        return run(store, query, seq -> true);
+    }
+
+    /**
+     * As {@link #run(HistoryStore, HistoryQuery)}, skipping without reading them the sequences
+     * {@code prefilter} rejects; it must accept every sequence whose record could match.
+     */
+    static HistoryPage run(HistoryStore store, HistoryQuery query, LongPredicate prefilter) {
+        long lo = store.firstSequence();
+        long hi = store.endSequence();
+        if (query.getCursor() != null) {
+            hi = Math.min(hi, query.getCursor());
+        }
+        if (query.getTo() != null) {
+            hi = Math.min(hi, lowerBound(store, lo, hi, EpochNanos.of(query.getTo())));
+        }
+        if (query.getFrom() != null) {
+            lo = Math.max(lo, lowerBound(store, lo, hi, EpochNanos.of(query.getFrom())));
+        }
+
+        List<TraficLightHistory> out = new ArrayList<>(Math.min(query.getLimit(), 1024));
+        long seq = hi - 1;
+        for (; seq >= lo && out.size() < query.getLimit(); seq--) {
+            if (!prefilter.test(seq)) {
+                continue;
+            }
+            TraficLightHistory record = store.get(seq);
+            if (record == null) {
+                // lapped by the writer: everything older is gone as well
+                seq = lo - 1;
+                break;
+            }
+            if (query.matches(record)) {
+                out.add(record);
+            }
+        }
+        Long next = seq >= lo ? seq + 1 : null;
+        return new HistoryPage(out, next);
+    }
+
+    /** First sequence in [lo, hi) whose timestamp is at or after {@code nanos}, or hi if none. */
+    private static long lowerBound(HistoryStore store, long lo, long hi, long nanos) {
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (store.timestampNanos(mid) < nanos) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
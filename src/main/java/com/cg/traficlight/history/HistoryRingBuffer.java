@@ -0,0 +1,106 @@
+package com.cg.traficlight.history;
+
+import com.cg.traficlight.model.TraficLightHistory;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed-capacity history buffer with a single writer and any number of readers.
+ * <p>
+ * The writer stores the record in its slot and then publishes the new sequence with a release
+ * write, so it never takes a lock. Readers walk backwards from the published sequence and drop
+ * whatever the writer may have overwritten while they were reading. One spare slot is kept so
+ * that a write still in flight never lands on a record a reader is entitled to return.
+ */
+public class HistoryRingBuffer implements HistoryStore {
+
+    private final AtomicReferenceArray<TraficLightHistory> slots;
+    private final int capacity;
+    private final int length;
+
+    /** Number of records ever appended; the next record goes to {@code published % length}. */
+    private final AtomicLong published = new AtomicLong();
+
+    public HistoryRingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.length = capacity + 1;
+        this.slots = new AtomicReferenceArray<>(length);
+    }
+
+    /**
+     * Appends a record, overwriting the oldest one once the buffer is full.
+     * Must only be called by one thread at a time.
+     */
+    @Override
+    public void append(TraficLightHistory record) {
+        long seq = published.get();
+        slots.lazySet(slot(seq), record);
+        published.lazySet(seq + 1);
+    }
+
+    /**
+     * Returns up to {@code limit} of the newest records, newest first.
+     * Costs O(limit) and never copies the whole buffer.
+     */
+    @Override
+    public List<TraficLightHistory> latest(int limit) {
+        long head = published.get();
+        int count = (int) Math.min(Math.min(limit, capacity), head);
+        if (count <= 0) {
+            return List.of();
+        }
+        TraficLightHistory[] out = new TraficLightHistory[count];
+        for (int i = 0; i < count; i++) {
+            out[i] = slots.get(slot(head - 1 - i));
+        }
+        // the writer may have lapped us while we were copying: only sequences the spare slot still
+        // protects are safe to return
+        long oldestValid = published.get() - capacity;
+        int valid = (int) Math.min(count, head - Math.max(oldestValid, 0));
+        return Collections.unmodifiableList(Arrays.asList(out).subList(0, Math.max(valid, 0)));
+    }
+
+    @Override
+    public long firstSequence() {
+        return Math.max(published.get() - capacity, 0);
+    }
+
+    @Override
+    public long endSequence() {
+        return published.get();
+    }
+
+    @Override
+    public TraficLightHistory get(long seq) {
+        long head = published.get();
+        if (seq < 0 || seq >= head || seq < head - capacity) {
+            return null;
+        }
+        TraficLightHistory record = slots.get(slot(seq));
+        // same check as latest(): the writer may have lapped us while we were reading
+        return seq < published.get() - capacity ? null : record;
+    }
+
+    public int size() {
+        return (int) Math.min(published.get(), capacity);
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public long totalAppended() {
+        return published.get();
+    }
+
+    private int slot(long seq) {
+        return (int) (seq % length);
+    }
+}
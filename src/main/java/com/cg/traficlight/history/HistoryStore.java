@@ -0,0 +1,50 @@
+package com.cg.traficlight.history;
+
+import com.cg.traficlight.model.HistoryPage;
+import com.cg.traficlight.model.HistoryQuery;
+import com.cg.traficlight.model.TraficLightHistory;
+
+import java.util.List;
+
+/**
+ * Where phase transitions are kept. {@link #append} is only ever called by one thread at a time
+ * (whoever holds the service lock); reads may come from any thread.
+ * <p>
+ * Records are addressed by a sequence number that grows by one per append, and are in time
+ * order, which is what lets {@link #query} binary-search a time range.
+ */
+public interface HistoryStore extends AutoCloseable {
+
+    void append(TraficLightHistory record);
+
+    /** Up to {@code limit} of the newest records, newest first. */
+    List<TraficLightHistory> latest(int limit);
+
+    /** Sequence number of the oldest record still held. */
+    long firstSequence();
+
+    /** One past the sequence number of the newest readable record. */
+    long endSequence();
+
+    /** The record with this sequence number, or null if it is no longer (or not yet) held. */
+    TraficLightHistory get(long seq);
+
+    /** Timestamp of a record as {@link EpochNanos}; {@code Long.MIN_VALUE} if it is not held. */
+    default long timestampNanos(long seq) {
+        TraficLightHistory record = get(seq);
+        return record == null || record.getTimestamp() == null ? Long.MIN_VALUE : EpochNanos.of(record.getTimestamp());
+    }
+
+    /** Records {@link #append} could not keep; only a store that writes behind can drop any. */
+    default long droppedRecords() {
+        return 0;
+    }
+
+    default HistoryPage query(HistoryQuery query) {
+        return HistoryQueries.run(this, query);
+    }
+
+    @Override
+    default void close() {
+    }
+}
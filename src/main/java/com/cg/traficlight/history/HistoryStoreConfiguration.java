@@ -0,0 +1,32 @@
+package com.cg.traficlight.history;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+@Configuration
+public class HistoryStoreConfiguration {
+
+    @Bean(destroyMethod = "close")
+    public HistoryStore historyStore(@Value("${history.store:MEMORY}") HistoryStoreType type,
+                                     @Value("${history.retention.size:${max.record.size:10}}") int retention,
+                                     @Value("${history.log.dir:data/history}") String dir,
+                                     @Value("${history.log.segment.bytes:67108864}") long segmentBytes,
+                                     @Value("${history.log.fsync:BATCH}") FsyncPolicy fsync,
+                                     @Value("${history.log.fsync.interval.millis:1000}") long fsyncIntervalMillis,
+                                     @Value("${history.log.queue.size:65536}") int queueSize,
+                                     @Value("${history.log.append.timeout.millis:0}") long appendTimeoutMillis)
+            throws IOException {
+        if (type == HistoryStoreType.MAPPED) {
+            return MappedHistoryLog.open(Path.of(dir), segmentBytes, fsync, fsyncIntervalMillis, queueSize,
+                    appendTimeoutMillis);
+        }
+        if (type == HistoryStoreType.COMPACT) {
+            return new CompactHistoryStore(retention);
+        }
+        return new HistoryRingBuffer(retention);
+    }
+}
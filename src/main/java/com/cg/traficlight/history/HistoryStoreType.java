@@ -0,0 +1,10 @@
+package com.cg.traficlight.history;
+
+public enum HistoryStoreType {
+    /** Bounded in-memory ring buffer, lost on restart. */
+    MEMORY,
+    /** Bounded in-memory ring of primitive arrays, ~17 bytes per transition; lost on restart. */
+    COMPACT,
+    /** Append-only log in memory-mapped segment files, kept across restarts. */
+    MAPPED;
+}
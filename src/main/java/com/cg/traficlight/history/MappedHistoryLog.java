@@ -0,0 +1,394 @@
+package com.cg.traficlight.history;
+
+import com.cg.traficlight.model.Colors;
+import com.cg.traficlight.model.Directions;
+import com.cg.traficlight.model.TraficLightHistory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+/**
+ * Durable, append-only history kept in memory-mapped segment files.
+ * <p>
+ * Every transition is a fixed-width {@value #RECORD_BYTES}-byte record, so record {@code n}
+ * lives at a computable offset of segment {@code n / recordsPerSegment}. Segments are named
+ * after their first record number and rolled once full. {@link #append} only hands the record
+ * to a writer thread, which copies batches into the mapped segment, publishes the new record
+ * count and forces the pages to disk according to the {@link FsyncPolicy}. Readers decode just
+ * the records they return, straight from the mapping. Only the tail segment and the
+ * {@value #READ_SEGMENTS} segments read most recently stay mapped; the JVM unmaps the others once
+ * no reader refers to them.
+ * <p>
+ * When the writer falls behind by a whole queue the record is lost at once: the caller is the
+ * scheduler thread, inside the service lock, and must not wait on the disk. A positive append
+ * timeout trades that for fewer losses, holding the caller up for at most the timeout. Lost
+ * records are counted in {@link #droppedRecords()} and logged, at most once per
+ * {@value #DROP_LOG_INTERVAL_SECONDS} s.
+ * <p>
+ * Record layout: id (long), timestamp as {@link EpochNanos} (long), duration millis (long),
+ * direction and color ordinals (one byte each, -1 if unset), five reserved bytes and a commit
+ * marker written last. On startup only the tail segment is scanned, up to the first missing
+ * marker.
+ */
+public final class MappedHistoryLog implements HistoryStore {
+
+    private static final Logger log = LoggerFactory.getLogger(MappedHistoryLog.class);
+
+    static final int RECORD_BYTES = 32;
+    static final long DEFAULT_APPEND_TIMEOUT_MILLIS = 0;
+
+    private static final int OFF_ID = 0;
+    private static final int OFF_TIMESTAMP = 8;
+    private static final int OFF_DURATION = 16;
+    private static final int OFF_DIRECTION = 24;
+    private static final int OFF_COLOR = 25;
+    private static final int OFF_MARKER = 31;
+    private static final byte COMMITTED = 0x7F;
+
+    private static final int MAX_BATCH = 1024;
+    private static final int READ_SEGMENTS = 8;
+    private static final String SUFFIX = ".seg";
+    private static final long DROP_LOG_INTERVAL_SECONDS = 10;
+    private static final Directions[] DIRECTIONS = Directions.values();
+    private static final Colors[] COLORS = Colors.values();
+
+    private final Path dir;
+    private final int recordsPerSegment;
+    private final FsyncPolicy fsyncPolicy;
+    private final long fsyncIntervalNanos;
+    private final long appendTimeoutNanos;
+
+    private final LinkedBlockingQueue<TraficLightHistory> pending;
+    // segments behind the tail that readers asked for, least recently read dropped first; guarded by itself
+    private final Map<Long, MappedByteBuffer> readSegments = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, MappedByteBuffer> eldest) {
+            return size() > READ_SEGMENTS;
+        }
+    };
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread writer;
+
+    /** The segment being written; replaced by the writer thread when it rolls over, null before any. */
+    private volatile Segment tail;
+    /** Records that readers may see; written by the writer thread after the bytes are in place. */
+    private volatile long committed;
+    /** Records handed to the writer; only incremented by the appending thread. */
+    private volatile long enqueued;
+    private volatile boolean running = true;
+
+    // writer thread only
+    private long written;
+    private long lastForceNanos = System.nanoTime();
+
+    // appending thread only
+    private long droppedLogged;
+    private long lastDropLogNanos;
+
+    private MappedHistoryLog(Path dir, int recordsPerSegment, FsyncPolicy fsyncPolicy, long fsyncIntervalMillis,
+                             int queueCapacity, long appendTimeoutMillis) {
+        this.dir = dir;
+        this.recordsPerSegment = recordsPerSegment;
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(fsyncIntervalMillis);
+        this.appendTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(appendTimeoutMillis);
+        this.pending = new LinkedBlockingQueue<>(queueCapacity);
+        this.writer = new Thread(this::writeLoop, "history-writer");
+        this.writer.setDaemon(true);
+    }
+
+    /**
+     * Opens (or creates) the log in {@code dir}, recovering the record count from the tail
+     * segment, and starts the writer thread. A record that finds the queue full is dropped.
+     */
+    public static MappedHistoryLog open(Path dir, long segmentBytes, FsyncPolicy fsyncPolicy,
+                                        long fsyncIntervalMillis, int queueCapacity) throws IOException {
+        return open(dir, segmentBytes, fsyncPolicy, fsyncIntervalMillis, queueCapacity, DEFAULT_APPEND_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * As {@link #open(Path, long, FsyncPolicy, long, int)}, waiting up to
+     * {@code appendTimeoutMillis} for room in a full queue before a record is dropped.
+     */
+    public static MappedHistoryLog open(Path dir, long segmentBytes, FsyncPolicy fsyncPolicy,
+                                        long fsyncIntervalMillis, int queueCapacity,
+                                        long appendTimeoutMillis) throws IOException {
+        if (appendTimeoutMillis < 0) {
+            throw new IllegalArgumentException("append timeout must not be negative: " + appendTimeoutMillis);
+        }
+        if (segmentBytes < RECORD_BYTES || segmentBytes > Integer.MAX_VALUE || segmentBytes % RECORD_BYTES != 0) {
+            throw new IllegalArgumentException("segment size must be a multiple of " + RECORD_BYTES
+                    + " bytes below 2 GB: " + segmentBytes);
+        }
+        Files.createDirectories(dir);
+        MappedHistoryLog log = new MappedHistoryLog(dir, (int) (segmentBytes / RECORD_BYTES), fsyncPolicy,
+                fsyncIntervalMillis, queueCapacity, appendTimeoutMillis);
+        log.recover();
+        log.writer.start();
+        return log;
+    }
+
+    private void recover() throws IOException {
+        long tailBase = -1;
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (!name.endsWith(SUFFIX)) continue;
+                long base;
+                try {
+                    base = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+                } catch (NumberFormatException e) {
+                    base = -1;
+                }
+                if (base < 0) {
+                    log.warn("ignoring {}: history segments are named after their first record number", file);
+                    continue;
+                }
+                if (base % recordsPerSegment != 0) {
+                    throw new IllegalStateException("segment " + file + " does not match a segment size of "
+                            + recordsPerSegment + " records");
+                }
+                tailBase = Math.max(tailBase, base);
+            }
+        }
+        if (tailBase < 0) {
+            written = 0;
+        } else {
+            tail = new Segment(tailBase / recordsPerSegment, map(tailBase / recordsPerSegment));
+            MappedByteBuffer mapped = tail.buffer();
+            int count = 0;
+            while (count < recordsPerSegment && mapped.get(count * RECORD_BYTES + OFF_MARKER) == COMMITTED) {
+                count++;
+            }
+            written = tailBase + count;
+        }
+        committed = written;
+        enqueued = written;
+    }
+
+    /**
+     * Hands the record to the writer thread. A full queue drops the record and counts it, or
+     * with an append timeout first holds the caller up until the writer makes room or it runs out.
+     */
+    @Override
+    public void append(TraficLightHistory record) {
+        if (pending.offer(record) || offer(record)) {
+            enqueued++;
+            return;
+        }
+        long total = dropped.incrementAndGet();
+        long now = System.nanoTime();
+        if (droppedLogged == 0 || now - lastDropLogNanos >= TimeUnit.SECONDS.toNanos(DROP_LOG_INTERVAL_SECONDS)) {
+            log.warn("history writer is behind: dropped {} record(s) since the last warning, {} in all",
+                    total - droppedLogged, total);
+            droppedLogged = total;
+            lastDropLogNanos = now;
+        }
+    }
+
+    private boolean offer(TraficLightHistory record) {
+        if (appendTimeoutNanos == 0) return false;
+        try {
+            return pending.offer(record, appendTimeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    @Override
+    public List<TraficLightHistory> latest(int limit) {
+        long end = committed;
+        int count = (int) Math.min(limit, end);
+        List<TraficLightHistory> out = new ArrayList<>(Math.max(count, 0));
+        for (long seq = end - 1; seq >= end - count; seq--) {
+            out.add(read(seq));
+        }
+        return out;
+    }
+
+    @Override
+    public long firstSequence() {
+        return 0;
+    }
+
+    @Override
+    public long endSequence() {
+        return committed;
+    }
+
+    @Override
+    public TraficLightHistory get(long seq) {
+        return seq < 0 || seq >= committed ? null : read(seq);
+    }
+
+    /** Reads only the timestamp field, so binary searches decode nothing else. */
+    @Override
+    public long timestampNanos(long seq) {
+        if (seq < 0 || seq >= committed) return Long.MIN_VALUE;
+        MappedByteBuffer segment = segment(seq / recordsPerSegment);
+        return segment.getLong((int) (seq % recordsPerSegment) * RECORD_BYTES + OFF_TIMESTAMP);
+    }
+
+    /** Total number of records readable from the log. */
+    public long size() {
+        return committed;
+    }
+
+    /** Records {@link #append} gave up on because the writer was a whole queue behind. */
+    @Override
+    public long droppedRecords() {
+        return dropped.get();
+    }
+
+    /** Segments mapped now: the tail and those kept for readers. */
+    int mappedSegments() {
+        synchronized (readSegments) {
+            return readSegments.size() + (tail == null ? 0 : 1);
+        }
+    }
+
+    /** Waits until every record appended so far is readable, then forces it to disk. */
+    public void flush() {
+        long target = enqueued;
+        while (committed < target && writer.isAlive()) {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+        Segment active = tail;
+        if (active != null) active.buffer().force();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // segments behind the tail were forced when the writer rolled over, unless the policy is NEVER
+        Segment active = tail;
+        if (active != null) active.buffer().force();
+    }
+
+    TraficLightHistory read(long seq) {
+        MappedByteBuffer segment = segment(seq / recordsPerSegment);
+        int offset = (int) (seq % recordsPerSegment) * RECORD_BYTES;
+        TraficLightHistory record = new TraficLightHistory();
+        record.setId(segment.getLong(offset + OFF_ID));
+        record.setTimestamp(EpochNanos.toInstant(segment.getLong(offset + OFF_TIMESTAMP)));
+        record.setDurationSeconds(segment.getLong(offset + OFF_DURATION));
+        byte direction = segment.get(offset + OFF_DIRECTION);
+        byte color = segment.get(offset + OFF_COLOR);
+        record.setDirection(direction < 0 ? null : DIRECTIONS[direction]);
+        record.setColors(color < 0 ? null : COLORS[color]);
+        return record;
+    }
+
+    private void writeLoop() {
+        List<TraficLightHistory> batch = new ArrayList<>(MAX_BATCH);
+        while (running || !pending.isEmpty()) {
+            TraficLightHistory first;
+            try {
+                first = pending.poll(10, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                continue;
+            }
+            if (first == null) {
+                maybeForce();
+                continue;
+            }
+            batch.add(first);
+            pending.drainTo(batch, MAX_BATCH - 1);
+            for (TraficLightHistory record : batch) {
+                write(record);
+            }
+            batch.clear();
+            committed = written;
+            if (fsyncPolicy == FsyncPolicy.BATCH) {
+                activeSegment().force();
+                lastForceNanos = System.nanoTime();
+            } else {
+                maybeForce();
+            }
+        }
+    }
+
+    private void write(TraficLightHistory record) {
+        int offset = (int) (written % recordsPerSegment) * RECORD_BYTES;
+        MappedByteBuffer segment = tailSegment(written / recordsPerSegment);
+        long nanos = record.getTimestamp() == null ? 0 : EpochNanos.of(record.getTimestamp());
+        segment.putLong(offset + OFF_ID, record.getId() == null ? 0 : record.getId());
+        segment.putLong(offset + OFF_TIMESTAMP, nanos);
+        segment.putLong(offset + OFF_DURATION, record.getDurationSeconds());
+        segment.put(offset + OFF_DIRECTION, record.getDirection() == null ? -1 : (byte) record.getDirection().ordinal());
+        segment.put(offset + OFF_COLOR, record.getColors() == null ? -1 : (byte) record.getColors().ordinal());
+        segment.put(offset + OFF_MARKER, COMMITTED);
+        written++;
+    }
+
+    private void maybeForce() {
+        if (fsyncPolicy != FsyncPolicy.INTERVAL || written == 0) return;
+        long now = System.nanoTime();
+        if (now - lastForceNanos >= fsyncIntervalNanos) {
+            activeSegment().force();
+            lastForceNanos = now;
+        }
+    }
+
+    private MappedByteBuffer activeSegment() {
+        return tailSegment(Math.max(written - 1, 0) / recordsPerSegment);
+    }
+
+    /** The segment {@code index} for the writer, rolling the tail over to it if need be. */
+    private MappedByteBuffer tailSegment(long index) {
+        Segment current = tail;
+        if (current != null && current.index() == index) return current.buffer();
+        if (current != null && fsyncPolicy != FsyncPolicy.NEVER) {
+            // rolling over: the previous segment will not be forced again
+            current.buffer().force();
+        }
+        MappedByteBuffer mapped = map(index);
+        tail = new Segment(index, mapped);
+        return mapped;
+    }
+
+    /** The segment {@code index} for a reader: the tail, or one mapped again if it has been dropped. */
+    private MappedByteBuffer segment(long index) {
+        Segment current = tail;
+        if (current != null && current.index() == index) return current.buffer();
+        synchronized (readSegments) {
+            return readSegments.computeIfAbsent(index, this::map);
+        }
+    }
+
+    private MappedByteBuffer map(long index) {
+        Path file = dir.resolve(String.format("%020d%s", index * recordsPerSegment, SUFFIX));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) recordsPerSegment * RECORD_BYTES);
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot map history segment " + file, e);
+        }
+    }
+
+    private record Segment(long index, MappedByteBuffer buffer) {
+    }
+}
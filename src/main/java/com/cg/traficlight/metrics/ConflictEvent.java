@@ -0,0 +1,22 @@
+package com.cg.traficlight.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.cg.traficlight.Conflict")
+@Label("Conflicting Greens")
+@Category("Traffic Light")
+@Description("An inactive direction was GREEN; the cycle was paused")
+final class ConflictEvent extends jdk.jfr.Event {
+
+    @Label("Phase Index")
+    long phaseIndex;
+
+    @Label("Direction")
+    String direction;
+
+    @Label("Color")
+    String color;
+}
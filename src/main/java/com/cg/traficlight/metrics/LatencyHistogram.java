@@ -0,0 +1,79 @@
+package com.cg.traficlight.metrics;
+
+import com.cg.traficlight.model.HistogramSnapshot;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram in nanoseconds, laid out like an HdrHistogram: every power of two
+ * is split into {@value #SUB_BUCKETS} linear sub-buckets, so any value is kept to within about
+ * 6% using under a thousand counters. Recording is a handful of atomic increments and never
+ * allocates; reading walks a copy of the counters.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /** Adds one value; negative values count as zero. */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        counts.incrementAndGet(index(value));
+        sum.add(value);
+        if (value > max.get()) {
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    public HistogramSnapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        HistogramSnapshot snapshot = new HistogramSnapshot();
+        snapshot.setCount(count);
+        if (count == 0) return snapshot;
+        long maxNanos = max.get();
+        snapshot.setMeanNanos(sum.sum() / count);
+        snapshot.setP50Nanos(Math.min(percentile(copy, count, 0.50), maxNanos));
+        snapshot.setP90Nanos(Math.min(percentile(copy, count, 0.90), maxNanos));
+        snapshot.setP99Nanos(Math.min(percentile(copy, count, 0.99), maxNanos));
+        snapshot.setP999Nanos(Math.min(percentile(copy, count, 0.999), maxNanos));
+        snapshot.setMaxNanos(maxNanos);
+        return snapshot;
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /** Largest value that lands in {@code index}. */
+    static long highestValue(int index) {
+        if (index < SUB_BUCKETS) return index;
+        int shift = index / SUB_BUCKETS - 1;
+        long subBucket = SUB_BUCKETS + index % SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    private static long percentile(long[] counts, long total, double fraction) {
+        long rank = Math.max(1, (long) Math.ceil(total * fraction));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) return highestValue(i);
+        }
+        return highestValue(counts.length - 1);
+    }
+}
@@ -0,0 +1,23 @@
+package com.cg.traficlight.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+@Name("com.cg.traficlight.Lock")
+@Label("Service Lock")
+@Category("Traffic Light")
+final class LockEvent extends jdk.jfr.Event {
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Wait Time")
+    @Timespan
+    long waitTime;
+
+    @Label("Hold Time")
+    @Timespan
+    long holdTime;
+}
@@ -0,0 +1,11 @@
+package com.cg.traficlight.metrics;
+
+/** Service operations whose time waiting for and holding the service lock is measured. */
+public enum LockOperation {
+    SET_SEQUENCE,
+    SET_PLAN,
+    COORDINATE,
+    PAUSE,
+    RESUME,
+    PREEMPT
+}
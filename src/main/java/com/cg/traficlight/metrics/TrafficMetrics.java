@@ -0,0 +1,129 @@
+package com.cg.traficlight.metrics;
+
+import com.cg.traficlight.model.Colors;
+import com.cg.traficlight.model.Directions;
+import com.cg.traficlight.model.HistogramSnapshot;
+import com.cg.traficlight.model.MetricsReport;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Transition lateness, service lock wait and hold times and request latency, kept in
+ * {@link LatencyHistogram}s and mirrored as JFR events.
+ * <p>
+ * Off unless {@code metrics.enabled=true}: callers check {@link #isEnabled()} (or get a zero
+ * from {@link #startTimer()}) before reading the clock, so the disabled hot path pays one field
+ * read. Conflicting greens are counted either way since they are rare and always worth knowing.
+ */
+@Component
+public class TrafficMetrics {
+
+    @Value("${metrics.enabled:false}")
+    private boolean enabled;
+
+    private final LatencyHistogram transitionLateness = new LatencyHistogram();
+    private final LatencyHistogram[] lockWait = histograms(LockOperation.values().length);
+    private final LatencyHistogram[] lockHold = histograms(LockOperation.values().length);
+    private final LatencyHistogram statusRequests = new LatencyHistogram();
+    private final LatencyHistogram historyRequests = new LatencyHistogram();
+    private final LongAdder conflicts = new LongAdder();
+
+    public TrafficMetrics() {
+    }
+
+    public TrafficMetrics(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Current time for a later {@code record...Request(start)}, or 0 when disabled. */
+    public long startTimer() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    public void recordTransition(long latenessNanos, long phaseIndex, Directions direction, Colors color) {
+        if (!enabled) return;
+        transitionLateness.record(latenessNanos);
+        TransitionEvent event = new TransitionEvent();
+        if (event.shouldCommit()) {
+            event.phaseIndex = phaseIndex;
+            event.direction = name(direction);
+            event.color = name(color);
+            event.lateness = latenessNanos;
+            event.commit();
+        }
+    }
+
+    public void recordLock(LockOperation operation, long waitNanos, long holdNanos) {
+        if (!enabled) return;
+        lockWait[operation.ordinal()].record(waitNanos);
+        lockHold[operation.ordinal()].record(holdNanos);
+        LockEvent event = new LockEvent();
+        if (event.shouldCommit()) {
+            event.operation = operation.name();
+            event.waitTime = waitNanos;
+            event.holdTime = holdNanos;
+            event.commit();
+        }
+    }
+
+    public void recordStatusRequest(long start) {
+        if (start != 0) statusRequests.record(System.nanoTime() - start);
+    }
+
+    public void recordHistoryRequest(long start) {
+        if (start != 0) historyRequests.record(System.nanoTime() - start);
+    }
+
+    public void recordConflict(long phaseIndex, Directions direction, Colors color) {
+        conflicts.increment();
+        ConflictEvent event = new ConflictEvent();
+        if (event.shouldCommit()) {
+            event.phaseIndex = phaseIndex;
+            event.direction = name(direction);
+            event.color = name(color);
+            event.commit();
+        }
+    }
+
+    public long conflicts() {
+        return conflicts.sum();
+    }
+
+    public MetricsReport report() {
+        MetricsReport report = new MetricsReport();
+        report.setEnabled(enabled);
+        report.setConflicts(conflicts.sum());
+        Map<String, HistogramSnapshot> histograms = new LinkedHashMap<>();
+        histograms.put("transition.lateness", transitionLateness.snapshot());
+        for (LockOperation operation : LockOperation.values()) {
+            String name = operation.name().toLowerCase(Locale.ROOT).replace('_', '-');
+            histograms.put("lock.wait." + name, lockWait[operation.ordinal()].snapshot());
+            histograms.put("lock.hold." + name, lockHold[operation.ordinal()].snapshot());
+        }
+        histograms.put("request.status", statusRequests.snapshot());
+        histograms.put("request.history", historyRequests.snapshot());
+        report.setHistograms(histograms);
+        return report;
+    }
+
+    private static LatencyHistogram[] histograms(int count) {
+        LatencyHistogram[] histograms = new LatencyHistogram[count];
+        for (int i = 0; i < count; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+        return histograms;
+    }
+
+    private static String name(Enum<?> value) {
+        return value == null ? null : value.name();
+    }
+}
@@ -0,0 +1,28 @@
+package com.cg.traficlight.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+@Name("com.cg.traficlight.Transition")
+@Label("Phase Transition")
+@Category("Traffic Light")
+@Description("A phase ended and the next one started")
+final class TransitionEvent extends jdk.jfr.Event {
+
+    @Label("Phase Index")
+    long phaseIndex;
+
+    @Label("Direction")
+    String direction;
+
+    @Label("Color")
+    String color;
+
+    @Label("Lateness")
+    @Description("Actual minus scheduled end of the phase")
+    @Timespan
+    long lateness;
+}
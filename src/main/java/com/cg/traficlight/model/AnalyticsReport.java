@@ -0,0 +1,17 @@
+package com.cg.traficlight.model;
+
+import java.util.Map;
+
+public class AnalyticsReport {
+
+    /** Keyed by window: {@code 1m}, {@code 15m}, {@code 1h} and {@code 24h}. */
+    private Map<String, WindowStats> windows;
+
+    public Map<String, WindowStats> getWindows() {
+        return windows;
+    }
+
+    public void setWindows(Map<String, WindowStats> windows) {
+        this.windows = windows;
+    }
+}
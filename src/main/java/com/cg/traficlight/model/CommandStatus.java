@@ -0,0 +1,79 @@
+package com.cg.traficlight.model;
+
+/** Progress of the command queue: versions handed out and applied, and how much was folded together. */
+public class CommandStatus {
+
+    /** Version of the latest command accepted. */
+    private long submitted;
+
+    /** Every command up to this version has been taken; all but those of failed batches are in effect. */
+    private long applied;
+
+    /** Commands replaced by a later one before they were applied. */
+    private long coalesced;
+
+    private long batches;
+
+    /** Batches the service failed on; none of their commands is in effect. */
+    private long failed;
+
+    private String lastFailure;
+
+    private long windowMillis;
+
+    public long getSubmitted() {
+        return submitted;
+    }
+
+    public void setSubmitted(long submitted) {
+        this.submitted = submitted;
+    }
+
+    public long getApplied() {
+        return applied;
+    }
+
+    public void setApplied(long applied) {
+        this.applied = applied;
+    }
+
+    public long getCoalesced() {
+        return coalesced;
+    }
+
+    public void setCoalesced(long coalesced) {
+        this.coalesced = coalesced;
+    }
+
+    public long getBatches() {
+        return batches;
+    }
+
+    public void setBatches(long batches) {
+        this.batches = batches;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public void setFailed(long failed) {
+        this.failed = failed;
+    }
+
+    public String getLastFailure() {
+        return lastFailure;
+    }
+
+    public void setLastFailure(String lastFailure) {
+        this.lastFailure = lastFailure;
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    public void setWindowMillis(long windowMillis) {
+        this.windowMillis = windowMillis;
+    }
+}
@@ -0,0 +1,41 @@
+package com.cg.traficlight.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * Places this controller on a corridor's shared cycle: every cycle starts at
+ * {@code epoch + offsetMillis + k * cycle}.
+ */
+public class Coordination {
+
+    private LocalDateTime epoch;
+
+    private long offsetMillis;
+
+    /** Jump straight to the aligned phase instead of easing onto it over a few cycles. */
+    private boolean immediate;
+
+    public LocalDateTime getEpoch() {
+        return epoch;
+    }
+
+    public void setEpoch(LocalDateTime epoch) {
+        this.epoch = epoch;
+    }
+
+    public long getOffsetMillis() {
+        return offsetMillis;
+    }
+
+    public void setOffsetMillis(long offsetMillis) {
+        this.offsetMillis = offsetMillis;
+    }
+
+    public boolean isImmediate() {
+        return immediate;
+    }
+
+    public void setImmediate(boolean immediate) {
+        this.immediate = immediate;
+    }
+}
@@ -0,0 +1,70 @@
+package com.cg.traficlight.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * Coordination state: the shared epoch and offset, how far the latest cycle started from its
+ * target (positive when late) and the change being made to the cycle in progress.
+ */
+public class CoordinationStatus {
+
+    private boolean coordinated;
+
+    private LocalDateTime epoch;
+
+    private long offsetMillis;
+
+    private long cycleMillis;
+
+    private long errorMillis;
+
+    private long correctionMillis;
+
+    public boolean isCoordinated() {
+        return coordinated;
+    }
+
+    public void setCoordinated(boolean coordinated) {
+        this.coordinated = coordinated;
+    }
+
+    public LocalDateTime getEpoch() {
+        return epoch;
+    }
+
+    public void setEpoch(LocalDateTime epoch) {
+        this.epoch = epoch;
+    }
+
+    public long getOffsetMillis() {
+        return offsetMillis;
+    }
+
+    public void setOffsetMillis(long offsetMillis) {
+        this.offsetMillis = offsetMillis;
+    }
+
+    public long getCycleMillis() {
+        return cycleMillis;
+    }
+
+    public void setCycleMillis(long cycleMillis) {
+        this.cycleMillis = cycleMillis;
+    }
+
+    public long getErrorMillis() {
+        return errorMillis;
+    }
+
+    public void setErrorMillis(long errorMillis) {
+        this.errorMillis = errorMillis;
+    }
+
+    public long getCorrectionMillis() {
+        return correctionMillis;
+    }
+
+    public void setCorrectionMillis(long correctionMillis) {
+        this.correctionMillis = correctionMillis;
+    }
+}
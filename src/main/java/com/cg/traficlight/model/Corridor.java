@@ -0,0 +1,73 @@
+package com.cg.traficlight.model;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An arterial to coordinate: its intersections in the direction of travel, the design speed and
+ * the common signal timing. {@code POST /api/v1/corridor} fills in each intersection's offset,
+ * the cycle length and the green band the offsets achieve.
+ */
+public class Corridor {
+
+    private LocalDateTime epoch;
+
+    private double speedKmh;
+
+    private SignalSequence sequence = new SignalSequence();
+
+    private List<CorridorIntersection> intersections = new ArrayList<>();
+
+    private long cycleMillis;
+
+    private long bandMillis;
+
+    public LocalDateTime getEpoch() {
+        return epoch;
+    }
+
+    public void setEpoch(LocalDateTime epoch) {
+        this.epoch = epoch;
+    }
+
+    public double getSpeedKmh() {
+        return speedKmh;
+    }
+
+    public void setSpeedKmh(double speedKmh) {
+        this.speedKmh = speedKmh;
+    }
+
+    public SignalSequence getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(SignalSequence sequence) {
+        this.sequence = sequence;
+    }
+
+    public List<CorridorIntersection> getIntersections() {
+        return intersections;
+    }
+
+    public void setIntersections(List<CorridorIntersection> intersections) {
+        this.intersections = intersections;
+    }
+
+    public long getCycleMillis() {
+        return cycleMillis;
+    }
+
+    public void setCycleMillis(long cycleMillis) {
+        this.cycleMillis = cycleMillis;
+    }
+
+    public long getBandMillis() {
+        return bandMillis;
+    }
+
+    public void setBandMillis(long bandMillis) {
+        this.bandMillis = bandMillis;
+    }
+}
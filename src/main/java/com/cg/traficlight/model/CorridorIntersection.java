@@ -0,0 +1,43 @@
+package com.cg.traficlight.model;
+
+/** One intersection of a {@link Corridor}; the distance is from the previous intersection. */
+public class CorridorIntersection {
+
+    private String id;
+
+    private double distanceMeters;
+
+    private long offsetMillis;
+
+    public CorridorIntersection() {
+    }
+
+    public CorridorIntersection(String id, double distanceMeters) {
+        this.id = id;
+        this.distanceMeters = distanceMeters;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public double getDistanceMeters() {
+        return distanceMeters;
+    }
+
+    public void setDistanceMeters(double distanceMeters) {
+        this.distanceMeters = distanceMeters;
+    }
+
+    public long getOffsetMillis() {
+        return offsetMillis;
+    }
+
+    public void setOffsetMillis(long offsetMillis) {
+        this.offsetMillis = offsetMillis;
+    }
+}
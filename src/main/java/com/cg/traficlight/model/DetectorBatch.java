@@ -0,0 +1,25 @@
+package com.cg.traficlight.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Detector events posted together to {@code /api/v1/detectors/events}. */
+public class DetectorBatch {
+
+    private List<DetectorEvent> events = new ArrayList<>();
+
+    public DetectorBatch() {
+    }
+
+    public DetectorBatch(List<DetectorEvent> events) {
+        this.events = events;
+    }
+
+    public List<DetectorEvent> getEvents() {
+        return events;
+    }
+
+    public void setEvents(List<DetectorEvent> events) {
+        this.events = events;
+    }
+}
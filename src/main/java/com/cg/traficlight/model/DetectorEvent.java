@@ -0,0 +1,48 @@
+package com.cg.traficlight.model;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+
+/** Vehicles counted by one loop detector on an approach since its previous event. */
+public class DetectorEvent {
+
+    private String detector;
+
+    private Directions direction;
+
+    private int vehicles = 1;
+
+    // bound through the setters, so a missing "vehicles" keeps its default of one
+    @JsonCreator
+    public DetectorEvent() {
+    }
+
+    public DetectorEvent(String detector, Directions direction, int vehicles) {
+        this.detector = detector;
+        this.direction = direction;
+        this.vehicles = vehicles;
+    }
+
+    public String getDetector() {
+        return detector;
+    }
+
+    public void setDetector(String detector) {
+        this.detector = detector;
+    }
+
+    public Directions getDirection() {
+        return direction;
+    }
+
+    public void setDirection(Directions direction) {
+        this.direction = direction;
+    }
+
+    public int getVehicles() {
+        return vehicles;
+    }
+
+    public void setVehicles(int vehicles) {
+        this.vehicles = vehicles;
+    }
+}
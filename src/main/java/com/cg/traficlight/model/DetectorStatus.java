@@ -0,0 +1,60 @@
+package com.cg.traficlight.model;
+
+import java.util.Map;
+
+/**
+ * Detector ingestion counters: events accepted and rejected so far, the vehicles waiting on each
+ * approach (counted since its last green started) and the green each approach was last given.
+ */
+public class DetectorStatus {
+
+    private boolean adaptive;
+
+    private long accepted;
+
+    private long rejected;
+
+    private Map<Directions, Long> waiting;
+
+    private Map<Directions, Long> lastGreenMillis;
+
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    public void setAdaptive(boolean adaptive) {
+        this.adaptive = adaptive;
+    }
+
+    public long getAccepted() {
+        return accepted;
+    }
+
+    public void setAccepted(long accepted) {
+        this.accepted = accepted;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    public void setRejected(long rejected) {
+        this.rejected = rejected;
+    }
+
+    public Map<Directions, Long> getWaiting() {
+        return waiting;
+    }
+
+    public void setWaiting(Map<Directions, Long> waiting) {
+        this.waiting = waiting;
+    }
+
+    public Map<Directions, Long> getLastGreenMillis() {
+        return lastGreenMillis;
+    }
+
+    public void setLastGreenMillis(Map<Directions, Long> lastGreenMillis) {
+        this.lastGreenMillis = lastGreenMillis;
+    }
+}
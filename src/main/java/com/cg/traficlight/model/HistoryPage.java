@@ -0,0 +1,35 @@
+package com.cg.traficlight.model;
+
+import java.util.List;
+
+public class HistoryPage {
+
+    private List<TraficLightHistory> records;
+
+    private Long nextCursor;
+
+    public HistoryPage() {
+    }
+
+    public HistoryPage(List<TraficLightHistory> records, Long nextCursor) {
+        this.records = records;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<TraficLightHistory> getRecords() {
+        return records;
+    }
+
+    public void setRecords(List<TraficLightHistory> records) {
+        this.records = records;
+    }
+
+    /** Cursor for the next (older) page, or null when there is nothing left. */
+    public Long getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(Long nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+}
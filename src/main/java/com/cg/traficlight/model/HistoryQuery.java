@@ -0,0 +1,77 @@
+package com.cg.traficlight.model;
+
+import java.time.Instant;
+
+/**
+ * Filter for a history query. Every field is optional; results come newest first.
+ */
+public class HistoryQuery {
+
+    /** Inclusive lower bound on the transition timestamp. */
+    private Instant from;
+
+    /** Exclusive upper bound on the transition timestamp. */
+    private Instant to;
+
+    private Directions direction;
+
+    private Colors color;
+
+    /** {@link HistoryPage#getNextCursor()} of the previous page; only older records are returned. */
+    private Long cursor;
+
+    private int limit;
+
+    public Instant getFrom() {
+        return from;
+    }
+
+    public void setFrom(Instant from) {
+        this.from = from;
+    }
+
+    public Instant getTo() {
+        return to;
+    }
+
+    public void setTo(Instant to) {
+        this.to = to;
+    }
+
+    public Directions getDirection() {
+        return direction;
+    }
+
+    public void setDirection(Directions direction) {
+        this.direction = direction;
+    }
+
+    public Colors getColor() {
+        return color;
+    }
+
+    public void setColor(Colors color) {
+        this.color = color;
+    }
+
+    public Long getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(Long cursor) {
+        this.cursor = cursor;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+
+    public boolean matches(TraficLightHistory record) {
+        return (direction == null || direction == record.getDirection())
+                && (color == null || color == record.getColors());
+    }
+}
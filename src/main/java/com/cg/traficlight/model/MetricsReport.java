@@ -0,0 +1,48 @@
+package com.cg.traficlight.model;
+
+import java.util.Map;
+
+public class MetricsReport {
+
+    private boolean enabled;
+
+    /** Times the conflicting-greens check paused the cycle; counted even when disabled. */
+    private long conflicts;
+
+    /** History records lost because the store's writer was a whole queue behind. */
+    private long historyDropped;
+
+    private Map<String, HistogramSnapshot> histograms;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getConflicts() {
+        return conflicts;
+    }
+
+    public void setConflicts(long conflicts) {
+        this.conflicts = conflicts;
+    }
+
+    public long getHistoryDropped() {
+        return historyDropped;
+    }
+
+    public void setHistoryDropped(long historyDropped) {
+        this.historyDropped = historyDropped;
+    }
+
+    public Map<String, HistogramSnapshot> getHistograms() {
+        return histograms;
+    }
+
+    public void setHistograms(Map<String, HistogramSnapshot> histograms) {
+        this.histograms = histograms;
+    }
+}
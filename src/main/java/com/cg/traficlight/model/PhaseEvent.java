@@ -0,0 +1,86 @@
+package com.cg.traficlight.model;
+
+import java.time.Instant;
+
+/**
+ * Something that happened to the signal cycle, pushed to stream subscribers.
+ * Immutable; the JSON form is built once and shared by every subscriber.
+ */
+public final class PhaseEvent {
+
+    private final long sequence;
+    private final PhaseEventType type;
+    private final long phaseIndex;
+    private final Directions direction;
+    private final Colors color;
+    private final long durationMillis;
+    private final boolean paused;
+    private final Instant timestamp;
+
+    private String json;
+
+    public PhaseEvent(long sequence, PhaseEventType type, long phaseIndex, Directions direction, Colors color,
+                      long durationMillis, boolean paused, Instant timestamp) {
+        this.sequence = sequence;
+        this.type = type;
+        this.phaseIndex = phaseIndex;
+        this.direction = direction;
+        this.color = color;
+        this.durationMillis = durationMillis;
+        this.paused = paused;
+        this.timestamp = timestamp;
+    }
+
+    /** Increases by one per published event, so subscribers can spot events dropped for them. */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public PhaseEventType getType() {
+        return type;
+    }
+
+    public long getPhaseIndex() {
+        return phaseIndex;
+    }
+
+    public Directions getDirection() {
+        return direction;
+    }
+
+    public Colors getColor() {
+        return color;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    public Instant getTimestamp() {
+        return timestamp;
+    }
+
+    public String toJson() {
+        String s = json;
+        if (s == null) {
+            s = "{\"sequence\":" + sequence
+                    + ",\"type\":\"" + type
+                    + "\",\"phaseIndex\":" + phaseIndex
+                    + ",\"direction\":" + quoted(direction)
+                    + ",\"color\":" + quoted(color)
+                    + ",\"durationMillis\":" + durationMillis
+                    + ",\"paused\":" + paused
+                    + ",\"timestamp\":\"" + timestamp + "\"}";
+            json = s;
+        }
+        return s;
+    }
+
+    private static String quoted(Enum<?> value) {
+        return value == null ? "null" : "\"" + value.name() + "\"";
+    }
+}
@@ -0,0 +1,5 @@
+package com.cg.traficlight.model;
+
+public enum PhaseEventType {
+    TRANSITION, PAUSED, RESUMED, SEQUENCE_CHANGED, FAILSAFE, PREEMPTION;
+}
@@ -0,0 +1,52 @@
+package com.cg.traficlight.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A data-driven signal plan: signal groups, the pairs of groups that must never be released
+ * together, and the cycle of phases. Compiled and validated as a whole before it is activated.
+ */
+public class PhasePlan {
+
+    private String name;
+
+    private List<SignalGroup> groups = new ArrayList<>();
+
+    /** Pairs of group names that conflict, e.g. {@code [["NS-through", "EW-through"]]}. */
+    private List<List<String>> conflicts = new ArrayList<>();
+
+    private List<PlanPhase> phases = new ArrayList<>();
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public List<SignalGroup> getGroups() {
+        return groups;
+    }
+
+    public void setGroups(List<SignalGroup> groups) {
+        this.groups = groups;
+    }
+
+    public List<List<String>> getConflicts() {
+        return conflicts;
+    }
+
+    public void setConflicts(List<List<String>> conflicts) {
+        this.conflicts = conflicts;
+    }
+
+    public List<PlanPhase> getPhases() {
+        return phases;
+    }
+
+    public void setPhases(List<PlanPhase> phases) {
+        this.phases = phases;
+    }
+}
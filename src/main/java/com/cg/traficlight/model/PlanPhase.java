@@ -0,0 +1,58 @@
+package com.cg.traficlight.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** One step of a {@link PhasePlan}: the groups shown green or yellow, every other group red. */
+public class PlanPhase {
+
+    private String name;
+
+    private long durationSeconds;
+
+    private List<String> green = new ArrayList<>();
+
+    private List<String> yellow = new ArrayList<>();
+
+    public PlanPhase() {
+    }
+
+    public PlanPhase(String name, long durationSeconds, List<String> green, List<String> yellow) {
+        this.name = name;
+        this.durationSeconds = durationSeconds;
+        this.green = green;
+        this.yellow = yellow;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public long getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public void setDurationSeconds(long durationSeconds) {
+        this.durationSeconds = durationSeconds;
+    }
+
+    public List<String> getGreen() {
+        return green;
+    }
+
+    public void setGreen(List<String> green) {
+        this.green = green;
+    }
+
+    public List<String> getYellow() {
+        return yellow;
+    }
+
+    public void setYellow(List<String> yellow) {
+        this.yellow = yellow;
+    }
+}
@@ -0,0 +1,57 @@
+package com.cg.traficlight.model;
+
+import java.util.Map;
+
+/** The active plan, the current phase and the color of every signal group in it. */
+public class PlanStatus {
+
+    private String plan;
+
+    private int phaseIndex;
+
+    private String phase;
+
+    private Map<String, Colors> groups;
+
+    private boolean paused;
+
+    public String getPlan() {
+        return plan;
+    }
+
+    public void setPlan(String plan) {
+        this.plan = plan;
+    }
+
+    public int getPhaseIndex() {
+        return phaseIndex;
+    }
+
+    public void setPhaseIndex(int phaseIndex) {
+        this.phaseIndex = phaseIndex;
+    }
+
+    public String getPhase() {
+        return phase;
+    }
+
+    public void setPhase(String phase) {
+        this.phase = phase;
+    }
+
+    public Map<String, Colors> getGroups() {
+        return groups;
+    }
+
+    public void setGroups(Map<String, Colors> groups) {
+        this.groups = groups;
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    public void setPaused(boolean paused) {
+        this.paused = paused;
+    }
+}
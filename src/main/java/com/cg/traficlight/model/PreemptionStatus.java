@@ -0,0 +1,87 @@
+package com.cg.traficlight.model;
+
+public class PreemptionStatus {
+
+    private boolean active;
+
+    // the approach given green, and CLEARING, GREEN or RETURNING while active
+    private Directions direction;
+
+    private String stage;
+
+    private long preemptions;
+
+    private long clearanceMillis;
+
+    // request to green of the latest preemption: the clearance it waited for, then the whole of it
+    private long lastClearanceMillis;
+
+    private long lastRequestToGreenMicros;
+
+    // request to green less the clearance: lock wait, scheduling and timer lateness
+    private HistogramSnapshot overhead;
+
+    public boolean isActive() {
+        return active;
+    }
+
+    public void setActive(boolean active) {
+        this.active = active;
+    }
+
+    public Directions getDirection() {
+        return direction;
+    }
+
+    public void setDirection(Directions direction) {
+        this.direction = direction;
+    }
+
+    public String getStage() {
+        return stage;
+    }
+
+    public void setStage(String stage) {
+        this.stage = stage;
+    }
+
+    public long getPreemptions() {
+        return preemptions;
+    }
+
+    public void setPreemptions(long preemptions) {
+        this.preemptions = preemptions;
+    }
+
+    public long getClearanceMillis() {
+        return clearanceMillis;
+    }
+
+    public void setClearanceMillis(long clearanceMillis) {
+        this.clearanceMillis = clearanceMillis;
+    }
+
+    public long getLastClearanceMillis() {
+        return lastClearanceMillis;
+    }
+
+    public void setLastClearanceMillis(long lastClearanceMillis) {
+        this.lastClearanceMillis = lastClearanceMillis;
+    }
+
+    public long getLastRequestToGreenMicros() {
+        return lastRequestToGreenMicros;
+    }
+
+    public void setLastRequestToGreenMicros(long lastRequestToGreenMicros) {
+        this.lastRequestToGreenMicros = lastRequestToGreenMicros;
+    }
+
+    public HistogramSnapshot getOverhead() {
+        return overhead;
+    }
+
+    public void setOverhead(HistogramSnapshot overhead) {
+        this.overhead = overhead;
+    }
+}
@@ -0,0 +1,70 @@
+package com.cg.traficlight.model;
+
+import java.time.Instant;
+
+public class ReplicationStatus {
+
+    // NONE, PRIMARY or STANDBY; a standby that took over reports PRIMARY
+    private String role;
+
+    // standby: following the primary right now
+    private boolean connected;
+
+    // primary: standbys receiving the feed
+    private int standbys;
+
+    // last event sent (primary) or folded in (standby)
+    private long sequence;
+
+    private long batches;
+
+    private Instant takenOver;
+
+    public String getRole() {
+        return role;
+    }
+
+    public void setRole(String role) {
+        this.role = role;
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    public void setConnected(boolean connected) {
+        this.connected = connected;
+    }
+
+    public int getStandbys() {
+        return standbys;
+    }
+
+    public void setStandbys(int standbys) {
+        this.standbys = standbys;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    public long getBatches() {
+        return batches;
+    }
+
+    public void setBatches(long batches) {
+        this.batches = batches;
+    }
+
+    public Instant getTakenOver() {
+        return takenOver;
+    }
+
+    public void setTakenOver(Instant takenOver) {
+        this.takenOver = takenOver;
+    }
+}
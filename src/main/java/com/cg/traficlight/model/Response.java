@@ -1,12 +1,12 @@
 package com.cg.traficlight.model;
 
-import java.util.EnumMap;
+import java.util.Map;
 
 public class Response {
 
     private Directions activeDirection;
 
-    private EnumMap <Directions,Colors> inactiveState;
+    private Map<Directions, Colors> inactiveState;
 
     private Colors activeColor;
 
@@ -39,11 +39,11 @@ public class Response {
         this.paused = paused;
     }
 
-    public EnumMap<Directions, Colors> getInactiveState() {
+    public Map<Directions, Colors> getInactiveState() {
         return inactiveState;
     }
 
-    public void setInactiveState(EnumMap<Directions, Colors> inactiveState) {
+    public void setInactiveState(Map<Directions, Colors> inactiveState) {
         this.inactiveState = inactiveState;
     }
 }
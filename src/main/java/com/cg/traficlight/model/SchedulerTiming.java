@@ -0,0 +1,84 @@
+package com.cg.traficlight.model;
+
+public class SchedulerTiming {
+
+    private SchedulingMode mode;
+
+    private long transitions;
+
+    private long resyncs;
+
+    private long lastDriftMicros;
+
+    private long meanDriftMicros;
+
+    private long maxDriftMicros;
+
+    private long lastJitterMicros;
+
+    private long maxJitterMicros;
+
+    public SchedulingMode getMode() {
+        return mode;
+    }
+
+    public void setMode(SchedulingMode mode) {
+        this.mode = mode;
+    }
+
+    public long getTransitions() {
+        return transitions;
+    }
+
+    public void setTransitions(long transitions) {
+        this.transitions = transitions;
+    }
+
+    public long getResyncs() {
+        return resyncs;
+    }
+
+    public void setResyncs(long resyncs) {
+        this.resyncs = resyncs;
+    }
+
+    public long getLastDriftMicros() {
+        return lastDriftMicros;
+    }
+
+    public void setLastDriftMicros(long lastDriftMicros) {
+        this.lastDriftMicros = lastDriftMicros;
+    }
+
+    public long getMeanDriftMicros() {
+        return meanDriftMicros;
+    }
+
+    public void setMeanDriftMicros(long meanDriftMicros) {
+        this.meanDriftMicros = meanDriftMicros;
+    }
+
+    public long getMaxDriftMicros() {
+        return maxDriftMicros;
+    }
+
+    public void setMaxDriftMicros(long maxDriftMicros) {
+        this.maxDriftMicros = maxDriftMicros;
+    }
+
+    public long getLastJitterMicros() {
+        return lastJitterMicros;
+    }
+
+    public void setLastJitterMicros(long lastJitterMicros) {
+        this.lastJitterMicros = lastJitterMicros;
+    }
+
+    public long getMaxJitterMicros() {
+        return maxJitterMicros;
+    }
+
+    public void setMaxJitterMicros(long maxJitterMicros) {
+        this.maxJitterMicros = maxJitterMicros;
+    }
+}
@@ -0,0 +1,8 @@
+package com.cg.traficlight.model;
+
+public enum SchedulingMode {
+    /** Each phase is timed from the moment the previous transition actually ran. */
+    RELATIVE,
+    /** Each phase boundary is derived from the cycle epoch, so lateness is not carried over. */
+    ABSOLUTE;
+}
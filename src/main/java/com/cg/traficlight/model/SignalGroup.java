@@ -0,0 +1,37 @@
+package com.cg.traficlight.model;
+
+/**
+ * One independently switched set of signal heads: a through movement, a protected turn, a
+ * pedestrian crossing. {@code direction} is the approach it is reported under in
+ * {@code /status}; it may be null for groups that belong to no approach.
+ */
+public class SignalGroup {
+
+    private String name;
+
+    private Directions direction;
+
+    public SignalGroup() {
+    }
+
+    public SignalGroup(String name, Directions direction) {
+        this.name = name;
+        this.direction = direction;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public Directions getDirection() {
+        return direction;
+    }
+
+    public void setDirection(Directions direction) {
+        this.direction = direction;
+    }
+}
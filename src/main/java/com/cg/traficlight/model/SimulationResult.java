@@ -0,0 +1,39 @@
+package com.cg.traficlight.model;
+
+import java.time.Instant;
+
+/** Outcome of advancing the virtual clock. */
+public class SimulationResult {
+
+    private long transitions;
+
+    private Instant clockTime;
+
+    private long elapsedMillis;
+
+    public long getTransitions() {
+        return transitions;
+    }
+
+    public void setTransitions(long transitions) {
+        this.transitions = transitions;
+    }
+
+    /** Virtual time after the advance. */
+    public Instant getClockTime() {
+        return clockTime;
+    }
+
+    public void setClockTime(Instant clockTime) {
+        this.clockTime = clockTime;
+    }
+
+    /** Wall-clock time the advance took. */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public void setElapsedMillis(long elapsedMillis) {
+        this.elapsedMillis = elapsedMillis;
+    }
+}
@@ -0,0 +1,123 @@
+package com.cg.traficlight.model;
+
+import tools.jackson.databind.ObjectMapper;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Status of the intersection for one phase, built once and shared by every reader.
+ * The {@link Response} rejects changes; the JSON bytes are written by the application's mapper
+ * the first time they are asked for and must be treated as read-only.
+ */
+public final class StatusSnapshot {
+
+    // a status only depends on the active light and the paused flag, so every one is built up front
+    private static final int COLOR_COUNT = Colors.values().length;
+    private static final StatusSnapshot[] CACHE = new StatusSnapshot[Directions.values().length * COLOR_COUNT * 2];
+
+    static {
+        for (Directions direction : Directions.values()) {
+            for (Colors color : Colors.values()) {
+                CACHE[key(direction, color, false)] = build(direction, color, false);
+                CACHE[key(direction, color, true)] = build(direction, color, true);
+            }
+        }
+    }
+
+    private final Response response;
+
+    // written on first use; two racing writers produce the same bytes
+    private volatile byte[] json;
+
+    private StatusSnapshot(Response response) {
+        this.response = response;
+    }
+
+    public static StatusSnapshot of(Directions activeDirection, Colors activeColor, boolean paused) {
+        return CACHE[key(activeDirection, activeColor, paused)];
+    }
+
+    /**
+     * Status for a phase that may light more than one approach. Falls back to the shared
+     * instance when every other approach is red, which is the case for the built-in cycle.
+     */
+    public static StatusSnapshot of(Directions activeDirection, Colors activeColor,
+                                    Map<Directions, Colors> inactiveState, boolean paused) {
+        boolean othersRed = activeDirection != null;
+        for (Map.Entry<Directions, Colors> e : inactiveState.entrySet()) {
+            if (e.getKey() != activeDirection && e.getValue() != Colors.RED) othersRed = false;
+        }
+        if (othersRed) return of(activeDirection, activeColor, paused);
+        EnumMap<Directions, Colors> lights = new EnumMap<>(Directions.class);
+        for (Directions direction : Directions.values()) {
+            if (direction != activeDirection) {
+                lights.put(direction, inactiveState.getOrDefault(direction, Colors.RED));
+            }
+        }
+        return new StatusSnapshot(new ReadOnlyResponse(activeDirection, activeColor, lights, paused));
+    }
+
+    private static int key(Directions direction, Colors color, boolean paused) {
+        return (direction.ordinal() * COLOR_COUNT + color.ordinal()) * 2 + (paused ? 1 : 0);
+    }
+
+    private static StatusSnapshot build(Directions activeDirection, Colors activeColor, boolean paused) {
+        EnumMap<Directions, Colors> lights = new EnumMap<>(Directions.class);
+        for (Directions direction : Directions.values()) {
+            if (direction != activeDirection) {
+                lights.put(direction, Colors.RED);
+            }
+        }
+        return new StatusSnapshot(new ReadOnlyResponse(activeDirection, activeColor, lights, paused));
+    }
+
+    public Response getResponse() {
+        return response;
+    }
+
+    /**
+     * The response as {@code mapper} writes it, serialized once and reused by every later call.
+     * Snapshots are shared across the process, so every caller should pass the same mapper.
+     */
+    public byte[] getJson(ObjectMapper mapper) {
+        byte[] bytes = json;
+        if (bytes == null) {
+            bytes = mapper.writeValueAsBytes(response);
+            json = bytes;
+        }
+        return bytes;
+    }
+
+    private static final class ReadOnlyResponse extends Response {
+
+        ReadOnlyResponse(Directions activeDirection, Colors activeColor, Map<Directions, Colors> inactiveState,
+                         boolean paused) {
+            super.setActiveDirection(activeDirection);
+            super.setActiveColor(activeColor);
+            super.setInactiveState(Collections.unmodifiableMap(inactiveState));
+            super.setPaused(paused);
+        }
+
+        @Override
+        public void setActiveDirection(Directions activeDirection) {
+            throw new UnsupportedOperationException("shared status snapshot");
+        }
+
+        @Override
+        public void setActiveColor(Colors activeColor) {
+            throw new UnsupportedOperationException("shared status snapshot");
+        }
+
+        @Override
+        public void setInactiveState(Map<Directions, Colors> inactiveState) {
+            throw new UnsupportedOperationException("shared status snapshot");
+        }
+
+        @Override
+        public void setPaused(boolean paused) {
+            throw new UnsupportedOperationException("shared status snapshot");
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.cg.traficlight.model;
+
+import java.time.Instant;
+
+public class TimePlanStatus {
+
+    private boolean enabled;
+
+    private int windows;
+
+    // the window whose timings are running; null until the first one is put in
+    private String activeWindow;
+
+    // the window in force by the clock; ahead of activeWindow until the cycle ends
+    private String dueWindow;
+
+    private boolean pending;
+
+    private Instant nextSwitch;
+
+    private long switches;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getWindows() {
+        return windows;
+    }
+
+    public void setWindows(int windows) {
+        this.windows = windows;
+    }
+
+    public String getActiveWindow() {
+        return activeWindow;
+    }
+
+    public void setActiveWindow(String activeWindow) {
+        this.activeWindow = activeWindow;
+    }
+
+    public String getDueWindow() {
+        return dueWindow;
+    }
+
+    public void setDueWindow(String dueWindow) {
+        this.dueWindow = dueWindow;
+    }
+
+    public boolean isPending() {
+        return pending;
+    }
+
+    public void setPending(boolean pending) {
+        this.pending = pending;
+    }
+
+    public Instant getNextSwitch() {
+        return nextSwitch;
+    }
+
+    public void setNextSwitch(Instant nextSwitch) {
+        this.nextSwitch = nextSwitch;
+    }
+
+    public long getSwitches() {
+        return switches;
+    }
+
+    public void setSwitches(long switches) {
+        this.switches = switches;
+    }
+}
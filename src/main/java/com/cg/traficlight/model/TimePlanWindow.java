@@ -0,0 +1,51 @@
+package com.cg.traficlight.model;
+
+/**
+ * One window of the weekly timetable ({@code timeplan.windows[n]}): the days it applies to, when
+ * it starts, and either the timings of the fixed cycle or a whole plan. It runs until the next
+ * window starts.
+ */
+public class TimePlanWindow {
+
+    /** {@code MON} to {@code SUN}, a range such as {@code MON-FRI}, a list such as {@code SAT,SUN}, or {@code DAILY}. */
+    private String days;
+
+    /** Start time as {@code HH:mm}. */
+    private String start;
+
+    private SignalSequence sequence;
+
+    private PhasePlan plan;
+
+    public String getDays() {
+        return days;
+    }
+
+    public void setDays(String days) {
+        this.days = days;
+    }
+
+    public String getStart() {
+        return start;
+    }
+
+    public void setStart(String start) {
+        this.start = start;
+    }
+
+    public SignalSequence getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(SignalSequence sequence) {
+        this.sequence = sequence;
+    }
+
+    public PhasePlan getPlan() {
+        return plan;
+    }
+
+    public void setPlan(PhasePlan plan) {
+        this.plan = plan;
+    }
+}
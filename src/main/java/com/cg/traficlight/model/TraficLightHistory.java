@@ -1,12 +1,12 @@
 package com.cg.traficlight.model;
 
-import java.time.LocalDateTime;
+import java.time.Instant;
 
 public class TraficLightHistory {
     private Long id;
     private Directions direction;
     private Colors colors;
-    private LocalDateTime timestamp;
+    private Instant timestamp;
     private long durationSeconds;
 
     public Long getId() {
@@ -25,11 +25,11 @@ public class TraficLightHistory {
         this.colors = colors;
     }
 
-    public LocalDateTime getTimestamp() {
+    public Instant getTimestamp() {
         return timestamp;
     }
 
-    public void setTimestamp(LocalDateTime timestamp) {
+    public void setTimestamp(Instant timestamp) {
         this.timestamp = timestamp;
     }
 
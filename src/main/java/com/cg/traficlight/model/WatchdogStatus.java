@@ -0,0 +1,77 @@
+package com.cg.traficlight.model;
+
+import java.time.Instant;
+
+public class WatchdogStatus {
+
+    private boolean enabled;
+
+    private long overdueMillis;
+
+    private long failovers;
+
+    // all signals are red while the cycle is handed to a fresh scheduler
+    private boolean failsafe;
+
+    private long lastDetectionMicros;
+
+    private long maxDetectionMicros;
+
+    private Instant lastFailover;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getOverdueMillis() {
+        return overdueMillis;
+    }
+
+    public void setOverdueMillis(long overdueMillis) {
+        this.overdueMillis = overdueMillis;
+    }
+
+    public long getFailovers() {
+        return failovers;
+    }
+
+    public void setFailovers(long failovers) {
+        this.failovers = failovers;
+    }
+
+    public boolean isFailsafe() {
+        return failsafe;
+    }
+
+    public void setFailsafe(boolean failsafe) {
+        this.failsafe = failsafe;
+    }
+
+    public long getLastDetectionMicros() {
+        return lastDetectionMicros;
+    }
+
+    public void setLastDetectionMicros(long lastDetectionMicros) {
+        this.lastDetectionMicros = lastDetectionMicros;
+    }
+
+    public long getMaxDetectionMicros() {
+        return maxDetectionMicros;
+    }
+
+    public void setMaxDetectionMicros(long maxDetectionMicros) {
+        this.maxDetectionMicros = maxDetectionMicros;
+    }
+
+    public Instant getLastFailover() {
+        return lastFailover;
+    }
+
+    public void setLastFailover(Instant lastFailover) {
+        this.lastFailover = lastFailover;
+    }
+}
@@ -0,0 +1,101 @@
+package com.cg.traficlight.model;
+
+import java.util.Map;
+
+/**
+ * Phase statistics over one sliding window. {@code observedSeconds} is the part of the window
+ * the service has been running for; shares and rates are relative to it.
+ */
+public class WindowStats {
+
+    private long windowSeconds;
+
+    private double observedSeconds;
+
+    private long phases;
+
+    private long cycles;
+
+    private double cyclesPerHour;
+
+    /** Fraction of the observed time each approach showed green. */
+    private Map<Directions, Double> greenShare;
+
+    private double meanOverrunMillis;
+
+    private double maxOverrunMillis;
+
+    private double pausedSeconds;
+
+    public long getWindowSeconds() {
+        return windowSeconds;
+    }
+
+    public void setWindowSeconds(long windowSeconds) {
+        this.windowSeconds = windowSeconds;
+    }
+
+    public double getObservedSeconds() {
+        return observedSeconds;
+    }
+
+    public void setObservedSeconds(double observedSeconds) {
+        this.observedSeconds = observedSeconds;
+    }
+
+    public long getPhases() {
+        return phases;
+    }
+
+    public void setPhases(long phases) {
+        this.phases = phases;
+    }
+
+    public long getCycles() {
+        return cycles;
+    }
+
+    public void setCycles(long cycles) {
+        this.cycles = cycles;
+    }
+
+    public double getCyclesPerHour() {
+        return cyclesPerHour;
+    }
+
+    public void setCyclesPerHour(double cyclesPerHour) {
+        this.cyclesPerHour = cyclesPerHour;
+    }
+
+    public Map<Directions, Double> getGreenShare() {
+        return greenShare;
+    }
+
+    public void setGreenShare(Map<Directions, Double> greenShare) {
+        this.greenShare = greenShare;
+    }
+
+    public double getMeanOverrunMillis() {
+        return meanOverrunMillis;
+    }
+
+    public void setMeanOverrunMillis(double meanOverrunMillis) {
+        this.meanOverrunMillis = meanOverrunMillis;
+    }
+
+    public double getMaxOverrunMillis() {
+        return maxOverrunMillis;
+    }
+
+    public void setMaxOverrunMillis(double maxOverrunMillis) {
+        this.maxOverrunMillis = maxOverrunMillis;
+    }
+
+    public double getPausedSeconds() {
+        return pausedSeconds;
+    }
+
+    public void setPausedSeconds(double pausedSeconds) {
+        this.pausedSeconds = pausedSeconds;
+    }
+}
@@ -0,0 +1,351 @@
+package com.cg.traficlight.plan;
+
+import com.cg.traficlight.model.Colors;
+import com.cg.traficlight.model.Directions;
+import com.cg.traficlight.model.Movement;
+import com.cg.traficlight.model.PhasePlan;
+import com.cg.traficlight.model.PlanPhase;
+import com.cg.traficlight.model.SignalGroup;
+import com.cg.traficlight.model.StatusSnapshot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A phase plan flattened into arrays indexed by phase, ready to run.
+ * <p>
+ * Signal groups are bits of a {@code long} (so at most {@value #MAX_GROUPS}); each phase keeps
+ * the mask of groups it shows green and yellow, and the union of the conflict rows of those
+ * groups. Every conflict is rejected by {@link #compile} before the plan can be activated, so
+ * the per-transition {@link #isSafe} check is a single AND against precomputed masks. Status
+ * snapshots and the legacy one-{@link Movement}-per-phase view used for history and events are
+ * built here too.
+ */
+public final class CompiledPlan {
+
+    public static final int MAX_GROUPS = Long.SIZE;
+
+    public static final CompiledPlan EMPTY = new CompiledPlan("empty", new String[0], new Directions[0], new long[0],
+            new String[0], new long[0], new long[0], new long[0], List.of());
+
+    private static final Directions[] DIRECTIONS = Directions.values();
+
+    private final String name;
+    private final String[] groupNames;
+    private final Directions[] groupDirections;
+    private final String[] phaseNames;
+    private final long[] green;
+    private final long[] yellow;
+    private final long[] durationMillis;
+    private final long[] conflictsOfLit;
+    private final List<Movement> movements;
+    private final StatusSnapshot[] running;
+    private final StatusSnapshot[] paused;
+    private final int[] approachesGreen;
+    private final List<Map<String, Colors>> groupColors;
+    // the plan this was compiled from; null for the built-in movement model
+    private PhasePlan source;
+
+    private CompiledPlan(String name, String[] groupNames, Directions[] groupDirections, long[] groupConflicts,
+                         String[] phaseNames, long[] green, long[] yellow, long[] durationMillis,
+                         List<Movement> movements) {
+        this.name = name;
+        this.groupNames = groupNames;
+        this.groupDirections = groupDirections;
+        this.phaseNames = phaseNames;
+        this.green = green;
+        this.yellow = yellow;
+        this.durationMillis = durationMillis;
+        this.movements = movements;
+        int phases = phaseNames.length;
+        this.conflictsOfLit = new long[phases];
+        this.running = new StatusSnapshot[phases];
+        this.paused = new StatusSnapshot[phases];
+        this.approachesGreen = new int[phases];
+        List<Map<String, Colors>> colors = new ArrayList<>(phases);
+        for (int i = 0; i < phases; i++) {
+            long lit = green[i] | yellow[i];
+            for (long rest = lit; rest != 0; rest &= rest - 1) {
+                conflictsOfLit[i] |= groupConflicts[Long.numberOfTrailingZeros(rest)];
+            }
+            Map<String, Colors> byGroup = new LinkedHashMap<>();
+            for (int g = 0; g < groupNames.length; g++) {
+                byGroup.put(groupNames[g], colorOf(i, g));
+            }
+            colors.add(Collections.unmodifiableMap(byGroup));
+        }
+        this.groupColors = List.copyOf(colors);
+    }
+
+    /**
+     * The built-in model: one group per approach, every pair conflicting, and each movement
+     * lighting only its own approach. Durations are taken as they are.
+     */
+    public static CompiledPlan of(List<Movement> movements) {
+        int phases = movements.size();
+        String[] groupNames = new String[DIRECTIONS.length];
+        long[] conflicts = new long[DIRECTIONS.length];
+        long all = (1L << DIRECTIONS.length) - 1;
+        for (Directions direction : DIRECTIONS) {
+            groupNames[direction.ordinal()] = direction.name();
+            conflicts[direction.ordinal()] = all & ~(1L << direction.ordinal());
+        }
+        String[] phaseNames = new String[phases];
+        long[] green = new long[phases];
+        long[] yellow = new long[phases];
+        long[] durations = new long[phases];
+        for (int i = 0; i < phases; i++) {
+            Movement m = movements.get(i);
+            phaseNames[i] = m.getDirection() + " " + m.getColors();
+            long bit = m.getDirection() == null ? 0 : 1L << m.getDirection().ordinal();
+            if (m.getColors() == Colors.GREEN) green[i] = bit;
+            if (m.getColors() == Colors.YELLOW) yellow[i] = bit;
+            durations[i] = m.getDurationMillis();
+        }
+        CompiledPlan plan = new CompiledPlan("sequence", groupNames, DIRECTIONS, conflicts, phaseNames, green, yellow,
+                durations, movements);
+        for (int i = 0; i < phases; i++) {
+            Movement m = movements.get(i);
+            Map<Directions, Colors> lights = approachColors(0, 0, new Directions[0]);
+            plan.running[i] = StatusSnapshot.of(m.getDirection(), m.getColors(), lights, false);
+            plan.paused[i] = StatusSnapshot.of(m.getDirection(), m.getColors(), lights, true);
+            if (m.getDirection() != null && m.getColors() == Colors.GREEN) {
+                plan.approachesGreen[i] = 1 << m.getDirection().ordinal();
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * Validates and flattens {@code plan}.
+     *
+     * @throws InvalidPlanException if a group or phase is malformed, or any phase lights two
+     *                              conflicting groups at once
+     */
+    public static CompiledPlan compile(PhasePlan plan) {
+        List<SignalGroup> groups = plan.getGroups() == null ? List.of() : plan.getGroups();
+        if (groups.isEmpty()) throw new InvalidPlanException("plan has no signal groups");
+        if (groups.size() > MAX_GROUPS) {
+            throw new InvalidPlanException("plan has " + groups.size() + " signal groups, at most " + MAX_GROUPS
+                    + " are supported");
+        }
+        Map<String, Integer> index = new HashMap<>();
+        String[] groupNames = new String[groups.size()];
+        Directions[] groupDirections = new Directions[groups.size()];
+        for (int g = 0; g < groups.size(); g++) {
+            SignalGroup group = groups.get(g);
+            if (group == null || group.getName() == null || group.getName().isBlank()) {
+                throw new InvalidPlanException("signal group " + g + " has no name");
+            }
+            if (index.putIfAbsent(group.getName(), g) != null) {
+                throw new InvalidPlanException("signal group " + group.getName() + " is defined twice");
+            }
+            groupNames[g] = group.getName();
+            groupDirections[g] = group.getDirection();
+        }
+
+        long[] conflicts = new long[groups.size()];
+        if (plan.getConflicts() != null) {
+            for (List<String> pair : plan.getConflicts()) {
+                if (pair == null || pair.size() != 2) {
+                    throw new InvalidPlanException("conflict " + pair + " must name exactly two groups");
+                }
+                int a = group(index, pair.get(0), "conflict " + pair);
+                int b = group(index, pair.get(1), "conflict " + pair);
+                if (a == b) throw new InvalidPlanException("group " + pair.get(0) + " cannot conflict with itself");
+                conflicts[a] |= 1L << b;
+                conflicts[b] |= 1L << a;
+            }
+        }
+
+        List<PlanPhase> phases = plan.getPhases() == null ? List.of() : plan.getPhases();
+        if (phases.isEmpty()) throw new InvalidPlanException("plan has no phases");
+        String[] phaseNames = new String[phases.size()];
+        long[] green = new long[phases.size()];
+        long[] yellow = new long[phases.size()];
+        long[] durations = new long[phases.size()];
+        List<Movement> movements = new ArrayList<>(phases.size());
+        boolean timed = false;
+        for (int i = 0; i < phases.size(); i++) {
+            PlanPhase phase = phases.get(i);
+            if (phase == null) throw new InvalidPlanException("phase " + i + " is empty");
+            String label = phase.getName() == null || phase.getName().isBlank() ? "phase " + i : phase.getName();
+            if (phase.getDurationSeconds() < 0) {
+                throw new InvalidPlanException(label + " has a negative duration");
+            }
+            phaseNames[i] = label;
+            green[i] = mask(index, phase.getGreen(), label);
+            yellow[i] = mask(index, phase.getYellow(), label);
+            if ((green[i] & yellow[i]) != 0) {
+                throw new InvalidPlanException(label + " shows " + groupNames[Long.numberOfTrailingZeros(green[i] & yellow[i])]
+                        + " green and yellow at once");
+            }
+            long lit = green[i] | yellow[i];
+            for (long rest = lit; rest != 0; rest &= rest - 1) {
+                int g = Long.numberOfTrailingZeros(rest);
+                long clash = conflicts[g] & lit;
+                if (clash != 0) {
+                    throw new InvalidPlanException(label + " releases conflicting groups " + groupNames[g] + " and "
+                            + groupNames[Long.numberOfTrailingZeros(clash)]);
+                }
+            }
+            durations[i] = TimeUnit.SECONDS.toMillis(phase.getDurationSeconds());
+            timed |= durations[i] > 0;
+            movements.add(primaryMovement(green[i], yellow[i], groupDirections, durations[i]));
+        }
+        if (!timed) throw new InvalidPlanException("every phase has a zero duration");
+
+        CompiledPlan compiled = new CompiledPlan(plan.getName() == null ? "plan" : plan.getName(), groupNames,
+                groupDirections, conflicts, phaseNames, green, yellow, durations, List.copyOf(movements));
+        compiled.source = plan;
+        for (int i = 0; i < phases.size(); i++) {
+            Movement primary = movements.get(i);
+            Map<Directions, Colors> lights = approachColors(green[i], yellow[i], groupDirections);
+            compiled.running[i] = StatusSnapshot.of(primary.getDirection(), primary.getColors(), lights, false);
+            compiled.paused[i] = StatusSnapshot.of(primary.getDirection(), primary.getColors(), lights, true);
+            for (Map.Entry<Directions, Colors> light : lights.entrySet()) {
+                if (light.getValue() == Colors.GREEN) compiled.approachesGreen[i] |= 1 << light.getKey().ordinal();
+            }
+        }
+        return compiled;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public int size() {
+        return phaseNames.length;
+    }
+
+    /** The plan passed to {@link #compile}, or null if this was built from movements by {@link #of}. */
+    public PhasePlan source() {
+        return source;
+    }
+
+    /** True if this plan was compiled from exactly this movement list. */
+    public boolean isFor(List<Movement> movements) {
+        return this.movements == movements;
+    }
+
+    /** One movement per phase: the approach and color history and events report. */
+    public List<Movement> movements() {
+        return movements;
+    }
+
+    /** No group lit in {@code phase} conflicts with another lit group. */
+    public boolean isSafe(int phase) {
+        return ((green[phase] | yellow[phase]) & conflictsOfLit[phase]) == 0;
+    }
+
+    public StatusSnapshot status(int phase, boolean isPaused) {
+        return isPaused ? paused[phase] : running[phase];
+    }
+
+    public long durationMillis(int phase) {
+        return durationMillis[phase];
+    }
+
+    /** Length of one cycle: the phases the plan times, skipped ones excluded. */
+    public long cycleMillis() {
+        long cycle = 0;
+        for (long duration : durationMillis) {
+            if (duration > 0) cycle += duration;
+        }
+        return cycle;
+    }
+
+    /**
+     * True if {@code other} shows exactly the same signals phase by phase and differs at most in
+     * timing, so one can replace the other mid-cycle without an unprotected change of colors.
+     */
+    public boolean sameSignalsAs(CompiledPlan other) {
+        return Arrays.equals(groupNames, other.groupNames) && Arrays.equals(green, other.green)
+                && Arrays.equals(yellow, other.yellow);
+    }
+
+    /** Bit {@code d.ordinal()} set for every approach {@code phase} shows green. */
+    public int approachesGreen(int phase) {
+        return approachesGreen[phase];
+    }
+
+    public String phaseName(int phase) {
+        return phaseNames[phase];
+    }
+
+    /** Color of every group during {@code phase}, in plan order; shared, read-only. */
+    public Map<String, Colors> groupColors(int phase) {
+        return groupColors.get(phase);
+    }
+
+    /**
+     * Color of every group, in plan order, when each approach shows the color in {@code approaches};
+     * groups without an approach, or on one missing from the map, are red.
+     */
+    public Map<String, Colors> groupColors(Map<Directions, Colors> approaches) {
+        Map<String, Colors> byGroup = new LinkedHashMap<>();
+        for (int g = 0; g < groupNames.length; g++) {
+            Directions approach = groupDirections[g];
+            byGroup.put(groupNames[g], approach == null ? Colors.RED : approaches.getOrDefault(approach, Colors.RED));
+        }
+        return byGroup;
+    }
+
+    private Colors colorOf(int phase, int group) {
+        long bit = 1L << group;
+        if ((green[phase] & bit) != 0) return Colors.GREEN;
+        if ((yellow[phase] & bit) != 0) return Colors.YELLOW;
+        return Colors.RED;
+    }
+
+    private static int group(Map<String, Integer> index, String name, String where) {
+        Integer g = name == null ? null : index.get(name);
+        if (g == null) throw new InvalidPlanException(where + " names unknown signal group " + name);
+        return g;
+    }
+
+    private static long mask(Map<String, Integer> index, List<String> names, String phase) {
+        long mask = 0;
+        if (names == null) return mask;
+        for (String name : names) {
+            mask |= 1L << group(index, name, phase);
+        }
+        return mask;
+    }
+
+    /** First green group with an approach, else the first yellow one; all-red phases report no approach. */
+    private static Movement primaryMovement(long green, long yellow, Directions[] directions, long durationMillis) {
+        for (long rest = green; rest != 0; rest &= rest - 1) {
+            Directions d = directions[Long.numberOfTrailingZeros(rest)];
+            if (d != null) return new Movement(d, Colors.GREEN, durationMillis);
+        }
+        for (long rest = yellow; rest != 0; rest &= rest - 1) {
+            Directions d = directions[Long.numberOfTrailingZeros(rest)];
+            if (d != null) return new Movement(d, Colors.YELLOW, durationMillis);
+        }
+        return new Movement(null, Colors.RED, durationMillis);
+    }
+
+    /** An approach shows the most permissive color of its groups. */
+    private static Map<Directions, Colors> approachColors(long green, long yellow, Directions[] directions) {
+        EnumMap<Directions, Colors> lights = new EnumMap<>(Directions.class);
+        for (Directions d : DIRECTIONS) lights.put(d, Colors.RED);
+        for (int g = 0; g < directions.length; g++) {
+            if (directions[g] == null) continue;
+            long bit = 1L << g;
+            if ((green & bit) != 0) {
+                lights.put(directions[g], Colors.GREEN);
+            } else if ((yellow & bit) != 0 && lights.get(directions[g]) == Colors.RED) {
+                lights.put(directions[g], Colors.YELLOW);
+            }
+        }
+        return lights;
+    }
+}
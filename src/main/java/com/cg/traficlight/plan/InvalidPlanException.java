@@ -0,0 +1,11 @@
+package com.cg.traficlight.plan;
+
+/** A phase plan that cannot be activated; the message says which rule it breaks. */
+public class InvalidPlanException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    public InvalidPlanException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,60 @@
+package com.cg.traficlight.service;
+
+import com.cg.traficlight.clock.TimeSource;
+import com.cg.traficlight.model.Movement;
+import com.cg.traficlight.model.PhaseEventType;
+import com.cg.traficlight.model.Response;
+import com.cg.traficlight.plan.CompiledPlan;
+
+/**
+ * What {@link PreemptionControl} and {@link SchedulerFailover} need of the cycle they interrupt.
+ * Implemented inside {@link TrafficLightService}; callers hold the service lock.
+ */
+interface CycleControl {
+
+    TimeSource clock();
+
+    boolean isPaused();
+
+    /** All red after a failover, until the cycle or a preemption takes over again. */
+    boolean isFailsafe();
+
+    void setFailsafe(boolean failsafe);
+
+    int phaseIndex();
+
+    CompiledPlan plan();
+
+    /** What the signals show now. */
+    Response showing();
+
+    /** True while the end of a phase or preemption stage is scheduled. */
+    boolean isTiming();
+
+    /** End of the plan's phase on show, on the {@link TimeSource#nanoTime()} clock. */
+    long phaseDeadlineNanos();
+
+    /** Cancels the pending phase or stage end; the watchdog then expects nothing. */
+    void cancelScheduled();
+
+    /** Runs {@code task} in {@code delayNanos} as the next transition, which the watchdog then expects. */
+    void schedule(Runnable task, long delayNanos);
+
+    /** Tells the watchdog nothing is due. */
+    void idle();
+
+    /** Hands the cycle to a fresh scheduler thread, leaving the stuck one behind. */
+    void replaceScheduler();
+
+    /** Bumps the state version. */
+    void changed();
+
+    /** Bumps the state version and streams {@code movement} to subscribers. */
+    void changed(PhaseEventType type, Movement movement);
+
+    /**
+     * Runs the plan again from {@code phaseIndex}, ending it {@code delayMillis} after its
+     * duration, or rejoins the shared cycle when coordinated.
+     */
+    void resumeCycle(int phaseIndex, long delayMillis);
+}
@@ -0,0 +1,52 @@
+package com.cg.traficlight.service;
+
+import com.cg.traficlight.model.Colors;
+import com.cg.traficlight.model.Directions;
+import com.cg.traficlight.model.Movement;
+import com.cg.traficlight.model.SignalSequence;
+import com.cg.traficlight.plan.InvalidPlanException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds the fixed eight-phase cycle for a {@link SignalSequence}.
+ */
+public final class Movements {
+
+    private Movements() {
+    }
+
+    /**
+     * Rejects a sequence that {@link TrafficLightService#setSequence} should never be handed.
+     *
+     * @throws InvalidPlanException if it is missing or a timing is negative
+     */
+    public static void check(SignalSequence sequence) {
+        if (sequence == null) throw new InvalidPlanException("sequence is required");
+        long[] seconds = {sequence.getTimeGreenNS(), sequence.getTimeYellowNS(),
+                sequence.getTimeGreenEW(), sequence.getTimeYellowEW()};
+        for (long s : seconds) {
+            if (s < 0) throw new InvalidPlanException("sequence timings must not be negative: " + s);
+        }
+    }
+
+    public static List<Movement> of(SignalSequence sequence) {
+        return of(sequence.getTimeGreenNS(), sequence.getTimeYellowNS(),
+                sequence.getTimeGreenEW(), sequence.getTimeYellowEW());
+    }
+
+    public static List<Movement> of(long nsGreenSec, long nsYellowSec, long ewGreenSec, long ewYellowSec) {
+        List<Movement> list = new ArrayList<>();
+        list.add(new Movement(Directions.NORTH, Colors.GREEN, TimeUnit.SECONDS.toMillis(nsGreenSec)));
+        list.add(new Movement(Directions.NORTH, Colors.YELLOW, TimeUnit.SECONDS.toMillis(nsYellowSec)));
+        list.add(new Movement(Directions.EAST, Colors.GREEN, TimeUnit.SECONDS.toMillis(ewGreenSec)));
+        list.add(new Movement(Directions.EAST, Colors.YELLOW, TimeUnit.SECONDS.toMillis(ewYellowSec)));
+        list.add(new Movement(Directions.SOUTH, Colors.GREEN, TimeUnit.SECONDS.toMillis(ewGreenSec)));
+        list.add(new Movement(Directions.SOUTH, Colors.YELLOW, TimeUnit.SECONDS.toMillis(ewYellowSec)));
+        list.add(new Movement(Directions.WEST, Colors.GREEN, TimeUnit.SECONDS.toMillis(ewGreenSec)));
+        list.add(new Movement(Directions.WEST, Colors.YELLOW, TimeUnit.SECONDS.toMillis(ewYellowSec)));
+        return List.copyOf(list);
+    }
+}
@@ -0,0 +1,16 @@
+package com.cg.traficlight.service;
+
+import com.cg.traficlight.model.PhaseEvent;
+
+/**
+ * Receives the events of a stream subscription, one at a time, on the subscription's own thread.
+ */
+public interface PhaseEventListener {
+
+    /** Delivers one event; throwing ends the subscription. */
+    void onEvent(PhaseEvent event) throws Exception;
+
+    /** Called once when the subscription ends for any reason other than {@code cancel()}. */
+    default void onClose() {
+    }
+}
@@ -0,0 +1,59 @@
+package com.cg.traficlight.service;
+
+import com.cg.traficlight.model.Colors;
+import com.cg.traficlight.model.Directions;
+import com.cg.traficlight.model.StatusSnapshot;
+
+import java.util.Map;
+
+/**
+ * An emergency-vehicle preemption in progress: where the cycle was cut, which approach is
+ * getting green, and the status shown meanwhile. Guarded by the service lock except for the
+ * status, which readers take without it.
+ */
+final class Preemption {
+
+    enum Stage {
+        /** Every other approach runs out a yellow before the preempted one goes green. */
+        CLEARING,
+        /** Every approach shows red, after the preempted one ran out its own yellow. */
+        ALL_RED,
+        /** The preempted approach alone shows green. */
+        GREEN,
+        /** The preempted approach shows yellow before the cycle takes over again. */
+        RETURNING
+    }
+
+    // the phase the cycle was in, and how much of it was cut short; 0 moves on to the next phase
+    final int phaseIndex;
+    final long resumeMillis;
+
+    Directions direction;
+    long holdMillis;
+    Stage stage;
+    long requestedNanos;
+    long greenDueNanos;
+    long stageDeadlineNanos;
+    // the preempted approach was showing yellow: all red follows the clearance, never straight to green
+    boolean allRedFirst;
+    // ended before its green came up: back to the cycle once the clearance is over
+    boolean cancelled;
+
+    private volatile StatusSnapshot running;
+    private volatile StatusSnapshot paused;
+
+    Preemption(int phaseIndex, long resumeMillis) {
+        this.phaseIndex = phaseIndex;
+        this.resumeMillis = resumeMillis;
+    }
+
+    void show(Stage stage, Directions active, Colors color, Map<Directions, Colors> others) {
+        this.stage = stage;
+        paused = StatusSnapshot.of(active, color, others, true);
+        running = StatusSnapshot.of(active, color, others, false);
+    }
+
+    StatusSnapshot status(boolean isPaused) {
+        return isPaused ? paused : running;
+    }
+}
@@ -0,0 +1,320 @@
+package com.cg.traficlight.service;
+
+import com.cg.traficlight.metrics.LatencyHistogram;
+import com.cg.traficlight.model.Colors;
+import com.cg.traficlight.model.Directions;
+import com.cg.traficlight.model.Movement;
+import com.cg.traficlight.model.PhaseEventType;
+import com.cg.traficlight.model.PreemptionStatus;
+import com.cg.traficlight.model.Response;
+import com.cg.traficlight.plan.CompiledPlan;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Runs emergency-vehicle preemptions for {@link TrafficLightService}: clears the other
+ * approaches, shows all red if the preempted one was itself yellow, holds the green, shows the closing yellow and hands back to the cycle, timing each
+ * {@link Preemption.Stage} on the service's scheduler. Everything but {@link #current()} and the
+ * counters is called with the service lock held.
+ */
+final class PreemptionControl {
+
+    private static final Logger log = LoggerFactory.getLogger(PreemptionControl.class);
+
+    private final ReentrantLock lock;
+    private final CycleControl cycle;
+    private final long clearanceMillis;
+    private final long allRedMillis;
+    private final long holdMillis;
+    private final long maxHoldMillis;
+
+    // null while the plan runs
+    private volatile Preemption current;
+
+    // request to green less the clearance waited for: lock wait, scheduling and timer lateness
+    private final LatencyHistogram overhead = new LatencyHistogram();
+    private volatile long preemptions;
+    private volatile long lastClearanceNanos;
+    private volatile long lastToGreenNanos;
+
+    PreemptionControl(ReentrantLock lock, CycleControl cycle, long clearanceMillis, long allRedMillis,
+                      long holdMillis, long maxHoldMillis) {
+        this.lock = lock;
+        this.cycle = cycle;
+        this.clearanceMillis = clearanceMillis;
+        this.allRedMillis = allRedMillis;
+        this.holdMillis = holdMillis;
+        this.maxHoldMillis = maxHoldMillis;
+    }
+
+    /** The preemption in progress, read without the lock; null while the plan runs. */
+    Preemption current() {
+        return current;
+    }
+
+    /**
+     * The hold asked for, or the configured one for a null {@code hold}; checked before the lock
+     * is taken.
+     *
+     * @throws IllegalArgumentException if the direction is missing or the hold is not positive
+     *                                  or above the maximum
+     */
+    long holdMillis(Directions direction, Duration hold) {
+        if (direction == null) throw new IllegalArgumentException("direction is required");
+        long millis = hold == null ? holdMillis : hold.toMillis();
+        if (millis <= 0 || millis > maxHoldMillis) {
+            throw new IllegalArgumentException("hold must be 1 to " + maxHoldMillis + " ms: " + millis);
+        }
+        return millis;
+    }
+
+    /**
+     * Starts a preemption of {@code direction}, or retargets the one in progress, as described
+     * on {@link TrafficLightService#preempt}.
+     *
+     * @return the clearance before green, with any all red, in nanoseconds
+     */
+    long start(Directions direction, long holdMillis, long requestedNanos) {
+        long now = cycle.clock().nanoTime();
+        Preemption p = current;
+        Response showing = cycle.showing();
+        // what is left of the phase or preemption stage on show; nothing is timed in a failover
+        long remaining = cycle.isFailsafe() || !cycle.isTiming() ? 0
+                : Math.max((p == null ? cycle.phaseDeadlineNanos() : p.stageDeadlineNanos) - now, 0);
+        EnumMap<Directions, Colors> clearing = approachColors(showing);
+        // the approach keeps at least the green it was already given
+        if (clearing.get(direction) == Colors.GREEN) {
+            holdMillis = Math.max(holdMillis, TimeUnit.NANOSECONDS.toMillis(remaining));
+        }
+        boolean greenElsewhere = false;
+        boolean yellow = false;
+        for (Map.Entry<Directions, Colors> light : clearing.entrySet()) {
+            if (light.getValue() == Colors.GREEN && light.getKey() != direction) {
+                greenElsewhere = true;
+                light.setValue(Colors.YELLOW);
+            } else if (light.getValue() == Colors.YELLOW) {
+                yellow = true;
+            }
+        }
+        long clearanceNanos = TimeUnit.MILLISECONDS.toNanos(clearanceMillis);
+        if (!greenElsewhere) {
+            clearanceNanos = !yellow ? 0 : remaining > 0 ? Math.min(remaining, clearanceNanos) : clearanceNanos;
+        }
+        // an approach never goes from yellow to green: its yellow runs out, then all red
+        boolean allRedFirst = clearing.get(direction) == Colors.YELLOW;
+        long allRedNanos = allRedFirst ? TimeUnit.MILLISECONDS.toNanos(allRedMillis) : 0;
+        if (p == null) {
+            p = new Preemption(cycle.phaseIndex(), greenElsewhere ? TimeUnit.NANOSECONDS.toMillis(remaining) : 0);
+            current = p;
+            preemptions++;
+        }
+        cycle.cancelScheduled();
+        p.direction = direction;
+        p.holdMillis = holdMillis;
+        p.cancelled = false;
+        p.allRedFirst = allRedFirst;
+        p.requestedNanos = requestedNanos;
+        p.greenDueNanos = now + clearanceNanos + allRedNanos;
+        lastClearanceNanos = clearanceNanos + allRedNanos;
+        if (clearanceNanos == 0) {
+            enterGreen(p);
+        } else {
+            Directions active = showing.getActiveDirection();
+            Colors color = active == null ? showing.getActiveColor() : clearing.get(active);
+            p.show(Preemption.Stage.CLEARING, active, color, clearing);
+            scheduleStage(p, clearanceNanos);
+            cycle.changed(PhaseEventType.PREEMPTION,
+                    new Movement(active, color, TimeUnit.NANOSECONDS.toMillis(clearanceNanos)));
+        }
+        return clearanceNanos + allRedNanos;
+    }
+
+    /** See {@link TrafficLightService#cancelPreemption}; false if there was no preemption. */
+    boolean cancel() {
+        Preemption p = current;
+        if (p == null) return false;
+        if (p.stage == Preemption.Stage.GREEN && !cycle.isPaused()) {
+            cycle.cancelScheduled();
+            leaveGreen(p);
+        } else {
+            p.cancelled = true;
+        }
+        return true;
+    }
+
+    /** Drops the preemption without handing back; the caller restarts the cycle. */
+    void clear() {
+        current = null;
+    }
+
+    /**
+     * On resume: runs the stage that was showing when paused again from its start.
+     *
+     * @return false if there was no preemption, and the cycle is the caller's to resume
+     */
+    boolean resume() {
+        Preemption p = current;
+        if (p == null) return false;
+        long clearanceNanos = TimeUnit.MILLISECONDS.toNanos(clearanceMillis);
+        switch (p.stage) {
+            case CLEARING -> {
+                p.greenDueNanos = cycle.clock().nanoTime() + clearanceNanos
+                        + (p.allRedFirst ? TimeUnit.MILLISECONDS.toNanos(allRedMillis) : 0);
+                scheduleStage(p, clearanceNanos);
+            }
+            case ALL_RED -> {
+                long allRedNanos = TimeUnit.MILLISECONDS.toNanos(allRedMillis);
+                p.greenDueNanos = cycle.clock().nanoTime() + allRedNanos;
+                scheduleStage(p, allRedNanos);
+            }
+            case GREEN -> {
+                if (p.cancelled) {
+                    leaveGreen(p);
+                } else {
+                    scheduleStage(p, TimeUnit.MILLISECONDS.toNanos(p.holdMillis));
+                }
+            }
+            case RETURNING -> scheduleStage(p, clearanceNanos);
+        }
+        return true;
+    }
+
+    /**
+     * At the end of a failover's all red, which stood in for any clearance: the preempted green
+     * comes up, or the cycle takes over if the preemption was on its way out.
+     *
+     * @return false if there was no preemption, and the cycle is the caller's to resume
+     */
+    boolean resumeAfterAllRed() {
+        Preemption p = current;
+        if (p == null) return false;
+        if (p.stage == Preemption.Stage.RETURNING || p.cancelled) {
+            end(p);
+        } else {
+            p.greenDueNanos = cycle.clock().nanoTime();
+            enterGreen(p);
+        }
+        return true;
+    }
+
+    PreemptionStatus status() {
+        PreemptionStatus status = new PreemptionStatus();
+        Preemption p = current;
+        if (p != null) {
+            status.setActive(true);
+            lock.lock();
+            try {
+                status.setDirection(p.direction);
+                status.setStage(p.stage.name());
+            } finally {
+                lock.unlock();
+            }
+        }
+        status.setPreemptions(preemptions);
+        status.setClearanceMillis(clearanceMillis);
+        status.setLastClearanceMillis(TimeUnit.NANOSECONDS.toMillis(lastClearanceNanos));
+        status.setLastRequestToGreenMicros(TimeUnit.NANOSECONDS.toMicros(lastToGreenNanos));
+        status.setOverhead(overhead.snapshot());
+        return status;
+    }
+
+    /** The color of every approach in {@code status}. */
+    static EnumMap<Directions, Colors> approachColors(Response status) {
+        EnumMap<Directions, Colors> lights = new EnumMap<>(Directions.class);
+        for (Directions direction : Directions.values()) {
+            lights.put(direction, direction == status.getActiveDirection() ? status.getActiveColor()
+                    : status.getInactiveState().getOrDefault(direction, Colors.RED));
+        }
+        return lights;
+    }
+
+    /** Green for the preempted approach alone, held for the requested time. */
+    private void enterGreen(Preemption p) {
+        long now = cycle.clock().nanoTime();
+        cycle.setFailsafe(false);
+        p.show(Preemption.Stage.GREEN, p.direction, Colors.GREEN, Map.of());
+        overhead.record(now - p.greenDueNanos);
+        lastToGreenNanos = now - p.requestedNanos;
+        scheduleStage(p, TimeUnit.MILLISECONDS.toNanos(p.holdMillis));
+        cycle.changed(PhaseEventType.PREEMPTION, new Movement(p.direction, Colors.GREEN, p.holdMillis));
+    }
+
+    /** All red once the preempted approach has run out its own yellow. */
+    private void enterAllRed(Preemption p) {
+        p.show(Preemption.Stage.ALL_RED, null, Colors.RED, Map.of());
+        scheduleStage(p, TimeUnit.MILLISECONDS.toNanos(allRedMillis));
+        cycle.changed(PhaseEventType.PREEMPTION, new Movement(null, Colors.RED, allRedMillis));
+    }
+
+    private void leaveGreen(Preemption p) {
+        p.show(Preemption.Stage.RETURNING, p.direction, Colors.YELLOW, Map.of());
+        scheduleStage(p, TimeUnit.MILLISECONDS.toNanos(clearanceMillis));
+        cycle.changed(PhaseEventType.PREEMPTION, new Movement(p.direction, Colors.YELLOW, clearanceMillis));
+    }
+
+    /** Hands back to the cycle at the phase that was cut short, or to the shared cycle. */
+    private void end(Preemption p) {
+        current = null;
+        cycle.changed();
+        if (p.resumeMillis > 0) {
+            CompiledPlan compiled = cycle.plan();
+            long duration = compiled.durationMillis(Math.floorMod(p.phaseIndex, compiled.size()));
+            cycle.resumeCycle(p.phaseIndex, Math.min(p.resumeMillis - duration, 0));
+            return;
+        }
+        CompiledPlan compiled = cycle.plan();
+        int next = p.phaseIndex + 1;
+        // the approach has just shown its yellow; the plan's own comes off
+        if (compiled.size() > 0) {
+            Movement after = compiled.movements().get(Math.floorMod(next, compiled.size()));
+            if (after.getDirection() == p.direction && after.getColors() == Colors.YELLOW) next++;
+        }
+        cycle.resumeCycle(next, 0);
+    }
+
+    private void scheduleStage(Preemption p, long delayNanos) {
+        p.stageDeadlineNanos = cycle.clock().nanoTime() + delayNanos;
+        cycle.schedule(this::onStageEnd, delayNanos);
+    }
+
+    private void onStageEnd() {
+        lock.lock();
+        try {
+            Preemption p = current;
+            // as for a phase: a stage end the old scheduler thread runs late leaves a failover's all red up
+            if (p == null || cycle.isPaused() || cycle.isFailsafe()) return;
+            switch (p.stage) {
+                case CLEARING -> {
+                    if (p.cancelled) {
+                        end(p);
+                    } else if (p.allRedFirst) {
+                        enterAllRed(p);
+                    } else {
+                        enterGreen(p);
+                    }
+                }
+                case ALL_RED -> {
+                    if (p.cancelled) {
+                        end(p);
+                    } else {
+                        enterGreen(p);
+                    }
+                }
+                case GREEN -> leaveGreen(p);
+                case RETURNING -> end(p);
+            }
+        } catch (RuntimeException e) {
+            Preemption p = current;
+            log.error("preemption of {} failed", p == null ? null : p.direction, e);
+            throw e;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
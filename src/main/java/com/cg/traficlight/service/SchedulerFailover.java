@@ -0,0 +1,107 @@
+package com.cg.traficlight.service;
+
+import com.cg.traficlight.model.Colors;
+import com.cg.traficlight.model.Movement;
+import com.cg.traficlight.model.PhaseEventType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * What {@link TrafficLightService} does when its {@link SchedulerWatchdog} finds a transition
+ * overdue: the scheduler thread threw, stalled or is stuck. With the service lock, it shows all
+ * red, hands the cycle to a fresh scheduler thread and schedules the way out of the all red, to
+ * the phase after the one that overran or back into a preemption. If the stalled thread still
+ * holds the lock it is mid-transition, and whatever it goes on to show would overwrite an all red
+ * announced without the lock; so the miss is only recorded, the signals keep what they show, and
+ * every check tries again until the thread lets go or posts its next deadline.
+ */
+final class SchedulerFailover {
+
+    private static final Logger log = LoggerFactory.getLogger(SchedulerFailover.class);
+
+    static final Movement ALL_RED = new Movement(null, Colors.RED, 0);
+
+    private final ReentrantLock lock;
+    private final CycleControl cycle;
+    private final PreemptionControl preemption;
+    private final long checkMillis;
+    private final long allRedMillis;
+    private final SchedulerWatchdog watchdog;
+    // the deadline a lock-holding stall was last recorded against; watchdog thread only
+    private long stalledDeadline = Long.MIN_VALUE;
+
+    SchedulerFailover(ReentrantLock lock, CycleControl cycle, PreemptionControl preemption,
+                      long overdueMillis, long checkMillis, long allRedMillis) {
+        this.lock = lock;
+        this.cycle = cycle;
+        this.preemption = preemption;
+        this.checkMillis = checkMillis;
+        this.allRedMillis = allRedMillis;
+        this.watchdog = new SchedulerWatchdog(TimeUnit.MILLISECONDS.toNanos(overdueMillis),
+                TimeUnit.MILLISECONDS.toNanos(checkMillis), this::onOverdue);
+    }
+
+    /** The watchdog that calls this on a missed deadline; started by the service. */
+    SchedulerWatchdog watchdog() {
+        return watchdog;
+    }
+
+    /** Runs on the watchdog thread with how late the transition is. */
+    private void onOverdue(long overdueNanos) {
+        boolean locked;
+        try {
+            locked = lock.tryLock(checkMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        try {
+            // the transition may have gone through while the lock was taken
+            if (!watchdog.isOverdue()) return;
+            if (!locked) {
+                // recorded once per missed deadline; the next check tries again
+                long deadline = watchdog.deadlineNanos();
+                if (deadline != stalledDeadline) {
+                    stalledDeadline = deadline;
+                    watchdog.recordFailover(overdueNanos, cycle.clock().instant());
+                    log.error("phase index {} is {} ms overdue and the scheduler thread holds the service lock; "
+                            + "waiting for it", cycle.phaseIndex(), TimeUnit.NANOSECONDS.toMillis(overdueNanos));
+                }
+                return;
+            }
+            cycle.setFailsafe(true);
+            long now = cycle.clock().nanoTime();
+            watchdog.recordFailover(overdueNanos, cycle.clock().instant());
+            // an all-red interval from now; missing that too counts as another failover
+            watchdog.expect(now + TimeUnit.MILLISECONDS.toNanos(allRedMillis));
+            cycle.replaceScheduler();
+            cycle.changed(PhaseEventType.FAILSAFE, ALL_RED);
+            log.error("phase index {} is {} ms overdue; all red for {} ms on a fresh scheduler",
+                    cycle.phaseIndex(), TimeUnit.NANOSECONDS.toMillis(overdueNanos), allRedMillis);
+            cycle.cancelScheduled();
+            cycle.schedule(this::endAllRed, TimeUnit.MILLISECONDS.toNanos(allRedMillis));
+        } finally {
+            if (locked) lock.unlock();
+        }
+    }
+
+    /** Leaves the all red for the phase after the one that overran, or for the preemption. */
+    private void endAllRed() {
+        lock.lock();
+        try {
+            if (!cycle.isFailsafe()) return;
+            if (cycle.isPaused()) {
+                // paused during the all red: it stays up until resumed
+                cycle.idle();
+                return;
+            }
+            if (preemption.resumeAfterAllRed()) return;
+            cycle.resumeCycle(cycle.phaseIndex() + 1, 0);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.cg.traficlight.service;
+
+import com.cg.traficlight.model.WatchdogStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongConsumer;
+
+/**
+ * Notices when the scheduler misses a phase deadline.
+ * <p>
+ * The scheduler posts the deadline of the phase it has just timed; that volatile write is the
+ * heartbeat, and the whole cost on the transition path. A platform thread of its own, so that
+ * neither a stuck scheduler nor a busy common pool can hold it up, looks at the deadline every
+ * {@code checkNanos} and reports how late the transition is once it is {@code overdueNanos}
+ * behind, so a miss is seen at most {@code overdueNanos + checkNanos} after the deadline.
+ */
+final class SchedulerWatchdog {
+
+    private static final Logger log = LoggerFactory.getLogger(SchedulerWatchdog.class);
+
+    private static final long IDLE = Long.MIN_VALUE;
+
+    private final long overdueNanos;
+    private final long checkNanos;
+    private final LongConsumer onOverdue;
+    private final Thread thread;
+
+    private volatile long deadlineNanos = IDLE;
+    private volatile boolean running = true;
+
+    // written by the watchdog thread, read by anyone
+    private volatile long failovers;
+    private volatile long lastDetectionNanos;
+    private volatile long maxDetectionNanos;
+    private volatile Instant lastFailover;
+
+    /** {@code onOverdue} runs on the watchdog thread with the number of nanoseconds the transition is late. */
+    SchedulerWatchdog(long overdueNanos, long checkNanos, LongConsumer onOverdue) {
+        if (overdueNanos <= 0 || checkNanos <= 0) {
+            throw new IllegalArgumentException("watchdog thresholds must be positive");
+        }
+        this.overdueNanos = overdueNanos;
+        this.checkNanos = checkNanos;
+        this.onOverdue = onOverdue;
+        this.thread = new Thread(this::run, "traffic-watchdog");
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    void stop() {
+        running = false;
+        LockSupport.unpark(thread);
+    }
+
+    /** The next transition is due at {@code deadlineNanos} on the {@link System#nanoTime()} clock. */
+    void expect(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /** Nothing is due: paused, or no phase to time. */
+    void idle() {
+        deadlineNanos = IDLE;
+    }
+
+    /** The deadline posted last, on the {@link System#nanoTime()} clock; {@link Long#MIN_VALUE} when idle. */
+    long deadlineNanos() {
+        return deadlineNanos;
+    }
+
+    /** How late the expected transition is now; negative while it is not yet due or nothing is. */
+    long overdueNanos() {
+        long deadline = deadlineNanos;
+        return deadline == IDLE ? Long.MIN_VALUE : System.nanoTime() - deadline;
+    }
+
+    boolean isOverdue() {
+        return overdueNanos() >= overdueNanos;
+    }
+
+    void recordFailover(long detectionNanos, Instant at) {
+        lastDetectionNanos = detectionNanos;
+        maxDetectionNanos = Math.max(maxDetectionNanos, detectionNanos);
+        lastFailover = at;
+        failovers++;
+    }
+
+    WatchdogStatus snapshot(boolean failsafe) {
+        WatchdogStatus status = new WatchdogStatus();
+        status.setEnabled(true);
+        status.setOverdueMillis(TimeUnit.NANOSECONDS.toMillis(overdueNanos));
+        status.setFailovers(failovers);
+        status.setFailsafe(failsafe);
+        status.setLastDetectionMicros(TimeUnit.NANOSECONDS.toMicros(lastDetectionNanos));
+        status.setMaxDetectionMicros(TimeUnit.NANOSECONDS.toMicros(maxDetectionNanos));
+        status.setLastFailover(lastFailover);
+        return status;
+    }
+
+    private void run() {
+        while (running) {
+            LockSupport.parkNanos(this, checkNanos);
+            long late = overdueNanos();
+            if (running && late >= overdueNanos) {
+                try {
+                    onOverdue.accept(late);
+                } catch (RuntimeException e) {
+                    // keep watching; the next check tries again
+                    log.error("scheduler failover failed", e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.cg.traficlight.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Monotonic version of everything a client can observe, bumped after each change is visible,
+ * so a reader that sees version {@code v} is sure to read state at least that new.
+ * <p>
+ * Waiters share one future per version. A bump swaps in the next one and completes the old one
+ * on the common pool, so the thread holding the service lock does constant work however many
+ * clients are waiting.
+ */
+final class StateVersion {
+
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicReference<CompletableFuture<Long>> next = new AtomicReference<>(new CompletableFuture<>());
+
+    long current() {
+        return version.get();
+    }
+
+    synchronized void bump() {
+        long bumped = version.incrementAndGet();
+        // incremented before the swap: a waiter that gets the new future also sees the new version
+        next.getAndSet(new CompletableFuture<>()).completeAsync(() -> bumped);
+    }
+
+    /** Completes with the version once it is past {@code known}; at once if it already is. */
+    CompletableFuture<Long> after(long known) {
+        CompletableFuture<Long> waiter = next.get();
+        long now = version.get();
+        return now > known ? CompletableFuture.completedFuture(now) : waiter;
+    }
+}
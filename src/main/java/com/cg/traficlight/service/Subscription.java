@@ -0,0 +1,9 @@
+package com.cg.traficlight.service;
+
+public interface Subscription {
+
+    void cancel();
+
+    /** Events discarded because this subscriber was not keeping up. */
+    long droppedEvents();
+}
@@ -0,0 +1,180 @@
+package com.cg.traficlight.service;
+
+import com.cg.traficlight.model.SignalSequence;
+import com.cg.traficlight.model.TimePlanWindow;
+import com.cg.traficlight.plan.CompiledPlan;
+import com.cg.traficlight.plan.InvalidPlanException;
+
+import java.time.DayOfWeek;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A weekly timetable of signal timings, precompiled into a sorted array of window starts
+ * measured from Monday 00:00, so the window in force at any time is one binary search.
+ * <p>
+ * Built from {@link TimePlanWindow}s, each with its days, a start time and either a
+ * {@link SignalSequence} or a whole plan. Days are {@code MON} to {@code SUN}, ranges such as
+ * {@code FRI-MON} and lists such as {@code SAT,SUN}, or {@code DAILY}. A window runs until the
+ * next one starts, through the end of the week if need be, so the earliest window of the week is
+ * preceded by the latest one. Every distinct sequence, and every plan, is compiled once, up front.
+ */
+final class TimeOfDayPlan {
+
+    static final TimeOfDayPlan NONE = new TimeOfDayPlan(new long[0], new CompiledPlan[0], new String[0]);
+
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+    private static final long WEEK_MILLIS = 7 * DAY_MILLIS;
+
+    // window starts in milliseconds from Monday 00:00, ascending
+    private final long[] starts;
+    private final CompiledPlan[] plans;
+    private final String[] labels;
+
+    private TimeOfDayPlan(long[] starts, CompiledPlan[] plans, String[] labels) {
+        this.starts = starts;
+        this.plans = plans;
+        this.labels = labels;
+    }
+
+    /**
+     * @throws InvalidPlanException if a window is malformed or two start at the same time; the
+     *                              message names the window, as {@code timeplan.windows[n]}
+     */
+    static TimeOfDayPlan of(List<TimePlanWindow> windows) {
+        if (windows == null || windows.isEmpty()) return NONE;
+        record Start(long millis, CompiledPlan plan, String label) {
+        }
+        Map<String, CompiledPlan> sequences = new HashMap<>();
+        List<Start> parsed = new ArrayList<>();
+        for (int n = 0; n < windows.size(); n++) {
+            TimePlanWindow window = windows.get(n);
+            String name = "timeplan.windows[" + n + "]";
+            if (window.getDays() == null || window.getStart() == null) {
+                throw new InvalidPlanException(name + " needs days and a start");
+            }
+            LocalTime at;
+            try {
+                at = LocalTime.parse(window.getStart().trim());
+            } catch (DateTimeParseException e) {
+                throw new InvalidPlanException(name + ".start must be HH:mm: " + window.getStart());
+            }
+            String timings;
+            CompiledPlan plan;
+            try {
+                if ((window.getSequence() == null) == (window.getPlan() == null)) {
+                    throw new InvalidPlanException("needs either a sequence or a plan");
+                }
+                if (window.getSequence() != null) {
+                    SignalSequence sequence = window.getSequence();
+                    Movements.check(sequence);
+                    timings = sequence.getTimeGreenNS() + "/" + sequence.getTimeYellowNS() + "/"
+                            + sequence.getTimeGreenEW() + "/" + sequence.getTimeYellowEW();
+                    plan = sequences.computeIfAbsent(timings, key -> CompiledPlan.of(Movements.of(sequence)));
+                } else {
+                    plan = CompiledPlan.compile(window.getPlan());
+                    timings = window.getPlan().getName() == null ? "plan" : window.getPlan().getName();
+                }
+            } catch (InvalidPlanException e) {
+                throw new InvalidPlanException(name + ": " + e.getMessage());
+            }
+            for (DayOfWeek day : days(name, window.getDays().trim())) {
+                long millis = day.ordinal() * DAY_MILLIS + TimeUnit.NANOSECONDS.toMillis(at.toNanoOfDay());
+                parsed.add(new Start(millis, plan, abbreviation(day) + " " + at + " " + timings));
+            }
+        }
+        parsed.sort((a, b) -> Long.compare(a.millis(), b.millis()));
+        long[] starts = new long[parsed.size()];
+        CompiledPlan[] plans = new CompiledPlan[parsed.size()];
+        String[] labels = new String[parsed.size()];
+        for (int i = 0; i < starts.length; i++) {
+            Start start = parsed.get(i);
+            if (i > 0 && start.millis() == starts[i - 1]) {
+                throw new InvalidPlanException("two time plan windows start at " + labels[i - 1] + " and " + start.label());
+            }
+            starts[i] = start.millis();
+            plans[i] = start.plan();
+            labels[i] = start.label();
+        }
+        return new TimeOfDayPlan(starts, plans, labels);
+    }
+
+    boolean isEmpty() {
+        return starts.length == 0;
+    }
+
+    int size() {
+        return starts.length;
+    }
+
+    /** The window in force at {@code time}; -1 if there are none. */
+    int windowAt(LocalDateTime time) {
+        if (starts.length == 0) return -1;
+        int found = Arrays.binarySearch(starts, weekMillis(time));
+        int window = found >= 0 ? found : -found - 2;
+        // before the first start of the week: the last one of the week before is still on
+        return window < 0 ? starts.length - 1 : window;
+    }
+
+    CompiledPlan plan(int window) {
+        return plans[window];
+    }
+
+    /** Day, start and timings, e.g. {@code MON 07:00 30/3/20/3}. */
+    String label(int window) {
+        return labels[window];
+    }
+
+    /** When the next window after {@code time} starts, into the following week if need be. */
+    LocalDateTime nextStart(LocalDateTime time) {
+        long now = weekMillis(time);
+        int found = Arrays.binarySearch(starts, now);
+        int next = found >= 0 ? found + 1 : -found - 1;
+        long start = next < starts.length ? starts[next] : starts[0] + WEEK_MILLIS;
+        return time.plus(start - now, ChronoUnit.MILLIS);
+    }
+
+    private static long weekMillis(LocalDateTime time) {
+        return time.getDayOfWeek().ordinal() * DAY_MILLIS + TimeUnit.NANOSECONDS.toMillis(time.toLocalTime().toNanoOfDay());
+    }
+
+    private static Set<DayOfWeek> days(String window, String spec) {
+        if (spec.equals("DAILY")) return EnumSet.allOf(DayOfWeek.class);
+        Set<DayOfWeek> days = EnumSet.noneOf(DayOfWeek.class);
+        for (String part : spec.split(",")) {
+            int dash = part.indexOf('-');
+            if (dash < 0) {
+                days.add(day(window, part));
+                continue;
+            }
+            DayOfWeek from = day(window, part.substring(0, dash));
+            DayOfWeek to = day(window, part.substring(dash + 1));
+            for (DayOfWeek d = from; ; d = d.plus(1)) {
+                days.add(d);
+                if (d == to) break;
+            }
+        }
+        return days;
+    }
+
+    private static DayOfWeek day(String window, String abbreviation) {
+        for (DayOfWeek day : DayOfWeek.values()) {
+            if (abbreviation(day).equals(abbreviation.trim())) return day;
+        }
+        throw new InvalidPlanException(window + ".days must be MON..SUN, ranges, lists or DAILY: " + abbreviation);
+    }
+
+    private static String abbreviation(DayOfWeek day) {
+        return day.name().substring(0, 3);
+    }
+}
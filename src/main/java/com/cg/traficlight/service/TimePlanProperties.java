@@ -0,0 +1,28 @@
+package com.cg.traficlight.service;
+
+import com.cg.traficlight.model.TimePlanWindow;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The weekly timetable as configured under {@code timeplan.windows}; compiled into a
+ * {@link TimeOfDayPlan} when the service starts. Unknown names are refused, so a misspelt timing
+ * stops startup instead of leaving the default in its place.
+ */
+@Component
+@ConfigurationProperties(prefix = "timeplan", ignoreUnknownFields = false)
+public class TimePlanProperties {
+
+    private List<TimePlanWindow> windows = new ArrayList<>();
+
+    public List<TimePlanWindow> getWindows() {
+        return windows;
+    }
+
+    public void setWindows(List<TimePlanWindow> windows) {
+        this.windows = windows;
+    }
+}
@@ -1,15 +1,43 @@
 package com.cg.traficlight.service;
 
+import com.cg.traficlight.analytics.PhaseAnalytics;
+import com.cg.traficlight.clock.ClockMode;
+import com.cg.traficlight.clock.TimeSource;
+import com.cg.traficlight.clock.VirtualTimeScheduler;
+import com.cg.traficlight.corridor.CycleAlignment;
+import com.cg.traficlight.detector.AdaptiveTiming;
+import com.cg.traficlight.history.HistoryRingBuffer;
+import com.cg.traficlight.history.HistoryStore;
+import com.cg.traficlight.metrics.LockOperation;
+import com.cg.traficlight.metrics.TrafficMetrics;
 import com.cg.traficlight.model.*;
+import com.cg.traficlight.plan.CompiledPlan;
+import com.cg.traficlight.plan.InvalidPlanException;
+import com.cg.traficlight.state.ControllerState;
+import com.cg.traficlight.state.ReplicatingStateStore;
+import com.cg.traficlight.state.ReplicationRole;
+import com.cg.traficlight.state.StandbyReplica;
+import com.cg.traficlight.state.StateStore;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.json.JsonMapper;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
-import java.util.EnumMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
@@ -20,176 +48,1013 @@ import java.util.concurrent.locks.ReentrantLock;
 @Service
 public class TrafficLightService {
 
-    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
-        Thread t = new Thread(r, "traffic-scheduler");
-        t.setDaemon(true);
-        return t;
-    });
+    private static final Logger log = LoggerFactory.getLogger(TrafficLightService.class);
+
+    private static final int DEFAULT_HISTORY_RETENTION = 10;
+
+    // shown while the watchdog hands the cycle over to a fresh scheduler
+    private static final StatusSnapshot ALL_RED = StatusSnapshot.of(null, Colors.RED, Map.of(), false);
+    private static final StatusSnapshot ALL_RED_PAUSED = StatusSnapshot.of(null, Colors.RED, Map.of(), true);
+
+    // replaced by a VirtualTimeScheduler in VIRTUAL clock mode, before anything is scheduled,
+    // and by a fresh thread when the watchdog finds this one has stopped making transitions
+    private volatile ScheduledExecutorService scheduler = newScheduler("traffic-scheduler");
+    private final AtomicInteger schedulerGeneration = new AtomicInteger();
+    private volatile TimeSource clock = TimeSource.SYSTEM;
+    private volatile VirtualTimeScheduler virtualClock;
+
+    @Value("${scheduler.clock:SYSTEM}")
+    private ClockMode clockMode = ClockMode.SYSTEM;
+
+    // start of virtual time; empty means the wall-clock time at startup
+    @Value("${scheduler.virtual.start:}")
+    private String virtualStart = "";
     private final ReentrantLock lock = new ReentrantLock();
+    // what preemption and failover may do to the cycle
+    private final CycleControl cycle = new Cycle();
     private final AtomicInteger currentPhaseIndex = new AtomicInteger(0);
     @Value("${max.record.size:10}")
     private Long maxRecordSize;
     private volatile List<Movement> movements = new ArrayList<>();
+    private volatile CompiledPlan plan = CompiledPlan.EMPTY;
 
-    private List<TraficLightHistory> records = new ArrayList<>();
+    // written only by whoever holds the lock, read lock-free by the HTTP threads
+    @Autowired(required = false)
+    private volatile HistoryStore records = new HistoryRingBuffer(DEFAULT_HISTORY_RETENTION);
 
     private volatile ScheduledFuture<?> scheduledFuture;
 
+    @Value("${scheduler.mode:RELATIVE}")
+    private SchedulingMode schedulingMode = SchedulingMode.RELATIVE;
+
+    // end of the current phase on the clock.nanoTime() clock, guarded by lock
+    private long phaseDeadlineNanos;
+
+    // wait time of the current lock holder, guarded by lock
+    private long lockWaitNanos;
+
+    private final TransitionTimingStats timing = new TransitionTimingStats();
+
+    // replaced in init() once the clock is settled
+    private volatile PhaseAnalytics analytics = new PhaseAnalytics(System.nanoTime());
+
+    @Value("${stream.subscriber.queue.size:64}")
+    private int streamQueueSize = 64;
+
+    @Value("${stream.subscriber.max.drops:256}")
+    private int streamMaxDrops = 256;
+
+    private volatile TransitionBroadcaster broadcaster = new TransitionBroadcaster(64, 256);
+
+    @Autowired(required = false)
+    private TrafficMetrics metrics = new TrafficMetrics();
+
+    @Autowired(required = false)
+    private AdaptiveTiming adaptive = new AdaptiveTiming();
+
+    // writes each status snapshot once, as Spring MVC would write the Response
+    @Autowired(required = false)
+    private ObjectMapper jsonMapper = JsonMapper.shared();
+
+    // commands and transitions, so a restart picks up where the controller left off
+    @Autowired(required = false)
+    private StateStore stateStore = StateStore.NONE;
+
+    // shared cycle epoch (ISO local date-time) for corridor coordination; empty runs free
+    @Value("${coordination.epoch:}")
+    private String coordinationEpoch = "";
+
+    @Value("${coordination.offset.millis:0}")
+    private long coordinationOffsetMillis;
+
+    @Value("${coordination.max.adjust.percent:20}")
+    private int coordinationMaxAdjustPercent = 20;
+
+    // null while free-running
+    private volatile CycleAlignment alignment;
+
+    // start of the cycle in progress and the change to its length, guarded by lock
+    private long cycleStartNanos;
+    private long cycleCorrectionNanos;
+    private long cycleNanos;
+
     private volatile boolean paused = false;
 
+    // all red between a failover and the phase after the one that overran
+    private volatile boolean failsafe;
+
+    @Value("${watchdog.enabled:true}")
+    private boolean watchdogEnabled = true;
+
+    @Value("${watchdog.overdue.millis:1000}")
+    private long watchdogOverdueMillis = 1000;
+
+    @Value("${watchdog.check.millis:100}")
+    private long watchdogCheckMillis = 100;
+
+    @Value("${watchdog.all.red.millis:3000}")
+    private long watchdogAllRedMillis = 3000;
+
+    // null when disabled or on virtual time, where nothing runs unless the caller advances it
+    private volatile SchedulerWatchdog watchdog;
+
+    // emergency-vehicle preemption: the yellow shown to clear other approaches, and the green hold
+    @Value("${preempt.clearance.millis:3000}")
+    private long preemptClearanceMillis = 3000;
+
+    // red everywhere before the preempted approach goes green, when it was showing yellow
+    @Value("${preempt.all.red.millis:2000}")
+    private long preemptAllRedMillis = 2000;
+
+    @Value("${preempt.hold.millis:30000}")
+    private long preemptHoldMillis = 30000;
+
+    @Value("${preempt.max.hold.millis:300000}")
+    private long preemptMaxHoldMillis = 300000;
+
+    // replaced in init() once the settings are in
+    private volatile PreemptionControl preemption = new PreemptionControl(lock, cycle, 3000, 2000, 30000, 300000);
+
+    // weekly timetable of timings, bound from timeplan.windows[n] (see TimeOfDayPlan)
+    @Autowired(required = false)
+    private TimePlanProperties timePlan = new TimePlanProperties();
+
+    private TimeOfDayPlan timeOfDay = TimeOfDayPlan.NONE;
+    // the window whose timings were last put in, -1 before the first; written under the lock
+    private volatile int timeOfDayWindow = -1;
+    private volatile long timeOfDaySwitches;
+
+    // PRIMARY replication is set up with the state store; a STANDBY mirrors replication.primary
+    @Value("${replication.role:NONE}")
+    private ReplicationRole replicationRole = ReplicationRole.NONE;
+
+    @Value("${replication.primary:localhost:7400}")
+    private String replicationPrimary = "localhost:7400";
+
+    @Value("${replication.heartbeat.millis:200}")
+    private long replicationHeartbeatMillis = 200;
+
+    // null unless running as a standby
+    private volatile StandbyReplica replica;
+
+    // mirroring the primary: nothing is timed here and commands are refused until it is lost
+    private volatile boolean standby;
+
+    private volatile Instant takenOver;
+
+    // last history stamp, guarded by lock; the history's time search needs stamps that never go back
+    private Instant lastStamp = Instant.MIN;
+
+    // the last plan and phase mirrored from the primary, guarded by lock
+    private CompiledPlan replicatedPlan;
+    private int replicatedPhaseIndex;
+    private Instant replicatedPhaseStart;
+
+    // bumped on every transition, plan change, pause and resume; drives ETags and long polls
+    private final StateVersion version = new StateVersion();
+
     public TrafficLightService() {
     }
 
+    /**
+     * A service on virtual time: call {@link #init()}, then {@link #advanceVirtualTime} to run
+     * the cycle forward.
+     */
+    public TrafficLightService(VirtualTimeScheduler virtualClock) {
+        this.clockMode = ClockMode.VIRTUAL;
+        useVirtualClock(virtualClock);
+    }
+
     @PostConstruct
     public void init() {
-        applySequence(20, 3, 20, 3);
-        startCycle();
+        if (clockMode == ClockMode.VIRTUAL && virtualClock == null) {
+            useVirtualClock(new VirtualTimeScheduler(
+                    virtualStart.isBlank() ? LocalDateTime.now(ZoneOffset.UTC) : LocalDateTime.parse(virtualStart)));
+        }
+        broadcaster = new TransitionBroadcaster(streamQueueSize, streamMaxDrops);
+        analytics = new PhaseAnalytics(clock.nanoTime());
+        applyPlan(CompiledPlan.of(Movements.of(20, 3, 20, 3)));
+        // a malformed window throws here, so the application does not start on a timetable it cannot run
+        timeOfDay = TimeOfDayPlan.of(timePlan.getWindows());
+        if (!coordinationEpoch.isBlank()) {
+            alignment = CycleAlignment.of(clock, LocalDateTime.parse(coordinationEpoch), coordinationOffsetMillis,
+                    coordinationMaxAdjustPercent);
+        }
+        preemption = new PreemptionControl(lock, cycle, preemptClearanceMillis, preemptAllRedMillis,
+                preemptHoldMillis, preemptMaxHoldMillis);
+        if (watchdogEnabled && virtualClock == null) {
+            watchdog = new SchedulerFailover(lock, cycle, preemption, watchdogOverdueMillis, watchdogCheckMillis,
+                    watchdogAllRedMillis).watchdog();
+        }
+        if (replicationRole == ReplicationRole.STANDBY) {
+            standby = true;
+            replica = StandbyReplica.of(replicationPrimary, replicationHeartbeatMillis, new StandbyReplica.Listener() {
+                @Override
+                public void replicated(ControllerState state) {
+                    followPrimary(state);
+                }
+
+                @Override
+                public void primaryLost(ControllerState state) {
+                    takeOver(state);
+                }
+            });
+        }
+        ControllerState restored = standby ? null : stateStore.recover();
+        if (standby) {
+            log.info("standby of {}: mirroring it until it is lost", replicationPrimary);
+        } else if (restored != null) {
+            // the timetable takes over again at the end of the restored cycle
+            restore(restored);
+        } else {
+            if (!timeOfDay.isEmpty()) {
+                timeOfDayWindow = timeOfDay.windowAt(clock.now());
+                applyPlan(timeOfDay.plan(timeOfDayWindow));
+            }
+            startCycle();
+        }
+        if (watchdog != null) watchdog.start();
+        if (replica != null) replica.start();
     }
 
     @PreDestroy
     public void shutdown() {
+        SchedulerWatchdog w = watchdog;
+        if (w != null) w.stop();
+        StandbyReplica r = replica;
+        if (r != null) r.close();
         scheduler.shutdownNow();
+        broadcaster.close();
+    }
+
+    private static ScheduledExecutorService newScheduler(String name) {
+        return Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    private void useVirtualClock(VirtualTimeScheduler virtual) {
+        scheduler.shutdownNow();
+        scheduler = virtual;
+        clock = virtual;
+        virtualClock = virtual;
+    }
+
+    /**
+     * Runs the cycle forward by {@code duration} of virtual time on the calling thread, as fast
+     * as the transitions can be processed. History and events carry virtual timestamps.
+     *
+     * @return the number of phase deadlines that fired
+     * @throws IllegalStateException unless the service runs on the VIRTUAL clock
+     */
+    public long advanceVirtualTime(Duration duration) {
+        VirtualTimeScheduler virtual = virtualClock;
+        if (virtual == null) {
+            throw new IllegalStateException("scheduler.clock is not VIRTUAL");
+        }
+        return virtual.advance(duration);
+    }
+
+    /** Current time of the clock that drives the cycle (virtual time in VIRTUAL mode). */
+    public Instant getClockTime() {
+        return clock.instant();
+    }
+
+    public ClockMode getClockMode() {
+        return virtualClock == null ? ClockMode.SYSTEM : ClockMode.VIRTUAL;
     }
 
     public void setSequence(SignalSequence req) {
-        lock.lock();
+        activate(CompiledPlan.of(Movements.of(req)), LockOperation.SET_SEQUENCE);
+    }
+
+    /**
+     * Compiles {@code phasePlan} and switches to it from its first phase (from the phase the
+     * shared cycle is in, when coordinated).
+     *
+     * @throws InvalidPlanException  if the plan is malformed or releases conflicting groups
+     *                               together; the running plan is left untouched
+     * @throws IllegalStateException on a standby, until it takes over
+     */
+    public void setPlan(PhasePlan phasePlan) {
+        activate(CompiledPlan.compile(phasePlan), LockOperation.SET_PLAN);
+    }
+
+    private void activate(CompiledPlan compiled, LockOperation operation) {
+        requireActive();
+        long acquired = lockTimed();
         try {
-            applySequence(req.getTimeGreenNS(), req.getTimeYellowNS(),
-                    req.getTimeGreenEW(), req.getTimeYellowEW());
+            CycleAlignment target = alignment;
+            if (target != null && !paused && scheduledFuture != null && compiled.sameSignalsAs(currentPlan())) {
+                // coordinated timing change: the showing phase runs out and the following cycles
+                // are stretched or squeezed back onto the shared cycle, no hard reset
+                applyPlan(compiled);
+                stateStore.planChanged(compiled, currentPhaseIndex.get());
+                version.bump();
+                publish(PhaseEventType.SEQUENCE_CHANGED);
+                return;
+            }
+            applyPlan(compiled);
             currentPhaseIndex.set(0);
+            stateStore.planChanged(compiled, 0);
             cancelScheduled();
+            // the new plan starts from its first phase, a preemption or not
+            preemption.clear();
+            version.bump();
+            publish(PhaseEventType.SEQUENCE_CHANGED);
             if (!paused) {
-                scheduleCurrentPhase(0); // start immediately
+                if (target != null) {
+                    enterAlignedPhase(target);
+                } else {
+                    restartPhaseClock();
+                    scheduleCurrentPhase(0); // start immediately
+                }
             }
         } finally {
-            lock.unlock();
+            unlockTimed(operation, acquired);
         }
     }
 
-    private void applySequence(long nsGreenSec, long nsYellowSec, long ewGreenSec, long ewYellowSec) {
-        List<Movement> list = new ArrayList<>();
-        list.add(new Movement(Directions.NORTH, Colors.GREEN, TimeUnit.SECONDS.toMillis(nsGreenSec)));
-        list.add(new Movement(Directions.NORTH, Colors.YELLOW, TimeUnit.SECONDS.toMillis(nsYellowSec)));
-        list.add(new Movement(Directions.EAST, Colors.GREEN, TimeUnit.SECONDS.toMillis(ewGreenSec)));
-        list.add(new Movement(Directions.EAST, Colors.YELLOW, TimeUnit.SECONDS.toMillis(ewYellowSec)));
-        list.add(new Movement(Directions.SOUTH, Colors.GREEN, TimeUnit.SECONDS.toMillis(ewGreenSec)));
-        list.add(new Movement(Directions.SOUTH, Colors.YELLOW, TimeUnit.SECONDS.toMillis(ewYellowSec)));
-        list.add(new Movement(Directions.WEST, Colors.GREEN, TimeUnit.SECONDS.toMillis(ewGreenSec)));
-        list.add(new Movement(Directions.WEST, Colors.YELLOW, TimeUnit.SECONDS.toMillis(ewYellowSec)));
-        this.movements = List.copyOf(list);
+    // plan first: a reader that sees the new movements is then sure to see the new plan
+    private void applyPlan(CompiledPlan compiled) {
+        this.plan = compiled;
+        this.movements = compiled.movements();
     }
 
-    public void pause() {
+    /**
+     * Locks the cycle onto the shared epoch: from now on every cycle should start at
+     * {@code epoch + offset + k * cycle}. With {@code immediate} the controller jumps straight to
+     * the phase that puts it there; otherwise the showing phase is kept and the next few cycles
+     * are stretched or squeezed by at most {@code coordination.max.adjust.percent} each.
+     *
+     * @throws IllegalArgumentException if the maximum adjustment is not 1..100 percent
+     */
+    public void coordinate(LocalDateTime epoch, long offsetMillis, boolean immediate) {
+        requireActive();
+        CycleAlignment target = CycleAlignment.of(clock, epoch, offsetMillis, coordinationMaxAdjustPercent);
+        long acquired = lockTimed();
+        try {
+            alignment = target;
+            // a preemption rejoins the shared cycle when it ends
+            if (immediate && !paused && preemption.current() == null) {
+                cancelScheduled();
+                enterAlignedPhase(target);
+            }
+        } finally {
+            unlockTimed(LockOperation.COORDINATE, acquired);
+        }
+    }
+
+    /** Back to free-running; the cycle in progress finishes without further correction. */
+    public void stopCoordination() {
+        long acquired = lockTimed();
+        try {
+            alignment = null;
+            cycleCorrectionNanos = 0;
+        } finally {
+            unlockTimed(LockOperation.COORDINATE, acquired);
+        }
+    }
+
+    /** Shared epoch and offset, and how far the latest cycle started from its target. */
+    public CoordinationStatus getCoordinationStatus() {
+        CoordinationStatus status = new CoordinationStatus();
         lock.lock();
+        try {
+            CycleAlignment target = alignment;
+            status.setCycleMillis(currentPlan().cycleMillis());
+            if (target == null) return status;
+            status.setCoordinated(true);
+            status.setEpoch(target.epoch());
+            status.setOffsetMillis(target.offsetMillis());
+            long cycle = TimeUnit.MILLISECONDS.toNanos(status.getCycleMillis());
+            if (cycle > 0) {
+                status.setErrorMillis(TimeUnit.NANOSECONDS.toMillis(target.errorNanos(cycleStartNanos, cycle)));
+            }
+            status.setCorrectionMillis(TimeUnit.NANOSECONDS.toMillis(cycleCorrectionNanos));
+            return status;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void pause() {
+        requireActive();
+        long acquired = lockTimed();
         try {
             if (paused) return;
             paused = true;
             cancelScheduled();
+            analytics.paused(clock.nanoTime());
+            stateStore.paused();
+            version.bump();
+            publish(PhaseEventType.PAUSED);
         } finally {
-            lock.unlock();
+            unlockTimed(LockOperation.PAUSE, acquired);
         }
     }
 
     public void resume() {
-        lock.lock();
+        requireActive();
+        long acquired = lockTimed();
         try {
             if (!paused) return;
             paused = false;
+            analytics.resumed(clock.nanoTime());
+            stateStore.resumed();
+            version.bump();
+            publish(PhaseEventType.RESUMED);
+            if (preemption.resume()) return;
+            restartPhaseClock();
             scheduleCurrentPhase(0);
+        } finally {
+            unlockTimed(LockOperation.RESUME, acquired);
+        }
+    }
+
+    /** True while this controller mirrors a primary; it runs the cycle itself once the primary is lost. */
+    public boolean isStandby() {
+        return standby;
+    }
+
+    private void requireActive() {
+        if (standby) {
+            throw new IllegalStateException("standby of " + replicationPrimary + ": send commands to the primary");
+        }
+    }
+
+    /**
+     * Mirrors one replicated event: a new plan, a pause or resume, or a phase the primary entered,
+     * which is added to the history as the primary recorded it. Nothing is scheduled.
+     */
+    private void followPrimary(ControllerState state) {
+        lock.lock();
+        try {
+            if (!standby) return;
+            if (state.getPlan() != null && state.getPlan() != replicatedPlan) {
+                replicatedPlan = state.getPlan();
+                applyPlan(replicatedPlan);
+                currentPhaseIndex.set(state.getPhaseIndex());
+                version.bump();
+                publish(PhaseEventType.SEQUENCE_CHANGED);
+            }
+            if (state.isPaused() != paused) {
+                paused = state.isPaused();
+                version.bump();
+                publish(paused ? PhaseEventType.PAUSED : PhaseEventType.RESUMED);
+            }
+            Instant start = state.getPhaseStart();
+            if (start == null || (start.equals(replicatedPhaseStart) && state.getPhaseIndex() == replicatedPhaseIndex)) {
+                return;
+            }
+            replicatedPhaseStart = start;
+            replicatedPhaseIndex = state.getPhaseIndex();
+            currentPhaseIndex.set(replicatedPhaseIndex);
+            List<Movement> movementsList = movements;
+            if (movementsList.isEmpty()) return;
+            Movement current = movementsList.get(Math.floorMod(replicatedPhaseIndex, movementsList.size()));
+            TraficLightHistory history = new TraficLightHistory();
+            history.setId(replicatedPhaseIndex + 1L);
+            history.setColors(current.getColors());
+            history.setDirection(current.getDirection());
+            history.setTimestamp(monotonic(start));
+            history.setDurationSeconds(state.getPhaseDurationMillis());
+            records.append(history);
+            version.bump();
+            publish(PhaseEventType.TRANSITION, current, replicatedPhaseIndex);
         } finally {
             lock.unlock();
         }
     }
 
+    /**
+     * The primary is gone: continue from the last state it sent, in the phase it was in and for
+     * what is left of it, exactly as after a restart. The local store takes over the record.
+     * Nothing fences the old primary: should it come back as a primary, both run the intersection.
+     */
+    private void takeOver(ControllerState state) {
+        lock.lock();
+        try {
+            if (!standby) return;
+            standby = false;
+            takenOver = clock.instant();
+            if (state.getPlan() != null) stateStore.planChanged(state.getPlan(), state.getPhaseIndex());
+            if (state.isPaused()) stateStore.paused();
+            log.warn("primary {} lost; taking over at phase index {}", replicationPrimary, state.getPhaseIndex());
+            restore(state);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Takes the lock; returns when it was acquired, or 0 when metrics are off. */
+    private long lockTimed() {
+        if (!metrics.isEnabled()) {
+            lock.lock();
+            return 0L;
+        }
+        long start = System.nanoTime();
+        lock.lock();
+        long acquired = System.nanoTime();
+        // stash the wait until the hold time is known, so both land in one event
+        lockWaitNanos = acquired - start;
+        return acquired;
+    }
+
+    private void unlockTimed(LockOperation operation, long acquired) {
+        if (acquired == 0L) {
+            lock.unlock();
+            return;
+        }
+        long wait = lockWaitNanos;
+        long hold = System.nanoTime() - acquired;
+        lock.unlock();
+        metrics.recordLock(operation, wait, hold);
+    }
+
+    /**
+     * Version of the observable state: status, plan and history. Read it before the state it
+     * describes; the state is then at least that new.
+     */
+    public long getStateVersion() {
+        return version.current();
+    }
+
+    /**
+     * Completes with the new version once the state changes past {@code knownVersion}, at once
+     * if it already has. Nothing blocks while waiting.
+     */
+    public CompletableFuture<Long> awaitStateChange(long knownVersion) {
+        return version.after(knownVersion);
+    }
+
+    /**
+     * Returns the precomputed status of the current phase. The instance is shared between
+     * callers and must not be modified.
+     */
     public Response getStatus() {
-        Response response = new Response();
-        EnumMap<Directions, Colors> lights = new EnumMap<>(Directions.class);
+        return currentSnapshot().getResponse();
+    }
+
+    /**
+     * Returns the current status already serialized as JSON; shared, do not modify.
+     */
+    public byte[] getStatusJson() {
+        return currentSnapshot().getJson(jsonMapper);
+    }
+
+    private StatusSnapshot currentSnapshot() {
+        if (failsafe) return paused ? ALL_RED_PAUSED : ALL_RED;
+        Preemption p = preemption.current();
+        if (p != null) return p.status(paused);
+        CompiledPlan compiled = currentPlan();
+        return compiled.status(Math.floorMod(currentPhaseIndex.get(), compiled.size()), paused);
+    }
+
+    private CompiledPlan currentPlan() {
         List<Movement> movementsList = movements;
-        int index = currentPhaseIndex.get() % movementsList.size();
-        Movement movement = movementsList.get(index);
-        response.setActiveDirection(movement.getDirection());
-        if (movement.getDirection() == Directions.NORTH) {
-            response.setActiveColor(movement.getColors());
-            lights.put(Directions.EAST, Colors.RED);
-            lights.put(Directions.SOUTH, Colors.RED);
-            lights.put(Directions.WEST, Colors.RED);
-        } else if (movement.getDirection() == Directions.EAST) {
-            response.setActiveColor(movement.getColors());
-            lights.put(Directions.NORTH, Colors.RED);
-            lights.put(Directions.SOUTH, Colors.RED);
-            lights.put(Directions.WEST, Colors.RED);
-        } else if (movement.getDirection() == Directions.SOUTH) {
-            response.setActiveColor(movement.getColors());
-            lights.put(Directions.EAST, Colors.RED);
-            lights.put(Directions.NORTH, Colors.RED);
-            lights.put(Directions.WEST, Colors.RED);
-        } else {
-            response.setActiveColor(movement.getColors());
-            lights.put(Directions.EAST, Colors.RED);
-            lights.put(Directions.SOUTH, Colors.RED);
-            lights.put(Directions.NORTH, Colors.RED);
+        CompiledPlan compiled = plan;
+        if (!compiled.isFor(movementsList)) {
+            compiled = CompiledPlan.of(movementsList);
+            plan = compiled;
         }
-        response.setInactiveState(lights);
-        response.setPaused(paused);
-        return response;
+        return compiled;
+    }
+
+    /** The active plan, its current phase and the color of every signal group. */
+    public PlanStatus getPlanStatus() {
+        CompiledPlan compiled = currentPlan();
+        PlanStatus status = new PlanStatus();
+        status.setPlan(compiled.name());
+        status.setPaused(paused);
+        if (compiled.size() == 0) return status;
+        int index = Math.floorMod(currentPhaseIndex.get(), compiled.size());
+        status.setPhaseIndex(index);
+        status.setPhase(compiled.phaseName(index));
+        Map<String, Colors> groups = compiled.groupColors(index);
+        Preemption p = preemption.current();
+        if (p != null && !failsafe) {
+            status.setPhase("preemption " + p.direction + " " + p.stage);
+            groups = compiled.groupColors(PreemptionControl.approachColors(p.status(false).getResponse()));
+        }
+        if (failsafe) {
+            // the precomputed map is shared
+            groups = new LinkedHashMap<>(groups);
+            groups.replaceAll((group, color) -> Colors.RED);
+        }
+        status.setGroups(groups);
+        return status;
     }
 
     private void startCycle() {
         lock.lock();
         try {
             cancelScheduled();
-            if (!paused) scheduleCurrentPhase(0);
+            CycleAlignment target = alignment;
+            if (!paused && target != null) {
+                enterAlignedPhase(target);
+            } else if (!paused) {
+                restartPhaseClock();
+                scheduleCurrentPhase(0);
+            }
         } finally {
             lock.unlock();
         }
     }
 
-    private void scheduleCurrentPhase(long delayMillis) {
-        List<Movement> movementsList = movements;
-        if (movementsList.isEmpty()) return;
-        int index = currentPhaseIndex.get() % movementsList.size();
-        System.out.println("currentPhaseIndex.get() " + currentPhaseIndex.get() + " movementsList.size " + movementsList.size() + "index "+index);
-        Movement current = movementsList.get(index);
-        Response status = getStatus();
-        boolean anyInactiveGreen = status.getInactiveState().values().stream()
-                .anyMatch(c -> c == Colors.GREEN);
-        if (anyInactiveGreen) {
-            lock.lock();
-            try {
-                paused = true;
-                cancelScheduled();
-            } finally {
-                lock.unlock();
+    /**
+     * Continues from a recorded state: its plan, pause flag and phase, less whatever part of the
+     * cycle went by while the service was down. A coordinated controller rejoins the shared cycle.
+     */
+    private void restore(ControllerState state) {
+        lock.lock();
+        try {
+            if (state.getPlan() != null) {
+                applyPlan(state.getPlan());
+            }
+            currentPhaseIndex.set(state.getPhaseIndex());
+            paused = state.isPaused();
+            if (paused) {
+                analytics.paused(clock.nanoTime());
+                return;
+            }
+            CycleAlignment target = alignment;
+            if (target != null) {
+                enterAlignedPhase(target);
+                return;
             }
-            throw new IllegalStateException("Conflicting GREEN lights detected");
+            long elapsed = catchUp(state);
+            restartPhaseClock();
+            scheduleCurrentPhase(-elapsed);
+        } finally {
+            lock.unlock();
         }
+    }
 
-        long duration = current.getDurationMillis();
-        TraficLightHistory history = new TraficLightHistory();
-        history.setId(currentPhaseIndex.longValue() + 1);
-        history.setColors(current.getColors());
-        history.setDirection(current.getDirection());
-        history.setTimestamp(LocalDateTime.now());
-        history.setDurationSeconds(duration);
-        records.add(history);
-
-        if (duration <= 0) {
+    /**
+     * Steps past the phases that ended since the recorded phase started and returns how far into
+     * the current one the cycle is; callers hold the lock.
+     */
+    private long catchUp(ControllerState state) {
+        CompiledPlan compiled = currentPlan();
+        if (state.getPhaseStart() == null || compiled.size() == 0) return 0;
+        long elapsed = Math.max(Duration.between(state.getPhaseStart(), clock.instant()).toMillis(), 0);
+        if (elapsed < state.getPhaseDurationMillis()) return elapsed;
+        elapsed -= state.getPhaseDurationMillis();
+        currentPhaseIndex.incrementAndGet();
+        long cycle = compiled.cycleMillis();
+        if (cycle > 0) {
+            // a whole cycle from any phase boundary comes back to the same phase
+            elapsed %= cycle;
+        }
+        for (int stepped = 0; stepped < compiled.size(); stepped++) {
+            long duration = Math.max(compiled.durationMillis(Math.floorMod(currentPhaseIndex.get(), compiled.size())), 0);
+            if (elapsed < duration) break;
+            elapsed -= duration;
             currentPhaseIndex.incrementAndGet();
+        }
+        return elapsed;
+    }
+
+    /**
+     * Enters the phase the shared cycle is in right now, shortened by the part of it that has
+     * already gone by; callers hold the lock.
+     */
+    private void enterAlignedPhase(CycleAlignment target) {
+        CompiledPlan compiled = currentPlan();
+        long cycle = TimeUnit.MILLISECONDS.toNanos(compiled.cycleMillis());
+        restartPhaseClock();
+        if (cycle == 0) {
             scheduleCurrentPhase(0);
             return;
         }
+        long now = clock.nanoTime();
+        long position = target.positionNanos(now, cycle);
+        cycleStartNanos = now - position;
+        cycleCorrectionNanos = 0;
+        long phaseStart = 0;
+        int slot = 0;
+        for (; slot < compiled.size() - 1; slot++) {
+            long duration = TimeUnit.MILLISECONDS.toNanos(Math.max(compiled.durationMillis(slot), 0));
+            if (position < phaseStart + duration) break;
+            phaseStart += duration;
+        }
+        currentPhaseIndex.set(slot);
+        scheduleCurrentPhase(-TimeUnit.NANOSECONDS.toMillis(position - phaseStart));
+    }
 
-        scheduledFuture = scheduler.schedule(() -> {
-            lock.lock();
-            try {
-                if (paused) return;
-                currentPhaseIndex.incrementAndGet();
-                scheduleCurrentPhase(0);
-            } finally {
-                lock.unlock();
+    /**
+     * Records the current phase and schedules its end {@code delayMillis} after its duration;
+     * a negative delay enters a phase that is already partly over.
+     */
+    private void scheduleCurrentPhase(long delayMillis) {
+        // entering a phase, on schedule or by command, ends the all-red of a failover
+        failsafe = false;
+        CompiledPlan compiled = currentPlan();
+        List<Movement> movementsList = compiled.movements();
+        if (movementsList.isEmpty()) {
+            idleWatchdog();
+            return;
+        }
+        TimeSource time = clock;
+        long now = time.nanoTime();
+        long phaseStart = schedulingMode == SchedulingMode.ABSOLUTE ? phaseDeadlineNanos : now;
+        // zero and negative durations are stepped over in a loop, at most once around the cycle
+        for (int stepped = 0; stepped < movementsList.size(); stepped++) {
+            // floorMod: on virtual time the index can run past Integer.MAX_VALUE
+            int index = Math.floorMod(currentPhaseIndex.get(), movementsList.size());
+            if (log.isDebugEnabled()) {
+                log.debug("phase index {} of {} (slot {})", currentPhaseIndex.get(), movementsList.size(), index);
+            }
+            Movement current = movementsList.get(index);
+            // conflicts are rejected when a plan is compiled; this is one AND against precomputed masks
+            if (!compiled.isSafe(index)) {
+                metrics.recordConflict(currentPhaseIndex.get(), current.getDirection(), current.getColors());
+                log.error("Conflicting GREEN lights detected at phase index {} ({} {}); pausing the cycle",
+                        currentPhaseIndex.get(), current.getDirection(), current.getColors());
+                lock.lock();
+                try {
+                    paused = true;
+                    cancelScheduled();
+                    analytics.paused(now);
+                    stateStore.paused();
+                    version.bump();
+                } finally {
+                    lock.unlock();
+                }
+                throw new IllegalStateException("Conflicting GREEN lights detected");
+            }
+
+            long duration = compiled.durationMillis(index);
+            if (index == 0) {
+                beginCycle(compiled, phaseStart + TimeUnit.MILLISECONDS.toNanos(delayMillis));
+            }
+            if (cycleCorrectionNanos != 0 && duration > 0) {
+                duration = Math.max(1, Math.round(duration * ((double) (cycleNanos + cycleCorrectionNanos) / cycleNanos)));
+            }
+            if (current.getColors() == Colors.GREEN && current.getDirection() != null) {
+                // detector counts are lock-free; draining them here never blocks ingestion
+                duration = adaptive.greenMillis(current.getDirection(), duration);
+            }
+            TraficLightHistory history = new TraficLightHistory();
+            history.setId(currentPhaseIndex.longValue() + 1);
+            history.setColors(current.getColors());
+            history.setDirection(current.getDirection());
+            history.setTimestamp(monotonic(time.instant()));
+            history.setDurationSeconds(duration);
+            records.append(history);
+            stateStore.transition(currentPhaseIndex.get(), history.getTimestamp().plus(delayMillis, ChronoUnit.MILLIS),
+                    duration);
+            analytics.phaseStarted(now, index, compiled.approachesGreen(index));
+            version.bump();
+            publish(PhaseEventType.TRANSITION, current, currentPhaseIndex.get());
+
+            if (duration > 0) {
+                schedulePhaseEnd(phaseStart, now, duration + delayMillis);
+                return;
+            }
+            currentPhaseIndex.incrementAndGet();
+        }
+        // every phase has a zero duration, so there is nothing to time: stay on the current one
+        idleWatchdog();
+    }
+
+    /** {@code stamp}, or the last one if the clock has been stepped back since; callers hold the lock. */
+    private Instant monotonic(Instant stamp) {
+        if (stamp.isBefore(lastStamp)) return lastStamp;
+        lastStamp = stamp;
+        return stamp;
+    }
+
+    /** Works out how much the cycle starting at {@code startNanos} must change to stay aligned. */
+    private void beginCycle(CompiledPlan compiled, long startNanos) {
+        CycleAlignment target = alignment;
+        cycleStartNanos = startNanos;
+        cycleNanos = TimeUnit.MILLISECONDS.toNanos(compiled.cycleMillis());
+        cycleCorrectionNanos = target == null || cycleNanos == 0 ? 0 : target.correctionNanos(startNanos, cycleNanos);
+    }
+
+    private void schedulePhaseEnd(long phaseStart, long now, long durationMillis) {
+        long durationNanos = TimeUnit.MILLISECONDS.toNanos(durationMillis);
+        if (schedulingMode == SchedulingMode.RELATIVE) {
+            phaseDeadlineNanos = now + durationNanos;
+            scheduledFuture = scheduler.schedule(this::onPhaseDeadline, durationMillis, TimeUnit.MILLISECONDS);
+            expectTransition(durationNanos);
+            return;
+        }
+        // absolute mode: the boundary is the previous boundary plus this phase, so lateness is
+        // taken out of the next phase instead of piling up. A phase is never cut by more than
+        // half; beyond that the cycle is re-anchored on the current time.
+        if (now - phaseStart > durationNanos / 2) {
+            timing.recordResync();
+            phaseStart = now;
+        }
+        phaseDeadlineNanos = phaseStart + durationNanos;
+        scheduledFuture = scheduler.schedule(this::onPhaseDeadline, phaseDeadlineNanos - now, TimeUnit.NANOSECONDS);
+        expectTransition(phaseDeadlineNanos - now);
+    }
+
+    private void onPhaseDeadline() {
+        lock.lock();
+        try {
+            // a failover's all red wins over a transition the old scheduler thread runs late
+            if (paused || failsafe) return;
+            long now = clock.nanoTime();
+            long lateness = now - phaseDeadlineNanos;
+            timing.recordTransition(lateness);
+            analytics.phaseOverrun(now, lateness);
+            if (metrics.isEnabled()) {
+                List<Movement> movementsList = movements;
+                int index = currentPhaseIndex.get();
+                Movement ended = movementsList.get(Math.floorMod(index, movementsList.size()));
+                metrics.recordTransition(lateness, index, ended.getDirection(), ended.getColors());
             }
-        }, duration + delayMillis, TimeUnit.MILLISECONDS);
+            currentPhaseIndex.incrementAndGet();
+            if (!timeOfDay.isEmpty()) followTimeOfDay();
+            scheduleCurrentPhase(0);
+        } catch (RuntimeException e) {
+            // the cycle stops here; the watchdog notices the missed deadline and takes over
+            log.error("phase transition failed at phase index {}", currentPhaseIndex.get(), e);
+            throw e;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * At the end of a cycle, puts in the timings of the timetable window now in force if it is
+     * not the one last put in. The plans are compiled up front, so this is a lookup and a swap
+     * of references; the next cycle starts on time with the new timings, with no reset and
+     * nothing rescheduled. A sequence or plan set by hand therefore runs until the next window
+     * starts. Callers hold the lock.
+     */
+    private void followTimeOfDay() {
+        CompiledPlan compiled = currentPlan();
+        int index = currentPhaseIndex.get();
+        if (compiled.size() > 0 && Math.floorMod(index, compiled.size()) != 0) return;
+        int window = timeOfDay.windowAt(clock.now());
+        if (window == timeOfDayWindow) return;
+        timeOfDayWindow = window;
+        CompiledPlan next = timeOfDay.plan(window);
+        if (next == compiled) return;
+        applyPlan(next);
+        // a plan set by hand may not have the same number of phases: start the new one at its first
+        int misaligned = Math.floorMod(index, next.size());
+        if (misaligned != 0) currentPhaseIndex.addAndGet(next.size() - misaligned);
+        stateStore.planChanged(next, currentPhaseIndex.get());
+        timeOfDaySwitches++;
+        version.bump();
+        publish(PhaseEventType.SEQUENCE_CHANGED);
+        log.info("time plan window {} at phase index {}", timeOfDay.label(window), currentPhaseIndex.get());
+    }
+
+    public TimePlanStatus getTimePlanStatus() {
+        TimePlanStatus status = new TimePlanStatus();
+        TimeOfDayPlan table = timeOfDay;
+        if (table.isEmpty()) return status;
+        LocalDateTime now = clock.now();
+        int due = table.windowAt(now);
+        int active = timeOfDayWindow;
+        status.setEnabled(true);
+        status.setWindows(table.size());
+        status.setActiveWindow(active < 0 ? null : table.label(active));
+        status.setDueWindow(table.label(due));
+        status.setPending(due != active);
+        // windows are in local time; the switch is reported as an instant like every other timestamp
+        status.setNextSwitch(table.nextStart(now).atZone(clock.zone()).toInstant());
+        status.setSwitches(timeOfDaySwitches);
+        return status;
+    }
 
+    /**
+     * Emergency-vehicle preemption: gives {@code direction} green for {@code hold} as soon as it is
+     * safe. Every other approach showing green turns yellow for {@code preempt.clearance.millis}
+     * and a yellow already up runs out, so the wait for green is fixed when the request is taken,
+     * and returned. An approach that is itself showing yellow runs it out and shows red with
+     * every other for {@code preempt.all.red.millis} before its green. After the hold the approach shows yellow for the clearance time; then the
+     * cycle resumes the phase that was cut short, for what was left of it (the next phase if none
+     * was), or rejoins the shared cycle when coordinated. A request during a preemption retargets
+     * it; the cycle still resumes where it was first cut. A null {@code hold} is
+     * {@code preempt.hold.millis}.
+     *
+     * @return the clearance before green, with any all red, in milliseconds
+     * @throws IllegalArgumentException if the hold is not positive or above {@code preempt.max.hold.millis}
+     * @throws IllegalStateException    while paused, or on a standby
+     */
+    public long preempt(Directions direction, Duration hold) {
+        long requested = clock.nanoTime();
+        requireActive();
+        PreemptionControl control = preemption;
+        long holdMillis = control.holdMillis(direction, hold);
+        long acquired = lockTimed();
+        try {
+            if (paused) throw new IllegalStateException("paused: resume before preempting");
+            return TimeUnit.NANOSECONDS.toMillis(control.start(direction, holdMillis, requested));
+        } finally {
+            unlockTimed(LockOperation.PREEMPT, acquired);
+        }
+    }
+
+    /**
+     * Ends the preemption early: the approach goes to yellow now, or if its green has not come up
+     * yet, the cycle resumes once the clearance is over.
+     *
+     * @return false if there was no preemption
+     */
+    public boolean cancelPreemption() {
+        requireActive();
+        long acquired = lockTimed();
+        try {
+            return preemption.cancel();
+        } finally {
+            unlockTimed(LockOperation.PREEMPT, acquired);
+        }
+    }
+
+    public PreemptionStatus getPreemptionStatus() {
+        return preemption.status();
+    }
+
+    public WatchdogStatus getWatchdogStatus() {
+        SchedulerWatchdog w = watchdog;
+        if (w != null) return w.snapshot(failsafe);
+        WatchdogStatus status = new WatchdogStatus();
+        status.setFailsafe(failsafe);
+        return status;
+    }
+
+    /** This controller's part in hot-standby replication and how far the feed has got. */
+    public ReplicationStatus getReplicationStatus() {
+        ReplicationStatus status = new ReplicationStatus();
+        StandbyReplica r = replica;
+        if (r != null) {
+            status.setRole((standby ? ReplicationRole.STANDBY : ReplicationRole.PRIMARY).name());
+            status.setConnected(r.isConnected());
+            status.setSequence(r.sequence());
+            status.setBatches(r.batches());
+            status.setTakenOver(takenOver);
+        } else if (stateStore instanceof ReplicatingStateStore primary) {
+            status.setRole(ReplicationRole.PRIMARY.name());
+            status.setStandbys(primary.standbys());
+            status.setSequence(primary.replicatedSequence());
+            status.setBatches(primary.batches());
+        } else {
+            status.setRole(ReplicationRole.NONE.name());
+        }
+        return status;
+    }
+
+    /**
+     * Posts the heartbeat for a transition scheduled {@code delayNanos} from now. Measured from
+     * now rather than from {@code phaseDeadlineNanos}: a transition that was held up on the way
+     * here is timed from when it is scheduled, and must not count as late for that.
+     */
+    private void expectTransition(long delayNanos) {
+        SchedulerWatchdog w = watchdog;
+        if (w != null) w.expect(clock.nanoTime() + delayNanos);
+    }
+
+    private void idleWatchdog() {
+        SchedulerWatchdog w = watchdog;
+        if (w != null) w.idle();
+    }
+
+    /** Anchors the cycle on the current time; callers hold the lock and schedule right after. */
+    private void restartPhaseClock() {
+        phaseDeadlineNanos = clock.nanoTime();
+    }
+
+    /**
+     * Streams every transition, pause, resume and sequence change to {@code listener} until the
+     * subscription is cancelled or the listener falls too far behind.
+     */
+    public Subscription subscribe(PhaseEventListener listener) {
+        return broadcaster.subscribe(listener);
+    }
+
+    private void publish(PhaseEventType type) {
+        List<Movement> movementsList = movements;
+        if (movementsList.isEmpty() || !broadcaster.hasSubscribers()) return;
+        int index = currentPhaseIndex.get();
+        publish(type, movementsList.get(Math.floorMod(index, movementsList.size())), index);
+    }
+
+    private void publish(PhaseEventType type, Movement movement, long phaseIndex) {
+        TransitionBroadcaster target = broadcaster;
+        if (!target.hasSubscribers()) return;
+        target.publish(new PhaseEvent(target.nextSequence(), type, phaseIndex, movement.getDirection(),
+                movement.getColors(), movement.getDurationMillis(), paused, clock.instant()));
+    }
+
+    /** Rolling phase statistics; maintained as transitions happen, so this never reads history. */
+    public AnalyticsReport getAnalytics() {
+        return analytics.report(clock.nanoTime());
+    }
+
+    public SchedulerTiming getSchedulerTiming() {
+        return timing.snapshot(schedulingMode);
     }
 
     private void cancelScheduled() {
@@ -197,12 +1062,112 @@ public class TrafficLightService {
             scheduledFuture.cancel(false);
         }
         scheduledFuture = null;
+        idleWatchdog();
     }
 
     public List<TraficLightHistory> getTimingHistory() {
-        List<TraficLightHistory> copy = new ArrayList<>(records);
-        java.util.Collections.reverse(copy);
-        long limit = (maxRecordSize == null) ? copy.size() : maxRecordSize;
-        return copy.stream().limit(limit).toList();
+        long limit = (maxRecordSize == null) ? DEFAULT_HISTORY_RETENTION : maxRecordSize;
+        return records.latest((int) Math.min(limit, Integer.MAX_VALUE));
+    }
+
+    /** One page of history matching the query, newest first; see {@link HistoryStore#query}. */
+    public HistoryPage queryHistory(HistoryQuery query) {
+        return records.query(query);
+    }
+
+    /** The cycle as {@link PreemptionControl} and {@link SchedulerFailover} see it. */
+    private final class Cycle implements CycleControl {
+
+        @Override
+        public TimeSource clock() {
+            return clock;
+        }
+
+        @Override
+        public boolean isPaused() {
+            return paused;
+        }
+
+        @Override
+        public boolean isFailsafe() {
+            return failsafe;
+        }
+
+        @Override
+        public void setFailsafe(boolean on) {
+            failsafe = on;
+        }
+
+        @Override
+        public int phaseIndex() {
+            return currentPhaseIndex.get();
+        }
+
+        @Override
+        public CompiledPlan plan() {
+            return currentPlan();
+        }
+
+        @Override
+        public Response showing() {
+            return currentSnapshot().getResponse();
+        }
+
+        @Override
+        public boolean isTiming() {
+            return scheduledFuture != null;
+        }
+
+        @Override
+        public long phaseDeadlineNanos() {
+            return phaseDeadlineNanos;
+        }
+
+        @Override
+        public void cancelScheduled() {
+            TrafficLightService.this.cancelScheduled();
+        }
+
+        @Override
+        public void schedule(Runnable task, long delayNanos) {
+            scheduledFuture = scheduler.schedule(task, delayNanos, TimeUnit.NANOSECONDS);
+            expectTransition(delayNanos);
+        }
+
+        @Override
+        public void idle() {
+            idleWatchdog();
+        }
+
+        @Override
+        public void replaceScheduler() {
+            ScheduledExecutorService stuck = scheduler;
+            scheduler = newScheduler("traffic-scheduler-" + schedulerGeneration.incrementAndGet());
+            // interrupts a thread blocked in a wait; one spinning or in a long pause is left behind
+            stuck.shutdownNow();
+        }
+
+        @Override
+        public void changed() {
+            version.bump();
+        }
+
+        @Override
+        public void changed(PhaseEventType type, Movement movement) {
+            version.bump();
+            publish(type, movement, currentPhaseIndex.get());
+        }
+
+        @Override
+        public void resumeCycle(int phaseIndex, long delayMillis) {
+            currentPhaseIndex.set(phaseIndex);
+            CycleAlignment target = alignment;
+            if (target != null) {
+                enterAlignedPhase(target);
+                return;
+            }
+            restartPhaseClock();
+            scheduleCurrentPhase(delayMillis);
+        }
     }
 }
@@ -0,0 +1,134 @@
+package com.cg.traficlight.service;
+
+import com.cg.traficlight.model.PhaseEvent;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fans phase events out to stream subscribers without ever blocking the publisher.
+ * <p>
+ * Each subscriber has a bounded queue drained by its own virtual thread, which is the only
+ * thread that talks to the (possibly slow) client. When a queue is full the oldest event is
+ * dropped; a subscriber that stays full for {@code maxConsecutiveDrops} events in a row is
+ * disconnected.
+ */
+public class TransitionBroadcaster {
+
+    private static final ThreadFactory SUBSCRIBER_THREADS = Thread.ofVirtual().name("traffic-stream-", 0).factory();
+
+    private final CopyOnWriteArrayList<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final int queueCapacity;
+    private final int maxConsecutiveDrops;
+
+    public TransitionBroadcaster(int queueCapacity, int maxConsecutiveDrops) {
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("queue capacity must be positive: " + queueCapacity);
+        }
+        this.queueCapacity = queueCapacity;
+        this.maxConsecutiveDrops = maxConsecutiveDrops;
+    }
+
+    public boolean hasSubscribers() {
+        return !subscribers.isEmpty();
+    }
+
+    public int subscriberCount() {
+        return subscribers.size();
+    }
+
+    public long nextSequence() {
+        return sequence.incrementAndGet();
+    }
+
+    public Subscription subscribe(PhaseEventListener listener) {
+        Subscriber subscriber = new Subscriber(listener);
+        subscribers.add(subscriber);
+        subscriber.thread.start();
+        return subscriber;
+    }
+
+    /** Queues the event for every subscriber; never waits for any of them. */
+    public void publish(PhaseEvent event) {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offer(event);
+        }
+    }
+
+    public void close() {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.end(true);
+        }
+    }
+
+    private final class Subscriber implements Subscription, Runnable {
+
+        private final PhaseEventListener listener;
+        private final ArrayBlockingQueue<PhaseEvent> queue = new ArrayBlockingQueue<>(queueCapacity);
+        private final AtomicInteger consecutiveDrops = new AtomicInteger();
+        private final AtomicLong dropped = new AtomicLong();
+        private final Thread thread;
+        private volatile boolean closed;
+        private volatile boolean notifyOnExit;
+
+        Subscriber(PhaseEventListener listener) {
+            this.listener = listener;
+            this.thread = SUBSCRIBER_THREADS.newThread(this);
+        }
+
+        void offer(PhaseEvent event) {
+            if (closed) return;
+            if (queue.offer(event)) {
+                consecutiveDrops.set(0);
+                return;
+            }
+            queue.poll();
+            dropped.incrementAndGet();
+            if (consecutiveDrops.incrementAndGet() > maxConsecutiveDrops) {
+                end(true);
+                return;
+            }
+            queue.offer(event);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!closed) {
+                    listener.onEvent(queue.take());
+                }
+            } catch (InterruptedException e) {
+                // ended by cancel(), close() or the slow-consumer policy
+            } catch (Exception e) {
+                end(true);
+            }
+            if (notifyOnExit) {
+                Thread.interrupted();
+                listener.onClose();
+            }
+        }
+
+        void end(boolean notify) {
+            if (closed) return;
+            notifyOnExit = notify;
+            closed = true;
+            subscribers.remove(this);
+            queue.clear();
+            thread.interrupt();
+        }
+
+        @Override
+        public void cancel() {
+            end(false);
+        }
+
+        @Override
+        public long droppedEvents() {
+            return dropped.get();
+        }
+    }
+}
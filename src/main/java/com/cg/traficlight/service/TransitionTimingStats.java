@@ -0,0 +1,53 @@
+package com.cg.traficlight.service;
+
+import com.cg.traficlight.model.SchedulerTiming;
+import com.cg.traficlight.model.SchedulingMode;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drift (actual minus planned transition time) and jitter (change in drift between two
+ * consecutive transitions). Written by the scheduler under the service lock, read by anyone.
+ */
+final class TransitionTimingStats {
+
+    private volatile long transitions;
+    private volatile long resyncs;
+    private volatile long lastDriftNanos;
+    private volatile long sumDriftNanos;
+    private volatile long maxDriftNanos;
+    private volatile long lastJitterNanos;
+    private volatile long maxJitterNanos;
+
+    void recordTransition(long driftNanos) {
+        long jitter = transitions == 0 ? 0 : Math.abs(driftNanos - lastDriftNanos);
+        lastDriftNanos = driftNanos;
+        sumDriftNanos += driftNanos;
+        maxDriftNanos = Math.max(maxDriftNanos, driftNanos);
+        lastJitterNanos = jitter;
+        maxJitterNanos = Math.max(maxJitterNanos, jitter);
+        transitions++;
+    }
+
+    void recordResync() {
+        resyncs++;
+    }
+
+    SchedulerTiming snapshot(SchedulingMode mode) {
+        long count = transitions;
+        SchedulerTiming timing = new SchedulerTiming();
+        timing.setMode(mode);
+        timing.setTransitions(count);
+        timing.setResyncs(resyncs);
+        timing.setLastDriftMicros(micros(lastDriftNanos));
+        timing.setMeanDriftMicros(count == 0 ? 0 : micros(sumDriftNanos / count));
+        timing.setMaxDriftMicros(micros(maxDriftNanos));
+        timing.setLastJitterMicros(micros(lastJitterNanos));
+        timing.setMaxJitterMicros(micros(maxJitterNanos));
+        return timing;
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
@@ -0,0 +1,74 @@
+package com.cg.traficlight.state;
+
+import com.cg.traficlight.plan.CompiledPlan;
+
+import java.time.Instant;
+
+/**
+ * What the controller needs to pick up where it left off: the active plan, the phase it was in
+ * and since when, and whether it was paused. Built by folding {@link StateEvent}s over the last
+ * snapshot.
+ */
+public final class ControllerState {
+
+    private CompiledPlan plan;
+    private int phaseIndex;
+    private boolean paused;
+    private Instant phaseStart;
+    private long phaseDurationMillis;
+    private long sequence;
+
+    ControllerState(CompiledPlan plan, int phaseIndex, boolean paused, Instant phaseStart,
+                    long phaseDurationMillis, long sequence) {
+        this.plan = plan;
+        this.phaseIndex = phaseIndex;
+        this.paused = paused;
+        this.phaseStart = phaseStart;
+        this.phaseDurationMillis = phaseDurationMillis;
+        this.sequence = sequence;
+    }
+
+    void apply(StateEvent event) {
+        switch (event.type) {
+            case PLAN -> {
+                plan = event.plan;
+                phaseIndex = event.phaseIndex;
+                phaseStart = null;
+            }
+            case PAUSE -> paused = true;
+            case RESUME -> paused = false;
+            case TRANSITION -> {
+                phaseIndex = event.phaseIndex;
+                phaseStart = event.phaseStart;
+                phaseDurationMillis = event.durationMillis;
+            }
+        }
+        sequence = event.sequence;
+    }
+
+    public CompiledPlan getPlan() {
+        return plan;
+    }
+
+    public int getPhaseIndex() {
+        return phaseIndex;
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    /** When the current phase started, on the controller clock; null if it has not been entered. */
+    public Instant getPhaseStart() {
+        return phaseStart;
+    }
+
+    public long getPhaseDurationMillis() {
+        return phaseDurationMillis;
+    }
+
+    /** Sequence number of the last event folded in. */
+    public long getSequence() {
+        return sequence;
+    }
+}
@@ -0,0 +1,234 @@
+package com.cg.traficlight.state;
+
+import com.cg.traficlight.plan.CompiledPlan;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Event-sourced controller state in a local directory: an append-only log of
+ * {@link StateEvent}s plus a snapshot of the {@link ControllerState} they add up to.
+ * <p>
+ * Every event is framed as length, CRC32 and payload, written and flushed before the call
+ * returns, so it survives the process being killed. Every {@code snapshotEvery} events the
+ * state is written to a temporary file, forced and atomically renamed over the snapshot, and
+ * the log rolls to a new file named after its first sequence number; older log files are then
+ * deleted. Recovery reads the snapshot and replays at most {@code snapshotEvery} events, however
+ * long the controller has been running. A torn last record is dropped.
+ */
+public final class FileStateStore implements StateStore {
+
+    private static final Logger log = LoggerFactory.getLogger(FileStateStore.class);
+
+    static final String SNAPSHOT = "snapshot.bin";
+    private static final String SNAPSHOT_TMP = "snapshot.tmp";
+    private static final String LOG_PREFIX = "events-";
+    private static final String LOG_SUFFIX = ".log";
+    private static final int MAX_RECORD_BYTES = 1 << 20;
+
+    private final Path dir;
+    private final int snapshotEvery;
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+    private final DataOutputStream encoder = new DataOutputStream(buffer);
+    private final CRC32 crc = new CRC32();
+
+    private ControllerState state = new ControllerState(null, 0, false, null, 0, 0);
+    private DataOutputStream out;
+    private int sinceSnapshot;
+    // a write failed: the next event rewrites the whole state as a snapshot instead
+    private boolean needsSnapshot;
+
+    private FileStateStore(Path dir, int snapshotEvery) {
+        this.dir = dir;
+        this.snapshotEvery = snapshotEvery;
+    }
+
+    /**
+     * Opens (or creates) the store in {@code dir}: loads the snapshot, replays the log after it,
+     * and if anything was replayed folds it into a fresh snapshot before the first append.
+     */
+    public static FileStateStore open(Path dir, int snapshotEvery) throws IOException {
+        if (snapshotEvery <= 0) {
+            throw new IllegalArgumentException("snapshot interval must be positive: " + snapshotEvery);
+        }
+        Files.createDirectories(dir);
+        FileStateStore store = new FileStateStore(dir, snapshotEvery);
+        int replayed = store.load();
+        if (replayed > 0) {
+            store.snapshot();
+        } else {
+            store.roll();
+        }
+        return store;
+    }
+
+    @Override
+    public synchronized ControllerState recover() {
+        return state.getSequence() == 0 ? null : state;
+    }
+
+    @Override
+    public synchronized void planChanged(CompiledPlan plan, int phaseIndex) {
+        append(StateEvent.Type.PLAN, plan, phaseIndex, null, 0);
+    }
+
+    @Override
+    public synchronized void paused() {
+        append(StateEvent.Type.PAUSE, null, 0, null, 0);
+    }
+
+    @Override
+    public synchronized void resumed() {
+        append(StateEvent.Type.RESUME, null, 0, null, 0);
+    }
+
+    @Override
+    public synchronized void transition(int phaseIndex, Instant start, long durationMillis) {
+        append(StateEvent.Type.TRANSITION, null, phaseIndex, start, durationMillis);
+    }
+
+    /** Writes a final snapshot, so the next start replays nothing. */
+    @Override
+    public synchronized void close() {
+        try {
+            if (sinceSnapshot > 0 || needsSnapshot) snapshot();
+            if (out != null) out.close();
+        } catch (IOException e) {
+            log.warn("could not write the state snapshot on shutdown", e);
+        }
+        out = null;
+    }
+
+    private void append(StateEvent.Type type, CompiledPlan plan, int phaseIndex, Instant start,
+                        long durationMillis) {
+        StateEvent event = new StateEvent(state.getSequence() + 1, type, plan, phaseIndex, start, durationMillis);
+        state.apply(event);
+        try {
+            if (needsSnapshot || ++sinceSnapshot >= snapshotEvery) {
+                snapshot();
+                return;
+            }
+            buffer.reset();
+            StateCodec.writeEvent(encoder, event);
+            writeFrame(out);
+            out.flush();
+        } catch (IOException | RuntimeException e) {
+            // the signal keeps running either way; a restart would resume from an older point
+            needsSnapshot = true;
+            log.error("could not record {} in {}; retrying with a snapshot", type, dir, e);
+        }
+    }
+
+    private void snapshot() throws IOException {
+        buffer.reset();
+        StateCodec.writeState(encoder, state);
+        Path tmp = dir.resolve(SNAPSHOT_TMP);
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+             DataOutputStream file = new DataOutputStream(Channels.newOutputStream(channel))) {
+            writeFrame(file);
+            file.flush();
+            channel.force(true);
+        }
+        Files.move(tmp, dir.resolve(SNAPSHOT), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        needsSnapshot = false;
+        sinceSnapshot = 0;
+        roll();
+    }
+
+    /** Starts a new log file for the events after the current state and deletes the older ones. */
+    private void roll() throws IOException {
+        if (out != null) out.close();
+        String current = logName(state.getSequence() + 1);
+        out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(dir.resolve(current),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)));
+        for (Path file : logFiles()) {
+            if (!file.getFileName().toString().equals(current)) Files.deleteIfExists(file);
+        }
+    }
+
+    private int load() throws IOException {
+        Path snapshot = dir.resolve(SNAPSHOT);
+        if (Files.exists(snapshot)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot)))) {
+                byte[] payload = readFrame(in);
+                if (payload == null) throw new IOException("bad checksum");
+                state = StateCodec.readState(new DataInputStream(new ByteArrayInputStream(payload)));
+            } catch (IOException | RuntimeException e) {
+                // the logs before it are gone, so replaying the rest would restore a half state
+                log.warn("state snapshot {} cannot be read; starting from the defaults", snapshot, e);
+                return 0;
+            }
+        }
+        int replayed = 0;
+        for (Path file : logFiles()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                byte[] payload;
+                while ((payload = readFrame(in)) != null) {
+                    StateEvent event = StateCodec.readEvent(new DataInputStream(new ByteArrayInputStream(payload)));
+                    if (event.sequence <= state.getSequence()) continue;
+                    state.apply(event);
+                    replayed++;
+                }
+            } catch (IOException | RuntimeException e) {
+                log.warn("stopped replaying {} at a record that cannot be read", file, e);
+            }
+        }
+        return replayed;
+    }
+
+    private void writeFrame(DataOutputStream target) throws IOException {
+        crc.reset();
+        crc.update(buffer.toByteArray());
+        target.writeInt(buffer.size());
+        target.writeInt((int) crc.getValue());
+        buffer.writeTo(target);
+    }
+
+    /** The next record's payload, or null at the end of the file or at a torn or corrupt record. */
+    private byte[] readFrame(DataInputStream in) throws IOException {
+        try {
+            int length = in.readInt();
+            int expected = in.readInt();
+            if (length < 0 || length > MAX_RECORD_BYTES) return null;
+            byte[] payload = in.readNBytes(length);
+            if (payload.length < length) return null;
+            crc.reset();
+            crc.update(payload);
+            return (int) crc.getValue() == expected ? payload : null;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private List<Path> logFiles() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(f -> {
+                String name = f.getFileName().toString();
+                return name.startsWith(LOG_PREFIX) && name.endsWith(LOG_SUFFIX);
+            }).sorted().toList();
+        }
+    }
+
+    private static String logName(long firstSequence) {
+        return String.format("%s%020d%s", LOG_PREFIX, firstSequence, LOG_SUFFIX);
+    }
+}
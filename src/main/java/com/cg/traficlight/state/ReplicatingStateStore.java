@@ -0,0 +1,455 @@
+package com.cg.traficlight.state;
+
+import com.cg.traficlight.plan.CompiledPlan;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The primary's side of hot-standby replication: records every event in the local store as
+ * before, and streams it to the standbys connected over TCP.
+ * <p>
+ * The calling thread only numbers the event, folds it into the state it keeps and queues it. A
+ * sender thread drains the queue in batches, folds each batch into its own copy of the
+ * {@link ControllerState} and hands it to every standby as one frame; a standby that connects
+ * gets that state first, then the batches after it. With nothing to send, a heartbeat goes out
+ * every {@code heartbeatMillis}, so a standby can tell a quiet primary from a lost one.
+ * <p>
+ * Nothing waits on a standby. The event queue holds {@code queueCapacity} events; when it is
+ * full, the queued events are dropped and every standby is sent the callers' state instead.
+ * Each standby has a writer thread of its own behind a short frame queue; one that falls that
+ * far behind has its queue replaced by the current state, and one whose write has not
+ * completed within {@code writeTimeoutMillis} is disconnected, as is one whose connection fails.
+ * A disconnected standby takes over, so the timeout should not be shorter than the three
+ * heartbeats it waits for before doing so on its own.
+ * <p>
+ * Frames are a length, a kind byte and the payload in {@link StateCodec} form.
+ */
+public final class ReplicatingStateStore implements StateStore {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicatingStateStore.class);
+
+    static final byte STATE = 0;
+    static final byte EVENTS = 1;
+    static final byte HEARTBEAT = 2;
+    static final int MAX_FRAME_BYTES = 1 << 20;
+    private static final int MAX_BATCH = 256;
+    // frames waiting for one standby's writer; past that it is resynced with the state
+    private static final int MAX_QUEUED_FRAMES = 64;
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 4096;
+
+    private final StateStore delegate;
+    private final long heartbeatMillis;
+    private final long writeTimeoutNanos;
+    private final ServerSocket server;
+    private final ArrayBlockingQueue<StateEvent> pending;
+    private final ConcurrentLinkedQueue<Socket> joining = new ConcurrentLinkedQueue<>();
+    private final Thread acceptor;
+    private final Thread sender;
+    private volatile boolean running = true;
+
+    // every event recorded, guarded by its own monitor so the sender can copy it on overflow
+    private final ControllerState recorded;
+    private volatile boolean overflowed;
+
+    // sender thread only
+    private ControllerState state;
+    private final List<Standby> standbys = new ArrayList<>();
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+    private final DataOutputStream encoder = new DataOutputStream(buffer);
+
+    private volatile int connected;
+    private volatile long replicated;
+    private volatile long batches;
+    private volatile long resyncs;
+
+    private ReplicatingStateStore(StateStore delegate, ServerSocket server, long heartbeatMillis, int queueCapacity,
+                                  long writeTimeoutMillis) {
+        this.delegate = delegate;
+        this.server = server;
+        this.heartbeatMillis = heartbeatMillis;
+        this.writeTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(writeTimeoutMillis);
+        this.pending = new ArrayBlockingQueue<>(queueCapacity);
+        ControllerState recovered = delegate.recover();
+        // copies: the delegate keeps folding into its own
+        this.recorded = recovered == null ? new ControllerState(null, 0, false, null, 0, 0) : copyOf(recovered);
+        this.state = copyOf(recorded);
+        this.acceptor = new Thread(this::acceptLoop, "replication-acceptor");
+        this.acceptor.setDaemon(true);
+        this.sender = new Thread(this::sendLoop, "replication-sender");
+        this.sender.setDaemon(true);
+    }
+
+    /**
+     * Listens for standbys on {@code port} (0 picks a free one, see {@link #port()}) and starts
+     * replicating what is recorded in {@code delegate} from now on, queueing up to
+     * {@link #DEFAULT_QUEUE_CAPACITY} events and giving a write three heartbeats to complete.
+     */
+    public static ReplicatingStateStore open(StateStore delegate, String bindAddress, int port, long heartbeatMillis)
+            throws IOException {
+        return open(delegate, bindAddress, port, heartbeatMillis, DEFAULT_QUEUE_CAPACITY, 3 * heartbeatMillis);
+    }
+
+    public static ReplicatingStateStore open(StateStore delegate, String bindAddress, int port, long heartbeatMillis,
+                                             int queueCapacity, long writeTimeoutMillis) throws IOException {
+        if (heartbeatMillis <= 0) {
+            throw new IllegalArgumentException("heartbeat interval must be positive: " + heartbeatMillis);
+        }
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("replication queue capacity must be positive: " + queueCapacity);
+        }
+        if (writeTimeoutMillis <= 0) {
+            throw new IllegalArgumentException("write timeout must be positive: " + writeTimeoutMillis);
+        }
+        ServerSocket server = new ServerSocket();
+        server.setReuseAddress(true);
+        server.bind(bindAddress.isBlank() ? new InetSocketAddress(port) : new InetSocketAddress(bindAddress, port));
+        ReplicatingStateStore store = new ReplicatingStateStore(delegate, server, heartbeatMillis, queueCapacity,
+                writeTimeoutMillis);
+        store.acceptor.start();
+        store.sender.start();
+        return store;
+    }
+
+    public int port() {
+        return server.getLocalPort();
+    }
+
+    /** Standbys currently receiving the feed. */
+    public int standbys() {
+        return connected;
+    }
+
+    /** Sequence number of the last event written to the standbys. */
+    public long replicatedSequence() {
+        return replicated;
+    }
+
+    public long batches() {
+        return batches;
+    }
+
+    /** Times the standbys were sent the whole state because the events did not keep up. */
+    public long resyncs() {
+        return resyncs;
+    }
+
+    @Override
+    public ControllerState recover() {
+        return delegate.recover();
+    }
+
+    @Override
+    public void planChanged(CompiledPlan plan, int phaseIndex) {
+        delegate.planChanged(plan, phaseIndex);
+        record(StateEvent.Type.PLAN, plan, phaseIndex, null, 0);
+    }
+
+    @Override
+    public void paused() {
+        delegate.paused();
+        record(StateEvent.Type.PAUSE, null, 0, null, 0);
+    }
+
+    @Override
+    public void resumed() {
+        delegate.resumed();
+        record(StateEvent.Type.RESUME, null, 0, null, 0);
+    }
+
+    @Override
+    public void transition(int phaseIndex, Instant start, long durationMillis) {
+        delegate.transition(phaseIndex, start, durationMillis);
+        record(StateEvent.Type.TRANSITION, null, phaseIndex, start, durationMillis);
+    }
+
+    private void record(StateEvent.Type type, CompiledPlan plan, int phaseIndex, Instant start,
+                        long durationMillis) {
+        synchronized (recorded) {
+            StateEvent event = new StateEvent(recorded.getSequence() + 1, type, plan, phaseIndex, start, durationMillis);
+            recorded.apply(event);
+            // the sender resyncs from recorded, which already holds this event
+            if (!pending.offer(event)) overflowed = true;
+        }
+    }
+
+    /**
+     * Sends what is still queued, disconnects the standbys, which then take over, and closes the
+     * local store.
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            server.close();
+        } catch (IOException e) {
+            log.warn("could not close the replication port", e);
+        }
+        sender.interrupt();
+        try {
+            sender.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        delegate.close();
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                joining.add(socket);
+                log.info("standby {} connected", socket.getRemoteSocketAddress());
+            } catch (IOException e) {
+                if (running) log.warn("could not accept a standby", e);
+            }
+        }
+    }
+
+    private void sendLoop() {
+        List<StateEvent> batch = new ArrayList<>(MAX_BATCH);
+        while (running || !pending.isEmpty()) {
+            StateEvent first = null;
+            try {
+                first = pending.poll(heartbeatMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                // closing: fall through and send what is left
+            }
+            for (Socket socket; (socket = joining.poll()) != null; ) {
+                join(socket);
+            }
+            if (overflowed) {
+                resync();
+                continue;
+            }
+            if (first == null) {
+                if (running) send(frame(HEARTBEAT));
+                continue;
+            }
+            batch.add(first);
+            pending.drainTo(batch, MAX_BATCH - 1);
+            for (StateEvent event : batch) {
+                state.apply(event);
+            }
+            send(eventsFrame(batch));
+            replicated = state.getSequence();
+            batches++;
+            batch.clear();
+        }
+        long drainUntil = System.nanoTime() + writeTimeoutNanos;
+        for (Standby standby : standbys) {
+            standby.finish(drainUntil);
+        }
+        for (Socket socket; (socket = joining.poll()) != null; ) {
+            closeQuietly(socket);
+        }
+        connected = 0;
+    }
+
+    /**
+     * The event queue overflowed: restarts the sender's state from the callers' and sends it to
+     * every standby in place of the events it missed.
+     */
+    private void resync() {
+        synchronized (recorded) {
+            state = copyOf(recorded);
+            pending.clear();
+            overflowed = false;
+        }
+        log.warn("replication queue overflowed; resyncing the standbys at sequence {}", state.getSequence());
+        resyncs++;
+        byte[] frame = stateFrame();
+        for (Standby standby : standbys) {
+            standby.replaceQueued(frame);
+        }
+        replicated = state.getSequence();
+    }
+
+    private void join(Socket socket) {
+        try {
+            Standby standby = new Standby(socket);
+            standby.offer(stateFrame());
+            standby.start();
+            standbys.add(standby);
+            connected = standbys.size();
+        } catch (IOException e) {
+            log.warn("could not send the state to standby {}", socket.getRemoteSocketAddress(), e);
+            closeQuietly(socket);
+        }
+    }
+
+    private byte[] stateFrame() {
+        buffer.reset();
+        try {
+            StateCodec.writeState(encoder, state);
+        } catch (IOException e) {
+            // a ByteArrayOutputStream does not throw
+            throw new IllegalStateException(e);
+        }
+        return frame(STATE);
+    }
+
+    private byte[] eventsFrame(List<StateEvent> batch) {
+        buffer.reset();
+        try {
+            encoder.writeInt(batch.size());
+            for (StateEvent event : batch) {
+                StateCodec.writeEvent(encoder, event);
+            }
+        } catch (IOException e) {
+            // a ByteArrayOutputStream does not throw
+            throw new IllegalStateException(e);
+        }
+        return frame(EVENTS);
+    }
+
+    /** Length, kind and the buffered payload. */
+    private byte[] frame(byte kind) {
+        int payload = kind == HEARTBEAT ? 0 : buffer.size();
+        byte[] frame = new byte[5 + payload];
+        int length = payload + 1;
+        frame[0] = (byte) (length >>> 24);
+        frame[1] = (byte) (length >>> 16);
+        frame[2] = (byte) (length >>> 8);
+        frame[3] = (byte) length;
+        frame[4] = kind;
+        if (payload > 0) System.arraycopy(buffer.toByteArray(), 0, frame, 5, payload);
+        return frame;
+    }
+
+    /** Queues {@code frame} for every standby; the state frame stands in for it with those that are behind. */
+    private void send(byte[] frame) {
+        long now = System.nanoTime();
+        byte[] stateFrame = null;
+        for (Iterator<Standby> it = standbys.iterator(); it.hasNext(); ) {
+            Standby standby = it.next();
+            if (standby.failure != null) {
+                log.warn("lost standby {}", standby.address, standby.failure);
+            } else if (standby.stalled(now, writeTimeoutNanos)) {
+                log.warn("standby {} has not taken a write in {} ms; disconnecting it", standby.address,
+                        TimeUnit.NANOSECONDS.toMillis(writeTimeoutNanos));
+            } else {
+                if (!standby.offer(frame)) {
+                    if (stateFrame == null) stateFrame = stateFrame();
+                    log.warn("standby {} fell {} frames behind; resyncing it at sequence {}", standby.address,
+                            MAX_QUEUED_FRAMES, state.getSequence());
+                    standby.replaceQueued(stateFrame);
+                }
+                continue;
+            }
+            standby.close();
+            it.remove();
+        }
+        connected = standbys.size();
+    }
+
+    private static ControllerState copyOf(ControllerState s) {
+        return new ControllerState(s.getPlan(), s.getPhaseIndex(), s.isPaused(), s.getPhaseStart(),
+                s.getPhaseDurationMillis(), s.getSequence());
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // nothing left to do with it
+        }
+    }
+
+    /** One standby's connection, written by a thread of its own so a slow one holds up nobody else. */
+    private static final class Standby {
+        private static final byte[] END = new byte[0];
+
+        final Socket socket;
+        final Object address;
+        private final DataOutputStream out;
+        private final BlockingQueue<byte[]> frames = new ArrayBlockingQueue<>(MAX_QUEUED_FRAMES);
+        private final Thread writer;
+        // System.nanoTime() when the write in progress began, 0 between writes
+        private volatile long writingSince;
+        volatile IOException failure;
+
+        Standby(Socket socket) throws IOException {
+            this.socket = socket;
+            this.address = socket.getRemoteSocketAddress();
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            this.writer = new Thread(this::writeLoop, "replication-writer-" + address);
+            this.writer.setDaemon(true);
+        }
+
+        void start() {
+            writer.start();
+        }
+
+        boolean offer(byte[] frame) {
+            return frames.offer(frame);
+        }
+
+        /** Drops what is queued and queues {@code frame} alone; the sender is the only producer. */
+        void replaceQueued(byte[] frame) {
+            frames.clear();
+            frames.offer(frame);
+        }
+
+        boolean stalled(long now, long timeoutNanos) {
+            long since = writingSince;
+            return since != 0 && now - since > timeoutNanos;
+        }
+
+        /**
+         * Lets the writer send what is queued until {@code deadline}, then closes the connection.
+         * The interrupt close() sends the sender may land here; it does not cut the wait short.
+         */
+        void finish(long deadline) {
+            if (frames.offer(END)) {
+                boolean interrupted = false;
+                for (long left; writer.isAlive() && (left = deadline - System.nanoTime()) > 0; ) {
+                    try {
+                        writer.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(left)));
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                if (interrupted) Thread.currentThread().interrupt();
+            }
+            close();
+        }
+
+        void close() {
+            closeQuietly(socket);
+            writer.interrupt();
+        }
+
+        private void writeLoop() {
+            try {
+                for (byte[] frame; (frame = frames.take()) != END; ) {
+                    writingSince = System.nanoTime();
+                    out.write(frame);
+                    out.flush();
+                    writingSince = 0;
+                }
+            } catch (IOException e) {
+                failure = e;
+            } catch (InterruptedException e) {
+                // closed
+            }
+        }
+    }
+}
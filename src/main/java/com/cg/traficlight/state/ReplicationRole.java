@@ -0,0 +1,10 @@
+package com.cg.traficlight.state;
+
+public enum ReplicationRole {
+    /** A single controller; nothing is replicated. */
+    NONE,
+    /** Runs the cycle and streams its commands and transitions to the standbys. */
+    PRIMARY,
+    /** Mirrors the primary without timing anything, and takes over when the primary is lost. */
+    STANDBY;
+}
@@ -0,0 +1,176 @@
+package com.cg.traficlight.state;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The standby's side of hot-standby replication: follows the feed of a
+ * {@link ReplicatingStateStore} and hands every state it folds to a {@link Listener}.
+ * <p>
+ * Until the primary answers, the replica keeps dialling it every {@code heartbeatMillis} and
+ * nothing else happens. Once it has followed the primary, a closed connection, or three
+ * heartbeat intervals without a frame, mean the primary is gone: the listener is told once, with
+ * the last state, and the replica stops.
+ */
+public final class StandbyReplica implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(StandbyReplica.class);
+
+    private static final int MISSED_HEARTBEATS = 3;
+
+    /** Called on the replica's thread, one event at a time. */
+    public interface Listener {
+
+        /** The primary's state is now {@code state}; the instance is reused, read it before returning. */
+        void replicated(ControllerState state);
+
+        /** The primary is gone; {@code state} is the last one it sent. */
+        void primaryLost(ControllerState state);
+    }
+
+    private final InetSocketAddress primary;
+    private final long heartbeatMillis;
+    private final Listener listener;
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile Socket socket;
+
+    private volatile boolean connected;
+    private volatile long sequence;
+    private volatile long batches;
+
+    public StandbyReplica(String host, int port, long heartbeatMillis, Listener listener) {
+        if (heartbeatMillis <= 0) {
+            throw new IllegalArgumentException("heartbeat interval must be positive: " + heartbeatMillis);
+        }
+        this.primary = InetSocketAddress.createUnresolved(host, port);
+        this.heartbeatMillis = heartbeatMillis;
+        this.listener = listener;
+        this.thread = new Thread(this::run, "replication-standby");
+        this.thread.setDaemon(true);
+    }
+
+    /** {@code host:port} of the primary's replication port. */
+    public static StandbyReplica of(String primary, long heartbeatMillis, Listener listener) {
+        int colon = primary.lastIndexOf(':');
+        if (colon <= 0) {
+            throw new IllegalArgumentException("replication.primary must be host:port: " + primary);
+        }
+        return new StandbyReplica(primary.substring(0, colon), Integer.parseInt(primary.substring(colon + 1)),
+                heartbeatMillis, listener);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /** Sequence number of the last event folded in. */
+    public long sequence() {
+        return sequence;
+    }
+
+    public long batches() {
+        return batches;
+    }
+
+    /** Stops following without telling the listener anything. */
+    @Override
+    public void close() {
+        running = false;
+        Socket current = socket;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException ignored) {
+                // the thread sees running = false either way
+            }
+        }
+        LockSupport.unpark(thread);
+    }
+
+    private void run() {
+        ControllerState state = null;
+        while (running && state == null) {
+            try (Socket s = new Socket()) {
+                socket = s;
+                s.connect(new InetSocketAddress(primary.getHostString(), primary.getPort()),
+                        (int) (MISSED_HEARTBEATS * heartbeatMillis));
+                s.setTcpNoDelay(true);
+                s.setSoTimeout((int) (MISSED_HEARTBEATS * heartbeatMillis));
+                connected = true;
+                log.info("following the primary at {}", primary);
+                state = follow(new DataInputStream(new BufferedInputStream(s.getInputStream())));
+            } catch (IOException e) {
+                log.debug("primary at {} is not reachable", primary, e);
+            } finally {
+                connected = false;
+            }
+            if (state == null && running) {
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(heartbeatMillis));
+            }
+        }
+        socket = null;
+        if (running && state != null) {
+            log.warn("lost the primary at {} after sequence {}", primary, state.getSequence());
+            listener.primaryLost(state);
+        }
+    }
+
+    /** Reads frames until the connection fails; returns the last state, null if none came. */
+    private ControllerState follow(DataInputStream in) {
+        ControllerState state = null;
+        try {
+            while (running) {
+                int length = in.readInt();
+                if (length < 1 || length > ReplicatingStateStore.MAX_FRAME_BYTES) {
+                    throw new IOException("bad frame length " + length);
+                }
+                byte kind = in.readByte();
+                byte[] payload = in.readNBytes(length - 1);
+                if (payload.length < length - 1) throw new IOException("truncated frame");
+                DataInputStream frame = new DataInputStream(new ByteArrayInputStream(payload));
+                switch (kind) {
+                    case ReplicatingStateStore.STATE -> {
+                        state = StateCodec.readState(frame);
+                        sequence = state.getSequence();
+                        listener.replicated(state);
+                    }
+                    case ReplicatingStateStore.EVENTS -> {
+                        if (state == null) throw new IOException("events before the state");
+                        int count = frame.readInt();
+                        for (int i = 0; i < count; i++) {
+                            StateEvent event = StateCodec.readEvent(frame);
+                            if (event.sequence <= state.getSequence()) continue;
+                            state.apply(event);
+                            sequence = event.sequence;
+                            listener.replicated(state);
+                        }
+                        batches++;
+                    }
+                    case ReplicatingStateStore.HEARTBEAT -> {
+                    }
+                    default -> throw new IOException("unknown frame kind " + kind);
+                }
+            }
+        } catch (SocketTimeoutException e) {
+            log.warn("no frame from the primary in {} ms", MISSED_HEARTBEATS * heartbeatMillis);
+        } catch (IOException | RuntimeException e) {
+            if (running) log.warn("replication from {} stopped", primary, e);
+        }
+        return state;
+    }
+}
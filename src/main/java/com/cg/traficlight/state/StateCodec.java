@@ -0,0 +1,179 @@
+package com.cg.traficlight.state;
+
+import com.cg.traficlight.model.Colors;
+import com.cg.traficlight.model.Directions;
+import com.cg.traficlight.model.Movement;
+import com.cg.traficlight.model.PhasePlan;
+import com.cg.traficlight.model.PlanPhase;
+import com.cg.traficlight.model.SignalGroup;
+import com.cg.traficlight.plan.CompiledPlan;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary form of events and snapshots. A plan is stored as its source: the {@link PhasePlan} it
+ * was compiled from, or the movement list of the built-in model, and compiled again when read.
+ */
+final class StateCodec {
+
+    private static final byte MOVEMENTS = 0;
+    private static final byte PHASE_PLAN = 1;
+    private static final Directions[] DIRECTIONS = Directions.values();
+    private static final Colors[] COLORS = Colors.values();
+
+    private StateCodec() {
+    }
+
+    static void writeEvent(DataOutput out, StateEvent event) throws IOException {
+        out.writeLong(event.sequence);
+        out.writeByte(event.type.ordinal());
+        switch (event.type) {
+            case PLAN -> {
+                writePlan(out, event.plan);
+                out.writeInt(event.phaseIndex);
+            }
+            case TRANSITION -> {
+                out.writeInt(event.phaseIndex);
+                writeTime(out, event.phaseStart);
+                out.writeLong(event.durationMillis);
+            }
+            default -> {
+            }
+        }
+    }
+
+    static StateEvent readEvent(DataInput in) throws IOException {
+        long sequence = in.readLong();
+        StateEvent.Type type = StateEvent.Type.values()[in.readByte()];
+        return switch (type) {
+            case PLAN -> new StateEvent(sequence, type, readPlan(in), in.readInt(), null, 0);
+            case TRANSITION -> new StateEvent(sequence, type, null, in.readInt(), readTime(in), in.readLong());
+            default -> new StateEvent(sequence, type, null, 0, null, 0);
+        };
+    }
+
+    static void writeState(DataOutput out, ControllerState state) throws IOException {
+        out.writeLong(state.getSequence());
+        out.writeBoolean(state.getPlan() != null);
+        if (state.getPlan() != null) writePlan(out, state.getPlan());
+        out.writeInt(state.getPhaseIndex());
+        out.writeBoolean(state.isPaused());
+        writeTime(out, state.getPhaseStart());
+        out.writeLong(state.getPhaseDurationMillis());
+    }
+
+    static ControllerState readState(DataInput in) throws IOException {
+        long sequence = in.readLong();
+        CompiledPlan plan = in.readBoolean() ? readPlan(in) : null;
+        return new ControllerState(plan, in.readInt(), in.readBoolean(), readTime(in), in.readLong(), sequence);
+    }
+
+    private static void writePlan(DataOutput out, CompiledPlan plan) throws IOException {
+        PhasePlan source = plan.source();
+        if (source == null) {
+            out.writeByte(MOVEMENTS);
+            out.writeInt(plan.movements().size());
+            for (Movement m : plan.movements()) {
+                out.writeByte(m.getDirection() == null ? -1 : m.getDirection().ordinal());
+                out.writeByte(m.getColors() == null ? -1 : m.getColors().ordinal());
+                out.writeLong(m.getDurationMillis());
+            }
+            return;
+        }
+        out.writeByte(PHASE_PLAN);
+        writeString(out, source.getName());
+        out.writeInt(source.getGroups().size());
+        for (SignalGroup group : source.getGroups()) {
+            writeString(out, group.getName());
+            out.writeByte(group.getDirection() == null ? -1 : group.getDirection().ordinal());
+        }
+        List<List<String>> conflicts = source.getConflicts() == null ? List.of() : source.getConflicts();
+        out.writeInt(conflicts.size());
+        for (List<String> pair : conflicts) {
+            writeStrings(out, pair);
+        }
+        out.writeInt(source.getPhases().size());
+        for (PlanPhase phase : source.getPhases()) {
+            writeString(out, phase.getName());
+            out.writeLong(phase.getDurationSeconds());
+            writeStrings(out, phase.getGreen());
+            writeStrings(out, phase.getYellow());
+        }
+    }
+
+    private static CompiledPlan readPlan(DataInput in) throws IOException {
+        if (in.readByte() == MOVEMENTS) {
+            int size = in.readInt();
+            List<Movement> movements = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                byte direction = in.readByte();
+                byte color = in.readByte();
+                movements.add(new Movement(direction < 0 ? null : DIRECTIONS[direction],
+                        color < 0 ? null : COLORS[color], in.readLong()));
+            }
+            return CompiledPlan.of(movements);
+        }
+        PhasePlan plan = new PhasePlan();
+        plan.setName(readString(in));
+        int groups = in.readInt();
+        for (int i = 0; i < groups; i++) {
+            String name = readString(in);
+            byte direction = in.readByte();
+            plan.getGroups().add(new SignalGroup(name, direction < 0 ? null : DIRECTIONS[direction]));
+        }
+        int conflicts = in.readInt();
+        for (int i = 0; i < conflicts; i++) {
+            plan.getConflicts().add(readStrings(in));
+        }
+        int phases = in.readInt();
+        for (int i = 0; i < phases; i++) {
+            String name = readString(in);
+            long duration = in.readLong();
+            plan.getPhases().add(new PlanPhase(name, duration, readStrings(in), readStrings(in)));
+        }
+        return CompiledPlan.compile(plan);
+    }
+
+    private static void writeTime(DataOutput out, Instant time) throws IOException {
+        out.writeBoolean(time != null);
+        if (time == null) return;
+        out.writeLong(time.getEpochSecond());
+        out.writeInt(time.getNano());
+    }
+
+    private static Instant readTime(DataInput in) throws IOException {
+        if (!in.readBoolean()) return null;
+        return Instant.ofEpochSecond(in.readLong(), in.readInt());
+    }
+
+    private static void writeStrings(DataOutput out, List<String> values) throws IOException {
+        List<String> list = values == null ? List.of() : values;
+        out.writeInt(list.size());
+        for (String value : list) {
+            writeString(out, value);
+        }
+    }
+
+    private static List<String> readStrings(DataInput in) throws IOException {
+        int size = in.readInt();
+        List<String> values = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            values.add(readString(in));
+        }
+        return values;
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) out.writeUTF(value);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
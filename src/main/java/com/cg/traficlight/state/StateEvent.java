@@ -0,0 +1,35 @@
+package com.cg.traficlight.state;
+
+import com.cg.traficlight.plan.CompiledPlan;
+
+import java.time.Instant;
+
+/** One entry of the state log: a command the controller obeyed, or a phase it entered. */
+final class StateEvent {
+
+    enum Type {
+        /** A plan was activated; {@code phaseIndex} is the phase the controller continues from. */
+        PLAN,
+        PAUSE,
+        RESUME,
+        /** A phase started at {@code phaseStart} and was timed for {@code durationMillis}. */
+        TRANSITION
+    }
+
+    final long sequence;
+    final Type type;
+    final CompiledPlan plan;
+    final int phaseIndex;
+    final Instant phaseStart;
+    final long durationMillis;
+
+    StateEvent(long sequence, Type type, CompiledPlan plan, int phaseIndex, Instant phaseStart,
+               long durationMillis) {
+        this.sequence = sequence;
+        this.type = type;
+        this.plan = plan;
+        this.phaseIndex = phaseIndex;
+        this.phaseStart = phaseStart;
+        this.durationMillis = durationMillis;
+    }
+}
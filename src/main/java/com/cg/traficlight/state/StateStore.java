@@ -0,0 +1,38 @@
+package com.cg.traficlight.state;
+
+import com.cg.traficlight.plan.CompiledPlan;
+
+import java.time.Instant;
+
+/**
+ * Where the controller records its commands and transitions so it can be restored after a
+ * restart. Only called by whoever holds the service lock. {@link #NONE} keeps nothing.
+ */
+public interface StateStore extends AutoCloseable {
+
+    StateStore NONE = new StateStore() {
+    };
+
+    /** The state as of the last recorded event, or null if nothing was recorded. */
+    default ControllerState recover() {
+        return null;
+    }
+
+    /** {@code plan} became active, continuing from {@code phaseIndex}. */
+    default void planChanged(CompiledPlan plan, int phaseIndex) {
+    }
+
+    default void paused() {
+    }
+
+    default void resumed() {
+    }
+
+    /** Phase {@code phaseIndex} started at {@code start} and was timed for {@code durationMillis}. */
+    default void transition(int phaseIndex, Instant start, long durationMillis) {
+    }
+
+    @Override
+    default void close() {
+    }
+}
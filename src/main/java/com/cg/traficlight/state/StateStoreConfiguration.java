@@ -0,0 +1,29 @@
+package com.cg.traficlight.state;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+@Configuration
+public class StateStoreConfiguration {
+
+    @Bean(destroyMethod = "close")
+    public StateStore stateStore(@Value("${state.dir:}") String dir,
+                                 @Value("${state.snapshot.every:1000}") int snapshotEvery,
+                                 @Value("${replication.role:NONE}") ReplicationRole role,
+                                 @Value("${replication.bind:}") String bindAddress,
+                                 @Value("${replication.port:7400}") int port,
+                                 @Value("${replication.heartbeat.millis:200}") long heartbeatMillis,
+                                 @Value("${replication.queue.capacity:4096}") int queueCapacity,
+                                 @Value("${replication.write.timeout.millis:600}") long writeTimeoutMillis)
+            throws IOException {
+        StateStore local = dir.isBlank() ? StateStore.NONE : FileStateStore.open(Path.of(dir), snapshotEvery);
+        if (role == ReplicationRole.PRIMARY) {
+            return ReplicatingStateStore.open(local, bindAddress, port, heartbeatMillis, queueCapacity, writeTimeoutMillis);
+        }
+        return local;
+    }
+}
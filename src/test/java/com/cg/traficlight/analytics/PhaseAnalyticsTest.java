@@ -0,0 +1,103 @@
+package com.cg.traficlight.analytics;
+
+import com.cg.traficlight.model.Directions;
+import com.cg.traficlight.model.WindowStats;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PhaseAnalyticsTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final int NORTH = 1 << Directions.NORTH.ordinal();
+    private static final int EAST = 1 << Directions.EAST.ordinal();
+
+    /** North green 30 s, yellow 5 s, east green 20 s, yellow 5 s: a 60 s cycle from {@code start}. */
+    private static long runCycles(PhaseAnalytics analytics, long start, int cycles) {
+        long t = start;
+        for (int c = 0; c < cycles; c++) {
+            analytics.phaseStarted(t, 0, NORTH);
+            analytics.phaseOverrun(t + 30 * SECOND, 2_000_000);
+            analytics.phaseStarted(t += 30 * SECOND, 1, 0);
+            analytics.phaseStarted(t += 5 * SECOND, 2, EAST);
+            analytics.phaseStarted(t += 20 * SECOND, 3, 0);
+            t += 5 * SECOND;
+        }
+        return t;
+    }
+
+    @Test
+    void report_sharesGreenAndCountsCycles() {
+        PhaseAnalytics analytics = new PhaseAnalytics(0);
+        long end = runCycles(analytics, 0, 60);
+
+        WindowStats hour = analytics.report(end).getWindows().get("1h");
+        assertEquals(3600.0, hour.getObservedSeconds(), 1e-9);
+        assertEquals(60, hour.getCycles());
+        assertEquals(240, hour.getPhases());
+        assertEquals(60.0, hour.getCyclesPerHour(), 1e-9);
+        assertEquals(0.5, hour.getGreenShare().get(Directions.NORTH), 1e-9);
+        assertEquals(20.0 / 60, hour.getGreenShare().get(Directions.EAST), 1e-9);
+        assertEquals(0.0, hour.getGreenShare().get(Directions.SOUTH), 1e-9);
+        assertEquals(2.0, hour.getMeanOverrunMillis(), 1e-9);
+        assertEquals(2.0, hour.getMaxOverrunMillis(), 1e-9);
+
+        WindowStats day = analytics.report(end).getWindows().get("24h");
+        assertEquals(3600.0, day.getObservedSeconds(), 1e-9);
+        assertEquals(60, day.getCycles());
+    }
+
+    @Test
+    void report_onlyCoversTheWindowHoweverLongItRan() {
+        PhaseAnalytics analytics = new PhaseAnalytics(0);
+        // three days of cycles: the one-minute window still sees one cycle
+        long end = runCycles(analytics, 0, 3 * 24 * 60);
+
+        WindowStats minute = analytics.report(end).getWindows().get("1m");
+        assertEquals(60.0, minute.getObservedSeconds(), 1e-9);
+        assertEquals(1, minute.getCycles());
+        assertEquals(0.5, minute.getGreenShare().get(Directions.NORTH), 1e-9);
+
+        WindowStats day = analytics.report(end).getWindows().get("24h");
+        assertEquals(24 * 60, day.getCycles());
+        assertEquals(86_400.0, day.getObservedSeconds(), 1e-9);
+    }
+
+    @Test
+    void report_includesOpenPhaseAndPause() {
+        PhaseAnalytics analytics = new PhaseAnalytics(0);
+        analytics.phaseStarted(0, 0, NORTH);
+        analytics.paused(10 * SECOND);
+        analytics.resumed(25 * SECOND);
+        // resume re-enters the same slot: no new cycle
+        analytics.phaseStarted(25 * SECOND, 0, NORTH);
+        analytics.paused(40 * SECOND);
+
+        WindowStats minute = analytics.report(50 * SECOND).getWindows().get("1m");
+        assertEquals(1, minute.getCycles());
+        assertEquals(25.0, minute.getPausedSeconds(), 1e-9);
+        assertEquals(25.0 / 50, minute.getGreenShare().get(Directions.NORTH), 1e-9);
+
+        analytics.resumed(50 * SECOND);
+        analytics.phaseStarted(50 * SECOND, 0, NORTH);
+        WindowStats later = analytics.report(55 * SECOND).getWindows().get("1m");
+        assertEquals(30.0 / 55, later.getGreenShare().get(Directions.NORTH), 1e-9);
+        assertEquals(25.0, later.getPausedSeconds(), 1e-9);
+    }
+
+    @Test
+    void longPhase_isSplitAcrossBuckets() {
+        PhaseAnalytics analytics = new PhaseAnalytics(0);
+        analytics.phaseStarted(0, 0, EAST);
+        analytics.phaseStarted(90 * SECOND, 1, 0);
+
+        // only the last 60 s of the 90 s green fall in the one-minute window
+        WindowStats minute = analytics.report(90 * SECOND).getWindows().get("1m");
+        assertEquals(1.0, minute.getGreenShare().get(Directions.EAST), 1e-9);
+        WindowStats quarter = analytics.report(90 * SECOND).getWindows().get("15m");
+        assertEquals(1.0, quarter.getGreenShare().get(Directions.EAST), 1e-9);
+        assertEquals(90.0, quarter.getObservedSeconds(), 1e-9);
+    }
+}
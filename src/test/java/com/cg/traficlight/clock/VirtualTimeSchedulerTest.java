@@ -0,0 +1,120 @@
+package com.cg.traficlight.clock;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VirtualTimeSchedulerTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    @Test
+    void advance_runsDueTasksInDeadlineOrderAtTheirOwnTime() {
+        VirtualTimeScheduler scheduler = new VirtualTimeScheduler(START);
+        List<String> ran = new ArrayList<>();
+        scheduler.schedule(() -> ran.add("b@" + scheduler.now()), 2, TimeUnit.SECONDS);
+        scheduler.schedule(() -> ran.add("a@" + scheduler.now()), 1, TimeUnit.SECONDS);
+        scheduler.schedule(() -> ran.add("c@" + scheduler.now()), 2, TimeUnit.SECONDS);
+        scheduler.schedule(() -> ran.add("late"), 10, TimeUnit.SECONDS);
+
+        long count = scheduler.advance(Duration.ofSeconds(5));
+
+        assertEquals(3, count);
+        assertEquals(List.of("a@2024-01-01T00:00:01", "b@2024-01-01T00:00:02", "c@2024-01-01T00:00:02"), ran);
+        assertEquals(START.plusSeconds(5), scheduler.now());
+        assertEquals(TimeUnit.SECONDS.toNanos(5), scheduler.nanoTime());
+        assertEquals(1, scheduler.pending());
+    }
+
+    @Test
+    void advance_runsTasksScheduledByTasksWithinTheWindow() {
+        VirtualTimeScheduler scheduler = new VirtualTimeScheduler(START);
+        long[] ticks = {0};
+        Runnable tick = new Runnable() {
+            @Override
+            public void run() {
+                ticks[0]++;
+                scheduler.schedule(this, 1, TimeUnit.SECONDS);
+            }
+        };
+        scheduler.schedule(tick, 1, TimeUnit.SECONDS);
+
+        assertEquals(86_400, scheduler.advance(Duration.ofDays(1)));
+        assertEquals(86_400, ticks[0]);
+    }
+
+    @Test
+    void fixedRate_runsEveryPeriodUntilCancelledFromWithin() {
+        VirtualTimeScheduler scheduler = new VirtualTimeScheduler(START);
+        List<Long> ran = new ArrayList<>();
+        ScheduledFuture<?>[] future = new ScheduledFuture<?>[1];
+        future[0] = scheduler.scheduleAtFixedRate(() -> {
+            ran.add(scheduler.nanoTime());
+            if (ran.size() == 3) future[0].cancel(false);
+        }, 1, 2, TimeUnit.SECONDS);
+
+        assertEquals(3, scheduler.advance(Duration.ofSeconds(10)));
+        assertEquals(List.of(TimeUnit.SECONDS.toNanos(1), TimeUnit.SECONDS.toNanos(3), TimeUnit.SECONDS.toNanos(5)), ran);
+        assertTrue(future[0].isCancelled());
+        assertEquals(0, scheduler.pending());
+    }
+
+    @Test
+    void fixedDelay_runsUntilCancelledOrItThrows() throws Exception {
+        VirtualTimeScheduler scheduler = new VirtualTimeScheduler(START);
+        int[] runs = {0};
+        ScheduledFuture<?> failing = scheduler.scheduleWithFixedDelay(() -> {
+            if (++runs[0] == 4) throw new IllegalStateException("boom");
+        }, 0, 1, TimeUnit.SECONDS);
+        ScheduledFuture<?> ticking = scheduler.scheduleWithFixedDelay(() -> { }, 1, 1, TimeUnit.SECONDS);
+
+        assertEquals(4 + 10, scheduler.advance(Duration.ofSeconds(10)));
+        assertEquals(4, runs[0]);
+        ExecutionException e = assertThrows(ExecutionException.class, failing::get);
+        assertInstanceOf(IllegalStateException.class, e.getCause());
+        assertFalse(ticking.isDone());
+
+        assertTrue(ticking.cancel(false));
+        assertEquals(0, scheduler.advance(Duration.ofSeconds(10)));
+        assertThrows(IllegalArgumentException.class,
+                () -> scheduler.scheduleWithFixedDelay(() -> { }, 0, 0, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void cancel_removesTaskBeforeItRuns() {
+        VirtualTimeScheduler scheduler = new VirtualTimeScheduler(START);
+        List<String> ran = new ArrayList<>();
+        ScheduledFuture<?> future = scheduler.schedule(() -> ran.add("x"), 1, TimeUnit.SECONDS);
+
+        assertTrue(future.cancel(false));
+        assertEquals(0, scheduler.advance(Duration.ofSeconds(2)));
+        assertTrue(ran.isEmpty());
+        assertTrue(future.isCancelled());
+        assertFalse(future.cancel(false));
+    }
+
+    @Test
+    void failingTask_keepsFailureInItsFuture() {
+        VirtualTimeScheduler scheduler = new VirtualTimeScheduler(START);
+        ScheduledFuture<?> future = scheduler.schedule(() -> {
+            throw new IllegalStateException("boom");
+        }, 0, TimeUnit.SECONDS);
+
+        assertThrows(IllegalStateException.class, future::get);
+        assertThrows(TimeoutException.class, () -> future.get(1, TimeUnit.SECONDS));
+        scheduler.advance(Duration.ZERO);
+
+        assertTrue(future.isDone());
+        ExecutionException e = assertThrows(ExecutionException.class, future::get);
+        assertInstanceOf(IllegalStateException.class, e.getCause());
+    }
+}
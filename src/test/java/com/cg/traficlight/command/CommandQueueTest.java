@@ -0,0 +1,223 @@
+package com.cg.traficlight.command;
+
+import com.cg.traficlight.model.CommandStatus;
+import com.cg.traficlight.model.SignalSequence;
+import com.cg.traficlight.plan.InvalidPlanException;
+import com.cg.traficlight.service.TrafficLightService;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommandQueueTest {
+
+    /** Counts what actually reaches the service. */
+    static class CountingService extends TrafficLightService {
+        final AtomicInteger sequences = new AtomicInteger();
+        final AtomicInteger pauses = new AtomicInteger();
+        final AtomicInteger resumes = new AtomicInteger();
+        volatile RuntimeException failSequence;
+
+        @Override
+        public void setSequence(SignalSequence req) {
+            sequences.incrementAndGet();
+            if (failSequence != null) throw failSequence;
+            super.setSequence(req);
+        }
+
+        @Override
+        public void pause() {
+            pauses.incrementAndGet();
+            super.pause();
+        }
+
+        @Override
+        public void resume() {
+            resumes.incrementAndGet();
+            super.resume();
+        }
+    }
+
+    private final CountingService service = new CountingService();
+    private CommandQueue queue;
+
+    private static SignalSequence sequence(long green) {
+        SignalSequence sequence = new SignalSequence();
+        sequence.setTimeGreenNS(green);
+        sequence.setTimeYellowNS(3);
+        sequence.setTimeGreenEW(green);
+        sequence.setTimeYellowEW(3);
+        return sequence;
+    }
+
+    private static long cycleMillis(long green) {
+        return (green + 3 + 3 * (green + 3)) * 1000;
+    }
+
+    @AfterEach
+    void stop() {
+        if (queue != null) queue.shutdown();
+        service.shutdown();
+    }
+
+    @Test
+    void withoutWindow_commandIsInEffectWhenSubmitReturns() {
+        service.init();
+        queue = new CommandQueue(service, 0);
+
+        long version = queue.submitSequence(sequence(5));
+
+        assertTrue(queue.isApplied(version));
+        assertEquals(cycleMillis(5), service.getCoordinationStatus().getCycleMillis());
+        assertEquals(1, service.sequences.get());
+    }
+
+    @Test
+    void withinWindow_pauseAndResumeCancelOut() {
+        service.init();
+        queue = new CommandQueue(service, 50);
+
+        queue.submitPause();
+        long version = queue.submitResume();
+
+        assertFalse(queue.isApplied(version));
+        assertTrue(queue.awaitApplied(version, Duration.ofSeconds(5)));
+        assertEquals(0, service.pauses.get());
+        assertFalse(service.getStatus().isPaused());
+        CommandStatus status = queue.status();
+        assertEquals(1, status.getCoalesced());
+        assertEquals(1, status.getBatches());
+    }
+
+    @Test
+    void malformedSequence_isRefusedWithoutReplacingTheOneQueued() {
+        service.init();
+        queue = new CommandQueue(service, 50);
+
+        long version = queue.submitSequence(sequence(5));
+        assertThrows(InvalidPlanException.class, () -> queue.submitSequence(sequence(-1)));
+
+        assertTrue(queue.awaitApplied(version, Duration.ofSeconds(5)));
+        assertEquals(cycleMillis(5), service.getCoordinationStatus().getCycleMillis());
+        assertEquals(version, queue.status().getSubmitted());
+    }
+
+    @Test
+    void failedBatch_isNotAppliedAndIsRecordedByItsVersions() {
+        service.init();
+        queue = new CommandQueue(service, 0);
+        service.failSequence = new IllegalStateException("standby");
+
+        long failed = queue.submitSequence(sequence(5));
+
+        assertFalse(queue.isApplied(failed));
+        assertFalse(queue.awaitApplied(failed, Duration.ofSeconds(1)));
+        assertEquals("standby", queue.failure(failed));
+        CommandStatus status = queue.status();
+        assertEquals(1, status.getFailed());
+        assertEquals("standby", status.getLastFailure());
+
+        service.failSequence = null;
+        long next = queue.submitSequence(sequence(7));
+
+        assertTrue(queue.isApplied(next));
+        assertNull(queue.failure(next));
+        assertEquals("standby", queue.failure(failed));
+        assertEquals(cycleMillis(7), service.getCoordinationStatus().getCycleMillis());
+    }
+
+    @Test
+    void commandStorm_isAppliedInFewBatchesAndLastSequenceWins() throws Exception {
+        service.init();
+        queue = new CommandQueue(service, 20);
+        int threads = 8;
+        int perThread = 5_000;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> senders = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            Thread sender = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) {
+                    queue.submitSequence(sequence(10 + (id + i) % 20));
+                    if (i % 100 == 0) queue.submitPause();
+                    if (i % 100 == 1) queue.submitResume();
+                }
+            });
+            sender.start();
+            senders.add(sender);
+        }
+
+        long began = System.nanoTime();
+        start.countDown();
+        for (Thread sender : senders) {
+            sender.join();
+        }
+        long last = queue.submitSequence(sequence(42));
+        assertTrue(queue.awaitApplied(last, Duration.ofSeconds(10)));
+        long elapsedMillis = Duration.ofNanos(System.nanoTime() - began).toMillis();
+
+        CommandStatus status = queue.status();
+        long commands = threads * (perThread + 2L * perThread / 100) + 1;
+        assertEquals(commands, status.getSubmitted());
+        assertEquals(commands, status.getApplied());
+        // every batch touches the service at most once per kind of command
+        assertTrue(service.sequences.get() <= status.getBatches());
+        assertTrue(status.getBatches() < commands / 100,
+                status.getBatches() + " batches for " + commands + " commands in " + elapsedMillis + " ms");
+        assertEquals(cycleMillis(42), service.getCoordinationStatus().getCycleMillis());
+        assertFalse(service.getStatus().isPaused());
+    }
+
+    @Test
+    void virtualThreadCallers_neverParkWhilePinned() throws Exception {
+        service.init();
+        queue = new CommandQueue(service, 0);
+        List<RecordedEvent> pinned = new CopyOnWriteArrayList<>();
+        try (RecordingStream recording = new RecordingStream()) {
+            recording.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ZERO).withStackTrace();
+            recording.onEvent("jdk.VirtualThreadPinned", pinned::add);
+            recording.startAsync();
+
+            // a platform thread keeps the service lock contended, so queued callers do park on it
+            Thread direct = new Thread(() -> {
+                for (int i = 0; i < 500; i++) service.setSequence(sequence(10 + i % 20));
+            });
+            ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor();
+            direct.start();
+            for (int t = 0; t < 16; t++) {
+                callers.submit(() -> {
+                    for (int i = 0; i < 100; i++) {
+                        queue.submitSequence(sequence(10 + i % 20));
+                        if (i % 10 == 0) queue.submitPause();
+                        if (i % 10 == 1) queue.submitResume();
+                    }
+                });
+            }
+            callers.shutdown();
+            // a pinned carrier can deadlock outright when there are few of them
+            assertTrue(callers.awaitTermination(30, TimeUnit.SECONDS), "virtual-thread callers are stuck");
+            direct.join();
+            recording.stop();
+        }
+
+        assertTrue(pinned.isEmpty(), () -> pinned.size() + " pinned parks, first at " + pinned.get(0).getStackTrace());
+        assertFalse(service.getStatus().isPaused());
+    }
+}
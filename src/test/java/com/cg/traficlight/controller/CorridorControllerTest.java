@@ -0,0 +1,43 @@
+package com.cg.traficlight.controller;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class CorridorControllerTest {
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        mockMvc = MockMvcBuilders.standaloneSetup(new CorridorController()).build();
+    }
+
+    @Test
+    void plan_returnsOffsetsAndBand() throws Exception {
+        String json = "{\"speedKmh\":36,"
+                + "\"sequence\":{\"timeGreenNS\":30,\"timeYellowNS\":4,\"timeGreenEW\":12,\"timeYellowEW\":3},"
+                + "\"intersections\":[{\"id\":\"a\",\"distanceMeters\":0},{\"id\":\"b\",\"distanceMeters\":900}]}";
+
+        mockMvc.perform(post("/api/v1/corridor")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(json))
+                .andExpect(status().isOk())
+                .andExpect(content().json("{\"cycleMillis\":79000,\"bandMillis\":30000,"
+                        + "\"intersections\":[{\"id\":\"a\",\"offsetMillis\":0},{\"id\":\"b\",\"offsetMillis\":11000}]}"));
+    }
+
+    @Test
+    void plan_rejectsNonPositiveSpeed() throws Exception {
+        mockMvc.perform(post("/api/v1/corridor")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"speedKmh\":0,\"intersections\":[{\"id\":\"a\",\"distanceMeters\":0}]}"))
+                .andExpect(status().isBadRequest());
+    }
+}
@@ -0,0 +1,85 @@
+package com.cg.traficlight.controller;
+
+import com.cg.traficlight.detector.AdaptiveTiming;
+import com.cg.traficlight.detector.DetectorCounts;
+import com.cg.traficlight.model.DetectorBatch;
+import com.cg.traficlight.model.Directions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ExtendWith(MockitoExtension.class)
+class DetectorControllerTest {
+
+    @Mock
+    private DetectorCounts detectors;
+
+    @Mock
+    private AdaptiveTiming adaptive;
+
+    @InjectMocks
+    private DetectorController controller;
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    @Test
+    void ingest_recordsBatchAndReturnsAccepted() throws Exception {
+        when(detectors.record(any(DetectorBatch.class))).thenReturn(2);
+        String json = "{\"events\":[{\"detector\":\"n1\",\"direction\":\"NORTH\",\"vehicles\":3},"
+                + "{\"detector\":\"e1\",\"direction\":\"EAST\"}]}";
+
+        mockMvc.perform(post("/api/v1/detectors/events")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(json))
+                .andExpect(status().isAccepted())
+                .andExpect(content().string("2"));
+
+        ArgumentCaptor<DetectorBatch> captor = ArgumentCaptor.forClass(DetectorBatch.class);
+        verify(detectors).record(captor.capture());
+        assertThat(captor.getValue().getEvents()).hasSize(2);
+        assertThat(captor.getValue().getEvents().get(0).getVehicles()).isEqualTo(3);
+        assertThat(captor.getValue().getEvents().get(1).getVehicles()).isEqualTo(1);
+        assertThat(captor.getValue().getEvents().get(1).getDirection()).isEqualTo(Directions.EAST);
+    }
+
+    @Test
+    void status_reportsCountsAndLastGreens() throws Exception {
+        Map<Directions, Long> waiting = new EnumMap<>(Directions.class);
+        waiting.put(Directions.NORTH, 4L);
+        Map<Directions, Long> greens = new EnumMap<>(Directions.class);
+        greens.put(Directions.NORTH, 24_000L);
+        when(adaptive.isEnabled()).thenReturn(true);
+        when(adaptive.lastGreenMillis()).thenReturn(greens);
+        when(detectors.accepted()).thenReturn(10L);
+        when(detectors.rejected()).thenReturn(1L);
+        when(detectors.waiting()).thenReturn(waiting);
+
+        mockMvc.perform(get("/api/v1/detectors"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("{\"adaptive\":true,\"accepted\":10,\"rejected\":1,"
+                        + "\"waiting\":{\"NORTH\":4},\"lastGreenMillis\":{\"NORTH\":24000}}"));
+    }
+}
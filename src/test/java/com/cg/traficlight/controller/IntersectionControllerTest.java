@@ -0,0 +1,157 @@
+package com.cg.traficlight.controller;
+
+import com.cg.traficlight.engine.FleetStatus;
+import com.cg.traficlight.engine.IntersectionEngine;
+import com.cg.traficlight.model.*;
+import com.cg.traficlight.plan.InvalidPlanException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.OutputStream;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ExtendWith(MockitoExtension.class)
+class IntersectionControllerTest {
+
+    @Mock
+    private IntersectionEngine engine;
+
+    @InjectMocks
+    private IntersectionController controller;
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    @Test
+    void registerWithoutBodyUsesDefaultSequence() throws Exception {
+        when(engine.register(eq("main-st"), any(SignalSequence.class))).thenReturn(true);
+
+        mockMvc.perform(post("/api/v1/intersections/main-st"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("Intersection registered"));
+    }
+
+    @Test
+    void registerTwiceIsAConflict() throws Exception {
+        when(engine.register(eq("main-st"), any(SignalSequence.class))).thenReturn(false);
+
+        mockMvc.perform(post("/api/v1/intersections/main-st"))
+                .andExpect(status().is(409));
+    }
+
+    @Test
+    void invalidSequenceIsABadRequest() throws Exception {
+        when(engine.register(eq("main-st"), any(SignalSequence.class)))
+                .thenThrow(new InvalidPlanException("sequence timings must not be negative: -1"));
+        when(engine.setSequence(eq("main-st"), any(SignalSequence.class)))
+                .thenThrow(new InvalidPlanException("sequence timings must not be negative: -1"));
+        String body = "{\"timeGreenNS\":-1}";
+
+        mockMvc.perform(post("/api/v1/intersections/main-st").contentType(MediaType.APPLICATION_JSON).content(body))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("sequence timings must not be negative: -1"));
+        mockMvc.perform(post("/api/v1/intersections/main-st/sequence").contentType(MediaType.APPLICATION_JSON).content(body))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("sequence timings must not be negative: -1"));
+    }
+
+    @Test
+    void statusOfKnownIntersection() throws Exception {
+        when(engine.getStatusJson("main-st")).thenReturn(StatusSnapshot.of(Directions.WEST, Colors.YELLOW, false).getJson(JsonMapper.shared()));
+
+        mockMvc.perform(get("/api/v1/intersections/main-st/status"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON));
+    }
+
+    @Test
+    void statusOfUnknownIntersectionIsNotFound() throws Exception {
+        mockMvc.perform(get("/api/v1/intersections/nope/status"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void pauseResumeAndHistoryAreRoutedById() throws Exception {
+        when(engine.pause("main-st")).thenReturn(true);
+        when(engine.resume("main-st")).thenReturn(true);
+        when(engine.getTimingHistory("main-st")).thenReturn(List.of());
+
+        mockMvc.perform(get("/api/v1/intersections/main-st/pause"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("Paused"));
+        mockMvc.perform(get("/api/v1/intersections/main-st/resume"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("Resumed"));
+        mockMvc.perform(get("/api/v1/intersections/main-st/history"))
+                .andExpect(status().isOk());
+
+        verify(engine).pause("main-st");
+        verify(engine).resume("main-st");
+    }
+
+    @Test
+    void fleetStatusAsCodesWhenBinaryIsAccepted() throws Exception {
+        FleetStatus fleet = mock(FleetStatus.class);
+        when(fleet.version()).thenReturn(7L);
+        when(fleet.size()).thenReturn(2);
+        doAnswer(invocation -> {
+            invocation.getArgument(0, OutputStream.class).write(new byte[]{0x11, (byte) 0xC3});
+            return null;
+        }).when(fleet).writeCodes(any(OutputStream.class));
+        when(engine.getFleetStatus()).thenReturn(fleet);
+
+        MvcResult result = mockMvc.perform(get("/api/v1/intersections/status").accept(MediaType.APPLICATION_OCTET_STREAM))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string(IntersectionController.ROSTER_VERSION_HEADER, "7"))
+                .andExpect(content().contentType(MediaType.APPLICATION_OCTET_STREAM))
+                .andExpect(content().bytes(new byte[]{0x11, (byte) 0xC3}));
+
+        verify(fleet, never()).writeJson(any(OutputStream.class));
+    }
+
+    @Test
+    void fleetStatusAsJsonByDefault() throws Exception {
+        FleetStatus fleet = mock(FleetStatus.class);
+        when(fleet.version()).thenReturn(7L);
+        doAnswer(invocation -> {
+            invocation.getArgument(0, OutputStream.class).write("{}".getBytes());
+            return null;
+        }).when(fleet).writeJson(any(OutputStream.class));
+        when(engine.getFleetStatus()).thenReturn(fleet);
+
+        MvcResult result = mockMvc.perform(get("/api/v1/intersections/status").accept(MediaType.APPLICATION_JSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string(IntersectionController.ROSTER_VERSION_HEADER, "7"))
+                .andExpect(content().string("{}"));
+    }
+}
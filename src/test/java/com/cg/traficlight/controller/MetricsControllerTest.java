@@ -0,0 +1,67 @@
+package com.cg.traficlight.controller;
+
+import com.cg.traficlight.history.HistoryStore;
+import com.cg.traficlight.metrics.TrafficMetrics;
+import com.cg.traficlight.model.MetricsReport;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.Map;
+
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ExtendWith(MockitoExtension.class)
+class MetricsControllerTest {
+
+    @Mock
+    private TrafficMetrics metrics;
+
+    @Mock
+    private HistoryStore history;
+
+    @InjectMocks
+    private MetricsController controller;
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    @Test
+    void callGetMetricsReturnsReport() throws Exception {
+        MetricsReport report = new MetricsReport();
+        report.setEnabled(true);
+        report.setConflicts(2);
+        report.setHistograms(Map.of());
+        when(metrics.report()).thenReturn(report);
+
+        mockMvc.perform(get("/api/v1/metrics"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("{\"enabled\":true,\"conflicts\":2,\"histograms\":{}}"));
+
+        verify(metrics, times(1)).report();
+    }
+
+    @Test
+    void callGetMetricsReportsDroppedHistoryRecords() throws Exception {
+        MetricsReport report = new MetricsReport();
+        report.setHistograms(Map.of());
+        when(metrics.report()).thenReturn(report);
+        when(history.droppedRecords()).thenReturn(7L);
+
+        mockMvc.perform(get("/api/v1/metrics"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("{\"historyDropped\":7}"));
+    }
+}
@@ -0,0 +1,107 @@
+package com.cg.traficlight.controller;
+
+import com.cg.traficlight.model.SchedulerTiming;
+import com.cg.traficlight.service.TrafficLightService;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@code /status}, {@code /history} and {@code /sequence} together from an
+ * {@link OpenLoadGenerator}, against the application on a random port with the real clock and
+ * one-second phases, so transitions keep happening throughout.
+ * <p>
+ * Prints latency from each request's planned send time (p50, p99, p999, max) and the throughput
+ * reached per endpoint, then how late the scheduled transitions were while it ran. Every request
+ * must succeed, each endpoint must keep up with its rate, and no transition may be later than
+ * {@code load.max.drift.millis}. Tagged {@code load} and left out of the default build:
+ * <pre>
+ *   mvn -Pload test -Dtest=MixedLoadTest -Dload.rate.status=5000 -Dload.seconds=60
+ * </pre>
+ * A sequence change restarts the cycle, so keep {@code load.rate.sequence} under one per cycle
+ * for transitions to be left to time.
+ */
+@Tag("load")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class MixedLoadTest {
+
+    private static final double STATUS_RATE = Double.parseDouble(System.getProperty("load.rate.status", "1000"));
+    private static final double HISTORY_RATE = Double.parseDouble(System.getProperty("load.rate.history", "100"));
+    private static final double SEQUENCE_RATE = Double.parseDouble(System.getProperty("load.rate.sequence", "0.1"));
+    private static final int WARMUP_SECONDS = Integer.getInteger("load.warmup.seconds", 5);
+    private static final int SECONDS = Integer.getInteger("load.seconds", 20);
+    private static final long MAX_DRIFT_MILLIS = Long.getLong("load.max.drift.millis", 50);
+
+    // one second for every phase: a cycle is 8 s
+    private static final String SEQUENCE = "{\"timeGreenNS\":1,\"timeYellowNS\":1,\"timeGreenEW\":1,\"timeYellowEW\":1}";
+
+    @Value("${local.server.port}")
+    int port;
+
+    @Autowired
+    TrafficLightService service;
+
+    @Test
+    void keepsLatencyAndTransitionTimingUnderMixedLoad() throws Exception {
+        String base = "http://localhost:" + port + "/api/v1/";
+        HttpRequest sequence = HttpRequest.newBuilder(URI.create(base + "sequence"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(SEQUENCE))
+                .build();
+        List<OpenLoadGenerator.Endpoint> endpoints = List.of(
+                new OpenLoadGenerator.Endpoint("status", STATUS_RATE,
+                        () -> HttpRequest.newBuilder(URI.create(base + "status")).build()),
+                new OpenLoadGenerator.Endpoint("history", HISTORY_RATE,
+                        () -> HttpRequest.newBuilder(URI.create(base + "history")).build()),
+                new OpenLoadGenerator.Endpoint("sequence", SEQUENCE_RATE, () -> sequence));
+
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).executor(clients).build();
+            int accepted = http.send(sequence, HttpResponse.BodyHandlers.discarding()).statusCode();
+            assertTrue(accepted == 200 || accepted == 202, "sequence answered " + accepted);
+            OpenLoadGenerator generator = new OpenLoadGenerator(http);
+
+            // JIT, connection pools and the history buffer; the numbers are thrown away
+            generator.run(endpoints, Duration.ofSeconds(WARMUP_SECONDS), Duration.ofSeconds(10));
+
+            SchedulerTiming before = service.getSchedulerTiming();
+            Map<String, OpenLoadGenerator.Result> results =
+                    generator.run(endpoints, Duration.ofSeconds(SECONDS), Duration.ofSeconds(10));
+            SchedulerTiming after = service.getSchedulerTiming();
+
+            long transitions = after.getTransitions() - before.getTransitions();
+            long meanDriftMicros = transitions == 0 ? 0
+                    : (after.getMeanDriftMicros() * after.getTransitions()
+                    - before.getMeanDriftMicros() * before.getTransitions()) / transitions;
+            System.out.printf("open-model load for %d s, latency from the planned send time%n", SECONDS);
+            results.values().forEach(result -> System.out.println("  " + result.line()));
+            System.out.printf("  transitions %d, mean drift %.2f ms, max drift %.2f ms, max jitter %.2f ms%n",
+                    transitions, meanDriftMicros / 1e3, after.getMaxDriftMicros() / 1e3, after.getMaxJitterMicros() / 1e3);
+
+            for (OpenLoadGenerator.Result result : results.values()) {
+                assertEquals(0, result.errors.get(), result.name + " requests failed");
+                assertTrue(result.throughput() >= 0.9 * result.targetRate,
+                        result.name + " fell behind its rate: " + result.line());
+            }
+            // a sequence change every few seconds at most leaves most phases to run out on time
+            assertTrue(transitions >= SECONDS / 2, "only " + transitions + " transitions in " + SECONDS + " s");
+            assertTrue(after.getMaxDriftMicros() < TimeUnit.MILLISECONDS.toMicros(MAX_DRIFT_MILLIS),
+                    "a transition was " + after.getMaxDriftMicros() / 1e3 + " ms late");
+        }
+    }
+}
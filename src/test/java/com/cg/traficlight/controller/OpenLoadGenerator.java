@@ -0,0 +1,135 @@
+package com.cg.traficlight.controller;
+
+import com.cg.traficlight.metrics.LatencyHistogram;
+import com.cg.traficlight.model.HistogramSnapshot;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Open-model HTTP load: every endpoint gets requests at a fixed rate, on a schedule set before
+ * the run, whether or not earlier ones have been answered. A closed loop of clients that wait for
+ * each response sends less exactly when the server is slow, and so never sees the queue it would
+ * have built ("coordinated omission").
+ * <p>
+ * One pacing thread per endpoint sends each request asynchronously at its planned time, or at
+ * once if it has fallen behind. Latency is counted from the planned time, so a stall of the
+ * sender counts against the server as it would for real clients arriving on schedule; the
+ * service time from the actual send is kept alongside for comparison.
+ */
+final class OpenLoadGenerator {
+
+    /** {@code ratePerSecond} requests to {@code name}; {@code request} is called once per request. */
+    record Endpoint(String name, double ratePerSecond, Supplier<HttpRequest> request) {
+    }
+
+    static final class Result {
+        final String name;
+        final double targetRate;
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LatencyHistogram service = new LatencyHistogram();
+        final AtomicLong completed = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+        // how far behind schedule the pacing thread sent, at worst
+        volatile long maxSendLagNanos;
+        volatile long sent;
+        volatile long elapsedNanos;
+
+        Result(String name, double targetRate) {
+            this.name = name;
+            this.targetRate = targetRate;
+        }
+
+        double throughput() {
+            return elapsedNanos == 0 ? 0 : completed.get() * 1e9 / elapsedNanos;
+        }
+
+        String line() {
+            HistogramSnapshot l = latency.snapshot();
+            HistogramSnapshot s = service.snapshot();
+            return String.format("%-9s %,9.1f req/s of %,.1f  p50 %7.2f  p99 %7.2f  p999 %7.2f  max %7.2f ms"
+                            + "  (service p99 %.2f ms, send lag max %.2f ms)  errors %d",
+                    name, throughput(), targetRate, l.getP50Nanos() / 1e6, l.getP99Nanos() / 1e6,
+                    l.getP999Nanos() / 1e6, l.getMaxNanos() / 1e6, s.getP99Nanos() / 1e6, maxSendLagNanos / 1e6,
+                    errors.get());
+        }
+    }
+
+    private final HttpClient http;
+
+    OpenLoadGenerator(HttpClient http) {
+        this.http = http;
+    }
+
+    /**
+     * Drives every endpoint for {@code duration}, then waits up to {@code drain} for the answers
+     * still outstanding; those that do not come count as errors.
+     */
+    Map<String, Result> run(List<Endpoint> endpoints, Duration duration, Duration drain) throws InterruptedException {
+        long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(10);
+        long end = start + duration.toNanos();
+        Map<String, Result> results = new LinkedHashMap<>();
+        List<Thread> pacers = new ArrayList<>();
+        AtomicLong outstanding = new AtomicLong();
+        for (Endpoint endpoint : endpoints) {
+            Result result = new Result(endpoint.name(), endpoint.ratePerSecond());
+            results.put(endpoint.name(), result);
+            if (endpoint.ratePerSecond() <= 0) continue;
+            Thread pacer = new Thread(() -> pace(endpoint, result, start, end, outstanding), "load-" + endpoint.name());
+            pacer.setDaemon(true);
+            pacer.start();
+            pacers.add(pacer);
+        }
+        for (Thread pacer : pacers) {
+            pacer.join();
+        }
+        long drainUntil = System.nanoTime() + drain.toNanos();
+        while (outstanding.get() > 0 && System.nanoTime() < drainUntil) {
+            Thread.sleep(10);
+        }
+        for (Result result : results.values()) {
+            result.errors.addAndGet(result.sent - result.completed.get() - result.errors.get());
+        }
+        return results;
+    }
+
+    private void pace(Endpoint endpoint, Result result, long start, long end, AtomicLong outstanding) {
+        double intervalNanos = 1e9 / endpoint.ratePerSecond();
+        long sent = 0;
+        for (long i = 0; ; i++) {
+            long planned = start + (long) (i * intervalNanos);
+            if (planned >= end) break;
+            for (long wait; (wait = planned - System.nanoTime()) > 0; ) {
+                LockSupport.parkNanos(wait);
+            }
+            long sentAt = System.nanoTime();
+            result.maxSendLagNanos = Math.max(result.maxSendLagNanos, sentAt - planned);
+            outstanding.incrementAndGet();
+            http.sendAsync(endpoint.request().get(), HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, failure) -> {
+                        long now = System.nanoTime();
+                        if (failure != null || response.statusCode() >= 400) {
+                            result.errors.incrementAndGet();
+                        } else {
+                            result.latency.record(now - planned);
+                            result.service.record(now - sentAt);
+                            result.completed.incrementAndGet();
+                        }
+                        outstanding.decrementAndGet();
+                    });
+            sent++;
+        }
+        result.sent = sent;
+        result.elapsedNanos = end - start;
+    }
+}
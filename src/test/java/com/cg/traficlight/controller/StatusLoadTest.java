@@ -0,0 +1,155 @@
+package com.cg.traficlight.controller;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Concurrent-connection capacity and {@code /status} latency with request handling on platform
+ * threads and on virtual threads ({@code spring.threads.virtual.enabled}).
+ * <p>
+ * Each run holds {@code load.connections} long-polls open ({@code /status?wait=60}) while
+ * {@code load.clients} clients send {@code load.requests} plain {@code /status} requests each,
+ * then ends the long-polls with a pause and checks every one of them is answered. Virtual time
+ * keeps the phase from changing mid-run. Tagged {@code load} and left out of the default build:
+ * <pre>
+ *   mvn -Pload test -Dload.connections=5000
+ * </pre>
+ */
+@Tag("load")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = "scheduler.clock=VIRTUAL")
+class StatusLoadTest {
+
+    private static final int CONNECTIONS = Integer.getInteger("load.connections", 2_000);
+    private static final int CLIENTS = Integer.getInteger("load.clients", 400);
+    private static final int REQUESTS = Integer.getInteger("load.requests", 50);
+
+    private static final Map<String, String> REPORT = new ConcurrentSkipListMap<>();
+
+    @AfterAll
+    static void report() {
+        System.out.printf("%d held long-polls, %d clients x %d GET /status%n", CONNECTIONS, CLIENTS, REQUESTS);
+        REPORT.forEach((mode, line) -> System.out.printf("  %-9s %s%n", mode, line));
+    }
+
+    @Nested
+    @TestPropertySource(properties = "spring.threads.virtual.enabled=false")
+    class PlatformThreads {
+
+        @Value("${local.server.port}")
+        int port;
+
+        @Test
+        void holdsLongPollsWhileServingStatus() throws Exception {
+            REPORT.put("platform", run(port));
+        }
+    }
+
+    @Nested
+    @TestPropertySource(properties = "spring.threads.virtual.enabled=true")
+    class VirtualThreads {
+
+        @Value("${local.server.port}")
+        int port;
+
+        @Test
+        void holdsLongPollsWhileServingStatus() throws Exception {
+            REPORT.put("virtual", run(port));
+        }
+    }
+
+    private static String run(int port) throws Exception {
+        String base = "http://localhost:" + port + "/api/v1/";
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).executor(clients).build();
+            HttpResponse<String> first = http.send(HttpRequest.newBuilder(URI.create(base + "status")).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, first.statusCode());
+            String etag = first.headers().firstValue("ETag").orElseThrow();
+
+            // raw sockets: the request is on the wire once write() returns, whatever the server does with it
+            List<Socket> held = new ArrayList<>(CONNECTIONS);
+            byte[] longPoll = ("GET /api/v1/status?wait=60 HTTP/1.1\r\nHost: localhost\r\nIf-None-Match: " + etag
+                    + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+            for (int i = 0; i < CONNECTIONS; i++) {
+                Socket socket = new Socket("localhost", port);
+                socket.setSoTimeout(30_000);
+                socket.getOutputStream().write(longPoll);
+                held.add(socket);
+            }
+
+            threads.resetPeakThreadCount();
+            HttpRequest status = HttpRequest.newBuilder(URI.create(base + "status")).build();
+            long began = System.nanoTime();
+            List<Future<long[]>> latencies = new ArrayList<>(CLIENTS);
+            for (int c = 0; c < CLIENTS; c++) {
+                latencies.add(clients.submit(() -> {
+                    long[] nanos = new long[REQUESTS];
+                    for (int i = 0; i < REQUESTS; i++) {
+                        long sent = System.nanoTime();
+                        HttpResponse<Void> response = http.send(status, HttpResponse.BodyHandlers.discarding());
+                        nanos[i] = System.nanoTime() - sent;
+                        assertEquals(200, response.statusCode());
+                    }
+                    return nanos;
+                }));
+            }
+            long[] all = new long[CLIENTS * REQUESTS];
+            for (int c = 0; c < CLIENTS; c++) {
+                System.arraycopy(latencies.get(c).get(2, TimeUnit.MINUTES), 0, all, c * REQUESTS, REQUESTS);
+            }
+            long elapsed = System.nanoTime() - began;
+            int peakThreads = threads.getPeakThreadCount();
+
+            // a state change answers every long-poll that is still parked
+            assertEquals(200, http.send(HttpRequest.newBuilder(URI.create(base + "pause")).build(),
+                    HttpResponse.BodyHandlers.discarding()).statusCode());
+            int answered = 0;
+            for (Socket socket : held) {
+                try (socket) {
+                    String line = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                            StandardCharsets.US_ASCII)).readLine();
+                    if (line != null && line.startsWith("HTTP/1.1 200")) answered++;
+                }
+            }
+            assertEquals(CONNECTIONS, answered, "long-polls answered after the pause");
+
+            Arrays.sort(all);
+            return String.format("%,d req/s, p50 %.2f ms, p99 %.2f ms, max %.2f ms, peak platform threads %d",
+                    all.length * TimeUnit.SECONDS.toNanos(1) / elapsed, percentileMillis(all, 0.50),
+                    percentileMillis(all, 0.99), all[all.length - 1] / 1e6, peakThreads);
+        }
+    }
+
+    private static double percentileMillis(long[] sorted, double quantile) {
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(index, 0)] / 1e6;
+    }
+}
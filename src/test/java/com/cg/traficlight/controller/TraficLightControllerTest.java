@@ -1,6 +1,9 @@
 package com.cg.traficlight.controller;
 
 import com.cg.traficlight.model.*;
+import com.cg.traficlight.plan.InvalidPlanException;
+import com.cg.traficlight.service.PhaseEventListener;
+import com.cg.traficlight.service.Subscription;
 import com.cg.traficlight.service.TrafficLightService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -9,20 +12,37 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import tools.jackson.databind.json.JsonMapper;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @ExtendWith(MockitoExtension.class)
@@ -43,23 +63,40 @@ class TraficLightControllerTest {
 
     @Test
     void callGetStatusService() throws Exception {
-        Response resp = new Response();
-        resp.setActiveDirection(Directions.NORTH);
-        resp.setActiveColor(Colors.GREEN);
-        resp.setPaused(false);
-        EnumMap<Directions, Colors> map = new EnumMap<>(Directions.class);
-        map.put(Directions.EAST, Colors.RED);
-        map.put(Directions.SOUTH, Colors.RED);
-        map.put(Directions.WEST, Colors.RED);
-        resp.setInactiveState(map);
-
-        when(service.getStatus()).thenReturn(resp);
+        StatusSnapshot snapshot = StatusSnapshot.of(Directions.NORTH, Colors.GREEN, false);
+
+        when(service.getStatusJson()).thenReturn(snapshot.getJson(JsonMapper.shared()));
 
         mockMvc.perform(get("/api/v1/status"))
                 .andExpect(status().isOk())
-                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON));
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andExpect(content().json("{\"activeDirection\":\"NORTH\",\"activeColor\":\"GREEN\",\"paused\":false,"
+                        + "\"inactiveState\":{\"EAST\":\"RED\",\"SOUTH\":\"RED\",\"WEST\":\"RED\"}}"));
+
+        verify(service, times(1)).getStatusJson();
+    }
+
+    @Test
+    void callSetSequenceRejectsANegativeTiming() throws Exception {
+        String json = "{\"timeGreenNS\":-5,\"timeYellowNS\":2,\"timeGreenEW\":4,\"timeYellowEW\":2}";
+
+        mockMvc.perform(post("/api/v1/sequence")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(json))
+                .andExpect(status().isBadRequest());
 
-        verify(service, times(1)).getStatus();
+        verify(service, never()).setSequence(any(SignalSequence.class));
+    }
+
+    @Test
+    void callSetSequenceAnswersAFailedCommandWithItsReason() throws Exception {
+        doThrow(new IllegalStateException("standby")).when(service).setSequence(any(SignalSequence.class));
+
+        mockMvc.perform(post("/api/v1/sequence")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{}"))
+                .andExpect(status().isInternalServerError())
+                .andExpect(content().string("Command failed: standby"));
     }
 
     @Test
@@ -81,6 +118,182 @@ class TraficLightControllerTest {
         assertThat(captured.getTimeYellowEW()).isEqualTo(2);
     }
 
+    @Test
+    void setPlan_passesPlanToService() throws Exception {
+        String json = "{\"name\":\"two-way\",\"groups\":[{\"name\":\"ns\",\"direction\":\"NORTH\"},"
+                + "{\"name\":\"ew\",\"direction\":\"EAST\"}],\"conflicts\":[[\"ns\",\"ew\"]],"
+                + "\"phases\":[{\"name\":\"NS\",\"durationSeconds\":30,\"green\":[\"ns\"]},"
+                + "{\"name\":\"EW\",\"durationSeconds\":20,\"green\":[\"ew\"]}]}";
+
+        mockMvc.perform(post("/api/v1/plan")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(json))
+                .andExpect(status().isOk())
+                .andExpect(content().string("Plan updated"));
+
+        ArgumentCaptor<PhasePlan> captor = ArgumentCaptor.forClass(PhasePlan.class);
+        verify(service).setPlan(captor.capture());
+        assertThat(captor.getValue().getGroups()).hasSize(2);
+        assertThat(captor.getValue().getPhases().get(1).getGreen()).containsExactly("ew");
+        assertThat(captor.getValue().getConflicts().get(0)).containsExactly("ns", "ew");
+    }
+
+    @Test
+    void setPlan_rejectsInvalidPlanWith400() throws Exception {
+        doThrow(new InvalidPlanException("NS releases conflicting groups ns and ew"))
+                .when(service).setPlan(any(PhasePlan.class));
+
+        mockMvc.perform(post("/api/v1/plan")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"groups\":[],\"phases\":[]}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("NS releases conflicting groups ns and ew"));
+    }
+
+    @Test
+    void coordinate_passesEpochAndOffsetToService() throws Exception {
+        mockMvc.perform(post("/api/v1/coordination")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"epoch\":\"2024-01-01T06:00:00\",\"offsetMillis\":30240}"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("Coordination updated"));
+
+        verify(service).coordinate(LocalDateTime.of(2024, 1, 1, 6, 0), 30_240L, false);
+    }
+
+    @Test
+    void coordinate_requiresEpoch() throws Exception {
+        mockMvc.perform(post("/api/v1/coordination")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"offsetMillis\":1000}"))
+                .andExpect(status().isBadRequest());
+
+        verify(service, never()).coordinate(any(), anyLong(), anyBoolean());
+    }
+
+    @Test
+    void getCoordination_returnsStatus() throws Exception {
+        CoordinationStatus coordination = new CoordinationStatus();
+        coordination.setCoordinated(true);
+        coordination.setOffsetMillis(30_240);
+        coordination.setCycleMillis(79_000);
+        coordination.setErrorMillis(-2);
+        when(service.getCoordinationStatus()).thenReturn(coordination);
+
+        mockMvc.perform(get("/api/v1/coordination"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("{\"coordinated\":true,\"offsetMillis\":30240,\"cycleMillis\":79000,"
+                        + "\"errorMillis\":-2,\"correctionMillis\":0}"));
+    }
+
+    @Test
+    void commands_carryAVersionAndAreCounted() throws Exception {
+        mockMvc.perform(get("/api/v1/pause"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(TraficLightController.COMMAND_VERSION_HEADER, "1"));
+        mockMvc.perform(get("/api/v1/resume"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(TraficLightController.COMMAND_VERSION_HEADER, "2"));
+
+        mockMvc.perform(get("/api/v1/commands"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("{\"submitted\":2,\"applied\":2,\"coalesced\":0,\"batches\":2,"
+                        + "\"windowMillis\":0}"));
+        verify(service).pause();
+        verify(service).resume();
+    }
+
+    @Test
+    void status_answers304WhileStateVersionIsCurrent() throws Exception {
+        when(service.getStateVersion()).thenReturn(7L);
+
+        mockMvc.perform(get("/api/v1/status").header(HttpHeaders.IF_NONE_MATCH, controller.etag(7)))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, controller.etag(7)));
+        verify(service, never()).getStatusJson();
+
+        when(service.getStatusJson()).thenReturn(StatusSnapshot.of(Directions.EAST, Colors.GREEN, false).getJson(JsonMapper.shared()));
+        mockMvc.perform(get("/api/v1/status").header(HttpHeaders.IF_NONE_MATCH, "W/" + controller.etag(6)))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, controller.etag(7)));
+    }
+
+    @Test
+    void status_tagFromBeforeARestartIsNotCurrent() throws Exception {
+        // the restarted process counts its versions from zero again and has reached 7 as well
+        when(service.getStateVersion()).thenReturn(7L);
+        when(service.getStatusJson()).thenReturn(StatusSnapshot.of(Directions.EAST, Colors.GREEN, false).getJson(JsonMapper.shared()));
+        String before = mockMvc.perform(get("/api/v1/status"))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        TraficLightController restarted = new TraficLightController();
+        ReflectionTestUtils.setField(restarted, "service", service);
+        MockMvc afterRestart = MockMvcBuilders.standaloneSetup(restarted).build();
+
+        afterRestart.perform(get("/api/v1/status").header(HttpHeaders.IF_NONE_MATCH, before))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, restarted.etag(7)));
+        assertThat(restarted.etag(7)).isNotEqualTo(before);
+    }
+
+    @Test
+    void status_longPollCompletesWithTheNextVersion() throws Exception {
+        when(service.getStateVersion()).thenReturn(7L);
+        when(service.awaitStateChange(7L)).thenReturn(CompletableFuture.completedFuture(8L));
+        when(service.getStatusJson()).thenReturn(StatusSnapshot.of(Directions.EAST, Colors.YELLOW, false).getJson(JsonMapper.shared()));
+
+        MvcResult result = mockMvc.perform(get("/api/v1/status").param("wait", "30")
+                        .header(HttpHeaders.IF_NONE_MATCH, controller.etag(7)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, controller.etag(8)))
+                .andExpect(content().json("{\"activeDirection\":\"EAST\",\"activeColor\":\"YELLOW\"}"));
+    }
+
+    @Test
+    void history_answers304WithoutReadingHistory() throws Exception {
+        when(service.getStateVersion()).thenReturn(3L);
+
+        mockMvc.perform(get("/api/v1/history").header(HttpHeaders.IF_NONE_MATCH, controller.etag(3)))
+                .andExpect(status().isNotModified());
+        verify(service, never()).getTimingHistory();
+    }
+
+    @Test
+    void getAnalytics_returnsWindows() throws Exception {
+        WindowStats hour = new WindowStats();
+        hour.setWindowSeconds(3600);
+        hour.setObservedSeconds(3600);
+        hour.setCycles(39);
+        hour.setCyclesPerHour(39);
+        hour.setGreenShare(Map.of(Directions.NORTH, 0.25));
+        AnalyticsReport report = new AnalyticsReport();
+        report.setWindows(Map.of("1h", hour));
+        when(service.getAnalytics()).thenReturn(report);
+
+        mockMvc.perform(get("/api/v1/analytics"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("{\"windows\":{\"1h\":{\"windowSeconds\":3600,\"cycles\":39,"
+                        + "\"cyclesPerHour\":39.0,\"greenShare\":{\"NORTH\":0.25},\"pausedSeconds\":0.0}}}"));
+    }
+
+    @Test
+    void getPlan_returnsPlanStatus() throws Exception {
+        PlanStatus planStatus = new PlanStatus();
+        planStatus.setPlan("two-way");
+        planStatus.setPhaseIndex(1);
+        planStatus.setPhase("EW");
+        planStatus.setGroups(Map.of("ew", Colors.GREEN));
+        when(service.getPlanStatus()).thenReturn(planStatus);
+
+        mockMvc.perform(get("/api/v1/plan"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("{\"plan\":\"two-way\",\"phaseIndex\":1,\"phase\":\"EW\","
+                        + "\"groups\":{\"ew\":\"GREEN\"},\"paused\":false}"));
+    }
+
     @Test
     void callPauseService() throws Exception {
         mockMvc.perform(get("/api/v1/pause"))
@@ -105,7 +318,7 @@ class TraficLightControllerTest {
         h.setDirection(Directions.NORTH);
         h.setColors(Colors.GREEN);
         h.setDurationSeconds(5000L);
-        h.setTimestamp(LocalDateTime.now());
+        h.setTimestamp(Instant.now());
         list.add(h);
 
         when(service.getTimingHistory()).thenReturn(list);
@@ -116,4 +329,200 @@ class TraficLightControllerTest {
 
         verify(service, times(1)).getTimingHistory();
     }
+
+    @Test
+    void callGetHistoryWithQueryParams() throws Exception {
+        when(service.queryHistory(any(HistoryQuery.class))).thenReturn(new HistoryPage(List.of(), 17L));
+
+        mockMvc.perform(get("/api/v1/history")
+                        .param("from", "2024-03-05T02:00:00")
+                        .param("to", "2024-03-05T03:15:00+01:00")
+                        .param("direction", "WEST")
+                        .param("color", "GREEN")
+                        .param("limit", "20"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("{\"records\":[],\"nextCursor\":17}"));
+
+        ArgumentCaptor<HistoryQuery> captor = ArgumentCaptor.forClass(HistoryQuery.class);
+        verify(service).queryHistory(captor.capture());
+        HistoryQuery query = captor.getValue();
+        // without an offset a bound is in UTC, like the timestamps; with one it is converted
+        assertThat(query.getFrom()).isEqualTo(Instant.parse("2024-03-05T02:00:00Z"));
+        assertThat(query.getTo()).isEqualTo(Instant.parse("2024-03-05T02:15:00Z"));
+        assertThat(query.getDirection()).isEqualTo(Directions.WEST);
+        assertThat(query.getColor()).isEqualTo(Colors.GREEN);
+        assertThat(query.getLimit()).isEqualTo(20);
+        verify(service, never()).getTimingHistory();
+    }
+
+    @Test
+    void callGetHistoryRejectsABoundThatIsNotADateTime() throws Exception {
+        mockMvc.perform(get("/api/v1/history").param("from", "yesterday"))
+                .andExpect(status().isBadRequest());
+
+        verify(service, never()).queryHistory(any(HistoryQuery.class));
+    }
+
+    @Test
+    void callGetHistoryAsNdjsonStreamsEveryPage() throws Exception {
+        TraficLightHistory h = new TraficLightHistory();
+        h.setId(3L);
+        h.setDirection(Directions.WEST);
+        h.setColors(Colors.GREEN);
+        h.setDurationSeconds(20000L);
+        h.setTimestamp(Instant.parse("2024-03-05T02:01:00Z"));
+        when(service.queryHistory(any(HistoryQuery.class)))
+                .thenReturn(new HistoryPage(List.of(h), 5L))
+                .thenReturn(new HistoryPage(List.of(h), null));
+
+        MvcResult result = mockMvc.perform(get("/api/v1/history").accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String line = JsonMapper.shared().writeValueAsString(h) + "\n";
+        assertThat(line).contains("\"timestamp\":\"2024-03-05T02:01:00Z\"");
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().string(line + line));
+
+        verify(service, times(2)).queryHistory(any(HistoryQuery.class));
+    }
+
+    @Test
+    void callGetHistoryAsNdjsonStopsAtTheLimit() throws Exception {
+        TraficLightHistory h = new TraficLightHistory();
+        h.setId(3L);
+        List<Integer> limits = new ArrayList<>();
+        when(service.queryHistory(any(HistoryQuery.class))).thenAnswer(call -> {
+            HistoryQuery query = call.getArgument(0);
+            limits.add(query.getLimit());
+            return new HistoryPage(limits.size() == 1 ? List.of(h, h) : List.of(h), 9L);
+        });
+
+        MvcResult result = mockMvc.perform(get("/api/v1/history").param("limit", "3")
+                        .accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String line = JsonMapper.shared().writeValueAsString(h) + "\n";
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().string(line + line + line));
+
+        // the second page only asks for what is left, and there is no third
+        assertThat(limits).containsExactly(3, 1);
+    }
+
+    @Test
+    void callGetHistoryAsNdjsonRejectsANonPositiveLimit() throws Exception {
+        mockMvc.perform(get("/api/v1/history").param("limit", "0").accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(status().isBadRequest());
+
+        verify(service, never()).queryHistory(any(HistoryQuery.class));
+    }
+
+    @Test
+    void callGetTimingService() throws Exception {
+        SchedulerTiming timing = new SchedulerTiming();
+        timing.setMode(SchedulingMode.ABSOLUTE);
+        timing.setTransitions(42);
+        when(service.getSchedulerTiming()).thenReturn(timing);
+
+        mockMvc.perform(get("/api/v1/timing"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON));
+
+        verify(service, times(1)).getSchedulerTiming();
+    }
+
+    @Test
+    void callGetWatchdogService() throws Exception {
+        WatchdogStatus watchdog = new WatchdogStatus();
+        watchdog.setEnabled(true);
+        watchdog.setFailovers(2);
+        watchdog.setFailsafe(true);
+        when(service.getWatchdogStatus()).thenReturn(watchdog);
+
+        mockMvc.perform(get("/api/v1/watchdog"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.failovers").value(2))
+                .andExpect(jsonPath("$.failsafe").value(true));
+    }
+
+    @Test
+    void callGetReplicationService() throws Exception {
+        ReplicationStatus replication = new ReplicationStatus();
+        replication.setRole("PRIMARY");
+        replication.setStandbys(1);
+        replication.setSequence(42);
+        when(service.getReplicationStatus()).thenReturn(replication);
+
+        mockMvc.perform(get("/api/v1/replication"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.role").value("PRIMARY"))
+                .andExpect(jsonPath("$.standbys").value(1))
+                .andExpect(jsonPath("$.sequence").value(42));
+    }
+
+    @Test
+    void standbyRefusesCommandsWithConflict() throws Exception {
+        when(service.isStandby()).thenReturn(true);
+
+        mockMvc.perform(get("/api/v1/pause"))
+                .andExpect(status().isConflict());
+        mockMvc.perform(post("/api/v1/sequence").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"timeGreenNS\":5,\"timeYellowNS\":2,\"timeGreenEW\":5,\"timeYellowEW\":2}"))
+                .andExpect(status().isConflict());
+        mockMvc.perform(delete("/api/v1/coordination"))
+                .andExpect(status().isConflict());
+
+        verify(service, never()).pause();
+        verify(service, never()).setSequence(any(SignalSequence.class));
+        verify(service, never()).stopCoordination();
+    }
+
+    @Test
+    void callPreemptReturnsTheClearance() throws Exception {
+        when(service.preempt(Directions.EAST, Duration.ofSeconds(10))).thenReturn(3000L);
+
+        mockMvc.perform(post("/api/v1/preempt").param("direction", "EAST").param("hold", "PT10S"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("3000"));
+
+        verify(service, times(1)).preempt(Directions.EAST, Duration.ofSeconds(10));
+    }
+
+    @Test
+    void callPreemptRejectsABadHoldAndConflictsWhilePaused() throws Exception {
+        when(service.preempt(eq(Directions.WEST), isNull())).thenThrow(new IllegalStateException("paused"));
+
+        mockMvc.perform(post("/api/v1/preempt").param("direction", "EAST").param("hold", "ten seconds"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(post("/api/v1/preempt").param("direction", "WEST"))
+                .andExpect(status().isConflict());
+        mockMvc.perform(delete("/api/v1/preempt"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void callGetTimePlanService() throws Exception {
+        TimePlanStatus timePlan = new TimePlanStatus();
+        timePlan.setEnabled(true);
+        timePlan.setActiveWindow("MON 07:00 30/3/20/3");
+        timePlan.setPending(true);
+        when(service.getTimePlanStatus()).thenReturn(timePlan);
+
+        mockMvc.perform(get("/api/v1/timeplan"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.activeWindow").value("MON 07:00 30/3/20/3"))
+                .andExpect(jsonPath("$.pending").value(true));
+    }
+
+    @Test
+    void callStreamSubscribesToService() throws Exception {
+        when(service.subscribe(any(PhaseEventListener.class))).thenReturn(mock(Subscription.class));
+
+        mockMvc.perform(get("/api/v1/stream"))
+                .andExpect(status().isOk());
+
+        verify(service, times(1)).subscribe(any(PhaseEventListener.class));
+    }
 }
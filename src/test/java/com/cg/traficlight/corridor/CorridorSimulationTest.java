@@ -0,0 +1,189 @@
+package com.cg.traficlight.corridor;
+
+import com.cg.traficlight.clock.VirtualTimeScheduler;
+import com.cg.traficlight.model.Colors;
+import com.cg.traficlight.model.Corridor;
+import com.cg.traficlight.model.CorridorIntersection;
+import com.cg.traficlight.model.Directions;
+import com.cg.traficlight.model.Response;
+import com.cg.traficlight.model.SignalSequence;
+import com.cg.traficlight.service.TrafficLightService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Five controllers on one virtual clock, started out of step, then coordinated along an
+ * arterial. The green band is measured from what the controllers actually showed, sampled
+ * every {@value #STEP_MILLIS} ms.
+ */
+class CorridorSimulationTest {
+
+    private static final long STEP_MILLIS = 100;
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 6, 0);
+
+    private VirtualTimeScheduler clock;
+    private List<TrafficLightService> controllers;
+    private Corridor corridor;
+
+    @BeforeEach
+    void setUp() {
+        clock = new VirtualTimeScheduler(START);
+        SignalSequence sequence = new SignalSequence();
+        sequence.setTimeGreenNS(30);
+        sequence.setTimeYellowNS(4);
+        sequence.setTimeGreenEW(12);
+        sequence.setTimeYellowEW(3);
+        corridor = new Corridor();
+        corridor.setEpoch(START);
+        corridor.setSpeedKmh(50);
+        corridor.setSequence(sequence);
+        corridor.setIntersections(List.of(
+                new CorridorIntersection("main-1st", 0), new CorridorIntersection("main-2nd", 420),
+                new CorridorIntersection("main-3rd", 260), new CorridorIntersection("main-4th", 610),
+                new CorridorIntersection("main-5th", 380)));
+        GreenWave.plan(corridor);
+
+        controllers = new ArrayList<>();
+        for (int i = 0; i < corridor.getIntersections().size(); i++) {
+            TrafficLightService controller = new TrafficLightService(clock);
+            controller.init();
+            controller.setSequence(sequence);
+            controllers.add(controller);
+            // power up at arbitrary moments, out of step with each other
+            clock.advance(Duration.ofMillis(7_300 + 1_100L * i));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        controllers.get(0).shutdown();
+    }
+
+    @Test
+    void coordinatedCorridor_achievesTheComputedGreenBand() {
+        long cycle = corridor.getCycleMillis();
+        long green = 30_000;
+        assertEquals(30_000 + 4_000 + 3 * (12_000 + 3_000), cycle);
+        assertEquals(green, corridor.getBandMillis());
+        long uncoordinated = measureBandMillis(cycle, travelMillis());
+
+        for (int i = 0; i < controllers.size(); i++) {
+            controllers.get(i).coordinate(START, corridor.getIntersections().get(i).getOffsetMillis(), false);
+        }
+        List<long[]> northGreens = sample(controllers.size(), 8 * cycle);
+
+        // easing in never cut or stretched a green by more than the 20% allowed per cycle
+        for (long[] lengths : northGreens) {
+            for (int k = 1; k < lengths.length - 1; k++) {
+                if (lengths[k] == 0) continue;
+                assertTrue(lengths[k] >= green * 8 / 10 - STEP_MILLIS, "green of " + lengths[k] + " ms");
+                assertTrue(lengths[k] <= green * 12 / 10 + STEP_MILLIS, "green of " + lengths[k] + " ms");
+            }
+        }
+        for (TrafficLightService controller : controllers) {
+            assertTrue(Math.abs(controller.getCoordinationStatus().getErrorMillis()) <= 5);
+        }
+
+        long band = measureBandMillis(cycle, travelMillis());
+        assertTrue(band >= green - 2 * STEP_MILLIS, "band of " + band + " ms");
+        assertTrue(band > uncoordinated + 10_000, "band " + band + " ms vs " + uncoordinated + " ms uncoordinated");
+    }
+
+    @Test
+    void timingChange_keepsCorridorAlignedWithoutHardReset() {
+        for (int i = 0; i < controllers.size(); i++) {
+            controllers.get(i).coordinate(START, corridor.getIntersections().get(i).getOffsetMillis(), true);
+        }
+        clock.advance(Duration.ofMillis(10_000));
+        Response before = controllers.get(2).getStatus();
+
+        // a longer east-west split, same cycle structure: the showing phase is kept
+        SignalSequence longer = new SignalSequence();
+        longer.setTimeGreenNS(30);
+        longer.setTimeYellowNS(4);
+        longer.setTimeGreenEW(16);
+        longer.setTimeYellowEW(3);
+        for (TrafficLightService controller : controllers) {
+            controller.setSequence(longer);
+        }
+        assertSame(before, controllers.get(2).getStatus());
+
+        // the offsets depend on the cycle length: hand out the new ones and ease onto them
+        corridor.setSequence(longer);
+        GreenWave.plan(corridor);
+        for (int i = 0; i < controllers.size(); i++) {
+            controllers.get(i).coordinate(START, corridor.getIntersections().get(i).getOffsetMillis(), false);
+        }
+        clock.advance(Duration.ofMillis(6 * corridor.getCycleMillis()));
+        for (TrafficLightService controller : controllers) {
+            assertTrue(Math.abs(controller.getCoordinationStatus().getErrorMillis()) <= 5);
+        }
+        long band = measureBandMillis(corridor.getCycleMillis(), travelMillis());
+        assertTrue(band >= 30_000 - 2 * STEP_MILLIS, "band of " + band + " ms");
+    }
+
+    /** Lengths of the north greens each controller showed over {@code millis}, in order. */
+    private List<long[]> sample(int count, long millis) {
+        List<List<Long>> runs = new ArrayList<>();
+        long[] current = new long[count];
+        for (int i = 0; i < count; i++) runs.add(new ArrayList<>());
+        for (long t = 0; t < millis; t += STEP_MILLIS) {
+            clock.advance(Duration.ofMillis(STEP_MILLIS));
+            for (int i = 0; i < count; i++) {
+                if (northGreen(controllers.get(i).getStatus())) {
+                    current[i] += STEP_MILLIS;
+                } else if (current[i] > 0) {
+                    runs.get(i).add(current[i]);
+                    current[i] = 0;
+                }
+            }
+        }
+        List<long[]> out = new ArrayList<>();
+        for (List<Long> run : runs) {
+            out.add(run.stream().mapToLong(Long::longValue).toArray());
+        }
+        return out;
+    }
+
+    /**
+     * Departure times per cycle from the first intersection that meet a north green at every
+     * intersection, given the travel time to each.
+     */
+    private long measureBandMillis(long cycle, long[] travel) {
+        long reach = travel[travel.length - 1];
+        int steps = (int) ((cycle + reach) / STEP_MILLIS) + 1;
+        boolean[][] green = new boolean[controllers.size()][steps];
+        for (int s = 0; s < steps; s++) {
+            for (int i = 0; i < controllers.size(); i++) {
+                green[i][s] = northGreen(controllers.get(i).getStatus());
+            }
+            clock.advance(Duration.ofMillis(STEP_MILLIS));
+        }
+        long band = 0;
+        for (int s = 0; s < cycle / STEP_MILLIS; s++) {
+            boolean through = true;
+            for (int i = 0; i < controllers.size() && through; i++) {
+                through = green[i][s + (int) Math.round(travel[i] / (double) STEP_MILLIS)];
+            }
+            if (through) band += STEP_MILLIS;
+        }
+        return band;
+    }
+
+    private long[] travelMillis() {
+        double[] distances = corridor.getIntersections().stream().mapToDouble(CorridorIntersection::getDistanceMeters).toArray();
+        return GreenWave.travelMillis(distances, corridor.getSpeedKmh() / 3.6);
+    }
+
+    private static boolean northGreen(Response status) {
+        return status.getActiveDirection() == Directions.NORTH && status.getActiveColor() == Colors.GREEN;
+    }
+}
@@ -0,0 +1,54 @@
+package com.cg.traficlight.corridor;
+
+import com.cg.traficlight.clock.VirtualTimeScheduler;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CycleAlignmentTest {
+
+    private static final long CYCLE = TimeUnit.SECONDS.toNanos(100);
+
+    @Test
+    void position_countsFromEpochPlusOffset() {
+        LocalDateTime epoch = LocalDateTime.of(2024, 1, 1, 0, 0);
+        VirtualTimeScheduler clock = new VirtualTimeScheduler(epoch.plusSeconds(1_030));
+        CycleAlignment alignment = CycleAlignment.of(clock, epoch, 10_000, 20);
+
+        // 1030 s after the epoch, 10 s offset: 20 s into the tenth cycle
+        assertEquals(TimeUnit.SECONDS.toNanos(20), alignment.positionNanos(clock.nanoTime(), CYCLE));
+        clock.advance(Duration.ofSeconds(80));
+        assertEquals(0, alignment.positionNanos(clock.nanoTime(), CYCLE));
+    }
+
+    @Test
+    void error_isSignedWithinHalfACycleAndCorrectionIsLimited() {
+        LocalDateTime epoch = LocalDateTime.of(2024, 1, 1, 0, 0);
+        VirtualTimeScheduler clock = new VirtualTimeScheduler(epoch);
+        CycleAlignment alignment = CycleAlignment.of(clock, epoch, 0, 20);
+        long onTarget = clock.nanoTime();
+
+        long late = onTarget + TimeUnit.SECONDS.toNanos(5);
+        assertEquals(TimeUnit.SECONDS.toNanos(5), alignment.errorNanos(late, CYCLE));
+        assertEquals(-TimeUnit.SECONDS.toNanos(5), alignment.correctionNanos(late, CYCLE));
+
+        long early = onTarget - TimeUnit.SECONDS.toNanos(30);
+        assertEquals(-TimeUnit.SECONDS.toNanos(30), alignment.errorNanos(early, CYCLE));
+        assertEquals(TimeUnit.SECONDS.toNanos(20), alignment.correctionNanos(early, CYCLE));
+
+        long farLate = onTarget + TimeUnit.SECONDS.toNanos(45);
+        assertEquals(-TimeUnit.SECONDS.toNanos(20), alignment.correctionNanos(farLate, CYCLE));
+        assertEquals(0, alignment.correctionNanos(onTarget + CYCLE * 3, CYCLE));
+    }
+
+    @Test
+    void of_rejectsAdjustmentOutOfRange() {
+        VirtualTimeScheduler clock = new VirtualTimeScheduler(LocalDateTime.of(2024, 1, 1, 0, 0));
+        assertThrows(IllegalArgumentException.class, () -> CycleAlignment.of(clock, clock.now(), 0, 0));
+        assertThrows(IllegalArgumentException.class, () -> CycleAlignment.of(clock, clock.now(), 0, 101));
+    }
+}
@@ -0,0 +1,66 @@
+package com.cg.traficlight.corridor;
+
+import com.cg.traficlight.model.Corridor;
+import com.cg.traficlight.model.CorridorIntersection;
+import com.cg.traficlight.model.SignalSequence;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GreenWaveTest {
+
+    @Test
+    void offsets_followTravelTimeModuloCycle() {
+        // 36 km/h is 10 m/s
+        long[] travel = GreenWave.travelMillis(new double[]{0, 300, 450, 500}, 10);
+
+        assertArrayEquals(new long[]{0, 30_000, 75_000, 125_000}, travel);
+        assertArrayEquals(new long[]{0, 30_000, 15_000, 5_000}, GreenWave.offsetsMillis(travel, 60_000));
+    }
+
+    @Test
+    void band_isTheFullGreenWithComputedOffsetsAndShrinksWithout() {
+        long[] travel = {0, 30_000, 75_000, 125_000};
+        long cycle = 60_000;
+
+        assertEquals(25_000, GreenWave.bandMillis(GreenWave.offsetsMillis(travel, cycle), travel, 25_000, cycle));
+        // all cycles in step: only departures that reach every signal during its green get through
+        assertEquals(0, GreenWave.bandMillis(new long[4], travel, 25_000, cycle));
+        assertEquals(20_000, GreenWave.bandMillis(new long[]{0, 25_000, 15_000, 5_000}, travel, 25_000, cycle));
+    }
+
+    @Test
+    void plan_fillsOffsetsCycleAndBand() {
+        SignalSequence sequence = new SignalSequence();
+        sequence.setTimeGreenNS(30);
+        sequence.setTimeYellowNS(4);
+        sequence.setTimeGreenEW(12);
+        sequence.setTimeYellowEW(3);
+        Corridor corridor = new Corridor();
+        corridor.setSpeedKmh(36);
+        corridor.setSequence(sequence);
+        corridor.setIntersections(List.of(new CorridorIntersection("a", 0), new CorridorIntersection("b", 900)));
+
+        GreenWave.plan(corridor);
+
+        assertEquals(79_000, corridor.getCycleMillis());
+        assertEquals(0, corridor.getIntersections().get(0).getOffsetMillis());
+        assertEquals(11_000, corridor.getIntersections().get(1).getOffsetMillis());
+        assertEquals(30_000, corridor.getBandMillis());
+    }
+
+    @Test
+    void plan_rejectsBadCorridors() {
+        Corridor empty = new Corridor();
+        empty.setSpeedKmh(50);
+        assertThrows(IllegalArgumentException.class, () -> GreenWave.plan(empty));
+
+        Corridor stopped = new Corridor();
+        stopped.setIntersections(List.of(new CorridorIntersection("a", 0)));
+        assertThrows(IllegalArgumentException.class, () -> GreenWave.plan(stopped));
+
+        assertThrows(IllegalArgumentException.class, () -> GreenWave.travelMillis(new double[]{0, -5}, 10));
+    }
+}
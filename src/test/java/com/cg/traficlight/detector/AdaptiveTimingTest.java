@@ -0,0 +1,45 @@
+package com.cg.traficlight.detector;
+
+import com.cg.traficlight.model.Directions;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveTimingTest {
+
+    @Test
+    void greenMillis_scalesWithQueueWithinBounds() {
+        DetectorCounts counts = new DetectorCounts();
+        AdaptiveTiming adaptive = new AdaptiveTiming(counts, 10, 60, 2000);
+
+        assertEquals(10_000L, adaptive.greenMillis(Directions.NORTH, 20_000L));
+
+        counts.record(Directions.NORTH, 12);
+        assertEquals(24_000L, adaptive.greenMillis(Directions.NORTH, 20_000L));
+
+        counts.record(Directions.NORTH, Long.MAX_VALUE / 2);
+        assertEquals(60_000L, adaptive.greenMillis(Directions.NORTH, 20_000L));
+        assertEquals(60_000L, adaptive.lastGreenMillis().get(Directions.NORTH));
+        assertEquals(0L, adaptive.lastGreenMillis().get(Directions.EAST));
+    }
+
+    @Test
+    void greenMillis_leavesSkippedPhasesAlone() {
+        DetectorCounts counts = new DetectorCounts();
+        AdaptiveTiming adaptive = new AdaptiveTiming(counts, 10, 60, 2000);
+        counts.record(Directions.EAST, 5);
+
+        assertEquals(0L, adaptive.greenMillis(Directions.EAST, 0L));
+        assertEquals(0L, counts.waiting(Directions.EAST));
+    }
+
+    @Test
+    void disabled_keepsPlannedDurationButDrains() {
+        AdaptiveTiming adaptive = new AdaptiveTiming();
+        adaptive.detectors().record(Directions.WEST, 30);
+
+        assertFalse(adaptive.isEnabled());
+        assertEquals(20_000L, adaptive.greenMillis(Directions.WEST, 20_000L));
+        assertEquals(0L, adaptive.detectors().waiting(Directions.WEST));
+    }
+}
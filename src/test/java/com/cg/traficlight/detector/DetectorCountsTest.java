@@ -0,0 +1,86 @@
+package com.cg.traficlight.detector;
+
+import com.cg.traficlight.model.DetectorBatch;
+import com.cg.traficlight.model.DetectorEvent;
+import com.cg.traficlight.model.Directions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DetectorCountsTest {
+
+    @Test
+    void record_addsBatchPerApproachAndSkipsInvalidEvents() {
+        DetectorCounts counts = new DetectorCounts();
+        DetectorBatch batch = new DetectorBatch(Arrays.asList(
+                new DetectorEvent("n1", Directions.NORTH, 3),
+                new DetectorEvent("n2", Directions.NORTH, 2),
+                new DetectorEvent("e1", Directions.EAST, 1),
+                new DetectorEvent("x", null, 4),
+                new DetectorEvent("w1", Directions.WEST, -1),
+                null));
+
+        assertEquals(3, counts.record(batch));
+        assertEquals(5L, counts.waiting(Directions.NORTH));
+        assertEquals(1L, counts.waiting(Directions.EAST));
+        assertEquals(0L, counts.waiting(Directions.WEST));
+        assertEquals(3L, counts.accepted());
+        assertEquals(3L, counts.rejected());
+        assertEquals(0, counts.record(null));
+    }
+
+    @Test
+    void drain_returnsCountAndResets() {
+        DetectorCounts counts = new DetectorCounts();
+        counts.record(Directions.SOUTH, 7);
+
+        assertEquals(7L, counts.drain(Directions.SOUTH));
+        assertEquals(0L, counts.drain(Directions.SOUTH));
+        assertEquals(0L, counts.waiting().get(Directions.SOUTH));
+    }
+
+    @Test
+    void concurrentLoopbackSources_loseNothingWhileDrained() throws Exception {
+        DetectorCounts counts = new DetectorCounts();
+        int threads = 8;
+        int eventsPerThread = 50_000;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> feeders = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            LoopbackDetectorSource source = new LoopbackDetectorSource("loop-" + t, counts, 64);
+            Directions direction = Directions.values()[t % Directions.values().length];
+            Thread feeder = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < eventsPerThread; i++) {
+                    source.detect(direction, 1);
+                }
+                source.flush();
+            });
+            feeder.start();
+            feeders.add(feeder);
+        }
+
+        long drained = 0;
+        start.countDown();
+        boolean alive = true;
+        while (alive) {
+            alive = false;
+            for (Thread feeder : feeders) alive |= feeder.isAlive();
+            for (Directions direction : Directions.values()) drained += counts.drain(direction);
+        }
+        for (Thread feeder : feeders) feeder.join();
+        for (Directions direction : Directions.values()) drained += counts.drain(direction);
+
+        assertEquals((long) threads * eventsPerThread, drained);
+        assertEquals((long) threads * eventsPerThread, counts.accepted());
+    }
+}
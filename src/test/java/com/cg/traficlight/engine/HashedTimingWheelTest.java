@@ -0,0 +1,89 @@
+package com.cg.traficlight.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HashedTimingWheelTest {
+
+    private static final long TICK = 10;
+
+    private static final class Recording extends WheelTimeout {
+        private final String name;
+        private final List<String> fired;
+
+        Recording(String name, List<String> fired) {
+            this.name = name;
+            this.fired = fired;
+        }
+
+        @Override
+        void expire() {
+            fired.add(name);
+        }
+    }
+
+    @Test
+    void advance_expiresOnlyDueTimeoutsAndNeverEarly() {
+        List<String> fired = new ArrayList<>();
+        HashedTimingWheel wheel = new HashedTimingWheel(0, TICK, 8);
+        wheel.schedule(new Recording("a", fired), 25);
+        wheel.schedule(new Recording("b", fired), 30);
+        // lands in the same bucket as "b" but one rotation later
+        wheel.schedule(new Recording("c", fired), 30 + 8 * TICK);
+
+        assertEquals(0, wheel.advance(29));
+        assertEquals(2, wheel.advance(30));
+        assertEquals(List.of("b", "a"), fired);
+        assertEquals(1, wheel.pending());
+
+        assertEquals(0, wheel.advance(30 + 8 * TICK - 1));
+        assertEquals(1, wheel.advance(30 + 8 * TICK));
+        assertTrue(wheel.isEmpty());
+    }
+
+    @Test
+    void cancel_unlinksWithoutFiring() {
+        List<String> fired = new ArrayList<>();
+        HashedTimingWheel wheel = new HashedTimingWheel(0, TICK, 8);
+        Recording a = new Recording("a", fired);
+        Recording b = new Recording("b", fired);
+        wheel.schedule(a, 20);
+        wheel.schedule(b, 20);
+
+        wheel.cancel(a);
+        wheel.cancel(a);
+
+        assertFalse(a.isScheduled());
+        assertEquals(1, wheel.advance(100));
+        assertEquals(List.of("b"), fired);
+    }
+
+    @Test
+    void expire_canRescheduleItselfForALaterTick() {
+        HashedTimingWheel wheel = new HashedTimingWheel(0, TICK, 4);
+        List<Long> firedAt = new ArrayList<>();
+        WheelTimeout periodic = new WheelTimeout() {
+            @Override
+            void expire() {
+                firedAt.add(deadlineNanos);
+                wheel.schedule(this, deadlineNanos + 3 * TICK);
+            }
+        };
+        wheel.schedule(periodic, 3 * TICK);
+
+        wheel.advance(100 * TICK);
+
+        assertEquals(33, firedAt.size());
+        assertEquals(3 * TICK, firedAt.get(0));
+        assertEquals(99 * TICK, firedAt.get(32));
+    }
+
+    @Test
+    void constructor_rejectsWheelSizeThatIsNotAPowerOfTwo() {
+        assertThrows(IllegalArgumentException.class, () -> new HashedTimingWheel(0, TICK, 6));
+    }
+}
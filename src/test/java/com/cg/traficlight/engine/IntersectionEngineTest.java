@@ -0,0 +1,151 @@
+package com.cg.traficlight.engine;
+
+import com.cg.traficlight.model.*;
+import com.cg.traficlight.plan.InvalidPlanException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IntersectionEngineTest {
+
+    private IntersectionEngine engine;
+
+    @BeforeEach
+    void setUp() {
+        engine = new IntersectionEngine(2, 1, 256, 16);
+        engine.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        engine.shutdown();
+    }
+
+    private static List<Movement> shortCycle() {
+        return List.of(
+                new Movement(Directions.NORTH, Colors.GREEN, 20),
+                new Movement(Directions.NORTH, Colors.YELLOW, 0),
+                new Movement(Directions.EAST, Colors.GREEN, 20));
+    }
+
+    private static void awaitTrue(BooleanSupplier condition, long timeoutMillis) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition not met within " + timeoutMillis + " ms");
+            Thread.sleep(2);
+        }
+    }
+
+    @Test
+    void register_runsManyIndependentIntersections() throws Exception {
+        int count = 10_000;
+        for (int i = 0; i < count; i++) {
+            assertTrue(engine.register("x-" + i, shortCycle()));
+        }
+        assertFalse(engine.register("x-0", shortCycle()));
+        assertEquals(count, engine.size());
+
+        // 20 ms phases: eight transitions take 80 ms once the shards have started them all
+        awaitTrue(() -> {
+            for (int i = 0; i < count; i += 997) {
+                if (engine.getTimingHistory("x-" + i).size() < 8) return false;
+            }
+            return true;
+        }, 10_000);
+
+        for (int i = 0; i < count; i += 997) {
+            List<TraficLightHistory> history = engine.getTimingHistory("x-" + i);
+            assertTrue(history.size() >= 8, "intersection x-" + i + " only made " + history.size() + " transitions");
+            long newest = history.get(0).getId();
+            assertEquals(newest - 1, history.get(1).getId());
+        }
+    }
+
+    @Test
+    void pause_holdsPhaseUntilResume() throws Exception {
+        engine.register("a", shortCycle());
+        Thread.sleep(50);
+        engine.pause("a");
+        awaitTrue(() -> engine.getStatus("a").isPaused(), 5_000);
+
+        Response paused = engine.getStatus("a");
+        assertTrue(paused.isPaused());
+        int historyWhilePaused = engine.getTimingHistory("a").size();
+        Thread.sleep(100);
+        assertEquals(historyWhilePaused, engine.getTimingHistory("a").size());
+
+        engine.resume("a");
+        awaitTrue(() -> !engine.getStatus("a").isPaused()
+                && engine.getTimingHistory("a").size() > historyWhilePaused, 5_000);
+    }
+
+    @Test
+    void setSequence_restartsCycleAtFirstPhase() throws Exception {
+        engine.register("b", shortCycle());
+        SignalSequence seq = new SignalSequence();
+        seq.setTimeGreenNS(30);
+
+        assertTrue(engine.setSequence("b", seq));
+        Thread.sleep(50);
+
+        Response status = engine.getStatus("b");
+        assertEquals(Directions.NORTH, status.getActiveDirection());
+        assertEquals(Colors.GREEN, status.getActiveColor());
+    }
+
+    @Test
+    void negativeTiming_isRejectedBeforeAnythingChanges() throws Exception {
+        engine.register("b", shortCycle());
+        SignalSequence seq = new SignalSequence();
+        seq.setTimeYellowEW(-1);
+
+        assertThrows(InvalidPlanException.class, () -> engine.register("c", seq));
+        assertThrows(InvalidPlanException.class, () -> engine.setSequence("b", seq));
+        assertThrows(InvalidPlanException.class, () -> engine.setSequence("b", null));
+        assertNull(engine.getStatusJson("c"));
+        assertEquals(List.of("b"), engine.getFleetStatus().ids());
+    }
+
+    @Test
+    void unknownIntersection_isReportedAsMissing() {
+        assertNull(engine.getStatusJson("nope"));
+        assertNull(engine.getTimingHistory("nope"));
+        assertFalse(engine.pause("nope"));
+        assertFalse(engine.remove("nope"));
+    }
+
+    @Test
+    void fleetStatus_listsEveryIntersectionInRegistrationOrder() throws Exception {
+        engine.register("a", shortCycle());
+        engine.register("b\"2", List.of(new Movement(Directions.WEST, Colors.YELLOW, 60_000)));
+        engine.register("c", shortCycle());
+        engine.pause("c");
+        engine.remove("a");
+        awaitTrue(() -> engine.getStatus("c").isPaused(), 5_000);
+
+        FleetStatus fleet = engine.getFleetStatus();
+        assertEquals(4, fleet.version());
+        assertEquals(List.of("b\"2", "c"), fleet.ids());
+
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        fleet.writeJson(json);
+        assertEquals("{\"b\\\"2\":" + new String(engine.getStatusJson("b\"2"), StandardCharsets.UTF_8)
+                        + ",\"c\":" + new String(engine.getStatusJson("c"), StandardCharsets.UTF_8) + "}",
+                json.toString(StandardCharsets.UTF_8));
+
+        ByteArrayOutputStream codes = new ByteArrayOutputStream();
+        fleet.writeCodes(codes);
+        Response c = engine.getStatus("c");
+        assertArrayEquals(new byte[]{0x42, FleetStatus.code(c.getActiveDirection(), c.getActiveColor(), true)},
+                codes.toByteArray());
+        assertEquals(0x80, codes.toByteArray()[1] & 0x80);
+    }
+}
@@ -0,0 +1,102 @@
+package com.cg.traficlight.history;
+
+import com.cg.traficlight.model.Colors;
+import com.cg.traficlight.model.Directions;
+import com.cg.traficlight.model.HistoryPage;
+import com.cg.traficlight.model.HistoryQuery;
+import com.cg.traficlight.model.TraficLightHistory;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactHistoryStoreTest {
+
+    private static final Instant T0 = Instant.parse("2024-03-05T02:00:00.123456789Z");
+
+    private static TraficLightHistory record(long id) {
+        TraficLightHistory h = new TraficLightHistory();
+        h.setId(id);
+        h.setDirection(Directions.values()[(int) (id % 4)]);
+        h.setColors(id % 2 == 0 ? Colors.GREEN : Colors.YELLOW);
+        h.setTimestamp(T0.plusSeconds(id));
+        h.setDurationSeconds(id * 1000);
+        return h;
+    }
+
+    @Test
+    void get_materializesEveryField() {
+        CompactHistoryStore store = new CompactHistoryStore(4);
+        store.append(record(3));
+        TraficLightHistory unset = new TraficLightHistory();
+        unset.setId(4L);
+        unset.setTimestamp(T0);
+        unset.setDurationSeconds(Long.MAX_VALUE);
+        store.append(unset);
+
+        TraficLightHistory read = store.get(0);
+        assertEquals(3L, read.getId());
+        assertEquals(Directions.values()[3], read.getDirection());
+        assertEquals(Colors.YELLOW, read.getColors());
+        assertEquals(T0.plusSeconds(3), read.getTimestamp());
+        assertEquals(3000, read.getDurationSeconds());
+
+        TraficLightHistory blank = store.get(1);
+        assertNull(blank.getDirection());
+        assertNull(blank.getColors());
+        assertEquals(Integer.MAX_VALUE, blank.getDurationSeconds());
+        assertEquals(EpochNanos.of(T0), store.timestampNanos(1));
+    }
+
+    @Test
+    void latest_returnsNewestFirstAcrossWrapAround() {
+        CompactHistoryStore store = new CompactHistoryStore(3);
+        for (long id = 1; id <= 7; id++) {
+            store.append(record(id));
+        }
+
+        assertEquals(List.of(7L, 6L, 5L), store.latest(10).stream().map(TraficLightHistory::getId).toList());
+        assertEquals(List.of(7L), store.latest(1).stream().map(TraficLightHistory::getId).toList());
+        assertEquals(7L, store.totalAppended());
+        assertEquals(3, store.size());
+        assertEquals(4, store.firstSequence());
+        assertNull(store.get(3));
+        assertEquals(Long.MIN_VALUE, store.timestampNanos(3));
+    }
+
+    @Test
+    void query_filtersOnPackedSignalsAndPages() {
+        CompactHistoryStore store = new CompactHistoryStore(50);
+        for (long id = 1; id <= 80; id++) {
+            store.append(record(id));
+        }
+
+        HistoryQuery query = new HistoryQuery();
+        query.setFrom(T0.plusSeconds(40));
+        query.setTo(T0.plusSeconds(70));
+        query.setDirection(Directions.values()[0]);
+        query.setColor(Colors.GREEN);
+        query.setLimit(3);
+
+        // ids divisible by four in 40..69, newest first
+        HistoryPage first = store.query(query);
+        assertEquals(List.of(68L, 64L, 60L), first.getRecords().stream().map(TraficLightHistory::getId).toList());
+        assertNotNull(first.getNextCursor());
+
+        query.setCursor(first.getNextCursor());
+        HistoryPage second = store.query(query);
+        assertEquals(List.of(56L, 52L, 48L), second.getRecords().stream().map(TraficLightHistory::getId).toList());
+
+        query.setCursor(second.getNextCursor());
+        HistoryPage last = store.query(query);
+        assertEquals(List.of(44L, 40L), last.getRecords().stream().map(TraficLightHistory::getId).toList());
+        assertNull(last.getNextCursor());
+    }
+
+    @Test
+    void constructor_rejectsNonPositiveCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new CompactHistoryStore(0));
+    }
+}
@@ -0,0 +1,107 @@
+package com.cg.traficlight.history;
+
+import com.cg.traficlight.model.Colors;
+import com.cg.traficlight.model.HistoryPage;
+import com.cg.traficlight.model.HistoryQuery;
+import com.cg.traficlight.model.TraficLightHistory;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HistoryRingBufferTest {
+
+    private static TraficLightHistory record(long id) {
+        TraficLightHistory h = new TraficLightHistory();
+        h.setId(id);
+        return h;
+    }
+
+    @Test
+    void latest_isEmptyBeforeFirstAppend() {
+        HistoryRingBuffer buffer = new HistoryRingBuffer(4);
+
+        assertTrue(buffer.latest(10).isEmpty());
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    void latest_returnsNewestFirstAcrossWrapAround() {
+        HistoryRingBuffer buffer = new HistoryRingBuffer(3);
+        for (long id = 1; id <= 7; id++) {
+            buffer.append(record(id));
+        }
+
+        List<TraficLightHistory> all = buffer.latest(10);
+        assertEquals(3, all.size());
+        assertEquals(7L, all.get(0).getId());
+        assertEquals(6L, all.get(1).getId());
+        assertEquals(5L, all.get(2).getId());
+
+        List<TraficLightHistory> newest = buffer.latest(1);
+        assertEquals(1, newest.size());
+        assertEquals(7L, newest.get(0).getId());
+        assertEquals(7L, buffer.totalAppended());
+        assertEquals(3, buffer.size());
+    }
+
+    @Test
+    void query_pagesThroughTimeRangeNewestFirst() {
+        Instant t0 = Instant.parse("2024-03-05T02:00:00Z");
+        HistoryRingBuffer buffer = new HistoryRingBuffer(50);
+        for (long id = 1; id <= 80; id++) {
+            TraficLightHistory h = record(id);
+            h.setTimestamp(t0.plusSeconds(60 * id));
+            h.setColors(id % 2 == 0 ? Colors.GREEN : Colors.RED);
+            buffer.append(h);
+        }
+
+        HistoryQuery query = new HistoryQuery();
+        query.setFrom(t0.plusSeconds(40 * 60));
+        query.setTo(t0.plusSeconds(60 * 60));
+        query.setColor(Colors.GREEN);
+        query.setLimit(4);
+
+        // GREEN entries 40..58, newest first, four at a time
+        HistoryPage first = buffer.query(query);
+        assertEquals(List.of(58L, 56L, 54L, 52L), first.getRecords().stream().map(TraficLightHistory::getId).toList());
+        assertNotNull(first.getNextCursor());
+
+        query.setCursor(first.getNextCursor());
+        HistoryPage second = buffer.query(query);
+        assertEquals(List.of(50L, 48L, 46L, 44L), second.getRecords().stream().map(TraficLightHistory::getId).toList());
+
+        query.setCursor(second.getNextCursor());
+        HistoryPage last = buffer.query(query);
+        assertEquals(List.of(42L, 40L), last.getRecords().stream().map(TraficLightHistory::getId).toList());
+        assertNull(last.getNextCursor());
+    }
+
+    @Test
+    void query_onlySeesRetainedEntries() {
+        Instant t0 = Instant.parse("2024-03-05T02:00:00Z");
+        HistoryRingBuffer buffer = new HistoryRingBuffer(5);
+        for (long id = 1; id <= 12; id++) {
+            TraficLightHistory h = record(id);
+            h.setTimestamp(t0.plusSeconds(id));
+            buffer.append(h);
+        }
+
+        HistoryQuery query = new HistoryQuery();
+        query.setFrom(t0);
+        query.setLimit(100);
+
+        HistoryPage page = buffer.query(query);
+        assertEquals(List.of(12L, 11L, 10L, 9L, 8L), page.getRecords().stream().map(TraficLightHistory::getId).toList());
+        assertNull(page.getNextCursor());
+        assertNull(buffer.get(6));
+        assertEquals(7, buffer.firstSequence());
+    }
+
+    @Test
+    void constructor_rejectsNonPositiveCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new HistoryRingBuffer(0));
+    }
+}
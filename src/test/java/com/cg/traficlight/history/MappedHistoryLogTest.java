@@ -0,0 +1,204 @@
+package com.cg.traficlight.history;
+
+import com.cg.traficlight.model.Colors;
+import com.cg.traficlight.model.Directions;
+import com.cg.traficlight.model.HistoryPage;
+import com.cg.traficlight.model.HistoryQuery;
+import com.cg.traficlight.model.TraficLightHistory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedHistoryLogTest {
+
+    private static final Instant T0 = Instant.parse("2024-03-05T02:00:00.123456789Z");
+
+    @TempDir
+    Path dir;
+
+    private static TraficLightHistory record(long id) {
+        TraficLightHistory h = new TraficLightHistory();
+        h.setId(id);
+        h.setDirection(Directions.values()[(int) (id % 4)]);
+        h.setColors(id % 2 == 0 ? Colors.GREEN : Colors.YELLOW);
+        h.setTimestamp(T0.plusSeconds(id));
+        h.setDurationSeconds(id * 1000);
+        return h;
+    }
+
+    private MappedHistoryLog open(FsyncPolicy policy) throws Exception {
+        // ten records per segment, so a few dozen appends roll several times
+        return MappedHistoryLog.open(dir, 10L * MappedHistoryLog.RECORD_BYTES, policy, 5, 1024);
+    }
+
+    @Test
+    void latest_readsNewestFirstAcrossSegments() throws Exception {
+        try (MappedHistoryLog log = open(FsyncPolicy.BATCH)) {
+            for (long id = 1; id <= 35; id++) {
+                log.append(record(id));
+            }
+            log.flush();
+
+            assertEquals(35, log.size());
+            List<TraficLightHistory> latest = log.latest(12);
+            assertEquals(12, latest.size());
+            assertEquals(35L, latest.get(0).getId());
+            assertEquals(24L, latest.get(11).getId());
+
+            TraficLightHistory r = latest.get(0);
+            assertEquals(Directions.WEST, r.getDirection());
+            assertEquals(Colors.YELLOW, r.getColors());
+            assertEquals(T0.plusSeconds(35), r.getTimestamp());
+            assertEquals(35_000L, r.getDurationSeconds());
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(4, files.count());
+        }
+    }
+
+    @Test
+    void open_recoversFromTailSegmentAndKeepsAppending() throws Exception {
+        try (MappedHistoryLog log = open(FsyncPolicy.NEVER)) {
+            for (long id = 1; id <= 23; id++) {
+                log.append(record(id));
+            }
+            log.flush();
+        }
+
+        try (MappedHistoryLog reopened = open(FsyncPolicy.INTERVAL)) {
+            assertEquals(23, reopened.size());
+            assertEquals(23L, reopened.latest(1).get(0).getId());
+
+            reopened.append(record(24));
+            reopened.flush();
+
+            List<TraficLightHistory> latest = reopened.latest(3);
+            assertEquals(24L, latest.get(0).getId());
+            assertEquals(23L, latest.get(1).getId());
+            assertEquals(22L, latest.get(2).getId());
+        }
+    }
+
+    @Test
+    void open_ignoresFilesThatAreNotSegments() throws Exception {
+        try (MappedHistoryLog log = open(FsyncPolicy.NEVER)) {
+            for (long id = 1; id <= 15; id++) {
+                log.append(record(id));
+            }
+        }
+        Files.writeString(dir.resolve("backup.seg"), "not a segment");
+        Files.writeString(dir.resolve("-10.seg"), "not a segment");
+
+        try (MappedHistoryLog reopened = open(FsyncPolicy.NEVER)) {
+            assertEquals(15, reopened.size());
+            assertEquals(15, reopened.latest(1).get(0).getId());
+        }
+    }
+
+    @Test
+    void query_filtersTimeRangeAcrossSegments() throws Exception {
+        try (MappedHistoryLog log = open(FsyncPolicy.NEVER)) {
+            for (long id = 1; id <= 35; id++) {
+                log.append(record(id));
+            }
+            log.flush();
+
+            HistoryQuery query = new HistoryQuery();
+            query.setFrom(T0.plusSeconds(8));
+            query.setTo(T0.plusSeconds(30));
+            query.setDirection(Directions.values()[2]);
+            query.setLimit(10);
+
+            // ids 8..29 with id % 4 == 2
+            HistoryPage page = log.query(query);
+            assertEquals(List.of(26L, 22L, 18L, 14L, 10L),
+                    page.getRecords().stream().map(TraficLightHistory::getId).toList());
+            assertNull(page.getNextCursor());
+            assertEquals(T0.plusSeconds(26), page.getRecords().get(0).getTimestamp());
+        }
+    }
+
+    @Test
+    void latest_isEmptyForNewLog() throws Exception {
+        try (MappedHistoryLog log = open(FsyncPolicy.BATCH)) {
+            assertTrue(log.latest(10).isEmpty());
+        }
+    }
+
+    @Test
+    void append_waitsForTheWriterInsteadOfDroppingWhenTheQueueIsFull() throws Exception {
+        // a one-record queue is full almost all the time
+        try (MappedHistoryLog log = MappedHistoryLog.open(dir, 1000L * MappedHistoryLog.RECORD_BYTES,
+                FsyncPolicy.NEVER, 0, 1, 5_000)) {
+            for (long id = 1; id <= 5_000; id++) {
+                log.append(record(id));
+            }
+            log.flush();
+
+            assertEquals(5_000, log.size());
+            assertEquals(0, log.droppedRecords());
+        }
+    }
+
+    @Test
+    void append_dropsAndCountsOnceTheWriterStopsTakingRecords() throws Exception {
+        MappedHistoryLog log = MappedHistoryLog.open(dir, 10L * MappedHistoryLog.RECORD_BYTES,
+                FsyncPolicy.NEVER, 0, 1, 1);
+        log.close();
+
+        log.append(record(1));
+        log.append(record(2));
+        log.append(record(3));
+
+        assertEquals(2, log.droppedRecords());
+        assertEquals(0, log.size());
+    }
+
+    @Test
+    void append_dropsWithoutWaitingByDefault() throws Exception {
+        MappedHistoryLog log = MappedHistoryLog.open(dir, 10L * MappedHistoryLog.RECORD_BYTES,
+                FsyncPolicy.NEVER, 0, 1);
+        log.close();
+
+        long start = System.nanoTime();
+        for (long id = 1; id <= 1_000; id++) {
+            log.append(record(id));
+        }
+
+        // any wait at all would add up to seconds over a thousand appends
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+        assertEquals(999, log.droppedRecords());
+    }
+
+    @Test
+    void readingTheWholeLog_keepsOnlyAFewSegmentsMapped() throws Exception {
+        try (MappedHistoryLog log = open(FsyncPolicy.NEVER)) {
+            for (long id = 1; id <= 200; id++) {
+                log.append(record(id));
+            }
+            log.flush();
+            assertEquals(1, log.mappedSegments());
+
+            for (long seq = 0; seq < 200; seq++) {
+                assertEquals(seq + 1, log.get(seq).getId());
+            }
+            assertTrue(log.mappedSegments() <= 9, log.mappedSegments() + " segments mapped");
+            // a segment dropped from the mapping is mapped again when read
+            assertEquals(record(1).getTimestamp(), log.get(0).getTimestamp());
+        }
+    }
+
+    @Test
+    void open_rejectsSegmentSizeThatIsNotWholeRecords() {
+        assertThrows(IllegalArgumentException.class,
+                () -> MappedHistoryLog.open(dir, MappedHistoryLog.RECORD_BYTES + 1, FsyncPolicy.NEVER, 0, 16));
+    }
+}
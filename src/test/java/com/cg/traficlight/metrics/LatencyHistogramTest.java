@@ -0,0 +1,71 @@
+package com.cg.traficlight.metrics;
+
+import com.cg.traficlight.model.HistogramSnapshot;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    void index_keepsEveryValueWithinItsBucketBounds() {
+        long[] values = {0, 1, 15, 16, 17, 31, 32, 1_000, 123_456, 1_000_000_007L, Long.MAX_VALUE / 4};
+        for (long value : values) {
+            int index = LatencyHistogram.index(value);
+            assertTrue(LatencyHistogram.highestValue(index) >= value, "upper bound of " + value);
+            if (index > 0) {
+                assertTrue(LatencyHistogram.highestValue(index - 1) < value, "lower bound of " + value);
+            }
+            // sixteen sub-buckets per power of two: about 6% relative error at most
+            assertTrue(LatencyHistogram.highestValue(index) - value <= value / 16 + 1, "precision at " + value);
+        }
+    }
+
+    @Test
+    void snapshot_reportsPercentilesCountAndMax() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 1000; micros++) {
+            histogram.record(micros * 1000);
+        }
+        histogram.record(-5);
+
+        HistogramSnapshot snapshot = histogram.snapshot();
+        assertEquals(1001, snapshot.getCount());
+        assertEquals(1_000_000, snapshot.getMaxNanos());
+        assertEquals(500_000, snapshot.getP50Nanos(), 500_000 / 16.0);
+        assertEquals(990_000, snapshot.getP99Nanos(), 990_000 / 16.0);
+        assertTrue(snapshot.getP999Nanos() <= snapshot.getMaxNanos());
+    }
+
+    @Test
+    void snapshot_isEmptyBeforeFirstRecord() {
+        HistogramSnapshot snapshot = new LatencyHistogram().snapshot();
+
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getP99Nanos());
+    }
+
+    @Test
+    void record_losesNothingUnderConcurrentWriters() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread writer = new Thread(() -> {
+                for (int i = 0; i < 100_000; i++) {
+                    histogram.record(i);
+                }
+            });
+            writers.add(writer);
+            writer.start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        assertEquals(400_000, histogram.snapshot().getCount());
+        assertEquals(99_999, histogram.snapshot().getMaxNanos());
+    }
+}
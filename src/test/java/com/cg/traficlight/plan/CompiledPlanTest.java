@@ -0,0 +1,134 @@
+package com.cg.traficlight.plan;
+
+import com.cg.traficlight.model.Colors;
+import com.cg.traficlight.model.Directions;
+import com.cg.traficlight.model.Movement;
+import com.cg.traficlight.model.PhasePlan;
+import com.cg.traficlight.model.PlanPhase;
+import com.cg.traficlight.model.Response;
+import com.cg.traficlight.model.SignalGroup;
+import com.cg.traficlight.model.StatusSnapshot;
+import com.cg.traficlight.service.Movements;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompiledPlanTest {
+
+    /** Protected left turns followed by opposed throughs; lefts conflict with the opposing through. */
+    private static PhasePlan leadingLefts() {
+        PhasePlan plan = new PhasePlan();
+        plan.setName("leading-lefts");
+        plan.setGroups(List.of(
+                new SignalGroup("N-left", null), new SignalGroup("S-left", null),
+                new SignalGroup("N-through", Directions.NORTH), new SignalGroup("S-through", Directions.SOUTH),
+                new SignalGroup("E-through", Directions.EAST), new SignalGroup("W-through", Directions.WEST)));
+        plan.setConflicts(List.of(
+                List.of("N-left", "S-through"), List.of("S-left", "N-through"),
+                List.of("N-through", "E-through"), List.of("N-through", "W-through"),
+                List.of("S-through", "E-through"), List.of("S-through", "W-through")));
+        plan.setPhases(List.of(
+                new PlanPhase("lefts", 10, List.of("N-left", "S-left"), List.of()),
+                new PlanPhase("NS", 30, List.of("N-through", "S-through"), List.of()),
+                new PlanPhase("NS clear", 3, List.of(), List.of("N-through", "S-through")),
+                new PlanPhase("all red", 0, List.of(), List.of()),
+                new PlanPhase("EW", 25, List.of("E-through", "W-through"), List.of())));
+        return plan;
+    }
+
+    @Test
+    void compile_flattensPhasesIntoMasksAndSnapshots() {
+        CompiledPlan compiled = CompiledPlan.compile(leadingLefts());
+
+        assertEquals("leading-lefts", compiled.name());
+        assertEquals(5, compiled.size());
+        for (int i = 0; i < compiled.size(); i++) {
+            assertTrue(compiled.isSafe(i));
+        }
+        assertEquals(30_000L, compiled.durationMillis(1));
+        assertEquals("NS clear", compiled.phaseName(2));
+
+        Response ns = compiled.status(1, false).getResponse();
+        assertEquals(Directions.NORTH, ns.getActiveDirection());
+        assertEquals(Colors.GREEN, ns.getActiveColor());
+        assertEquals(Colors.GREEN, ns.getInactiveState().get(Directions.SOUTH));
+        assertEquals(Colors.RED, ns.getInactiveState().get(Directions.EAST));
+        assertTrue(compiled.status(1, true).getResponse().isPaused());
+
+        // lefts have no approach of their own: the phase reports no active direction
+        assertNull(compiled.movements().get(0).getDirection());
+        assertEquals(Colors.GREEN, compiled.groupColors(0).get("N-left"));
+        assertEquals(Colors.RED, compiled.groupColors(0).get("N-through"));
+        assertEquals(Colors.YELLOW, compiled.groupColors(2).get("S-through"));
+        assertEquals(Directions.EAST, compiled.movements().get(4).getDirection());
+    }
+
+    @Test
+    void compile_rejectsConflictingGreens() {
+        PhasePlan plan = leadingLefts();
+        List<PlanPhase> phases = new ArrayList<>(plan.getPhases());
+        phases.add(new PlanPhase("bad", 5, List.of("N-left", "S-through"), List.of()));
+        plan.setPhases(phases);
+
+        InvalidPlanException e = assertThrows(InvalidPlanException.class, () -> CompiledPlan.compile(plan));
+        assertTrue(e.getMessage().contains("bad"));
+        assertTrue(e.getMessage().contains("N-left"));
+    }
+
+    @Test
+    void compile_rejectsGreenAgainstConflictingYellow() {
+        PhasePlan plan = leadingLefts();
+        plan.setPhases(List.of(new PlanPhase("overlap", 5, List.of("E-through"), List.of("N-through"))));
+
+        assertThrows(InvalidPlanException.class, () -> CompiledPlan.compile(plan));
+    }
+
+    @Test
+    void compile_rejectsMalformedPlans() {
+        PhasePlan unknownGroup = leadingLefts();
+        unknownGroup.setPhases(List.of(new PlanPhase("p", 5, List.of("nowhere"), List.of())));
+        assertThrows(InvalidPlanException.class, () -> CompiledPlan.compile(unknownGroup));
+
+        PhasePlan duplicate = leadingLefts();
+        duplicate.setGroups(List.of(new SignalGroup("a", null), new SignalGroup("a", null)));
+        assertThrows(InvalidPlanException.class, () -> CompiledPlan.compile(duplicate));
+
+        PhasePlan selfConflict = leadingLefts();
+        selfConflict.setConflicts(List.of(List.of("N-left", "N-left")));
+        assertThrows(InvalidPlanException.class, () -> CompiledPlan.compile(selfConflict));
+
+        PhasePlan untimed = leadingLefts();
+        untimed.setPhases(List.of(new PlanPhase("p", 0, List.of("N-left"), List.of())));
+        assertThrows(InvalidPlanException.class, () -> CompiledPlan.compile(untimed));
+
+        PhasePlan noPhases = leadingLefts();
+        noPhases.setPhases(List.of());
+        assertThrows(InvalidPlanException.class, () -> CompiledPlan.compile(noPhases));
+
+        PhasePlan tooMany = leadingLefts();
+        List<SignalGroup> groups = new ArrayList<>();
+        for (int i = 0; i <= CompiledPlan.MAX_GROUPS; i++) {
+            groups.add(new SignalGroup("g" + i, null));
+        }
+        tooMany.setGroups(groups);
+        assertThrows(InvalidPlanException.class, () -> CompiledPlan.compile(tooMany));
+    }
+
+    @Test
+    void of_keepsTheSharedSnapshotsOfTheBuiltInCycle() {
+        List<Movement> movements = Movements.of(20, 3, 20, 3);
+        CompiledPlan compiled = CompiledPlan.of(movements);
+
+        assertTrue(compiled.isFor(movements));
+        assertEquals(movements.size(), compiled.size());
+        for (int i = 0; i < compiled.size(); i++) {
+            Movement m = movements.get(i);
+            assertTrue(compiled.isSafe(i));
+            assertSame(StatusSnapshot.of(m.getDirection(), m.getColors(), false), compiled.status(i, false));
+            assertEquals(m.getDurationMillis(), compiled.durationMillis(i));
+        }
+    }
+}
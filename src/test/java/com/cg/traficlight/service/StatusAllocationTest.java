@@ -0,0 +1,92 @@
+package com.cg.traficlight.service;
+
+import com.cg.traficlight.model.Colors;
+import com.cg.traficlight.model.Directions;
+import com.cg.traficlight.model.Response;
+import com.cg.traficlight.model.SignalSequence;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Allocation of the status read path, measured on a plain service: a Mockito spy of the class
+ * routes every call through the mock maker, which allocates on its own, and the instrumented
+ * class stays that way for the rest of the JVM. Tagged {@code allocation} so surefire runs it in
+ * a JVM of its own.
+ */
+@Tag("allocation")
+class StatusAllocationTest {
+
+    private TrafficLightService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new TrafficLightService();
+        // the default 20 s phases: nothing changes while it is measured
+        service.setSequence(new SignalSequence());
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void getStatus_allocatesFarLessThanBuildingResponsePerCall() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean allocating
+                        && allocating.isThreadAllocatedMemorySupported(),
+                "this JVM cannot measure per-thread allocation");
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        long tid = Thread.currentThread().threadId();
+        int calls = 200_000;
+        Object[] sink = new Object[1];
+
+        // warm up both paths so the JIT has settled before measuring
+        for (int i = 0; i < calls; i++) {
+            sink[0] = buildResponsePerCall(Directions.NORTH, Colors.GREEN);
+            sink[0] = service.getStatus();
+            sink[0] = service.getStatusJson();
+        }
+
+        long start = threads.getThreadAllocatedBytes(tid);
+        for (int i = 0; i < calls; i++) {
+            sink[0] = buildResponsePerCall(Directions.NORTH, Colors.GREEN);
+        }
+        long before = threads.getThreadAllocatedBytes(tid) - start;
+
+        start = threads.getThreadAllocatedBytes(tid);
+        for (int i = 0; i < calls; i++) {
+            sink[0] = service.getStatus();
+            sink[0] = service.getStatusJson();
+        }
+        long after = threads.getThreadAllocatedBytes(tid) - start;
+
+        double beforePerCall = (double) before / calls;
+        double afterPerCall = (double) after / calls;
+        assertTrue(afterPerCall < 1.0, "snapshot status allocated " + afterPerCall + " bytes/call");
+        assertTrue(beforePerCall > afterPerCall,
+                "per-call Response allocated " + beforePerCall + " bytes/call vs " + afterPerCall);
+    }
+
+    // the shape getStatus used to build on every call, kept here as the allocation baseline
+    private static Response buildResponsePerCall(Directions active, Colors color) {
+        Response response = new Response();
+        EnumMap<Directions, Colors> lights = new EnumMap<>(Directions.class);
+        for (Directions d : Directions.values()) {
+            if (d != active) lights.put(d, Colors.RED);
+        }
+        response.setActiveDirection(active);
+        response.setActiveColor(color);
+        response.setInactiveState(lights);
+        response.setPaused(false);
+        return response;
+    }
+}
@@ -0,0 +1,121 @@
+package com.cg.traficlight.service;
+
+import com.cg.traficlight.model.PhasePlan;
+import com.cg.traficlight.model.SignalSequence;
+import com.cg.traficlight.model.TimePlanWindow;
+import com.cg.traficlight.plan.InvalidPlanException;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimeOfDayPlanTest {
+
+    // 2024-01-01 is a Monday
+    private static final LocalDateTime MONDAY = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    private static final List<TimePlanWindow> WEEK = List.of(
+            window("MON-FRI", "07:00", 30, 3, 20, 3),
+            window("MON-FRI", "10:00", 20, 3, 20, 3),
+            window("SAT,SUN", "09:00", 15, 3, 15, 3),
+            window("DAILY", "22:00", 10, 3, 10, 3));
+
+    static TimePlanWindow window(String days, String start, long greenNS, long yellowNS, long greenEW, long yellowEW) {
+        SignalSequence sequence = new SignalSequence();
+        sequence.setTimeGreenNS(greenNS);
+        sequence.setTimeYellowNS(yellowNS);
+        sequence.setTimeGreenEW(greenEW);
+        sequence.setTimeYellowEW(yellowEW);
+        TimePlanWindow window = new TimePlanWindow();
+        window.setDays(days);
+        window.setStart(start);
+        window.setSequence(sequence);
+        return window;
+    }
+
+    @Test
+    void windowAt_findsTheLatestStartAndWrapsAroundTheWeek() {
+        TimeOfDayPlan plan = TimeOfDayPlan.of(WEEK);
+        // 5 weekday peaks, 5 weekday middays, 2 weekend days and 7 nights
+        assertEquals(19, plan.size());
+
+        assertEquals("MON 07:00 30/3/20/3", plan.label(plan.windowAt(MONDAY.withHour(7))));
+        assertEquals("MON 07:00 30/3/20/3", plan.label(plan.windowAt(MONDAY.withHour(9).withMinute(59))));
+        assertEquals("WED 10:00 20/3/20/3", plan.label(plan.windowAt(MONDAY.plusDays(2).withHour(13))));
+        assertEquals("SAT 09:00 15/3/15/3", plan.label(plan.windowAt(MONDAY.plusDays(5).withHour(21))));
+        // Monday before the first start of the week: Sunday night is still on
+        assertEquals("SUN 22:00 10/3/10/3", plan.label(plan.windowAt(MONDAY.withHour(3))));
+    }
+
+    @Test
+    void sameTimings_areCompiledOnce() {
+        TimeOfDayPlan plan = TimeOfDayPlan.of(WEEK);
+        assertSame(plan.plan(plan.windowAt(MONDAY.withHour(8))), plan.plan(plan.windowAt(MONDAY.plusDays(4).withHour(8))));
+        assertEquals(8, plan.plan(0).size());
+        assertEquals(102_000, plan.plan(plan.windowAt(MONDAY.withHour(8))).cycleMillis());
+    }
+
+    @Test
+    void nextStart_isTheFollowingWindowEvenAcrossTheWeekEnd() {
+        TimeOfDayPlan plan = TimeOfDayPlan.of(WEEK);
+        assertEquals(MONDAY.withHour(10), plan.nextStart(MONDAY.withHour(8).withMinute(15)));
+        assertEquals(MONDAY.plusDays(7).withHour(7), plan.nextStart(MONDAY.plusDays(6).withHour(23)));
+
+        TimeOfDayPlan single = TimeOfDayPlan.of(List.of(window("TUE", "05:00", 20, 3, 20, 3)));
+        assertEquals(0, single.windowAt(MONDAY));
+        assertEquals(MONDAY.plusDays(1).withHour(5), single.nextStart(MONDAY));
+        assertEquals(MONDAY.plusDays(8).withHour(5), single.nextStart(MONDAY.plusDays(1).withHour(5)));
+    }
+
+    @Test
+    void of_rejectsMalformedAndOverlappingWindows() {
+        assertTrue(TimeOfDayPlan.of(List.of()).isEmpty());
+        assertEquals(-1, TimeOfDayPlan.of(null).windowAt(MONDAY));
+        InvalidPlanException start = assertThrows(InvalidPlanException.class,
+                () -> TimeOfDayPlan.of(List.of(WEEK.get(0), window("MON", "7am", 20, 3, 20, 3))));
+        assertTrue(start.getMessage().startsWith("timeplan.windows[1].start"), start.getMessage());
+        assertThrows(InvalidPlanException.class, () -> TimeOfDayPlan.of(List.of(window("MONDAY", "07:00", 20, 3, 20, 3))));
+        assertThrows(InvalidPlanException.class, () -> TimeOfDayPlan.of(List.of(window("MON", "07:00", 20, -3, 20, 3))));
+        TimePlanWindow both = window("MON", "07:00", 20, 3, 20, 3);
+        both.setPlan(new PhasePlan());
+        assertThrows(InvalidPlanException.class, () -> TimeOfDayPlan.of(List.of(both)));
+        TimePlanWindow emptyPlan = window("MON", "07:00", 20, 3, 20, 3);
+        emptyPlan.setSequence(null);
+        emptyPlan.setPlan(new PhasePlan());
+        assertThrows(InvalidPlanException.class, () -> TimeOfDayPlan.of(List.of(emptyPlan)));
+        InvalidPlanException overlap = assertThrows(InvalidPlanException.class,
+                () -> TimeOfDayPlan.of(List.of(window("MON-FRI", "07:00", 20, 3, 20, 3), window("FRI-MON", "07:00", 30, 3, 20, 3))));
+        assertTrue(overlap.getMessage().contains("MON 07:00"), overlap.getMessage());
+    }
+
+    @EnableConfigurationProperties(TimePlanProperties.class)
+    static class Bound {
+    }
+
+    @Test
+    void properties_bindAListOfWindowsAndRefuseUnknownNames() {
+        ApplicationContextRunner runner = new ApplicationContextRunner().withUserConfiguration(Bound.class);
+
+        runner.withPropertyValues(
+                "timeplan.windows[0].days=MON-FRI",
+                "timeplan.windows[0].start=07:00",
+                "timeplan.windows[0].sequence.timeGreenNS=30",
+                "timeplan.windows[0].sequence.time-yellow-ns=4",
+                "timeplan.windows[1].days=DAILY",
+                "timeplan.windows[1].start=22:00",
+                "timeplan.windows[1].sequence.timeGreenNS=10").run(context -> {
+            TimeOfDayPlan plan = TimeOfDayPlan.of(context.getBean(TimePlanProperties.class).getWindows());
+            assertEquals(12, plan.size());
+            assertEquals("MON 07:00 30/4/20/3", plan.label(plan.windowAt(MONDAY.withHour(8))));
+        });
+
+        runner.withPropertyValues(
+                "timeplan.window[0].days=MON",
+                "timeplan.window[0].start=07:00",
+                "timeplan.window[0].sequence.timeGreenNS=30").run(context -> assertNotNull(context.getStartupFailure()));
+    }
+}
@@ -1,25 +1,51 @@
 package com.cg.traficlight.service;
 
+import com.cg.traficlight.clock.VirtualTimeScheduler;
+import com.cg.traficlight.detector.AdaptiveTiming;
+import com.cg.traficlight.detector.DetectorCounts;
+import com.cg.traficlight.history.HistoryRingBuffer;
+import com.cg.traficlight.metrics.TrafficMetrics;
 import com.cg.traficlight.model.*;
+import com.cg.traficlight.plan.CompiledPlan;
+import com.cg.traficlight.plan.InvalidPlanException;
+import com.cg.traficlight.state.FileStateStore;
+import com.cg.traficlight.state.ReplicatingStateStore;
+import com.cg.traficlight.state.ReplicationRole;
+import com.cg.traficlight.state.StateStore;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import tools.jackson.databind.json.JsonMapper;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
-import java.util.EnumMap;
+import java.util.Map;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -49,10 +75,6 @@ class TrafficLightServiceTest {
         // default to not paused so getStatus and schedule behaviors are deterministic
         setPrivateField(real, "paused", false);
         setPrivateField(spy, "paused", false);
-
-        // clear records on the real instance
-        ((List<?>) getPrivateField(real, "records", List.class)).clear();
-        ((List<?>) getPrivateField(spy, "records", List.class)).clear();
     }
 
     // reflection helpers
@@ -76,43 +98,78 @@ class TrafficLightServiceTest {
         ai.set(idx);
     }
 
+    private static PhasePlan twoWayPlan(List<List<String>> conflicts) {
+        PhasePlan plan = new PhasePlan();
+        plan.setName("two-way");
+        plan.setGroups(List.of(
+                new SignalGroup("north", Directions.NORTH), new SignalGroup("south", Directions.SOUTH),
+                new SignalGroup("east", Directions.EAST), new SignalGroup("west", Directions.WEST)));
+        plan.setConflicts(conflicts);
+        plan.setPhases(List.of(
+                new PlanPhase("NS", 30, List.of("north", "south"), List.of()),
+                new PlanPhase("EW", 20, List.of("east", "west"), List.of())));
+        return plan;
+    }
+
     @Test
-    void scheduleCurrentPhase_detectsConflictingGreenAndPauses() throws Exception {
-        // prepare spy with one movement
+    void setPlan_rejectsConflictingPlanBeforeActivation() throws Exception {
         List<Movement> movements = new ArrayList<>();
         movements.add(new Movement(Directions.NORTH, Colors.GREEN, 1000L));
-        setPrivateField(spy, "movements", movements);
-        setCurrentPhaseIndex(spy, 0);
-
-        // conflicting response: EAST is GREEN while NORTH is active
-        Response conflict = new Response();
-        conflict.setActiveDirection(Directions.NORTH);
-        conflict.setActiveColor(Colors.GREEN);
-        EnumMap<Directions, Colors> inactive = new EnumMap<>(Directions.class);
-        inactive.put(Directions.EAST, Colors.GREEN);
-        inactive.put(Directions.SOUTH, Colors.RED);
-        inactive.put(Directions.WEST, Colors.RED);
-        conflict.setInactiveState(inactive);
-        conflict.setPaused(false);
-
-        // stub getStatus on spy to return conflict
-        lenient().doReturn(conflict).when(spy).getStatus();
+        setPrivateField(real, "movements", movements);
+        setCurrentPhaseIndex(real, 0);
+
+        // north and south are released together although they conflict
+        PhasePlan conflicting = twoWayPlan(List.of(List.of("north", "south")));
+
+        InvalidPlanException e = assertThrows(InvalidPlanException.class, () -> real.setPlan(conflicting));
+        assertTrue(e.getMessage().contains("north"));
+
+        // nothing was activated: same movements, still running, nothing scheduled
+        assertSame(movements, getPrivateField(real, "movements", List.class));
+        assertFalse((Boolean) getPrivateField(real, "paused", Boolean.class));
+        verify(mockScheduler, never()).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+        assertEquals(Directions.NORTH, real.getStatus().getActiveDirection());
+        assertEquals(0L, getPrivateField(real, "metrics", TrafficMetrics.class).conflicts());
+    }
+
+    @Test
+    void scheduleCurrentPhase_pausesOnAConflictThatSlipsPastCompilation() throws Exception {
+        // a plan can only get here by bypassing compile, so stand in one whose first phase is unsafe
+        List<Movement> movements = List.of(new Movement(Directions.NORTH, Colors.GREEN, 1000L));
+        CompiledPlan unsafe = mock(CompiledPlan.class);
+        when(unsafe.isFor(movements)).thenReturn(true);
+        when(unsafe.movements()).thenReturn(movements);
+        when(unsafe.isSafe(0)).thenReturn(false);
+        setPrivateField(real, "movements", movements);
+        setPrivateField(real, "plan", unsafe);
+        setCurrentPhaseIndex(real, 0);
 
         Method sched = TrafficLightService.class.getDeclaredMethod("scheduleCurrentPhase", long.class);
         sched.setAccessible(true);
+        InvocationTargetException e = assertThrows(InvocationTargetException.class, () -> sched.invoke(real, 0L));
 
-        try {
-            sched.invoke(spy, 0L);
-            fail("Expected IllegalStateException due to conflicting GREEN lights");
-        } catch (InvocationTargetException ite) {
-            Throwable cause = ite.getCause();
-            assertNotNull(cause);
-            assertInstanceOf(IllegalStateException.class, cause);
-            assertTrue(cause.getMessage().contains("Conflicting GREEN lights"));
-        }
+        assertInstanceOf(IllegalStateException.class, e.getCause());
+        assertEquals("Conflicting GREEN lights detected", e.getCause().getMessage());
+        assertTrue((Boolean) getPrivateField(real, "paused", Boolean.class));
+        assertEquals(1L, getPrivateField(real, "metrics", TrafficMetrics.class).conflicts());
+        verify(mockScheduler, never()).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+    }
+
+    @Test
+    void setPlan_activatesOverlappingGreens() throws Exception {
+        real.setPlan(twoWayPlan(List.of(List.of("north", "east"), List.of("south", "west"))));
 
-        // service should have been paused
-        assertTrue((Boolean) getPrivateField(spy, "paused", Boolean.class));
+        Response status = real.getStatus();
+        assertEquals(Directions.NORTH, status.getActiveDirection());
+        assertEquals(Colors.GREEN, status.getActiveColor());
+        assertEquals(Colors.GREEN, status.getInactiveState().get(Directions.SOUTH));
+        assertEquals(Colors.RED, status.getInactiveState().get(Directions.EAST));
+
+        PlanStatus plan = real.getPlanStatus();
+        assertEquals("two-way", plan.getPlan());
+        assertEquals("NS", plan.getPhase());
+        assertEquals(Colors.RED, plan.getGroups().get("west"));
+        verify(mockScheduler).schedule(any(Runnable.class), eq(30_000L), eq(TimeUnit.MILLISECONDS));
     }
 
     @Test
@@ -130,7 +187,7 @@ class TrafficLightServiceTest {
         assertEquals(Colors.GREEN, status.getActiveColor());
         assertFalse(status.isPaused());
 
-        EnumMap<Directions, Colors> inactive = status.getInactiveState();
+        Map<Directions, Colors> inactive = status.getInactiveState();
         assertEquals(Colors.RED, inactive.get(Directions.EAST));
         assertEquals(Colors.RED, inactive.get(Directions.SOUTH));
         assertEquals(Colors.RED, inactive.get(Directions.WEST));
@@ -201,18 +258,16 @@ class TrafficLightServiceTest {
 
     @Test
     void getTimingHistory_limitsAndReversesRecords() throws Exception {
-        @SuppressWarnings("unchecked")
-        List<TraficLightHistory> recs = (List<TraficLightHistory>) getPrivateField(real, "records", List.class);
-        recs.clear();
+        HistoryRingBuffer recs = getPrivateField(real, "records", HistoryRingBuffer.class);
         TraficLightHistory h1 = new TraficLightHistory();
         h1.setId(1L);
         TraficLightHistory h2 = new TraficLightHistory();
         h2.setId(2L);
         TraficLightHistory h3 = new TraficLightHistory();
         h3.setId(3L);
-        recs.add(h1);
-        recs.add(h2);
-        recs.add(h3);
+        recs.append(h1);
+        recs.append(h2);
+        recs.append(h3);
 
         // limit to 2 most recent records
         setPrivateField(real, "maxRecordSize", 2L);
@@ -222,4 +277,967 @@ class TrafficLightServiceTest {
         assertEquals(3L, result.get(0).getId());
         assertEquals(2L, result.get(1).getId());
     }
+
+    @Test
+    void getTimingHistory_keepsOnlyRetainedRecords() throws Exception {
+        setPrivateField(real, "records", new HistoryRingBuffer(5));
+        setPrivateField(real, "maxRecordSize", 100L);
+        HistoryRingBuffer recs = getPrivateField(real, "records", HistoryRingBuffer.class);
+        for (long id = 1; id <= 12; id++) {
+            TraficLightHistory h = new TraficLightHistory();
+            h.setId(id);
+            recs.append(h);
+        }
+
+        List<TraficLightHistory> result = real.getTimingHistory();
+        assertEquals(5, result.size());
+        assertEquals(12L, result.get(0).getId());
+        assertEquals(8L, result.get(4).getId());
+    }
+
+    @Test
+    void getTimingHistory_readersSeeNewestFirstWhileWriterAppends() throws Exception {
+        setPrivateField(real, "records", new HistoryRingBuffer(64));
+        setPrivateField(real, "maxRecordSize", 32L);
+        HistoryRingBuffer recs = getPrivateField(real, "records", HistoryRingBuffer.class);
+
+        int readers = 4;
+        long writes = 200_000;
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<String> failure = new AtomicReference<>();
+        CountDownLatch started = new CountDownLatch(readers);
+        List<Thread> threads = new ArrayList<>();
+        for (int r = 0; r < readers; r++) {
+            Thread t = new Thread(() -> {
+                started.countDown();
+                while (!done.get() && failure.get() == null) {
+                    List<TraficLightHistory> snapshot = real.getTimingHistory();
+                    if (snapshot.size() > 32) {
+                        failure.set("returned more than max.record.size entries: " + snapshot.size());
+                    }
+                    for (int i = 1; i < snapshot.size(); i++) {
+                        if (snapshot.get(i - 1).getId() - 1 != snapshot.get(i).getId()) {
+                            failure.set("out of order at " + i + ": " + snapshot.get(i - 1).getId()
+                                    + " then " + snapshot.get(i).getId());
+                        }
+                    }
+                }
+            });
+            threads.add(t);
+            t.start();
+        }
+        started.await();
+        for (long id = 1; id <= writes; id++) {
+            TraficLightHistory h = new TraficLightHistory();
+            h.setId(id);
+            recs.append(h);
+        }
+        done.set(true);
+        for (Thread t : threads) {
+            t.join(TimeUnit.SECONDS.toMillis(10));
+        }
+
+        assertNull(failure.get(), failure.get());
+        List<TraficLightHistory> result = real.getTimingHistory();
+        assertEquals(32, result.size());
+        assertEquals(writes, result.get(0).getId());
+    }
+
+    @Test
+    void getStatus_reusesPrecomputedSnapshotPerPhase() throws Exception {
+        SignalSequence seq = new SignalSequence();
+        real.setSequence(seq);
+        setCurrentPhaseIndex(real, 2);
+
+        Response first = real.getStatus();
+        Response second = real.getStatus();
+        assertSame(first, second);
+        assertEquals(Directions.EAST, first.getActiveDirection());
+        assertEquals(Colors.GREEN, first.getActiveColor());
+        assertEquals(JsonMapper.shared().writeValueAsString(first), new String(real.getStatusJson()));
+        assertSame(real.getStatusJson(), real.getStatusJson());
+        assertThrows(UnsupportedOperationException.class, () -> first.setActiveColor(Colors.RED));
+        assertThrows(UnsupportedOperationException.class, () -> first.getInactiveState().put(Directions.NORTH, Colors.GREEN));
+
+        setPrivateField(real, "paused", true);
+        assertTrue(real.getStatus().isPaused());
+        assertNotSame(first, real.getStatus());
+    }
+
+    private void invokeScheduleCurrentPhase(Object target) throws Exception {
+        Method sched = TrafficLightService.class.getDeclaredMethod("scheduleCurrentPhase", long.class);
+        sched.setAccessible(true);
+        sched.invoke(target, 0L);
+    }
+
+    @Test
+    void absoluteMode_takesLatenessOutOfTheNextPhase() throws Exception {
+        setPrivateField(real, "schedulingMode", SchedulingMode.ABSOLUTE);
+        setPrivateField(real, "movements", List.of(
+                new Movement(Directions.NORTH, Colors.GREEN, 1000L),
+                new Movement(Directions.EAST, Colors.GREEN, 1000L)));
+        setCurrentPhaseIndex(real, 0);
+        // the boundary this phase starts from was 300 ms ago, as if the transition fired late
+        setPrivateField(real, "phaseDeadlineNanos", System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(300));
+
+        invokeScheduleCurrentPhase(real);
+
+        ArgumentCaptor<Long> delay = ArgumentCaptor.forClass(Long.class);
+        verify(mockScheduler).schedule(any(Runnable.class), delay.capture(), eq(TimeUnit.NANOSECONDS));
+        assertTrue(delay.getValue() <= TimeUnit.MILLISECONDS.toNanos(700), "delay " + delay.getValue());
+        assertTrue(delay.getValue() > TimeUnit.MILLISECONDS.toNanos(500), "delay " + delay.getValue());
+        assertEquals(0L, real.getSchedulerTiming().getResyncs());
+    }
+
+    @Test
+    void absoluteMode_reanchorsInsteadOfCuttingMoreThanHalfAPhase() throws Exception {
+        setPrivateField(real, "schedulingMode", SchedulingMode.ABSOLUTE);
+        setPrivateField(real, "movements", List.of(new Movement(Directions.NORTH, Colors.YELLOW, 1000L)));
+        setCurrentPhaseIndex(real, 0);
+        setPrivateField(real, "phaseDeadlineNanos", System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(800));
+
+        invokeScheduleCurrentPhase(real);
+
+        ArgumentCaptor<Long> delay = ArgumentCaptor.forClass(Long.class);
+        verify(mockScheduler).schedule(any(Runnable.class), delay.capture(), eq(TimeUnit.NANOSECONDS));
+        assertTrue(delay.getValue() > TimeUnit.MILLISECONDS.toNanos(900), "delay " + delay.getValue());
+        assertEquals(1L, real.getSchedulerTiming().getResyncs());
+    }
+
+    @Test
+    void relativeMode_timesPhaseFromNow() throws Exception {
+        setPrivateField(real, "movements", List.of(new Movement(Directions.NORTH, Colors.GREEN, 1000L)));
+        setCurrentPhaseIndex(real, 0);
+
+        invokeScheduleCurrentPhase(real);
+
+        verify(mockScheduler).schedule(any(Runnable.class), eq(1000L), eq(TimeUnit.MILLISECONDS));
+        assertEquals(SchedulingMode.RELATIVE, real.getSchedulerTiming().getMode());
+    }
+
+    @Test
+    void scheduleCurrentPhase_stepsOverZeroAndNegativeDurationsWithoutRecursing() throws Exception {
+        List<Movement> movements = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            movements.add(new Movement(Directions.NORTH, Colors.GREEN, i % 2 == 0 ? 0L : -5L));
+        }
+        movements.add(new Movement(Directions.EAST, Colors.GREEN, 2000L));
+        setPrivateField(real, "movements", List.copyOf(movements));
+        setCurrentPhaseIndex(real, 0);
+
+        invokeScheduleCurrentPhase(real);
+
+        assertEquals(Directions.EAST, real.getStatus().getActiveDirection());
+        verify(mockScheduler, times(1)).schedule(any(Runnable.class), eq(2000L), eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void scheduleCurrentPhase_allZeroDurationsStayOnCurrentPhase() throws Exception {
+        setPrivateField(real, "movements", List.of(
+                new Movement(Directions.NORTH, Colors.GREEN, 0L),
+                new Movement(Directions.EAST, Colors.GREEN, 0L)));
+        setCurrentPhaseIndex(real, 1);
+
+        invokeScheduleCurrentPhase(real);
+
+        assertEquals(Directions.EAST, real.getStatus().getActiveDirection());
+        verify(mockScheduler, never()).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+    }
+
+    @Test
+    void subscribe_streamsPauseResumeAndTransitions() throws Exception {
+        setPrivateField(real, "movements", List.of(
+                new Movement(Directions.NORTH, Colors.GREEN, 1000L),
+                new Movement(Directions.EAST, Colors.GREEN, 1000L)));
+        setCurrentPhaseIndex(real, 1);
+        BlockingQueue<PhaseEvent> events = new LinkedBlockingQueue<>();
+        Subscription subscription = real.subscribe(events::add);
+
+        real.pause();
+        real.resume();
+
+        PhaseEvent paused = events.poll(5, TimeUnit.SECONDS);
+        PhaseEvent resumed = events.poll(5, TimeUnit.SECONDS);
+        PhaseEvent transition = events.poll(5, TimeUnit.SECONDS);
+        subscription.cancel();
+
+        assertEquals(PhaseEventType.PAUSED, paused.getType());
+        assertTrue(paused.isPaused());
+        assertEquals(Directions.EAST, paused.getDirection());
+        assertEquals(PhaseEventType.RESUMED, resumed.getType());
+        assertEquals(PhaseEventType.TRANSITION, transition.getType());
+        assertEquals(Directions.EAST, transition.getDirection());
+        assertEquals(paused.getSequence() + 2, transition.getSequence());
+        // stamped with an instant, which carries its zone as a Z
+        assertTrue(transition.toJson().endsWith(",\"timestamp\":\"" + transition.getTimestamp() + "\"}"));
+        assertTrue(transition.getTimestamp().toString().endsWith("Z"), transition.toJson());
+    }
+
+    @Test
+    void metrics_recordLockTimesAndTransitionLatenessWhenEnabled() throws Exception {
+        TrafficMetrics metrics = new TrafficMetrics(true);
+        setPrivateField(real, "metrics", metrics);
+        setPrivateField(real, "movements", List.of(
+                new Movement(Directions.NORTH, Colors.GREEN, 1000L),
+                new Movement(Directions.EAST, Colors.GREEN, 1000L)));
+        setCurrentPhaseIndex(real, 0);
+
+        real.pause();
+        real.resume();
+        // the phase was due 2 ms ago
+        setPrivateField(real, "phaseDeadlineNanos", System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(2));
+        Method deadline = TrafficLightService.class.getDeclaredMethod("onPhaseDeadline");
+        deadline.setAccessible(true);
+        deadline.invoke(real);
+
+        MetricsReport report = metrics.report();
+        assertTrue(report.isEnabled());
+        assertEquals(1L, report.getHistograms().get("lock.hold.pause").getCount());
+        assertEquals(1L, report.getHistograms().get("lock.wait.resume").getCount());
+        assertEquals(0L, report.getHistograms().get("lock.hold.set-sequence").getCount());
+        HistogramSnapshot lateness = report.getHistograms().get("transition.lateness");
+        assertEquals(1L, lateness.getCount());
+        assertTrue(lateness.getMaxNanos() >= TimeUnit.MILLISECONDS.toNanos(2), "lateness " + lateness.getMaxNanos());
+    }
+
+    @Test
+    void metrics_recordNothingWhenDisabled() throws Exception {
+        TrafficMetrics metrics = getPrivateField(real, "metrics", TrafficMetrics.class);
+        setPrivateField(real, "movements", List.of(new Movement(Directions.NORTH, Colors.GREEN, 1000L)));
+        setCurrentPhaseIndex(real, 0);
+
+        real.pause();
+        real.resume();
+
+        MetricsReport report = metrics.report();
+        assertFalse(report.isEnabled());
+        report.getHistograms().values().forEach(h -> assertEquals(0L, h.getCount()));
+    }
+
+    @Test
+    void virtualClock_runsADayOfCyclesWithExactTimestamps() {
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+        TrafficLightService virtual = new TrafficLightService(new VirtualTimeScheduler(start));
+        virtual.init();
+        SignalSequence seq = new SignalSequence();
+        seq.setTimeGreenNS(20);
+        seq.setTimeYellowNS(4);
+        seq.setTimeGreenEW(16);
+        seq.setTimeYellowEW(4);
+        virtual.setSequence(seq);
+        try {
+            // one cycle is 20+4+3*(16+4) = 84 s
+            long fired = virtual.advanceVirtualTime(Duration.ofSeconds(84 * 1000));
+
+            assertEquals(8_000, fired);
+            assertEquals(utc(start.plusSeconds(84_000)), virtual.getClockTime());
+            assertEquals(Directions.NORTH, virtual.getStatus().getActiveDirection());
+            assertEquals(Colors.GREEN, virtual.getStatus().getActiveColor());
+
+            List<TraficLightHistory> newest = virtual.getTimingHistory();
+            assertEquals(8_001L, newest.get(0).getId());
+            assertEquals(utc(start.plusSeconds(84_000)), newest.get(0).getTimestamp());
+            assertEquals(Directions.WEST, newest.get(1).getDirection());
+            assertEquals(Colors.YELLOW, newest.get(1).getColors());
+            assertEquals(utc(start.plusSeconds(84_000 - 4)), newest.get(1).getTimestamp());
+            assertEquals(utc(start.plusSeconds(84_000 - 20)), newest.get(2).getTimestamp());
+            assertEquals(0L, virtual.getSchedulerTiming().getMaxDriftMicros());
+        } finally {
+            virtual.shutdown();
+        }
+    }
+
+    @Test
+    void virtualClock_isDeterministicAcrossRuns() {
+        List<List<TraficLightHistory>> runs = new ArrayList<>();
+        for (int run = 0; run < 2; run++) {
+            TrafficLightService virtual = new TrafficLightService(new VirtualTimeScheduler(LocalDateTime.of(2024, 1, 1, 0, 0)));
+            virtual.init();
+            virtual.advanceVirtualTime(Duration.ofHours(6));
+            virtual.pause();
+            virtual.advanceVirtualTime(Duration.ofMinutes(7));
+            virtual.resume();
+            virtual.advanceVirtualTime(Duration.ofHours(6));
+            runs.add(virtual.getTimingHistory());
+            virtual.shutdown();
+        }
+
+        assertEquals(runs.get(0).size(), runs.get(1).size());
+        for (int i = 0; i < runs.get(0).size(); i++) {
+            TraficLightHistory a = runs.get(0).get(i);
+            TraficLightHistory b = runs.get(1).get(i);
+            assertEquals(a.getId(), b.getId());
+            assertEquals(a.getDirection(), b.getDirection());
+            assertEquals(a.getColors(), b.getColors());
+            assertEquals(a.getTimestamp(), b.getTimestamp());
+        }
+    }
+
+    @Test
+    void adaptiveTiming_sizesEachGreenFromItsQueue() throws Exception {
+        DetectorCounts detectors = new DetectorCounts();
+        TrafficLightService virtual = new TrafficLightService(new VirtualTimeScheduler(LocalDateTime.of(2024, 1, 1, 0, 0)));
+        setPrivateField(virtual, "adaptive", new AdaptiveTiming(detectors, 5, 40, 2000));
+        detectors.record(Directions.SOUTH, 12);
+        detectors.record(Directions.EAST, 100);
+        virtual.init();
+        try {
+            // one cycle: N 5+3, E 40+3, S 24+3, W 5+3 seconds
+            virtual.advanceVirtualTime(Duration.ofSeconds(86));
+
+            List<TraficLightHistory> history = virtual.getTimingHistory();
+            assertEquals(Directions.NORTH, history.get(0).getDirection());
+            assertEquals(Colors.GREEN, history.get(0).getColors());
+            assertEquals(Instant.parse("2024-01-01T00:01:26Z"), history.get(0).getTimestamp());
+            assertEquals(5_000L, history.get(2).getDurationSeconds());
+            assertEquals(Directions.WEST, history.get(2).getDirection());
+            assertEquals(24_000L, history.get(4).getDurationSeconds());
+            assertEquals(Directions.SOUTH, history.get(4).getDirection());
+            assertEquals(40_000L, history.get(6).getDurationSeconds());
+            assertEquals(Directions.EAST, history.get(6).getDirection());
+            assertEquals(0L, detectors.waiting(Directions.EAST));
+        } finally {
+            virtual.shutdown();
+        }
+    }
+
+    @Test
+    void coordinate_immediateEntersThePhaseOfTheSharedCycle() {
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+        TrafficLightService virtual = new TrafficLightService(new VirtualTimeScheduler(start));
+        virtual.init();
+        try {
+            // default 20/3 cycle is 92 s; 30 s after the epoch is 7 s into the east green
+            virtual.coordinate(start.minusSeconds(30), 0, true);
+            assertEquals(Directions.EAST, virtual.getStatus().getActiveDirection());
+            assertEquals(Colors.GREEN, virtual.getStatus().getActiveColor());
+
+            virtual.advanceVirtualTime(Duration.ofSeconds(14));
+            assertEquals(Directions.EAST, virtual.getStatus().getActiveDirection());
+            assertEquals(Colors.YELLOW, virtual.getStatus().getActiveColor());
+
+            virtual.advanceVirtualTime(Duration.ofSeconds(92 * 3));
+            CoordinationStatus status = virtual.getCoordinationStatus();
+            assertTrue(status.isCoordinated());
+            assertEquals(start.minusSeconds(30), status.getEpoch());
+            assertEquals(92_000L, status.getCycleMillis());
+            assertEquals(0L, status.getErrorMillis());
+            assertEquals(0L, status.getCorrectionMillis());
+
+            virtual.stopCoordination();
+            assertFalse(virtual.getCoordinationStatus().isCoordinated());
+        } finally {
+            virtual.shutdown();
+        }
+    }
+
+    @Test
+    void coordinate_easesOntoTheSharedCycle() {
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+        TrafficLightService virtual = new TrafficLightService(new VirtualTimeScheduler(start));
+        virtual.init();
+        try {
+            // running cycles start at 0 s, the shared cycle at 40 s: 40 s early, so the next
+            // cycles run longer, by at most 18.4 s (20%) each
+            virtual.coordinate(start, 40_000, false);
+            assertEquals(Directions.NORTH, virtual.getStatus().getActiveDirection());
+
+            virtual.advanceVirtualTime(Duration.ofSeconds(92));
+            assertEquals(18_400L, virtual.getCoordinationStatus().getCorrectionMillis());
+            virtual.advanceVirtualTime(Duration.ofSeconds(92 * 4));
+            assertEquals(0L, virtual.getCoordinationStatus().getErrorMillis());
+        } finally {
+            virtual.shutdown();
+        }
+    }
+
+    @Test
+    void analytics_followTheCycleOnVirtualTime() {
+        TrafficLightService virtual = new TrafficLightService(new VirtualTimeScheduler(LocalDateTime.of(2024, 1, 1, 0, 0)));
+        virtual.init();
+        try {
+            // default 20/3 cycle: 92 s, each approach green 20 s of it
+            virtual.advanceVirtualTime(Duration.ofSeconds(92 * 40));
+            virtual.pause();
+            virtual.advanceVirtualTime(Duration.ofSeconds(120));
+            virtual.resume();
+            // two hours in all, so the hour window starts on a bucket edge
+            virtual.advanceVirtualTime(Duration.ofSeconds(7200 - 92 * 40 - 120));
+
+            WindowStats hour = virtual.getAnalytics().getWindows().get("1h");
+            assertEquals(3600.0, hour.getObservedSeconds(), 1e-6);
+            assertEquals(120.0, hour.getPausedSeconds(), 1e-6);
+            assertEquals(0.0, hour.getMeanOverrunMillis(), 1e-6);
+            double running = 3600 - 120;
+            assertEquals(running / 92, hour.getCycles(), 1.0);
+            assertEquals(20 / 92.0 * running / 3600, hour.getGreenShare().get(Directions.NORTH), 0.01);
+
+            WindowStats minute = virtual.getAnalytics().getWindows().get("1m");
+            assertEquals(60.0, minute.getObservedSeconds(), 1e-6);
+            assertEquals(0.0, minute.getPausedSeconds(), 1e-6);
+        } finally {
+            virtual.shutdown();
+        }
+    }
+
+    @Test
+    void stateVersion_advancesWithEveryObservableChange() throws Exception {
+        TrafficLightService virtual = new TrafficLightService(new VirtualTimeScheduler(LocalDateTime.of(2024, 1, 1, 0, 0)));
+        virtual.init();
+        try {
+            // the first phase was entered
+            long entered = virtual.getStateVersion();
+            assertEquals(1, entered);
+            CompletableFuture<Long> next = virtual.awaitStateChange(entered);
+            assertFalse(next.isDone());
+
+            virtual.advanceVirtualTime(Duration.ofSeconds(20));
+            assertEquals(2L, next.get(5, TimeUnit.SECONDS));
+
+            virtual.pause();
+            assertEquals(3, virtual.getStateVersion());
+            // resuming re-enters the phase: one bump for the resume, one for the transition
+            virtual.resume();
+            assertEquals(5, virtual.getStateVersion());
+            virtual.setSequence(new SignalSequence());
+            assertEquals(7, virtual.getStateVersion());
+            assertTrue(virtual.awaitStateChange(6).isDone());
+        } finally {
+            virtual.shutdown();
+        }
+    }
+
+    private TrafficLightService restartable(LocalDateTime start, StateStore store) throws Exception {
+        TrafficLightService service = new TrafficLightService(new VirtualTimeScheduler(start));
+        setPrivateField(service, "stateStore", store);
+        service.init();
+        return service;
+    }
+
+    @Test
+    void restart_resumesInThePhaseItLeftOff(@TempDir Path dir) throws Exception {
+        LocalDateTime t0 = LocalDateTime.of(2024, 1, 1, 0, 0);
+        TrafficLightService before = restartable(t0, FileStateStore.open(dir, 4));
+        SignalSequence sequence = new SignalSequence();
+        sequence.setTimeGreenNS(10);
+        sequence.setTimeYellowNS(2);
+        sequence.setTimeGreenEW(30);
+        sequence.setTimeYellowEW(4);
+        before.setSequence(sequence);
+        // EAST GREEN from 12 s to 42 s; then the process dies without closing anything
+        before.advanceVirtualTime(Duration.ofSeconds(25));
+        before.shutdown();
+
+        // back 5 s later: 12 s of EAST GREEN are left
+        TrafficLightService after = restartable(t0.plusSeconds(30), FileStateStore.open(dir, 4));
+        try {
+            assertEquals(Directions.EAST, after.getStatus().getActiveDirection());
+            after.advanceVirtualTime(Duration.ofMillis(11_900));
+            assertEquals(Colors.GREEN, after.getStatus().getActiveColor());
+            after.advanceVirtualTime(Duration.ofMillis(200));
+            assertEquals(Directions.EAST, after.getStatus().getActiveDirection());
+            assertEquals(Colors.YELLOW, after.getStatus().getActiveColor());
+        } finally {
+            after.shutdown();
+        }
+
+        // down long enough to miss several cycles of 114 s: EAST YELLOW began at 42 s, so at
+        // 12 + 1000 s the cycle is 20 s into WEST GREEN
+        TrafficLightService later = restartable(t0.plusSeconds(42 + 970), FileStateStore.open(dir, 4));
+        try {
+            assertEquals(Directions.WEST, later.getStatus().getActiveDirection());
+            later.advanceVirtualTime(Duration.ofMillis(9_900));
+            assertEquals(Colors.GREEN, later.getStatus().getActiveColor());
+            later.advanceVirtualTime(Duration.ofMillis(200));
+            assertEquals(Colors.YELLOW, later.getStatus().getActiveColor());
+        } finally {
+            later.shutdown();
+        }
+    }
+
+    @Test
+    void restart_keepsThePause(@TempDir Path dir) throws Exception {
+        LocalDateTime t0 = LocalDateTime.of(2024, 1, 1, 0, 0);
+        TrafficLightService before = restartable(t0, FileStateStore.open(dir, 1000));
+        before.advanceVirtualTime(Duration.ofSeconds(30));
+        before.pause();
+        before.shutdown();
+
+        TrafficLightService after = restartable(t0.plusMinutes(10), FileStateStore.open(dir, 1000));
+        try {
+            Response status = after.getStatus();
+            assertTrue(status.isPaused());
+            // default 20/3 cycle: 30 s in is EAST GREEN
+            assertEquals(Directions.EAST, status.getActiveDirection());
+            assertEquals(0, after.advanceVirtualTime(Duration.ofMinutes(5)));
+        } finally {
+            after.shutdown();
+        }
+    }
+
+    @Test
+    void advanceVirtualTime_rejectedOnSystemClock() {
+        assertThrows(IllegalStateException.class, () -> real.advanceVirtualTime(Duration.ofSeconds(1)));
+    }
+
+    // ---- watchdog: 1 s phases, 100 ms overdue threshold, checked every 10 ms, 500 ms all red ----
+
+    private static final long OVERDUE_MILLIS = 100;
+    private static final long CHECK_MILLIS = 10;
+    // deadline to detection: threshold + one check, plus room for a busy test machine
+    private static final long DETECTION_BOUND_MICROS = (OVERDUE_MILLIS + CHECK_MILLIS + 150) * 1000;
+
+    private TrafficLightService watched(HistoryRingBuffer history, StateStore store) throws Exception {
+        TrafficLightService service = new TrafficLightService();
+        setPrivateField(service, "records", history);
+        setPrivateField(service, "stateStore", store);
+        setPrivateField(service, "watchdogOverdueMillis", OVERDUE_MILLIS);
+        setPrivateField(service, "watchdogCheckMillis", CHECK_MILLIS);
+        setPrivateField(service, "watchdogAllRedMillis", 500L);
+        service.init();
+        SignalSequence fast = new SignalSequence();
+        fast.setTimeGreenNS(1);
+        fast.setTimeYellowNS(1);
+        fast.setTimeGreenEW(1);
+        fast.setTimeYellowEW(1);
+        service.setSequence(fast);
+        return service;
+    }
+
+    private static void awaitTrue(java.util.function.BooleanSupplier condition, long timeoutMillis) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition not met within " + timeoutMillis + " ms");
+            Thread.sleep(2);
+        }
+    }
+
+    @Test
+    void watchdog_takesOverWhenATransitionThrows() throws Exception {
+        AtomicBoolean failNext = new AtomicBoolean();
+        HistoryRingBuffer history = new HistoryRingBuffer(100) {
+            @Override
+            public void append(TraficLightHistory record) {
+                if (failNext.compareAndSet(true, false)) throw new IllegalStateException("history store unavailable");
+                super.append(record);
+            }
+        };
+        TrafficLightService service = watched(history, StateStore.NONE);
+        try {
+            failNext.set(true);
+            awaitTrue(() -> service.getWatchdogStatus().getFailovers() == 1, 3_000);
+
+            WatchdogStatus watchdog = service.getWatchdogStatus();
+            assertTrue(watchdog.isFailsafe());
+            assertNull(service.getStatus().getActiveDirection());
+            assertEquals(Colors.RED, service.getStatus().getActiveColor());
+            assertTrue(service.getStatus().getInactiveState().values().stream().allMatch(c -> c == Colors.RED));
+            assertTrue(watchdog.getLastDetectionMicros() >= OVERDUE_MILLIS * 1000);
+            assertTrue(watchdog.getLastDetectionMicros() <= DETECTION_BOUND_MICROS,
+                    "detected " + watchdog.getLastDetectionMicros() + " us after the deadline");
+
+            // after the all-red the cycle runs on by itself again
+            awaitTrue(() -> !service.getWatchdogStatus().isFailsafe(), 2_000);
+            assertNotNull(service.getStatus().getActiveDirection());
+            int transitions = history.latest(100).size();
+            awaitTrue(() -> history.latest(100).size() > transitions, 2_000);
+            assertEquals(1, service.getWatchdogStatus().getFailovers());
+
+            // nothing is due while paused, however long that is
+            service.pause();
+            Thread.sleep(1_500);
+            assertEquals(1, service.getWatchdogStatus().getFailovers());
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    void watchdog_recordsAStallHoldingTheLockWithoutAnnouncingAllRed() throws Exception {
+        AtomicBoolean stallNext = new AtomicBoolean();
+        AtomicReference<String> lastThread = new AtomicReference<>();
+        CountDownLatch release = new CountDownLatch(1);
+        StateStore store = new StateStore() {
+            @Override
+            public void transition(int phaseIndex, Instant start, long durationMillis) {
+                lastThread.set(Thread.currentThread().getName());
+                if (!stallNext.compareAndSet(true, false)) return;
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        HistoryRingBuffer history = new HistoryRingBuffer(100);
+        TrafficLightService service = watched(history, store);
+        BlockingQueue<PhaseEvent> events = new LinkedBlockingQueue<>();
+        Subscription subscription = service.subscribe(events::add);
+        try {
+            stallNext.set(true);
+            awaitTrue(() -> service.getWatchdogStatus().getFailovers() == 1, 3_000);
+            assertTrue(service.getWatchdogStatus().getLastDetectionMicros() <= DETECTION_BOUND_MICROS,
+                    "detected " + service.getWatchdogStatus().getLastDetectionMicros() + " us after the deadline");
+
+            // the stall outlasts many checks: recorded once, and nothing claims all red while it holds the lock
+            Thread.sleep(300);
+            assertEquals(1, service.getWatchdogStatus().getFailovers());
+            assertFalse(service.getWatchdogStatus().isFailsafe());
+            assertNotNull(service.getStatus().getActiveDirection());
+            assertTrue(events.stream().noneMatch(e -> e.getType() == PhaseEventType.FAILSAFE));
+
+            // once it lets go, the same thread carries on with the cycle
+            int transitions = history.latest(100).size();
+            release.countDown();
+            awaitTrue(() -> history.latest(100).size() > transitions + 1, 3_000);
+            assertEquals("traffic-scheduler", lastThread.get());
+            assertFalse(service.getWatchdogStatus().isFailsafe());
+            assertEquals(1, service.getWatchdogStatus().getFailovers());
+        } finally {
+            release.countDown();
+            subscription.cancel();
+            service.shutdown();
+        }
+    }
+
+    // ---- replication: a primary and a standby on localhost, 50 ms heartbeats, 2 s phases ----
+
+    private static SignalSequence twoSecondPhases() {
+        SignalSequence sequence = new SignalSequence();
+        sequence.setTimeGreenNS(2);
+        sequence.setTimeYellowNS(2);
+        sequence.setTimeGreenEW(2);
+        sequence.setTimeYellowEW(2);
+        return sequence;
+    }
+
+    private TrafficLightService standbyOf(int port, HistoryRingBuffer history) throws Exception {
+        TrafficLightService service = new TrafficLightService();
+        setPrivateField(service, "records", history);
+        setPrivateField(service, "replicationRole", ReplicationRole.STANDBY);
+        setPrivateField(service, "replicationPrimary", "localhost:" + port);
+        setPrivateField(service, "replicationHeartbeatMillis", 50L);
+        service.init();
+        return service;
+    }
+
+    @Test
+    void replication_standbyMirrorsThePrimaryAndRefusesCommands() throws Exception {
+        ReplicatingStateStore feed = ReplicatingStateStore.open(StateStore.NONE, "localhost", 0, 50);
+        HistoryRingBuffer primaryHistory = new HistoryRingBuffer(100);
+        TrafficLightService primary = new TrafficLightService();
+        setPrivateField(primary, "records", primaryHistory);
+        setPrivateField(primary, "stateStore", feed);
+        primary.init();
+        HistoryRingBuffer standbyHistory = new HistoryRingBuffer(100);
+        TrafficLightService standby = standbyOf(feed.port(), standbyHistory);
+        try {
+            awaitTrue(() -> standby.getReplicationStatus().isConnected(), 2_000);
+            primary.setSequence(twoSecondPhases());
+
+            // the sequence change and the next transition both arrive
+            awaitTrue(() -> standby.getCoordinationStatus().getCycleMillis() == 16_000, 2_000);
+            long phase = primary.getPlanStatus().getPhaseIndex();
+            awaitTrue(() -> primary.getPlanStatus().getPhaseIndex() != phase, 3_000);
+            TraficLightHistory entered = primaryHistory.latest(1).get(0);
+            awaitTrue(() -> !standbyHistory.latest(1).isEmpty()
+                    && standbyHistory.latest(1).get(0).getId().equals(entered.getId()), 1_000);
+            TraficLightHistory mirrored = standbyHistory.latest(1).get(0);
+            assertEquals(entered.getTimestamp(), mirrored.getTimestamp());
+            assertEquals(entered.getDirection(), mirrored.getDirection());
+            assertEquals(entered.getColors(), mirrored.getColors());
+            assertEquals(entered.getDurationSeconds(), mirrored.getDurationSeconds());
+            assertEquals(primary.getPlanStatus().getPhaseIndex(), standby.getPlanStatus().getPhaseIndex());
+
+            assertTrue(standby.isStandby());
+            assertEquals("STANDBY", standby.getReplicationStatus().getRole());
+            assertEquals(1, primary.getReplicationStatus().getStandbys());
+            assertThrows(IllegalStateException.class, standby::pause);
+            assertThrows(IllegalStateException.class, () -> standby.setSequence(twoSecondPhases()));
+
+            primary.pause();
+            awaitTrue(() -> standby.getStatus().isPaused(), 1_000);
+        } finally {
+            standby.shutdown();
+            primary.shutdown();
+            feed.close();
+        }
+    }
+
+    @Test
+    void replication_standbyTakesOverMidPhaseWhenThePrimaryIsLost() throws Exception {
+        ReplicatingStateStore feed = ReplicatingStateStore.open(StateStore.NONE, "localhost", 0, 50);
+        HistoryRingBuffer primaryHistory = new HistoryRingBuffer(100);
+        TrafficLightService primary = new TrafficLightService();
+        setPrivateField(primary, "records", primaryHistory);
+        setPrivateField(primary, "stateStore", feed);
+        primary.init();
+        primary.setSequence(twoSecondPhases());
+        HistoryRingBuffer standbyHistory = new HistoryRingBuffer(100);
+        TrafficLightService standby = standbyOf(feed.port(), standbyHistory);
+        try {
+            awaitTrue(() -> standby.getReplicationStatus().isConnected(), 2_000);
+            // half a second into a phase, the primary goes away
+            int before = primaryHistory.latest(100).size();
+            awaitTrue(() -> primaryHistory.latest(100).size() > before, 3_000);
+            TraficLightHistory last = primaryHistory.latest(1).get(0);
+            Thread.sleep(500);
+            primary.shutdown();
+            feed.close();
+
+            awaitTrue(() -> !standby.isStandby(), 1_000);
+            ReplicationStatus status = standby.getReplicationStatus();
+            assertEquals("PRIMARY", status.getRole());
+            assertNotNull(status.getTakenOver());
+            // still in the phase the primary was in, not back at the start of the cycle
+            assertEquals(last.getId() - 1, standby.getPlanStatus().getPhaseIndex());
+            assertEquals(last.getDirection(), standby.getStatus().getActiveDirection());
+
+            // and it ends when the primary would have ended it
+            awaitTrue(() -> standbyHistory.latest(1).get(0).getId() == last.getId() + 1, 3_000);
+            long phaseMillis = Duration.between(last.getTimestamp(), standbyHistory.latest(1).get(0).getTimestamp())
+                    .toMillis();
+            assertTrue(phaseMillis >= 2_000 && phaseMillis < 2_150, "phase lasted " + phaseMillis + " ms");
+            standby.pause();
+            assertTrue(standby.getStatus().isPaused());
+        } finally {
+            standby.shutdown();
+            primary.shutdown();
+        }
+    }
+
+    /** Virtual time runs in UTC. */
+    private static Instant utc(LocalDateTime time) {
+        return time.toInstant(ZoneOffset.UTC);
+    }
+
+    private static void assertShowing(TrafficLightService service, Directions direction, Colors color) {
+        assertEquals(direction, service.getStatus().getActiveDirection());
+        assertEquals(color, service.getStatus().getActiveColor());
+    }
+
+    @Test
+    void preemption_clearsTheGreenHoldsThenResumesThePhaseItCut() {
+        TrafficLightService virtual = new TrafficLightService(new VirtualTimeScheduler(LocalDateTime.of(2024, 1, 1, 0, 0)));
+        virtual.init();
+        try {
+            virtual.advanceVirtualTime(Duration.ofSeconds(5));
+            assertEquals(3_000, virtual.preempt(Directions.EAST, Duration.ofSeconds(10)));
+            assertShowing(virtual, Directions.NORTH, Colors.YELLOW);
+            assertEquals("CLEARING", virtual.getPreemptionStatus().getStage());
+            assertEquals("preemption EAST CLEARING", virtual.getPlanStatus().getPhase());
+
+            virtual.advanceVirtualTime(Duration.ofMillis(2_999));
+            assertShowing(virtual, Directions.NORTH, Colors.YELLOW);
+            virtual.advanceVirtualTime(Duration.ofMillis(1));
+            assertShowing(virtual, Directions.EAST, Colors.GREEN);
+            assertEquals(Colors.RED, virtual.getStatus().getInactiveState().get(Directions.NORTH));
+            assertEquals(0L, virtual.getPreemptionStatus().getOverhead().getP99Nanos());
+
+            virtual.advanceVirtualTime(Duration.ofSeconds(10));
+            assertShowing(virtual, Directions.EAST, Colors.YELLOW);
+            virtual.advanceVirtualTime(Duration.ofSeconds(3));
+            // the 15 s of north green that were cut short
+            assertShowing(virtual, Directions.NORTH, Colors.GREEN);
+            assertFalse(virtual.getPreemptionStatus().isActive());
+            assertEquals(1, virtual.getPreemptionStatus().getPreemptions());
+            virtual.advanceVirtualTime(Duration.ofMillis(14_999));
+            assertShowing(virtual, Directions.NORTH, Colors.GREEN);
+            virtual.advanceVirtualTime(Duration.ofMillis(1));
+            assertShowing(virtual, Directions.NORTH, Colors.YELLOW);
+        } finally {
+            virtual.shutdown();
+        }
+    }
+
+    @Test
+    void preemption_duringAYellowWaitsOnlyForItThenMovesOn() {
+        TrafficLightService virtual = new TrafficLightService(new VirtualTimeScheduler(LocalDateTime.of(2024, 1, 1, 0, 0)));
+        virtual.init();
+        try {
+            virtual.advanceVirtualTime(Duration.ofSeconds(21));
+            assertShowing(virtual, Directions.NORTH, Colors.YELLOW);
+            assertEquals(2_000, virtual.preempt(Directions.SOUTH, Duration.ofSeconds(5)));
+
+            virtual.advanceVirtualTime(Duration.ofSeconds(2));
+            assertShowing(virtual, Directions.SOUTH, Colors.GREEN);
+            virtual.advanceVirtualTime(Duration.ofSeconds(5));
+            assertShowing(virtual, Directions.SOUTH, Colors.YELLOW);
+            virtual.advanceVirtualTime(Duration.ofSeconds(3));
+            // the yellow had run its course: the cycle goes on from the next phase, in full
+            assertShowing(virtual, Directions.EAST, Colors.GREEN);
+            virtual.advanceVirtualTime(Duration.ofMillis(19_999));
+            assertShowing(virtual, Directions.EAST, Colors.GREEN);
+        } finally {
+            virtual.shutdown();
+        }
+    }
+
+    @Test
+    void preemption_ofTheYellowApproachShowsRedBeforeItsGreen() {
+        TrafficLightService virtual = new TrafficLightService(new VirtualTimeScheduler(LocalDateTime.of(2024, 1, 1, 0, 0)));
+        virtual.init();
+        try {
+            virtual.advanceVirtualTime(Duration.ofSeconds(21));
+            assertShowing(virtual, Directions.NORTH, Colors.YELLOW);
+            // the 2 s left of its yellow, then 2 s of all red
+            assertEquals(4_000, virtual.preempt(Directions.NORTH, Duration.ofSeconds(5)));
+            assertShowing(virtual, Directions.NORTH, Colors.YELLOW);
+
+            virtual.advanceVirtualTime(Duration.ofSeconds(2));
+            assertShowing(virtual, null, Colors.RED);
+            assertEquals(Colors.RED, PreemptionControl.approachColors(virtual.getStatus()).get(Directions.NORTH));
+            assertEquals("ALL_RED", virtual.getPreemptionStatus().getStage());
+            virtual.advanceVirtualTime(Duration.ofMillis(1_999));
+            assertShowing(virtual, null, Colors.RED);
+            virtual.advanceVirtualTime(Duration.ofMillis(1));
+            assertShowing(virtual, Directions.NORTH, Colors.GREEN);
+
+            virtual.advanceVirtualTime(Duration.ofSeconds(5));
+            assertShowing(virtual, Directions.NORTH, Colors.YELLOW);
+            virtual.advanceVirtualTime(Duration.ofSeconds(3));
+            assertShowing(virtual, Directions.EAST, Colors.GREEN);
+        } finally {
+            virtual.shutdown();
+        }
+    }
+
+    @Test
+    void preemption_ofTheGreenApproachKeepsItGreenAndCanBeCancelled() {
+        TrafficLightService virtual = new TrafficLightService(new VirtualTimeScheduler(LocalDateTime.of(2024, 1, 1, 0, 0)));
+        virtual.init();
+        try {
+            virtual.advanceVirtualTime(Duration.ofSeconds(5));
+            assertEquals(0, virtual.preempt(Directions.NORTH, Duration.ofSeconds(30)));
+            assertShowing(virtual, Directions.NORTH, Colors.GREEN);
+            assertEquals("GREEN", virtual.getPreemptionStatus().getStage());
+
+            virtual.advanceVirtualTime(Duration.ofSeconds(20));
+            assertShowing(virtual, Directions.NORTH, Colors.GREEN);
+            assertTrue(virtual.cancelPreemption());
+            assertShowing(virtual, Directions.NORTH, Colors.YELLOW);
+            virtual.advanceVirtualTime(Duration.ofSeconds(3));
+            // north has shown its yellow: east is next, not a second yellow
+            assertShowing(virtual, Directions.EAST, Colors.GREEN);
+            assertFalse(virtual.cancelPreemption());
+
+            virtual.pause();
+            assertThrows(IllegalStateException.class, () -> virtual.preempt(Directions.WEST, null));
+            virtual.resume();
+            assertThrows(IllegalArgumentException.class, () -> virtual.preempt(Directions.WEST, Duration.ofHours(1)));
+        } finally {
+            virtual.shutdown();
+        }
+    }
+
+    @Test
+    void preemption_reachesGreenOnTimeWhileStatusIsReadFlatOut() throws Exception {
+        TrafficLightService real = new TrafficLightService();
+        setPrivateField(real, "preemptClearanceMillis", 20L);
+        real.init();
+        AtomicBoolean reading = new AtomicBoolean(true);
+        List<Thread> readers = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            Thread reader = new Thread(() -> {
+                byte[][] sink = new byte[1][];
+                while (reading.get()) sink[0] = real.getStatusJson();
+            });
+            reader.setDaemon(true);
+            reader.start();
+            readers.add(reader);
+        }
+        try {
+            Directions[] approaches = Directions.values();
+            for (int i = 0; i < 40; i++) {
+                Directions direction = approaches[i % approaches.length];
+                real.preempt(direction, Duration.ofMillis(30));
+                awaitTrue(() -> real.getStatus().getActiveDirection() == direction
+                        && real.getStatus().getActiveColor() == Colors.GREEN, 1_000);
+            }
+            // readers spinning on the same cores as the scheduler can hold it off for a time slice
+            long p99Millis = TimeUnit.NANOSECONDS.toMillis(real.getPreemptionStatus().getOverhead().getP99Nanos());
+            assertTrue(p99Millis < 10, "p99 request-to-green beyond the clearance was " + p99Millis + " ms");
+            assertEquals(40, real.getPreemptionStatus().getOverhead().getCount());
+        } finally {
+            reading.set(false);
+            for (Thread reader : readers) reader.join();
+            real.shutdown();
+        }
+    }
+
+    private static TimePlanProperties timePlan(TimePlanWindow... windows) {
+        TimePlanProperties properties = new TimePlanProperties();
+        properties.setWindows(List.of(windows));
+        return properties;
+    }
+
+    @Test
+    void timePlan_switchesTimingsAtTheEndOfTheCycleInTheNewWindow() throws Exception {
+        // 06:00 on a Monday, in the night window carried over from Sunday
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 6, 0);
+        TrafficLightService virtual = new TrafficLightService(new VirtualTimeScheduler(start));
+        setPrivateField(virtual, "timePlan", timePlan(
+                TimeOfDayPlanTest.window("MON-FRI", "07:00", 30, 3, 20, 3),
+                TimeOfDayPlanTest.window("MON-FRI", "10:00", 20, 3, 20, 3),
+                TimeOfDayPlanTest.window("DAILY", "22:00", 10, 3, 10, 3)));
+        virtual.init();
+        try {
+            assertEquals(52_000, virtual.getCoordinationStatus().getCycleMillis());
+            assertEquals("SUN 22:00 10/3/10/3", virtual.getTimePlanStatus().getActiveWindow());
+            assertEquals(utc(start.withHour(7)), virtual.getTimePlanStatus().getNextSwitch());
+
+            // 52 s cycles from 06:00: the 70th ends at 07:00:40
+            virtual.advanceVirtualTime(Duration.ofSeconds(3_639));
+            assertTrue(virtual.getTimePlanStatus().isPending());
+            assertEquals(52_000, virtual.getCoordinationStatus().getCycleMillis());
+            assertShowing(virtual, Directions.WEST, Colors.YELLOW);
+
+            virtual.advanceVirtualTime(Duration.ofSeconds(1));
+            assertEquals(102_000, virtual.getCoordinationStatus().getCycleMillis());
+            assertFalse(virtual.getTimePlanStatus().isPending());
+            assertEquals("MON 07:00 30/3/20/3", virtual.getTimePlanStatus().getActiveWindow());
+            assertEquals(1, virtual.getTimePlanStatus().getSwitches());
+            TraficLightHistory entered = virtual.getTimingHistory().get(0);
+            assertEquals(utc(start.plusSeconds(3_640)), entered.getTimestamp());
+            assertEquals(Directions.NORTH, entered.getDirection());
+            assertEquals(30_000, entered.getDurationSeconds());
+            // no reset: the phase count carries on through the switch
+            assertEquals(70 * 8 + 1, entered.getId());
+            assertEquals(0L, virtual.getSchedulerTiming().getMaxDriftMicros());
+        } finally {
+            virtual.shutdown();
+        }
+    }
+
+    @Test
+    void timePlan_leavesASequenceSetByHandUntilTheNextWindow() throws Exception {
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 8, 0);
+        TrafficLightService virtual = new TrafficLightService(new VirtualTimeScheduler(start));
+        setPrivateField(virtual, "timePlan", timePlan(
+                TimeOfDayPlanTest.window("MON-FRI", "07:00", 30, 3, 20, 3),
+                TimeOfDayPlanTest.window("MON-FRI", "10:00", 20, 3, 20, 3)));
+        virtual.init();
+        try {
+            assertEquals(102_000, virtual.getCoordinationStatus().getCycleMillis());
+            SignalSequence manual = new SignalSequence();
+            manual.setTimeGreenNS(40);
+            manual.setTimeYellowNS(4);
+            manual.setTimeGreenEW(10);
+            manual.setTimeYellowEW(4);
+            virtual.setSequence(manual);
+
+            // cycles of 86 s come and go in the peak window
+            virtual.advanceVirtualTime(Duration.ofMinutes(90));
+            assertEquals(86_000, virtual.getCoordinationStatus().getCycleMillis());
+            assertEquals(0, virtual.getTimePlanStatus().getSwitches());
+
+            // 10:00 is due, and taken at the end of the cycle running then
+            virtual.advanceVirtualTime(Duration.ofMinutes(30).plusSeconds(86));
+            assertEquals(92_000, virtual.getCoordinationStatus().getCycleMillis());
+            assertEquals("MON 10:00 20/3/20/3", virtual.getTimePlanStatus().getActiveWindow());
+            assertEquals(1, virtual.getTimePlanStatus().getSwitches());
+        } finally {
+            virtual.shutdown();
+        }
+    }
 }
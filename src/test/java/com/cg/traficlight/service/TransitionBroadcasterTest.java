@@ -0,0 +1,129 @@
+package com.cg.traficlight.service;
+
+import com.cg.traficlight.model.Colors;
+import com.cg.traficlight.model.Directions;
+import com.cg.traficlight.model.PhaseEvent;
+import com.cg.traficlight.model.PhaseEventType;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransitionBroadcasterTest {
+
+    private static PhaseEvent event(TransitionBroadcaster broadcaster, long phaseIndex) {
+        return new PhaseEvent(broadcaster.nextSequence(), PhaseEventType.TRANSITION, phaseIndex,
+                Directions.NORTH, Colors.GREEN, 1000, false, Instant.now());
+    }
+
+    @Test
+    void publish_reachesThousandsOfSubscribersInOrderWhileSomeAreStuck() throws Exception {
+        int fast = 5_000;
+        int stuck = 50;
+        int events = 200;
+        TransitionBroadcaster broadcaster = new TransitionBroadcaster(events, events);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch delivered = new CountDownLatch(fast);
+        AtomicReference<String> failure = new AtomicReference<>();
+
+        for (int i = 0; i < stuck; i++) {
+            broadcaster.subscribe(event -> release.await());
+        }
+        for (int i = 0; i < fast; i++) {
+            AtomicInteger received = new AtomicInteger();
+            broadcaster.subscribe(event -> {
+                if (event.getSequence() != received.incrementAndGet()) {
+                    failure.compareAndSet(null, "expected " + received.get() + " but got " + event.getSequence());
+                }
+                if (received.get() == events) {
+                    delivered.countDown();
+                }
+            });
+        }
+        assertEquals(fast + stuck, broadcaster.subscriberCount());
+
+        long start = System.nanoTime();
+        for (int i = 0; i < events; i++) {
+            broadcaster.publish(event(broadcaster, i));
+        }
+        long publishMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        try {
+            // the stuck subscribers are still blocked, yet every fast one got every event
+            assertTrue(delivered.await(30, TimeUnit.SECONDS), delivered.getCount() + " subscribers incomplete");
+            assertNull(failure.get(), failure.get());
+            assertTrue(publishMillis < 5_000, "publishing took " + publishMillis + " ms");
+        } finally {
+            release.countDown();
+            broadcaster.close();
+        }
+    }
+
+    @Test
+    void slowSubscriber_isDisconnectedWithoutStallingThePublisher() throws Exception {
+        TransitionBroadcaster broadcaster = new TransitionBroadcaster(4, 8);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch closed = new CountDownLatch(1);
+        Subscription slow = broadcaster.subscribe(new PhaseEventListener() {
+            @Override
+            public void onEvent(PhaseEvent event) throws Exception {
+                release.await();
+            }
+
+            @Override
+            public void onClose() {
+                closed.countDown();
+            }
+        });
+
+        for (int i = 0; i < 100; i++) {
+            broadcaster.publish(event(broadcaster, i));
+        }
+
+        assertTrue(closed.await(5, TimeUnit.SECONDS));
+        assertEquals(0, broadcaster.subscriberCount());
+        assertTrue(slow.droppedEvents() > 8);
+        release.countDown();
+    }
+
+    @Test
+    void cancel_stopsDeliveryWithoutCallingOnClose() throws Exception {
+        TransitionBroadcaster broadcaster = new TransitionBroadcaster(8, 8);
+        List<Long> received = new ArrayList<>();
+        AtomicInteger closes = new AtomicInteger();
+        CountDownLatch first = new CountDownLatch(1);
+        Subscription subscription = broadcaster.subscribe(new PhaseEventListener() {
+            @Override
+            public void onEvent(PhaseEvent event) {
+                synchronized (received) {
+                    received.add(event.getSequence());
+                }
+                first.countDown();
+            }
+
+            @Override
+            public void onClose() {
+                closes.incrementAndGet();
+            }
+        });
+
+        broadcaster.publish(event(broadcaster, 0));
+        assertTrue(first.await(5, TimeUnit.SECONDS));
+        subscription.cancel();
+        broadcaster.publish(event(broadcaster, 1));
+        Thread.sleep(50);
+
+        synchronized (received) {
+            assertEquals(List.of(1L), received);
+        }
+        assertEquals(0, closes.get());
+        assertFalse(broadcaster.hasSubscribers());
+    }
+}
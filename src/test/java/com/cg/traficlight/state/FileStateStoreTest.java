@@ -0,0 +1,107 @@
+package com.cg.traficlight.state;
+
+import com.cg.traficlight.model.Directions;
+import com.cg.traficlight.model.PhasePlan;
+import com.cg.traficlight.model.PlanPhase;
+import com.cg.traficlight.model.SignalGroup;
+import com.cg.traficlight.plan.CompiledPlan;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileStateStoreTest {
+
+    private static final Instant T0 = Instant.parse("2024-03-05T02:00:00.123Z");
+
+    @TempDir
+    Path dir;
+
+    private static CompiledPlan plan() {
+        PhasePlan plan = new PhasePlan();
+        plan.setName("two-phase");
+        plan.getGroups().add(new SignalGroup("NS", Directions.NORTH));
+        plan.getGroups().add(new SignalGroup("EW", Directions.EAST));
+        plan.getConflicts().add(List.of("NS", "EW"));
+        plan.getPhases().add(new PlanPhase("ns", 30, List.of("NS"), List.of()));
+        plan.getPhases().add(new PlanPhase("ew", 25, List.of("EW"), List.of()));
+        return CompiledPlan.compile(plan);
+    }
+
+    private List<Path> logs() throws Exception {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(f -> f.getFileName().toString().endsWith(".log")).toList();
+        }
+    }
+
+    @Test
+    void recover_isNullWhenNothingWasRecorded() throws Exception {
+        try (FileStateStore store = FileStateStore.open(dir, 10)) {
+            assertNull(store.recover());
+        }
+    }
+
+    @Test
+    void recover_foldsSnapshotAndTailWithoutClose() throws Exception {
+        FileStateStore store = FileStateStore.open(dir, 3);
+        store.planChanged(plan(), 0);
+        for (int i = 0; i < 5; i++) {
+            store.transition(i, T0.plusSeconds(30L * i), 30_000);
+        }
+        store.paused();
+        // no close(): the snapshot taken at the sixth event is followed by one logged event
+
+        try (FileStateStore reopened = FileStateStore.open(dir, 3)) {
+            ControllerState state = reopened.recover();
+            assertEquals(7, state.getSequence());
+            assertEquals("two-phase", state.getPlan().name());
+            assertEquals(55_000, state.getPlan().cycleMillis());
+            assertEquals(4, state.getPhaseIndex());
+            assertEquals(T0.plusSeconds(120), state.getPhaseStart());
+            assertEquals(30_000, state.getPhaseDurationMillis());
+            assertTrue(state.isPaused());
+            assertTrue(Files.exists(dir.resolve(FileStateStore.SNAPSHOT)));
+            assertEquals(1, logs().size());
+        }
+    }
+
+    @Test
+    void recover_dropsATornLastRecord() throws Exception {
+        FileStateStore store = FileStateStore.open(dir, 100);
+        store.planChanged(CompiledPlan.of(List.of()), 0);
+        store.transition(7, T0, 1_000);
+        store.resumed();
+        Files.write(logs().get(0), new byte[]{0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        try (FileStateStore reopened = FileStateStore.open(dir, 100)) {
+            ControllerState state = reopened.recover();
+            assertEquals(3, state.getSequence());
+            assertEquals(7, state.getPhaseIndex());
+            assertFalse(state.isPaused());
+            assertTrue(state.getPlan().movements().isEmpty());
+        }
+    }
+
+    @Test
+    void log_neverHoldsMoreThanOneSnapshotInterval() throws Exception {
+        try (FileStateStore store = FileStateStore.open(dir, 50)) {
+            store.planChanged(plan(), 0);
+            for (int i = 0; i < 10_000; i++) {
+                store.transition(i, T0.plusSeconds(i), 1_000);
+            }
+            List<Path> logs = logs();
+            assertEquals(1, logs.size());
+            assertTrue(Files.size(logs.get(0)) < 50 * 64, "log size " + Files.size(logs.get(0)));
+        }
+        try (FileStateStore reopened = FileStateStore.open(dir, 50)) {
+            assertEquals(9_999, reopened.recover().getPhaseIndex());
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package com.cg.traficlight.state;
+
+import com.cg.traficlight.model.Directions;
+import com.cg.traficlight.model.PhasePlan;
+import com.cg.traficlight.model.PlanPhase;
+import com.cg.traficlight.model.SignalGroup;
+import com.cg.traficlight.plan.CompiledPlan;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReplicatingStateStoreTest {
+
+    private static final Instant T0 = Instant.parse("2024-03-05T02:00:00.123Z");
+    private static final long HEARTBEAT_MILLIS = 50;
+
+    /** Keeps a copy of every state handed over; the replica reuses its instance. */
+    static class Recorder implements StandbyReplica.Listener {
+        final List<ControllerState> states = new ArrayList<>();
+        final CountDownLatch lost = new CountDownLatch(1);
+        volatile ControllerState lastSent;
+
+        private static ControllerState copy(ControllerState s) {
+            return new ControllerState(s.getPlan(), s.getPhaseIndex(), s.isPaused(), s.getPhaseStart(),
+                    s.getPhaseDurationMillis(), s.getSequence());
+        }
+
+        @Override
+        public synchronized void replicated(ControllerState state) {
+            states.add(copy(state));
+        }
+
+        @Override
+        public void primaryLost(ControllerState state) {
+            lastSent = copy(state);
+            lost.countDown();
+        }
+
+        synchronized ControllerState last() {
+            return states.isEmpty() ? null : states.get(states.size() - 1);
+        }
+
+        long sequence() {
+            ControllerState last = last();
+            return last == null ? 0 : last.getSequence();
+        }
+    }
+
+    private final List<AutoCloseable> open = new ArrayList<>();
+
+    @AfterEach
+    void closeAll() throws Exception {
+        for (AutoCloseable c : open) c.close();
+    }
+
+    private static CompiledPlan plan() {
+        PhasePlan plan = new PhasePlan();
+        plan.setName("two-phase");
+        plan.getGroups().add(new SignalGroup("NS", Directions.NORTH));
+        plan.getGroups().add(new SignalGroup("EW", Directions.EAST));
+        plan.getConflicts().add(List.of("NS", "EW"));
+        plan.getPhases().add(new PlanPhase("ns", 30, List.of("NS"), List.of()));
+        plan.getPhases().add(new PlanPhase("ew", 25, List.of("EW"), List.of()));
+        return CompiledPlan.compile(plan);
+    }
+
+    private ReplicatingStateStore primary(int port) throws Exception {
+        ReplicatingStateStore store = ReplicatingStateStore.open(StateStore.NONE, "localhost", port, HEARTBEAT_MILLIS);
+        open.add(store);
+        return store;
+    }
+
+    private StandbyReplica standby(int port, Recorder recorder) {
+        StandbyReplica replica = new StandbyReplica("localhost", port, HEARTBEAT_MILLIS, recorder);
+        open.add(replica);
+        replica.start();
+        return replica;
+    }
+
+    private static void awaitTrue(BooleanSupplier condition, String what) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "timed out waiting for " + what);
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    void lateStandby_startsFromTheStateThenFollowsTheEvents() throws Exception {
+        ReplicatingStateStore store = primary(0);
+        store.planChanged(plan(), 0);
+        for (int i = 0; i < 5; i++) {
+            store.transition(i, T0.plusSeconds(30L * i), 30_000);
+        }
+        awaitTrue(() -> store.replicatedSequence() == 6, "the primary to fold its events");
+
+        Recorder recorder = new Recorder();
+        StandbyReplica replica = standby(store.port(), recorder);
+        awaitTrue(() -> recorder.sequence() == 6, "the state");
+        ControllerState joined = recorder.last();
+        assertEquals("two-phase", joined.getPlan().name());
+        assertEquals(4, joined.getPhaseIndex());
+        assertEquals(T0.plusSeconds(120), joined.getPhaseStart());
+        assertEquals(30_000, joined.getPhaseDurationMillis());
+        assertTrue(replica.isConnected());
+        assertEquals(1, store.standbys());
+
+        store.paused();
+        store.transition(5, T0.plusSeconds(150), 25_000);
+        awaitTrue(() -> recorder.sequence() == 8, "the events after it");
+        ControllerState followed = recorder.last();
+        assertTrue(followed.isPaused());
+        assertEquals(5, followed.getPhaseIndex());
+        assertEquals(T0.plusSeconds(150), followed.getPhaseStart());
+        // one callback per event, so the standby sees every transition
+        assertEquals(3, recorder.states.size());
+    }
+
+    @Test
+    void closingThePrimary_sendsWhatIsQueuedThenReportsItLost() throws Exception {
+        ReplicatingStateStore store = primary(0);
+        Recorder recorder = new Recorder();
+        standby(store.port(), recorder);
+        awaitTrue(() -> store.standbys() == 1, "the standby to connect");
+
+        store.planChanged(plan(), 0);
+        for (int i = 0; i < 100; i++) {
+            store.transition(i, T0.plusSeconds(30L * i), 30_000);
+        }
+        store.close();
+
+        assertTrue(recorder.lost.await(5, TimeUnit.SECONDS));
+        assertEquals(101, recorder.lastSent.getSequence());
+        assertEquals(99, recorder.lastSent.getPhaseIndex());
+        assertEquals(T0.plusSeconds(30L * 99), recorder.lastSent.getPhaseStart());
+    }
+
+    @Test
+    void silentPrimary_isLostAfterThreeMissedHeartbeats() throws Exception {
+        // accepts, sends one state, then says nothing and keeps the connection open
+        try (ServerSocket server = new ServerSocket(0)) {
+            Recorder recorder = new Recorder();
+            standby(server.getLocalPort(), recorder);
+            try (Socket primary = server.accept()) {
+                // sequence 1, no plan, phase 3, running, no phase start, no duration
+                byte[] state = {0, 0, 0, 0, 0, 0, 0, 1, 0, 0, 0, 0, 3, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0};
+                primary.getOutputStream().write(new byte[]{0, 0, 0, (byte) (state.length + 1), ReplicatingStateStore.STATE});
+                primary.getOutputStream().write(state);
+                long sent = System.nanoTime();
+
+                assertTrue(recorder.lost.await(5, TimeUnit.SECONDS));
+                long detectedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - sent);
+                assertTrue(detectedMillis >= 3 * HEARTBEAT_MILLIS && detectedMillis < 3 * HEARTBEAT_MILLIS + 500,
+                        "lost after " + detectedMillis + " ms");
+                assertEquals(3, recorder.lastSent.getPhaseIndex());
+            }
+        }
+    }
+
+    @Test
+    void standby_waitsForAPrimaryThatIsNotUpYet() throws Exception {
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        Recorder recorder = new Recorder();
+        StandbyReplica replica = standby(port, recorder);
+        Thread.sleep(5 * HEARTBEAT_MILLIS);
+        assertFalse(replica.isConnected());
+        // never having followed a primary, it has nothing to take over from
+        assertEquals(1, recorder.lost.getCount());
+
+        ReplicatingStateStore store = primary(port);
+        store.resumed();
+        awaitTrue(() -> recorder.sequence() == 1, "the standby to catch up");
+
+        replica.close();
+        Thread.sleep(2 * HEARTBEAT_MILLIS);
+        assertEquals(1, recorder.lost.getCount(), "closing the replica is not losing the primary");
+    }
+
+    @Test
+    void standbyThatStopsReading_isDisconnectedWithoutHoldingUpTheOthers() throws Exception {
+        ReplicatingStateStore store = primary(0);
+        Recorder recorder = new Recorder();
+        standby(store.port(), recorder);
+        try (Socket stuck = new Socket()) {
+            stuck.setReceiveBufferSize(4096);
+            stuck.connect(new InetSocketAddress("localhost", store.port()));
+            awaitTrue(() -> store.standbys() == 2, "both standbys to connect");
+            // far more than the socket buffers hold, so the stuck standby's writer blocks
+            long began = System.nanoTime();
+            for (int i = 0; i < 200_000; i++) {
+                store.transition(i, T0.plusSeconds(i), 1_000);
+            }
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - began);
+            assertTrue(elapsedMillis < 2_000, "200,000 events took " + elapsedMillis + " ms to record");
+
+            awaitTrue(() -> recorder.sequence() == 200_000, "the reading standby to catch up");
+            assertEquals(199_999, recorder.last().getPhaseIndex());
+
+            // a standby that falls behind is sent the state instead of its backlog, so it takes a
+            // while for the socket buffers to fill and a write to block past the timeout
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(20);
+            for (int i = 200_000; store.standbys() == 2; i++) {
+                assertTrue(System.nanoTime() < deadline, "the stuck standby was never disconnected");
+                store.transition(i, T0.plusSeconds(i), 1_000);
+                if (i % 1_000 == 0) Thread.sleep(1);
+            }
+            store.paused();
+            awaitTrue(() -> recorder.last().isPaused(), "the reading standby to follow on its own");
+        }
+    }
+
+    @Test
+    void fullQueue_resyncsTheStandbysWithTheState() throws Exception {
+        ReplicatingStateStore store = ReplicatingStateStore.open(StateStore.NONE, "localhost", 0, HEARTBEAT_MILLIS,
+                1, 3 * HEARTBEAT_MILLIS);
+        open.add(store);
+        Recorder recorder = new Recorder();
+        standby(store.port(), recorder);
+        awaitTrue(() -> store.standbys() == 1, "the standby to connect");
+
+        store.planChanged(plan(), 0);
+        for (int i = 0; i < 10_000; i++) {
+            store.transition(i, T0.plusSeconds(i), 1_000);
+        }
+
+        awaitTrue(() -> recorder.sequence() == 10_001, "the standby to catch up");
+        assertTrue(store.resyncs() > 0, "a queue of one never overflowed");
+        ControllerState last = recorder.last();
+        assertEquals("two-phase", last.getPlan().name());
+        assertEquals(9_999, last.getPhaseIndex());
+        assertEquals(T0.plusSeconds(9_999), last.getPhaseStart());
+        assertTrue(recorder.states.size() < 10_001, "every event was sent on its own");
+    }
+}